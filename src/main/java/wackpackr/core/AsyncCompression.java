@@ -0,0 +1,93 @@
+package wackpackr.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+/**
+ * Runs compression and decompression on a given executor, behind the asynchronous methods of
+ * {@link Compressor} (see {@link Compressor#compressAsync(byte[], Executor)}).
+ *
+ * <p>A failed task completes its future exceptionally with the very exception thrown, such as
+ * {@link IOException} or {@link IllegalArgumentException}, so {@link CompletableFuture#get()}
+ * reports it as the cause. A batch completes once all of its tasks have, with the results in the
+ * order of the inputs, or exceptionally if any one of them failed.</p>
+ *
+ * @author Juho Juurinen
+ */
+class AsyncCompression
+{
+    private AsyncCompression() {}
+
+    /**
+     * Operation to run on a single input, either compression or decompression.
+     */
+    interface Coder
+    {
+        byte[] apply(byte[] bytes) throws IOException;
+    }
+
+    /**
+     * Submits the given operation on the given input to the given executor.
+     *
+     * @param coder operation to run
+     * @param bytes input to run it on
+     * @param executor executor to run it in
+     * @return future that completes with the output of the operation
+     * @throws NullPointerException if input or executor is null
+     * @throws java.util.concurrent.RejectedExecutionException if the executor does not accept the
+     *         task
+     */
+    static CompletableFuture<byte[]> submit(Coder coder, byte[] bytes, Executor executor)
+    {
+        if (bytes == null || executor == null)
+            throw new NullPointerException();
+
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+
+        executor.execute(() -> {
+            try
+            {
+                future.complete(coder.apply(bytes));
+            }
+            catch (Throwable e)
+            {
+                future.completeExceptionally(e);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Submits the given operation on each of the given inputs to the given executor, as tasks of
+     * their own.
+     *
+     * @param coder operation to run
+     * @param inputs inputs to run it on
+     * @param executor executor to run it in
+     * @return future that completes with the outputs, in the order of the inputs
+     * @throws NullPointerException if inputs, any of them, or executor is null
+     * @throws java.util.concurrent.RejectedExecutionException if the executor does not accept the
+     *         tasks
+     */
+    static CompletableFuture<List<byte[]>> submitAll(
+            Coder coder,
+            List<byte[]> inputs,
+            Executor executor)
+    {
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>(inputs.size());
+
+        for (byte[] bytes : inputs)
+            futures.add(submit(coder, bytes, executor));
+
+        return CompletableFuture
+                .allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+                .thenApply(v -> futures.stream()
+                        .map(CompletableFuture::join)
+                        .collect(Collectors.toList()));
+    }
+}
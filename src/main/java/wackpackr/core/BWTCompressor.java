@@ -0,0 +1,493 @@
+package wackpackr.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import wackpackr.io.BinaryIO;
+import wackpackr.util.HuffNode;
+
+/**
+ * Compression and decompression in the manner of bzip2: the input is cut into blocks, and each
+ * block goes through the Burrows-Wheeler transform (see {@link BWTransformer}), move-to-front
+ * coding, zero-run coding and finally Huffman coding (see {@link HuffTreeParser}).
+ *
+ * <p>The transform gathers bytes that appear in similar contexts into runs, move-to-front coding
+ * turns those runs into mostly small numbers and especially zeros, and the zero-run coding
+ * collapses the runs of zeros, so that the Huffman coder is left with a skewed distribution of few
+ * symbols. On text this beats the dictionary coders by a wide margin.</p>
+ *
+ * <p>The blocks are independent of each other, so they are compressed and decompressed in parallel
+ * (in the common fork-join pool), which makes up for much of the cost of sorting.</p>
+ *
+ * <p>Runs of zeros are written in bijective base 2 with two digit symbols, RUNA and RUNB, as in
+ * bzip2. The Huffman coder works on bytes, so the move-to-front index {@code i} is written as byte
+ * {@code i + 1}, RUNA and RUNB take bytes 0 and 1, and the two highest indices, which are rare,
+ * are written as an escape byte 255 followed by byte 0 or 1.</p>
+ *
+ * @author Juho Juurinen
+ */
+public class BWTCompressor implements Compressor
+{
+    /**
+     * Size of uncompressed blocks in bytes.
+     */
+    public static final int BLOCK_SIZE = 1 << 18;
+
+    private static final long BWT_TAG = 0x0B0D2018;
+    private static final int RUNA = 0, RUNB = 1, ESCAPE = 255;
+    private static final int EOF_INDEX = 256;
+    private static final long MAX_OVERHEAD = 4 + 1;
+    private static final int MAX_BLOCK_OVERHEAD = 5 + 5;
+    private final boolean storesSize;
+
+    /**
+     * Constructs a new compressor that does not store the uncompressed size.
+     */
+    public BWTCompressor()
+    {
+        this(false);
+    }
+
+    /**
+     * Constructs a new compressor that stores the uncompressed size in the header of compressed
+     * files, if so requested (see {@link FormatHeader}). Files with or without the size can be
+     * decompressed either way.
+     *
+     * @param storesSize whether to store the uncompressed size
+     */
+    public BWTCompressor(boolean storesSize)
+    {
+        this.storesSize = storesSize;
+    }
+
+    /**
+     * Compresses given file using block sorting.
+     *
+     * <p>Writes a 32-bit identifier, indicating the used compression technique, to the beginning
+     * of the compressed binary (followed by the uncompressed size, if so chosen at construction).
+     * Then for each block follow its uncompressed size and compressed size as varints, and the
+     * compressed block itself. A block that would not shrink is stored as-is instead, with zero
+     * compressed size. A zero uncompressed size marks the end.</p>
+     *
+     * <p>If a sample of the data looks practically incompressible (see {@link EntropyEstimator}),
+     * the data is stored as-is after the identifier instead.</p>
+     *
+     * @param bytes file to compress as byte array
+     * @return compressed file as byte array
+     * @throws IOException if there's an error writing to the output stream
+     */
+    @Override
+    public byte[] compress(byte[] bytes) throws IOException
+    {
+        return newCompressionContext().compress(bytes);
+    }
+
+    /**
+     * Compresses the remaining bytes of the given source buffer into the given destination buffer,
+     * in the exact same format as {@link #compress(byte[])}.
+     *
+     * @param src data to compress
+     * @param dst buffer to write compressed data into
+     * @throws java.nio.BufferOverflowException if the destination buffer runs out of space
+     * @throws IOException if there's an error writing to the output stream
+     */
+    @Override
+    public void compress(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        newCompressionContext().compress(src, dst);
+    }
+
+    /**
+     * Decompresses given file using block sorting.
+     *
+     * @param bytes file to decompress as byte array
+     * @return decompressed file as byte array
+     * @throws IllegalArgumentException if file does not have the correct identifier in its header,
+     *         or any block is corrupt
+     * @throws java.io.EOFException if the file ends before the end marker
+     * @throws IOException if there's an error writing to or reading from the I/O streams
+     */
+    @Override
+    public byte[] decompress(byte[] bytes) throws IOException
+    {
+        return newDecompressionContext().decompress(bytes);
+    }
+
+    /**
+     * Decompresses the remaining bytes of the given source buffer into the given destination
+     * buffer. Otherwise works as {@link #decompress(byte[])}.
+     *
+     * @param src data to decompress
+     * @param dst buffer to write decompressed data into
+     * @throws java.nio.BufferOverflowException if the destination buffer runs out of space
+     * @throws IllegalArgumentException if data does not have the correct identifier in its header
+     * @throws IOException if there's an error writing to or reading from the I/O streams
+     */
+    @Override
+    public void decompress(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        newDecompressionContext().decompress(src, dst);
+    }
+
+    /**
+     * Returns the worst-case size of block sorted data: every block stored as-is, plus the sizes of
+     * each block, the header and the end marker.
+     *
+     * @param length length of uncompressed data in bytes
+     * @return worst-case length of compressed data in bytes
+     * @throws IllegalArgumentException if length is negative, or the bound does not fit in an int
+     */
+    @Override
+    public int maxCompressedSize(int length)
+    {
+        long blocks = (length + (long) BLOCK_SIZE - 1) / BLOCK_SIZE;
+        long size = (long) length + blocks * MAX_BLOCK_OVERHEAD + MAX_OVERHEAD
+                + (storesSize ? FormatHeader.MAX_SIZE_BYTES : 0);
+
+        if (length < 0 || size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid input length: " + length);
+
+        return (int) size;
+    }
+
+    /**
+     * Returns a new compression context. Each block needs working memory of its own, so nothing is
+     * held on to between inputs, but the context writes straight into the destination buffer.
+     *
+     * @return new compression context
+     */
+    @Override
+    public CompressionContext newCompressionContext()
+    {
+        return new Encoder();
+    }
+
+    /**
+     * Returns a new decompression context. Each block needs working memory of its own, so nothing
+     * is held on to between inputs, but the context writes straight into the destination buffer.
+     *
+     * @return new decompression context
+     */
+    @Override
+    public DecompressionContext newDecompressionContext()
+    {
+        return new Decoder();
+    }
+
+    @Override
+    public String getName()
+    {
+        return "BWT";
+    }
+
+
+    /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
+
+
+    private class Encoder extends CompressionContext
+    {
+        Encoder()
+        {
+            super(BWTCompressor.this);
+        }
+
+        @Override
+        protected void encode(ByteBuffer src, BinaryIO io) throws IOException
+        {
+            if (EntropyEstimator.isIncompressible(src))
+                FormatHeader.store(io, BWT_TAG, storesSize);
+            else
+                BWTCompressor.this.compress(io);
+        }
+    }
+
+    private class Decoder extends DecompressionContext
+    {
+        Decoder()
+        {
+            super(BWTCompressor.this);
+        }
+
+        @Override
+        protected void decode(BinaryIO io) throws IOException
+        {
+            BWTCompressor.this.decompress(io);
+        }
+    }
+
+    private void compress(BinaryIO io) throws IOException
+    {
+        FormatHeader.write(io, BWT_TAG, storesSize, null);
+
+        List<byte[]> blocks = new ArrayList<>();
+        while (io.hasMore())
+            blocks.add(io.readBytes((int) Math.min(BLOCK_SIZE, io.remaining() >> 3)));
+
+        byte[][] encoded = inParallel(blocks.size(), i -> encodeBlock(blocks.get(i)));
+
+        for (int i = 0; i < encoded.length; i++)
+        {
+            byte[] block = blocks.get(i);
+            io.writeVarInt(block.length);
+
+            if (encoded[i].length < block.length)
+                io
+                        .writeVarInt(encoded[i].length)
+                        .writeBytes(encoded[i]);
+            else
+                io
+                        .writeVarInt(0)
+                        .writeBytes(block);
+        }
+
+        io.writeVarInt(0);
+    }
+
+    private void decompress(BinaryIO io) throws IOException
+    {
+        FormatHeader header = FormatHeader.read(io, BWT_TAG, "Not a BWT compressed file", null);
+
+        if (header.isStored())
+        {
+            header.copyStored(io);
+            return;
+        }
+
+        List<int[]> sizes = new ArrayList<>();
+        List<byte[]> blocks = new ArrayList<>();
+
+        for (int n = io.readVarInt(); n > 0; n = io.readVarInt())
+        {
+            int m = io.readVarInt();
+
+            if (n > BLOCK_SIZE || m >= n || ((m == 0) ? n : m) > io.remaining() >> 3)
+                throw new IllegalArgumentException("Corrupt BWT block");
+
+            sizes.add(new int[]{ n, m });
+            blocks.add(io.readBytes((m == 0) ? n : m));
+        }
+
+        byte[][] decoded = inParallel(blocks.size(), i -> (sizes.get(i)[1] == 0)
+                ? blocks.get(i)
+                : decodeBlock(blocks.get(i), sizes.get(i)[0]));
+
+        for (byte[] block : decoded)
+            io.writeBytes(block);
+
+        header.verify(io);
+    }
+
+    private byte[] encodeBlock(byte[] block) throws IOException
+    {
+        byte[] bwt = new byte[block.length];
+        int primary = BWTransformer.transform(block, bwt);
+
+        byte[] symbols = new byte[2 * block.length];
+        int count = 0, run = 0;
+        byte[] mtf = newMoveToFrontList();
+
+        for (byte b : bwt)
+        {
+            int i = 0;
+            while (mtf[i] != b)
+                i++;
+
+            System.arraycopy(mtf, 0, mtf, 1, i);
+            mtf[0] = b;
+
+            if (i == 0)
+            {
+                run++;
+                continue;
+            }
+
+            count = writeRun(run, symbols, count);
+            run = 0;
+
+            if (i < ESCAPE - 1)
+                symbols[count++] = (byte) (i + 1);
+            else
+            {
+                symbols[count++] = (byte) ESCAPE;
+                symbols[count++] = (byte) (i - (ESCAPE - 1));
+            }
+        }
+
+        count = writeRun(run, symbols, count);
+
+        return encodeSymbols(primary, symbols, count);
+    }
+
+    private byte[] encodeSymbols(int primary, byte[] symbols, int count) throws IOException
+    {
+        HuffNode root = HuffTreeParser.buildTree(
+                HuffTreeParser.countFrequencies(ByteBuffer.wrap(symbols, 0, count))
+        );
+        long[] codes = new long[EOF_INDEX + 1];
+        int[] lengths = new int[EOF_INDEX + 1];
+        formCodeTable(root, 0, 0, codes, lengths);
+
+        try (BinaryIO io = new BinaryIO())
+        {
+            io.writeVarInt(primary);
+            HuffTreeParser.encodeTree(root, io);
+            io.writeLongBits(codes[EOF_INDEX], lengths[EOF_INDEX]);
+
+            for (int i = 0; i < count; i++)
+                io.writeLongBits(codes[symbols[i] + 128], lengths[symbols[i] + 128]);
+
+            io
+                    .writeLongBits(codes[EOF_INDEX], lengths[EOF_INDEX])
+                    .writeByte((byte) 0);
+
+            return io.getBytesOut();
+        }
+    }
+
+    private byte[] decodeBlock(byte[] encoded, int n) throws IOException
+    {
+        byte[] bwt = new byte[n];
+        byte[] mtf = newMoveToFrontList();
+        int k = 0, run = 0, weight = 1;
+
+        try (BinaryIO io = new BinaryIO(encoded))
+        {
+            int primary = io.readVarInt();
+            HuffNode root = HuffTreeParser.decodeTree(io);
+
+            for (int s = readSymbol(root, io); s != EOF_INDEX; s = readSymbol(root, io))
+            {
+                if (s == RUNA || s == RUNB)
+                {
+                    if (weight > n - k)
+                        throw new IllegalArgumentException("Corrupt BWT block");
+
+                    run += weight << s;
+                    weight <<= 1;
+                    continue;
+                }
+
+                k = fillRun(run, mtf[0], bwt, k);
+                run = 0;
+                weight = 1;
+
+                int i = (s == ESCAPE)
+                        ? readSymbol(root, io) + ESCAPE - 1
+                        : s - 1;
+
+                if (k == n || i > ESCAPE)
+                    throw new IllegalArgumentException("Corrupt BWT block");
+
+                byte b = mtf[i];
+                System.arraycopy(mtf, 0, mtf, 1, i);
+                bwt[k++] = mtf[0] = b;
+            }
+
+            if (fillRun(run, mtf[0], bwt, k) != n)
+                throw new IllegalArgumentException("Corrupt BWT block");
+
+            byte[] block = new byte[n];
+            BWTransformer.inverse(bwt, primary, block);
+
+            return block;
+        }
+    }
+
+    private int writeRun(int run, byte[] symbols, int count)
+    {
+        while (run > 0)
+        {
+            if ((run & 1) == 1)
+            {
+                symbols[count++] = RUNA;
+                run = (run - 1) >> 1;
+            }
+            else
+            {
+                symbols[count++] = RUNB;
+                run = (run - 2) >> 1;
+            }
+        }
+
+        return count;
+    }
+
+    private int fillRun(int run, byte b, byte[] bwt, int k)
+    {
+        if (run > bwt.length - k)
+            throw new IllegalArgumentException("Corrupt BWT block");
+
+        for (int end = k + run; k < end; k++)
+            bwt[k] = b;
+
+        return k;
+    }
+
+    private int readSymbol(HuffNode node, BinaryIO io) throws IOException
+    {
+        while (!node.isLeaf())
+            node = io.readBit()
+                    ? node.getRight()
+                    : node.getLeft();
+
+        return node.isEoF()
+                ? EOF_INDEX
+                : node.getValue() & 0xFF;
+    }
+
+    private void formCodeTable(HuffNode node, long code, int length, long[] codes, int[] lengths)
+    {
+        if (node.isLeaf())
+        {
+            int i = node.isEoF() ? EOF_INDEX : node.getValue() + 128;
+            codes[i] = code;
+            lengths[i] = length;
+        }
+        else
+        {
+            formCodeTable(node.getLeft(),  code << 1,     length + 1, codes, lengths);
+            formCodeTable(node.getRight(), code << 1 | 1, length + 1, codes, lengths);
+        }
+    }
+
+    private static byte[] newMoveToFrontList()
+    {
+        byte[] mtf = new byte[256];
+        for (int i = 0; i < mtf.length; i++)
+            mtf[i] = (byte) i;
+
+        return mtf;
+    }
+
+    private interface BlockCoder
+    {
+        byte[] apply(int i) throws IOException;
+    }
+
+    private static byte[][] inParallel(int count, BlockCoder coder) throws IOException
+    {
+        try
+        {
+            return IntStream.range(0, count)
+                    .parallel()
+                    .mapToObj(i -> {
+                        try
+                        {
+                            return coder.apply(i);
+                        }
+                        catch (IOException e)
+                        {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .toArray(byte[][]::new);
+        }
+        catch (UncheckedIOException e)
+        {
+            throw e.getCause();
+        }
+    }
+}
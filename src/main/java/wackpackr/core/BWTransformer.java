@@ -0,0 +1,163 @@
+package wackpackr.core;
+
+import java.util.Arrays;
+
+/**
+ * Helper class that handles the Burrows-Wheeler transform and its inverse, as needed in BWT
+ * compression and decompression (see {@link BWTCompressor}).
+ *
+ * <p>The transform sorts all rotations of a block, and outputs the last byte of each one in sorted
+ * order. This tends to bring bytes that appear in similar contexts next to each other, so that the
+ * output has long runs of the same few bytes, while being just a permutation of the input. Given
+ * the index of the original block among the sorted rotations, the permutation can be undone.</p>
+ *
+ * <p>The rotations are sorted by building the suffix array of the block, with a virtual sentinel
+ * smaller than any byte appended to it, so that sorting the rotations is the same as sorting the
+ * suffixes. The suffix array is built by prefix doubling with radix sort, in O(n log n) time at
+ * worst, but usually much faster, since the sorting stops as soon as all suffixes are told apart.
+ * </p>
+ *
+ * @author Juho Juurinen
+ */
+public class BWTransformer
+{
+    private static final int ALPHABET_SIZE = 257;
+
+    private BWTransformer() {}
+
+    /**
+     * Returns the suffix array of the given block, that is, the starting indices of all suffixes of
+     * the block in sorted order. The empty suffix (sentinel) is counted in, and comes first.
+     *
+     * @param block data to sort
+     * @return suffix array, one longer than the block
+     */
+    public static int[] suffixArray(byte[] block)
+    {
+        int n = block.length + 1;
+        int[] sa = new int[n], rank = new int[n];
+        int[] next = new int[n], nextRank = new int[n];
+        int[] counts = new int[Math.max(ALPHABET_SIZE, n)];
+
+        for (int i = 0; i < n; i++)
+            counts[symbol(block, i)]++;
+        for (int s = 1; s < ALPHABET_SIZE; s++)
+            counts[s] += counts[s - 1];
+        for (int i = n - 1; i >= 0; i--)
+            sa[--counts[symbol(block, i)]] = i;
+
+        int classes = 1;
+        for (int i = 1; i < n; i++)
+        {
+            if (symbol(block, sa[i]) != symbol(block, sa[i - 1]))
+                classes++;
+            rank[sa[i]] = classes - 1;
+        }
+
+        for (int h = 1; classes < n; h <<= 1)
+        {
+            for (int i = 0; i < n; i++)
+                next[i] = (sa[i] - h < 0) ? sa[i] - h + n : sa[i] - h;
+
+            Arrays.fill(counts, 0, classes, 0);
+            for (int i = 0; i < n; i++)
+                counts[rank[next[i]]]++;
+            for (int c = 1; c < classes; c++)
+                counts[c] += counts[c - 1];
+            for (int i = n - 1; i >= 0; i--)
+                sa[--counts[rank[next[i]]]] = next[i];
+
+            classes = 1;
+            nextRank[sa[0]] = 0;
+            for (int i = 1; i < n; i++)
+            {
+                int a = sa[i], b = sa[i - 1];
+
+                if (rank[a] != rank[b] || rank[(a + h) % n] != rank[(b + h) % n])
+                    classes++;
+                nextRank[a] = classes - 1;
+            }
+
+            int[] swap = rank;
+            rank = nextRank;
+            nextRank = swap;
+        }
+
+        return sa;
+    }
+
+    /**
+     * Transforms the given block into the given output array, which must be of the same length.
+     * Returns the index needed to undo the transform, which is always between 1 and the length of
+     * the block, unless the block is empty.
+     *
+     * @param block data to transform
+     * @param out array to write transformed data into
+     * @return primary index of the transform
+     */
+    public static int transform(byte[] block, byte[] out)
+    {
+        int[] sa = suffixArray(block);
+        int primary = 0;
+
+        for (int i = 0, k = 0; i < sa.length; i++)
+        {
+            if (sa[i] == 0)
+                primary = i;
+            else
+                out[k++] = block[sa[i] - 1];
+        }
+
+        return primary;
+    }
+
+    /**
+     * Undoes the transform of the given data into the given output array, which must be of the same
+     * length.
+     *
+     * @param bwt transformed data
+     * @param primary primary index of the transform
+     * @param out array to write original data into
+     * @throws IllegalArgumentException if primary index is out of range
+     */
+    public static void inverse(byte[] bwt, int primary, byte[] out)
+    {
+        int n = bwt.length + 1;
+
+        if (primary < 1 || primary >= n)
+            throw new IllegalArgumentException("Invalid primary index: " + primary);
+
+        int[] starts = new int[ALPHABET_SIZE + 1];
+        for (int i = 0; i < n; i++)
+            starts[row(bwt, primary, i) + 1]++;
+        for (int s = 1; s <= ALPHABET_SIZE; s++)
+            starts[s] += starts[s - 1];
+
+        int[] lf = new int[n];
+        for (int i = 0; i < n; i++)
+            lf[i] = starts[row(bwt, primary, i)]++;
+
+        for (int k = bwt.length - 1, i = 0; k >= 0; k--)
+        {
+            out[k] = (byte) (row(bwt, primary, i) - 1);
+            i = lf[i];
+        }
+    }
+
+
+    /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
+
+
+    private static int symbol(byte[] block, int i)
+    {
+        return (i == block.length) ? 0 : (block[i] & 0xFF) + 1;
+    }
+
+    private static int row(byte[] bwt, int primary, int i)
+    {
+        if (i == primary)
+            return 0;
+
+        return (bwt[(i < primary) ? i : i - 1] & 0xFF) + 1;
+    }
+}
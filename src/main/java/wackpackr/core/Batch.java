@@ -0,0 +1,173 @@
+package wackpackr.core;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sequence of payloads packed one after another into a single byte array, with their offsets in
+ * an int array alongside. This is what {@link BatchCompressor} takes in and gives out: one array
+ * for the whole batch, rather than one object per payload.
+ *
+ * <p>Neither array is copied on the way in or out, so they should not be modified while the batch
+ * is in use.</p>
+ *
+ * @author Juho Juurinen
+ */
+public class Batch
+{
+    private final byte[] data;
+    private final int[] offsets;
+
+    /**
+     * Constructs a new batch of the payloads held in the given array, between the given offsets:
+     * payload {@code i} runs from {@code offsets[i]} to {@code offsets[i + 1]}, so there is one
+     * offset more than there are payloads.
+     *
+     * @param data array holding the payloads
+     * @param offsets start of each payload, followed by the end of the last one
+     * @throws IllegalArgumentException if there are no offsets, or they are decreasing, negative
+     *         or past the end of the data
+     */
+    public Batch(byte[] data, int[] offsets)
+    {
+        if (offsets.length == 0 || offsets[0] < 0 || offsets[offsets.length - 1] > data.length)
+            throw new IllegalArgumentException("Invalid offsets");
+
+        for (int i = 1; i < offsets.length; i++)
+            if (offsets[i] < offsets[i - 1])
+                throw new IllegalArgumentException("Invalid offsets");
+
+        this.data = data;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Returns a new batch of copies of the given payloads.
+     *
+     * @param payloads payloads as byte arrays
+     * @return batch of the payloads
+     * @throws IllegalArgumentException if the payloads do not fit in one array
+     */
+    public static Batch of(List<byte[]> payloads)
+    {
+        int[] offsets = new int[payloads.size() + 1];
+        long total = 0;
+
+        for (int i = 0; i < payloads.size(); i++)
+        {
+            total += payloads.get(i).length;
+
+            if (total > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Batch too large");
+
+            offsets[i + 1] = (int) total;
+        }
+
+        byte[] data = new byte[(int) total];
+        for (int i = 0; i < payloads.size(); i++)
+            System.arraycopy(payloads.get(i), 0, data, offsets[i], payloads.get(i).length);
+
+        return new Batch(data, offsets);
+    }
+
+    /**
+     * Returns the number of payloads in this batch.
+     *
+     * @return number of payloads
+     */
+    public int size()
+    {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Returns the array holding the payloads, without copying.
+     *
+     * @return array holding the payloads
+     */
+    public byte[] getData()
+    {
+        return data;
+    }
+
+    /**
+     * Returns the index at which the given payload starts in the array.
+     *
+     * @param i index of the payload
+     * @return offset of the payload
+     * @throws IndexOutOfBoundsException if there's no such payload
+     */
+    public int getOffset(int i)
+    {
+        checkIndex(i);
+
+        return offsets[i];
+    }
+
+    /**
+     * Returns the length of the given payload.
+     *
+     * @param i index of the payload
+     * @return length of the payload in bytes
+     * @throws IndexOutOfBoundsException if there's no such payload
+     */
+    public int getLength(int i)
+    {
+        checkIndex(i);
+
+        return offsets[i + 1] - offsets[i];
+    }
+
+    /**
+     * Returns a copy of the given payload.
+     *
+     * @param i index of the payload
+     * @return payload as byte array
+     * @throws IndexOutOfBoundsException if there's no such payload
+     */
+    public byte[] get(int i)
+    {
+        byte[] bs = new byte[getLength(i)];
+        System.arraycopy(data, offsets[i], bs, 0, bs.length);
+
+        return bs;
+    }
+
+    /**
+     * Returns the given payload as a buffer over the array, without copying. The position of the
+     * buffer is zero, and its limit is the length of the payload.
+     *
+     * @param i index of the payload
+     * @return payload as buffer
+     * @throws IndexOutOfBoundsException if there's no such payload
+     */
+    public ByteBuffer getBuffer(int i)
+    {
+        return ByteBuffer.wrap(data, getOffset(i), getLength(i)).slice();
+    }
+
+    /**
+     * Returns copies of all payloads.
+     *
+     * @return payloads as byte arrays, in order
+     */
+    public List<byte[]> toList()
+    {
+        List<byte[]> payloads = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++)
+            payloads.add(get(i));
+
+        return payloads;
+    }
+
+
+    /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
+
+
+    private void checkIndex(int i)
+    {
+        if (i < 0 || i >= size())
+            throw new IndexOutOfBoundsException("Index: " + i);
+    }
+}
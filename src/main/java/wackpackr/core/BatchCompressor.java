@@ -0,0 +1,301 @@
+package wackpackr.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import wackpackr.io.BufferPool;
+
+/**
+ * Compression and decompression of many small, independent payloads at once, with a given
+ * compressor. Each payload is compressed exactly as {@link Compressor#compress(byte[])} would, so
+ * any one of them can also be decompressed on its own.
+ *
+ * <p>Compressing payloads one by one sets up the working memory of the compressor, and allocates
+ * an output array, for each of them, which for small payloads costs more than the compression
+ * itself. Here one context (see {@link CompressionContext}) is set up for a whole run of payloads,
+ * and merely reset between them, and all output goes into a single buffer, taken from {@link
+ * BufferPool}. The result is a {@link Batch}: one array holding all the compressed payloads, with
+ * their offsets.</p>
+ *
+ * <p>If so chosen at construction, the payloads are split into runs of at least {@value
+ * #MIN_PARALLEL_RUN} that are compressed in parallel (in the common fork-join pool), each with a
+ * context and buffer of its own, and joined in order at the end.</p>
+ *
+ * @author Juho Juurinen
+ */
+public class BatchCompressor
+{
+    /**
+     * Smallest number of payloads worth handing over to a thread of its own.
+     */
+    public static final int MIN_PARALLEL_RUN = 64;
+
+    private static final int MIN_BUFFER_SIZE = 1 << 12;
+    private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+    private final Compressor compressor;
+    private final boolean parallel;
+
+    /**
+     * Constructs a new batch compressor that works through each batch in the calling thread.
+     *
+     * @param compressor compressor to use
+     * @throws NullPointerException if compressor is null
+     */
+    public BatchCompressor(Compressor compressor)
+    {
+        this(compressor, false);
+    }
+
+    /**
+     * Constructs a new batch compressor that works through large batches in parallel, if so
+     * requested.
+     *
+     * @param compressor compressor to use
+     * @param parallel whether to work in parallel
+     * @throws NullPointerException if compressor is null
+     */
+    public BatchCompressor(Compressor compressor, boolean parallel)
+    {
+        if (compressor == null)
+            throw new NullPointerException();
+
+        this.compressor = compressor;
+        this.parallel = parallel;
+    }
+
+    /**
+     * Returns the compressor used.
+     *
+     * @return compressor
+     */
+    public Compressor getCompressor()
+    {
+        return compressor;
+    }
+
+    /**
+     * Compresses each of the given payloads.
+     *
+     * @param payloads payloads to compress as byte arrays
+     * @return compressed payloads, in the order given
+     * @throws IllegalArgumentException if the compressed payloads may not fit in one array
+     * @throws IOException if there's an error compressing any of the payloads
+     */
+    public Batch compress(List<byte[]> payloads) throws IOException
+    {
+        return compress(payloads.size(), i -> ByteBuffer.wrap(payloads.get(i)));
+    }
+
+    /**
+     * Compresses each payload of the given batch.
+     *
+     * @param payloads payloads to compress
+     * @return compressed payloads, in the order given
+     * @throws IllegalArgumentException if the compressed payloads may not fit in one array
+     * @throws IOException if there's an error compressing any of the payloads
+     */
+    public Batch compress(Batch payloads) throws IOException
+    {
+        return compress(payloads.size(), payloads::getBuffer);
+    }
+
+    /**
+     * Decompresses each payload of the given batch.
+     *
+     * @param compressed compressed payloads
+     * @return decompressed payloads, in the order given
+     * @throws IllegalArgumentException if any payload does not have the correct identifier in its
+     *         header, or the decompressed payloads do not fit in one array
+     * @throws IOException if there's an error decompressing any of the payloads
+     */
+    public Batch decompress(Batch compressed) throws IOException
+    {
+        int count = compressed.size();
+
+        return join(inParallel(runs(count), (k, runs) -> decompressRun(
+                compressed::getBuffer,
+                count * k / runs,
+                count * (k + 1) / runs
+        )));
+    }
+
+
+    /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
+
+
+    private Batch compress(int count, IntFunction<ByteBuffer> payloads) throws IOException
+    {
+        return join(inParallel(runs(count), (k, runs) -> compressRun(
+                payloads,
+                count * k / runs,
+                count * (k + 1) / runs
+        )));
+    }
+
+    private Run compressRun(IntFunction<ByteBuffer> payloads, int from, int to)
+            throws IOException
+    {
+        long bound = 0;
+        for (int i = from; i < to; i++)
+            bound += compressor.maxCompressedSize(payloads.apply(i).remaining());
+
+        if (bound > MAX_BUFFER_SIZE)
+            throw new IllegalArgumentException("Batch too large");
+
+        CompressionContext context = compressor.newCompressionContext();
+        Run run = new Run(BufferPool.acquire((int) bound), to - from);
+        ByteBuffer dst = ByteBuffer.wrap(run.data);
+
+        for (int i = from; i < to; i++)
+        {
+            context.compress(payloads.apply(i), dst);
+            run.ends[i - from] = dst.position();
+        }
+
+        return run;
+    }
+
+    private Run decompressRun(IntFunction<ByteBuffer> payloads, int from, int to)
+            throws IOException
+    {
+        long size = 0;
+        for (int i = from; i < to; i++)
+            size += payloads.apply(i).remaining();
+
+        DecompressionContext context = compressor.newDecompressionContext();
+        Run run = new Run(BufferPool.acquire((int) Math.min(MAX_BUFFER_SIZE,
+                Math.max(MIN_BUFFER_SIZE, 2 * size))), to - from);
+        int position = 0;
+
+        for (int i = from; i < to; i++)
+        {
+            while (true)
+                try
+                {
+                    ByteBuffer dst = ByteBuffer.wrap(run.data);
+                    dst.position(position);
+
+                    context.decompress(payloads.apply(i), dst);
+                    position = dst.position();
+                    break;
+                }
+                catch (BufferOverflowException e)
+                {
+                    run.grow(position);
+                }
+
+            run.ends[i - from] = position;
+        }
+
+        return run;
+    }
+
+    private int runs(int count)
+    {
+        if (!parallel)
+            return 1;
+
+        int threads = ForkJoinPool.getCommonPoolParallelism();
+
+        return Math.max(1, Math.min(count / MIN_PARALLEL_RUN, 4 * threads));
+    }
+
+    private static Batch join(Run[] runs)
+    {
+        long total = 0;
+        int count = 0;
+
+        for (Run run : runs)
+        {
+            total += run.length();
+            count += run.ends.length;
+        }
+
+        if (total > MAX_BUFFER_SIZE)
+            throw new IllegalArgumentException("Batch too large");
+
+        byte[] data = new byte[(int) total];
+        int[] offsets = new int[count + 1];
+        int position = 0;
+        count = 0;
+
+        for (Run run : runs)
+        {
+            System.arraycopy(run.data, 0, data, position, run.length());
+
+            for (int end : run.ends)
+                offsets[++count] = position + end;
+
+            position += run.length();
+            BufferPool.release(run.data);
+        }
+
+        return new Batch(data, offsets);
+    }
+
+    private interface RunCoder
+    {
+        Run apply(int k, int runs) throws IOException;
+    }
+
+    private static Run[] inParallel(int runs, RunCoder coder) throws IOException
+    {
+        if (runs == 1)
+            return new Run[]{ coder.apply(0, 1) };
+
+        try
+        {
+            return IntStream.range(0, runs)
+                    .parallel()
+                    .mapToObj(k -> {
+                        try
+                        {
+                            return coder.apply(k, runs);
+                        }
+                        catch (IOException e)
+                        {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .toArray(Run[]::new);
+        }
+        catch (UncheckedIOException e)
+        {
+            throw e.getCause();
+        }
+    }
+
+    private static class Run
+    {
+        private byte[] data;
+        private final int[] ends;
+
+        Run(byte[] data, int count)
+        {
+            this.data = data;
+            this.ends = new int[count];
+        }
+
+        int length()
+        {
+            return (ends.length == 0) ? 0 : ends[ends.length - 1];
+        }
+
+        void grow(int used)
+        {
+            if (data.length >= MAX_BUFFER_SIZE)
+                throw new IllegalArgumentException("Batch too large");
+
+            byte[] larger = BufferPool.acquire((int) Math.min(MAX_BUFFER_SIZE, 2L * data.length));
+            System.arraycopy(data, 0, larger, 0, used);
+            BufferPool.release(data);
+
+            data = larger;
+        }
+    }
+}
@@ -0,0 +1,629 @@
+package wackpackr.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.function.IntToLongFunction;
+import java.util.stream.IntStream;
+import wackpackr.io.BinaryIO;
+
+/**
+ * Compression and decompression by context mixing: each bit is predicted by several models, which
+ * look at the preceding 0 to 4 bytes, the predictions are mixed into one, and the bit is coded
+ * with that probability (see {@link RangeEncoder}). Slow, but compresses better than any of the
+ * other compressors.
+ *
+ * <p>Each model keeps an adaptive probability for every context it has seen, in a table of
+ * primitive ints. The order-0 and order-1 tables are indexed directly, while the contexts of
+ * orders 2 to 4 are hashed into tables of bounded size, so that memory stays within the limit
+ * given at construction, however large the input. Colliding contexts simply share a probability.
+ * </p>
+ *
+ * <p>The predictions are mixed by a small neural network, a weighted sum in the logistic domain,
+ * whose weights are trained on each bit to favour the models that have been right. The mixed
+ * prediction is finally refined by adaptive probability mapping on the order-1 context, or on
+ * fewer bits of the previous byte in blocks too short to fill that many contexts.</p>
+ *
+ * <p>The hashed tables and the probability map are never larger than the block needs, so small
+ * inputs stay cheap. A full block of {@value #BLOCK_SIZE} bytes never needs more than some 55 MB
+ * in all.</p>
+ *
+ * <p>The input is cut into blocks that are modeled independently, so they are compressed and
+ * decompressed in parallel (in the common fork-join pool), like in {@link BWTCompressor}. The
+ * memory limit covers the models of all the blocks being worked on at once: the tables of each
+ * block are sized to fit the whole limit, and a block is started only once the blocks already in
+ * the works leave room for it. So a limit of a few times what one block needs lets that many
+ * blocks be worked on in parallel, while the default runs full blocks one at a time. The input and
+ * output themselves are not counted. Decompression keeps to the limit of the decompressor, except
+ * that a block compressed with a larger limit is still decompressed, alone.</p>
+ *
+ * @author Juho Juurinen
+ */
+public class CMCompressor implements Compressor
+{
+    /**
+     * Size of uncompressed blocks in bytes.
+     */
+    public static final int BLOCK_SIZE = 1 << 20;
+
+    /**
+     * Default memory limit in megabytes, for the models of all blocks being worked on at once.
+     */
+    public static final int DEFAULT_MEMORY = 32;
+
+    /**
+     * Largest memory limit in megabytes that can be given.
+     */
+    public static final int MAX_MEMORY = 1024;
+
+    private static final long CM_TAG = 0x0C0E2018;
+    private static final long MAX_OVERHEAD = 4 + 1;
+    private static final int MAX_BLOCK_OVERHEAD = 5 + 5;
+    private static final int HASHED_ORDERS = 3;
+    private static final int MIN_TABLE_BITS = 12;
+    private static final int APM_BUCKETS = 24;
+    private final int memory;
+    private final boolean storesSize;
+
+    /**
+     * Constructs a new compressor with the default memory limit, that does not store the
+     * uncompressed size.
+     */
+    public CMCompressor()
+    {
+        this(false);
+    }
+
+    /**
+     * Constructs a new compressor with the default memory limit, that stores the uncompressed size
+     * in the header of compressed files, if so requested (see {@link FormatHeader}). Files with or
+     * without the size can be decompressed either way.
+     *
+     * @param storesSize whether to store the uncompressed size
+     */
+    public CMCompressor(boolean storesSize)
+    {
+        this(DEFAULT_MEMORY, storesSize);
+    }
+
+    /**
+     * Constructs a new compressor that uses at most the given amount of memory for the models of
+     * all blocks being worked on at once. More memory means fewer collisions in the hashed
+     * contexts, which pays off on large blocks only, and then more blocks worked on in parallel.
+     * The table size is stored with each block, so files compressed with any limit can be
+     * decompressed with any other.
+     *
+     * @param memory memory limit in megabytes, between 1 and {@value #MAX_MEMORY}
+     * @param storesSize whether to store the uncompressed size
+     * @throws IllegalArgumentException if memory limit is out of range
+     */
+    public CMCompressor(int memory, boolean storesSize)
+    {
+        if (memory < 1 || memory > MAX_MEMORY)
+            throw new IllegalArgumentException("Invalid memory limit: " + memory);
+
+        this.memory = memory;
+        this.storesSize = storesSize;
+    }
+
+    /**
+     * Compresses given file using context mixing.
+     *
+     * <p>Writes a 32-bit identifier, indicating the used compression technique, to the beginning
+     * of the compressed binary (followed by the uncompressed size, if so chosen at construction).
+     * Then for each block follow its uncompressed size and compressed size as varints, and the
+     * compressed block itself, which starts with the size of its tables. A block that would not
+     * shrink is stored as-is instead, with zero compressed size. A zero uncompressed size marks
+     * the end.</p>
+     *
+     * <p>If a sample of the data looks practically incompressible (see {@link EntropyEstimator}),
+     * the data is stored as-is after the identifier instead.</p>
+     *
+     * @param bytes file to compress as byte array
+     * @return compressed file as byte array
+     * @throws IOException if there's an error writing to the output stream
+     */
+    @Override
+    public byte[] compress(byte[] bytes) throws IOException
+    {
+        return newCompressionContext().compress(bytes);
+    }
+
+    /**
+     * Compresses the remaining bytes of the given source buffer into the given destination buffer,
+     * in the exact same format as {@link #compress(byte[])}.
+     *
+     * @param src data to compress
+     * @param dst buffer to write compressed data into
+     * @throws java.nio.BufferOverflowException if the destination buffer runs out of space
+     * @throws IOException if there's an error writing to the output stream
+     */
+    @Override
+    public void compress(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        newCompressionContext().compress(src, dst);
+    }
+
+    /**
+     * Decompresses given file using context mixing.
+     *
+     * @param bytes file to decompress as byte array
+     * @return decompressed file as byte array
+     * @throws IllegalArgumentException if file does not have the correct identifier in its header,
+     *         or any block is corrupt
+     * @throws java.io.EOFException if the file ends before the end marker
+     * @throws IOException if there's an error writing to or reading from the I/O streams
+     */
+    @Override
+    public byte[] decompress(byte[] bytes) throws IOException
+    {
+        return newDecompressionContext().decompress(bytes);
+    }
+
+    /**
+     * Decompresses the remaining bytes of the given source buffer into the given destination
+     * buffer. Otherwise works as {@link #decompress(byte[])}.
+     *
+     * @param src data to decompress
+     * @param dst buffer to write decompressed data into
+     * @throws java.nio.BufferOverflowException if the destination buffer runs out of space
+     * @throws IllegalArgumentException if data does not have the correct identifier in its header
+     * @throws IOException if there's an error writing to or reading from the I/O streams
+     */
+    @Override
+    public void decompress(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        newDecompressionContext().decompress(src, dst);
+    }
+
+    /**
+     * Returns the worst-case size of context mixed data: every block stored as-is, plus the sizes
+     * of each block, the header and the end marker.
+     *
+     * @param length length of uncompressed data in bytes
+     * @return worst-case length of compressed data in bytes
+     * @throws IllegalArgumentException if length is negative, or the bound does not fit in an int
+     */
+    @Override
+    public int maxCompressedSize(int length)
+    {
+        long blocks = (length + (long) BLOCK_SIZE - 1) / BLOCK_SIZE;
+        long size = (long) length + blocks * MAX_BLOCK_OVERHEAD + MAX_OVERHEAD
+                + (storesSize ? FormatHeader.MAX_SIZE_BYTES : 0);
+
+        if (length < 0 || size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid input length: " + length);
+
+        return (int) size;
+    }
+
+    /**
+     * Returns a new compression context. Each block needs tables of its own, so nothing is held on
+     * to between inputs, but the context writes straight into the destination buffer.
+     *
+     * @return new compression context
+     */
+    @Override
+    public CompressionContext newCompressionContext()
+    {
+        return new Encoder();
+    }
+
+    /**
+     * Returns a new decompression context. Each block needs tables of its own, so nothing is held
+     * on to between inputs, but the context writes straight into the destination buffer.
+     *
+     * @return new decompression context
+     */
+    @Override
+    public DecompressionContext newDecompressionContext()
+    {
+        return new Decoder();
+    }
+
+    @Override
+    public String getName()
+    {
+        return "CM";
+    }
+
+
+    /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
+
+
+    private class Encoder extends CompressionContext
+    {
+        Encoder()
+        {
+            super(CMCompressor.this);
+        }
+
+        @Override
+        protected void encode(ByteBuffer src, BinaryIO io) throws IOException
+        {
+            if (EntropyEstimator.isIncompressible(src))
+                FormatHeader.store(io, CM_TAG, storesSize);
+            else
+                CMCompressor.this.compress(io);
+        }
+    }
+
+    private class Decoder extends DecompressionContext
+    {
+        Decoder()
+        {
+            super(CMCompressor.this);
+        }
+
+        @Override
+        protected void decode(BinaryIO io) throws IOException
+        {
+            CMCompressor.this.decompress(io);
+        }
+    }
+
+    private void compress(BinaryIO io) throws IOException
+    {
+        FormatHeader.write(io, CM_TAG, storesSize, null);
+
+        List<byte[]> blocks = new ArrayList<>();
+        while (io.hasMore())
+            blocks.add(io.readBytes((int) Math.min(BLOCK_SIZE, io.remaining() >> 3)));
+
+        int[] bits = new int[blocks.size()];
+        for (int i = 0; i < bits.length; i++)
+            bits[i] = tableBits(blocks.get(i).length);
+
+        byte[][] encoded = inParallel(
+                blocks.size(),
+                i -> modelBytes(bits[i], blocks.get(i).length),
+                i -> encodeBlock(blocks.get(i), bits[i])
+        );
+
+        for (int i = 0; i < encoded.length; i++)
+        {
+            byte[] block = blocks.get(i);
+            io.writeVarInt(block.length);
+
+            if (encoded[i].length < block.length)
+                io
+                        .writeVarInt(encoded[i].length)
+                        .writeBytes(encoded[i]);
+            else
+                io
+                        .writeVarInt(0)
+                        .writeBytes(block);
+        }
+
+        io.writeVarInt(0);
+    }
+
+    private void decompress(BinaryIO io) throws IOException
+    {
+        FormatHeader header = FormatHeader.read(io, CM_TAG, "Not a CM compressed file", null);
+
+        if (header.isStored())
+        {
+            header.copyStored(io);
+            return;
+        }
+
+        List<int[]> sizes = new ArrayList<>();
+        List<byte[]> blocks = new ArrayList<>();
+
+        for (int n = io.readVarInt(); n > 0; n = io.readVarInt())
+        {
+            int m = io.readVarInt();
+
+            if (n > BLOCK_SIZE || m >= n || ((m == 0) ? n : m) > io.remaining() >> 3)
+                throw new IllegalArgumentException("Corrupt CM block");
+
+            sizes.add(new int[]{ n, m });
+            blocks.add(io.readBytes((m == 0) ? n : m));
+        }
+
+        byte[][] decoded = inParallel(
+                blocks.size(),
+                i -> (sizes.get(i)[1] == 0)
+                        ? 0
+                        : modelBytes(
+                                Math.min(blocks.get(i)[0] & 0xFF, maxTableBits(sizes.get(i)[0])),
+                                sizes.get(i)[0]
+                        ),
+                i -> (sizes.get(i)[1] == 0)
+                        ? blocks.get(i)
+                        : decodeBlock(blocks.get(i), sizes.get(i)[0])
+        );
+
+        for (byte[] block : decoded)
+            io.writeBytes(block);
+
+        header.verify(io);
+    }
+
+    private byte[] encodeBlock(byte[] block, int bits) throws IOException
+    {
+        Model model = new Model(bits, apmBits(block.length));
+        RangeEncoder rc = new RangeEncoder(block.length / 2);
+
+        for (byte b : block)
+            for (int k = 7; k >= 0; k--)
+            {
+                int bit = (b >>> k) & 1;
+                rc.encodeBit(model.predict(), bit);
+                model.update(bit);
+            }
+
+        rc.finish();
+
+        try (BinaryIO io = new BinaryIO())
+        {
+            io.writeByte((byte) bits);
+            rc.writeTo(io);
+
+            return io.getBytesOut();
+        }
+    }
+
+    private byte[] decodeBlock(byte[] encoded, int n) throws IOException
+    {
+        byte[] block = new byte[n];
+
+        try (BinaryIO io = new BinaryIO(encoded))
+        {
+            int bits = io.readByte();
+
+            if (bits < MIN_TABLE_BITS || bits > maxTableBits(n))
+                throw new IllegalArgumentException("Corrupt CM block");
+
+            Model model = new Model(bits, apmBits(n));
+            RangeDecoder rc = new RangeDecoder(io);
+
+            for (int i = 0; i < n; i++)
+            {
+                int b = 0;
+
+                for (int k = 0; k < 8; k++)
+                {
+                    int bit = rc.decodeBit(model.predict());
+                    model.update(bit);
+                    b = (b << 1) | bit;
+                }
+
+                block[i] = (byte) b;
+            }
+        }
+
+        return block;
+    }
+
+    private int tableBits(int blockLength)
+    {
+        long budget = ((long) memory << 20) - modelBytes(0, blockLength);
+        long entries = budget / (4 * HASHED_ORDERS);
+        int bits = (entries < 1) ? 0 : 63 - Long.numberOfLeadingZeros(entries);
+
+        return Math.max(MIN_TABLE_BITS, Math.min(bits, maxTableBits(blockLength)));
+    }
+
+    private static long modelBytes(int tableBits, int blockLength)
+    {
+        long hashed = (tableBits > 0) ? (long) HASHED_ORDERS << tableBits : 0;
+        long apm = (long) APM_BUCKETS << (8 + apmBits(blockLength));
+
+        return 4 * (hashed + apm + (1 << 16) + (1 << 8) + 256 * Model.INPUTS);
+    }
+
+    private static int apmBits(int blockLength)
+    {
+        return Math.max(0, Math.min(8, ceilLog2(blockLength) - 8));
+    }
+
+    private static int maxTableBits(int blockLength)
+    {
+        return Math.max(MIN_TABLE_BITS, ceilLog2(blockLength) + 2);
+    }
+
+    private static int ceilLog2(int n)
+    {
+        return (n <= 1) ? 0 : 32 - Integer.numberOfLeadingZeros(n - 1);
+    }
+
+    private interface BlockCoder
+    {
+        byte[] apply(int i) throws IOException;
+    }
+
+    private byte[][] inParallel(int count, IntToLongFunction needs, BlockCoder coder)
+            throws IOException
+    {
+        int total = memory << 10;
+        Semaphore budget = new Semaphore(total, true);
+
+        try
+        {
+            return IntStream.range(0, count)
+                    .parallel()
+                    .mapToObj(i -> {
+                        int kilobytes = (int) Math.min(total, (needs.applyAsLong(i) + 1023) >> 10);
+                        budget.acquireUninterruptibly(kilobytes);
+
+                        try
+                        {
+                            return coder.apply(i);
+                        }
+                        catch (IOException e)
+                        {
+                            throw new UncheckedIOException(e);
+                        }
+                        finally
+                        {
+                            budget.release(kilobytes);
+                        }
+                    })
+                    .toArray(byte[][]::new);
+        }
+        catch (UncheckedIOException e)
+        {
+            throw e.getCause();
+        }
+    }
+
+    private static final class Model
+    {
+        private static final int INPUTS = 6;
+        private static final int LIMIT = 255;
+        private static final int[] STRETCH = new int[4096];
+        private static final int[] SQUASH = new int[4096];
+        private static final int[] RECIPROCALS = new int[1024];
+        private static final int[] MASKS = { 0xFFFF, 0xFFFFFF, 0xFFFFFFFF };
+        private static final int[] PRIMES = { 0x2F0B4C27, 0x5BD1E995, 0x6F4F2A35 };
+
+        static
+        {
+            for (int d = -2048; d < 2048; d++)
+            {
+                int p = (int) (4096 / (1 + StrictMath.exp(-d / 256.0)));
+                SQUASH[d + 2048] = Math.max(1, Math.min(4095, p));
+            }
+
+            for (int p = 0, d = -2047; p < 4096; p++)
+            {
+                while (d < 2047 && SQUASH[d + 2048] < p)
+                    d++;
+
+                STRETCH[p] = d;
+            }
+
+            for (int n = 0; n < RECIPROCALS.length; n++)
+                RECIPROCALS[n] = 16384 / (n + n + 3);
+        }
+
+        private final int[] order0 = newCounters(1 << 8);
+        private final int[] order1 = newCounters(1 << 16);
+        private final int[][] hashed = new int[HASHED_ORDERS][];
+        private final int[] hashes = new int[HASHED_ORDERS];
+        private final int[] bases = new int[HASHED_ORDERS];
+        private final int[] slots = new int[INPUTS - 1];
+        private final int[] inputs = new int[INPUTS];
+        private final int[] weights = new int[256 * INPUTS];
+        private final int[] apm;
+        private final int apmShift;
+        private final int shift;
+        private int c0 = 1, nibble = 1, history;
+        private int mixed, apmIndex, pr;
+
+        Model(int bits, int apmBits)
+        {
+            for (int k = 0; k < HASHED_ORDERS; k++)
+                hashed[k] = newCounters(1 << bits);
+
+            Arrays.fill(weights, 1 << 14);
+
+            apm = new int[APM_BUCKETS << (8 + apmBits)];
+            apmShift = 8 - apmBits;
+
+            for (int i = 0; i < apm.length; i++)
+                apm[i] = SQUASH[(i % APM_BUCKETS * 2 + 1) * 4096 / (2 * APM_BUCKETS)] * 16;
+
+            shift = 32 - bits + 4;
+            inputs[INPUTS - 1] = 256;
+            computeBases();
+        }
+
+        int predict()
+        {
+            slots[0] = c0;
+            slots[1] = (history & 0xFF) << 8 | c0;
+            inputs[0] = STRETCH[order0[slots[0]] >>> 20];
+            inputs[1] = STRETCH[order1[slots[1]] >>> 20];
+
+            for (int k = 0; k < HASHED_ORDERS; k++)
+            {
+                slots[k + 2] = bases[k] + nibble;
+                inputs[k + 2] = STRETCH[hashed[k][slots[k + 2]] >>> 20];
+            }
+
+            long dot = 0;
+            for (int i = 0, w = c0 * INPUTS; i < INPUTS; i++)
+                dot += (long) inputs[i] * weights[w + i];
+
+            mixed = SQUASH[(int) Math.max(-2047, Math.min(2047, dot >> 16)) + 2048];
+
+            int s = (STRETCH[mixed] + 2048) * (APM_BUCKETS - 1);
+            int weight = s & 0xFFF;
+            int context = ((history & 0xFF) >>> apmShift << 8 | c0) * APM_BUCKETS + (s >> 12);
+            apmIndex = context + (weight >> 11);
+
+            int refined = (int) (((long) apm[context] * (4096 - weight)
+                    + (long) apm[context + 1] * weight) >> 16);
+            pr = Math.max(1, Math.min(4095, (mixed + 3 * refined) >> 2));
+
+            return (4096 - pr) << 4;
+        }
+
+        void update(int bit)
+        {
+            train(order0, slots[0], bit);
+            train(order1, slots[1], bit);
+
+            for (int k = 0; k < HASHED_ORDERS; k++)
+                train(hashed[k], slots[k + 2], bit);
+
+            int error = ((bit << 12) - mixed) * 7;
+            for (int i = 0, w = c0 * INPUTS; i < INPUTS; i++)
+                weights[w + i] += ((inputs[i] * error * 2 >> 16) + 1) >> 1;
+
+            int target = (bit << 16) + (bit << 7) - bit - bit;
+            apm[apmIndex] += (target - apm[apmIndex]) >> 7;
+
+            c0 = (c0 << 1) | bit;
+            nibble = (nibble << 1) | bit;
+
+            if (nibble >= 16)
+            {
+                nibble = 1;
+
+                if (c0 >= 256)
+                {
+                    history = (history << 8) | (c0 & 0xFF);
+                    c0 = 1;
+
+                    for (int k = 0; k < HASHED_ORDERS; k++)
+                        hashes[k] = ((history & MASKS[k]) + k + 1) * PRIMES[k];
+                }
+
+                computeBases();
+            }
+        }
+
+        private void computeBases()
+        {
+            for (int k = 0; k < HASHED_ORDERS; k++)
+                bases[k] = ((hashes[k] ^ c0 * 0x9E3779B1) >>> shift) << 4;
+        }
+
+        private static void train(int[] counters, int i, int bit)
+        {
+            int e = counters[i];
+            int n = e & 1023;
+
+            if (n < LIMIT)
+                counters[i]++;
+
+            counters[i] += (((bit << 22) - (e >>> 10)) >> 3) * RECIPROCALS[n] & 0xFFFFFC00;
+        }
+
+        private static int[] newCounters(int size)
+        {
+            int[] counters = new int[size];
+            Arrays.fill(counters, 1 << 31);
+
+            return counters;
+        }
+    }
+}
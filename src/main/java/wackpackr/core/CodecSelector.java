@@ -0,0 +1,279 @@
+package wackpackr.core;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * Picks the best of a given set of compressors (or chains of them, see {@link CompressorChain}) for
+ * a given input, without compressing the whole input with each of them.
+ *
+ * <p>Instead, a few small samples are taken at even intervals through the input, and each candidate
+ * compresses all of them. The total compressed size of the samples estimates the compression ratio
+ * the candidate would achieve on the whole input, and the time taken estimates its speed. For inputs
+ * no larger than the samples would be in total, the whole input is used as the only sample, so the
+ * estimates are exact.</p>
+ *
+ * <p>The candidates are then scored by a weighted sum of their size and time, each relative to the
+ * best size and best time among the candidates, and the lowest score wins. The speed weight given
+ * at construction sets the objective: 0 picks purely by ratio, 1 purely by speed, and anything in
+ * between trades one for the other. In case of a tie, the candidate given first wins.</p>
+ *
+ * <p>The default samples take up at most 64 kB, so selecting costs roughly as much as compressing
+ * that much with each candidate, on top of the actual compression of the whole input. When the
+ * whole input is the sample, {@link #compress(byte[])} hands back the output of the winner as it
+ * is, so that the input is compressed once by each candidate and no more.</p>
+ *
+ * @author Juho Juurinen
+ */
+public class CodecSelector
+{
+    /**
+     * Default length of each sample in bytes.
+     */
+    public static final int DEFAULT_SAMPLE_SIZE = 16 * 1024;
+
+    /**
+     * Default number of samples.
+     */
+    public static final int DEFAULT_SAMPLE_COUNT = 4;
+
+    private final double speedWeight;
+    private final int sampleSize, sampleCount;
+    private final LongSupplier clock;
+    private final Compressor[] candidates;
+
+    /**
+     * Constructs a new selector with the default samples.
+     *
+     * @param speedWeight weight of speed relative to ratio, between 0 and 1
+     * @param candidates compressors to pick from
+     * @throws IllegalArgumentException if weight is out of range, or there are no candidates, or
+     *         any of them is null
+     */
+    public CodecSelector(double speedWeight, Compressor... candidates)
+    {
+        this(speedWeight, DEFAULT_SAMPLE_SIZE, DEFAULT_SAMPLE_COUNT, candidates);
+    }
+
+    /**
+     * Constructs a new selector that takes the given number of samples of the given length.
+     *
+     * @param speedWeight weight of speed relative to ratio, between 0 and 1
+     * @param sampleSize length of each sample in bytes
+     * @param sampleCount number of samples
+     * @param candidates compressors to pick from
+     * @throws IllegalArgumentException if weight is out of range, sample size or count is not
+     *         positive, or there are no candidates, or any of them is null
+     */
+    public CodecSelector(double speedWeight, int sampleSize, int sampleCount,
+            Compressor... candidates)
+    {
+        this(speedWeight, sampleSize, sampleCount, System::nanoTime, candidates);
+    }
+
+    /**
+     * Constructs a new selector that takes the given number of samples of the given length, and
+     * times the candidates with the given clock.
+     *
+     * @param speedWeight weight of speed relative to ratio, between 0 and 1
+     * @param sampleSize length of each sample in bytes
+     * @param sampleCount number of samples
+     * @param clock source of the current time in nanoseconds, such as {@code System::nanoTime}
+     * @param candidates compressors to pick from
+     * @throws IllegalArgumentException if weight is out of range, sample size or count is not
+     *         positive, clock is null, or there are no candidates, or any of them is null
+     */
+    public CodecSelector(double speedWeight, int sampleSize, int sampleCount, LongSupplier clock,
+            Compressor... candidates)
+    {
+        if (!(speedWeight >= 0 && speedWeight <= 1))
+            throw new IllegalArgumentException("Speed weight not between 0 and 1: " + speedWeight);
+
+        if (sampleSize < 1 || sampleCount < 1)
+            throw new IllegalArgumentException("Samples must have positive size and count");
+
+        if (clock == null)
+            throw new IllegalArgumentException("Cannot time without a clock");
+
+        if (candidates == null || candidates.length < 1)
+            throw new IllegalArgumentException("Nothing to select from");
+
+        for (Compressor c : candidates)
+            if (c == null)
+                throw new IllegalArgumentException("Cannot select a null compressor");
+
+        this.speedWeight = speedWeight;
+        this.sampleSize = sampleSize;
+        this.sampleCount = sampleCount;
+        this.clock = clock;
+        this.candidates = candidates.clone();
+    }
+
+    /**
+     * Returns the candidate that best meets the objective for the given input.
+     *
+     * @param bytes input to select a compressor for
+     * @return the best candidate
+     * @throws IOException if any of the candidates fails to compress a sample
+     */
+    public Compressor select(byte[] bytes) throws IOException
+    {
+        if (candidates.length == 1)
+            return candidates[0];
+
+        return trial(bytes).getCompressor();
+    }
+
+    /**
+     * Compresses the given input with the candidate that best meets the objective for it, and
+     * returns that candidate along with its output. If the whole input was used as the sample, the
+     * output of the trial is returned as is, instead of compressing the input once more.
+     *
+     * @param bytes input to compress
+     * @return the best candidate, its output, and the time it took
+     * @throws IOException if any of the candidates fails to compress a sample, or the best one
+     *         fails to compress the input
+     */
+    public Selection compress(byte[] bytes) throws IOException
+    {
+        Selection selection = (candidates.length == 1)
+                ? new Selection(candidates[0], null, 0)
+                : trial(bytes);
+
+        if (selection.output != null)
+            return selection;
+
+        long start = clock.getAsLong();
+        byte[] output = selection.compressor.compress(bytes);
+
+        return new Selection(selection.compressor, output, clock.getAsLong() - start);
+    }
+
+    /**
+     * Returns the candidates this selector picks from.
+     *
+     * @return candidate compressors
+     */
+    public Compressor[] getCandidates()
+    {
+        return candidates.clone();
+    }
+
+
+    /**
+     * Compressor picked by a selector, along with its output and the time it took to produce it.
+     */
+    public static class Selection
+    {
+        private final Compressor compressor;
+        private final byte[] output;
+        private final long time;
+
+        private Selection(Compressor compressor, byte[] output, long time)
+        {
+            this.compressor = compressor;
+            this.output = output;
+            this.time = time;
+        }
+
+        /**
+         * Returns the compressor picked.
+         *
+         * @return the best candidate
+         */
+        public Compressor getCompressor()
+        {
+            return compressor;
+        }
+
+        /**
+         * Returns the input as compressed by the compressor picked.
+         *
+         * @return compressed input as byte array
+         */
+        public byte[] getOutput()
+        {
+            return output;
+        }
+
+        /**
+         * Returns the time it took to compress the input, as measured by the clock of the selector.
+         *
+         * @return compression time in nanoseconds
+         */
+        public long getTime()
+        {
+            return time;
+        }
+    }
+
+
+    /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
+
+
+    private Selection trial(byte[] bytes) throws IOException
+    {
+        byte[][] samples = takeSamples(bytes);
+        boolean whole = (samples[0] == bytes);
+        byte[][] outputs = new byte[candidates.length][];
+        long[] sizes = new long[candidates.length];
+        long[] times = new long[candidates.length];
+
+        for (int i = 0; i < candidates.length; i++)
+        {
+            if (speedWeight > 0 && !whole)
+                candidates[i].compress(samples[0]);     // warm-up, not timed
+
+            long start = clock.getAsLong();
+
+            for (byte[] sample : samples)
+            {
+                outputs[i] = candidates[i].compress(sample);
+                sizes[i] += outputs[i].length;
+            }
+
+            times[i] = clock.getAsLong() - start;
+        }
+
+        double minSize = Math.max(Arrays.stream(sizes).min().getAsLong(), 1);
+        double minTime = Math.max(Arrays.stream(times).min().getAsLong(), 1);
+        int best = 0;
+        double bestScore = Double.MAX_VALUE;
+
+        for (int i = 0; i < candidates.length; i++)
+        {
+            double score = (1 - speedWeight) * sizes[i] / minSize
+                    + speedWeight * times[i] / minTime;
+
+            if (score < bestScore)
+            {
+                best = i;
+                bestScore = score;
+            }
+        }
+
+        return whole
+                ? new Selection(candidates[best], outputs[best], times[best])
+                : new Selection(candidates[best], null, 0);
+    }
+
+    private byte[][] takeSamples(byte[] bytes)
+    {
+        if ((long) sampleSize * sampleCount >= bytes.length)
+            return new byte[][]{ bytes };
+
+        byte[][] samples = new byte[sampleCount][];
+        long step = (sampleCount > 1)
+                ? (bytes.length - sampleSize) / (sampleCount - 1)
+                : 0;
+
+        for (int i = 0; i < sampleCount; i++)
+        {
+            int start = (int) (i * step);
+            samples[i] = Arrays.copyOfRange(bytes, start, start + sampleSize);
+        }
+
+        return samples;
+    }
+}
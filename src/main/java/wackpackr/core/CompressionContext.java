@@ -0,0 +1,165 @@
+package wackpackr.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import wackpackr.io.BinaryIO;
+import wackpackr.io.BufferPool;
+
+/**
+ * Reusable holder of all the working memory needed in compressing with a certain {@link
+ * Compressor}: dictionaries, windows, code tables and such. Obtained from {@link
+ * Compressor#newCompressionContext()}.
+ *
+ * <p>Each call to {@link Compressor#compress(byte[])} and the like sets up its working memory from
+ * scratch, which is fine for large inputs, but dominates the running time when compressing lots of
+ * small ones. A context sets up the working memory once, and merely resets it (cheaply, in time
+ * proportional to how much of it was actually used) at the beginning of each call. The output is
+ * identical to that of the compressor itself.</p>
+ *
+ * <p>A context is not thread-safe: it should be used by one thread at a time, for example held
+ * per-thread, or pooled by the caller. Different contexts of the same compressor can be used
+ * concurrently.</p>
+ *
+ * <p>This base class holds no working memory of its own, and simply delegates to the compressor.
+ * Compressors that do have working memory worth reusing return a subclass instead, that overrides
+ * {@link #encode(ByteBuffer, BinaryIO)}.</p>
+ *
+ * @author Juho Juurinen
+ */
+public class CompressionContext
+{
+    private final Compressor compressor;
+
+    /**
+     * Constructs a new context for the given compressor.
+     *
+     * @param compressor compressor whose working memory this context holds
+     * @throws NullPointerException if compressor is null
+     */
+    public CompressionContext(Compressor compressor)
+    {
+        if (compressor == null)
+            throw new NullPointerException();
+
+        this.compressor = compressor;
+    }
+
+    /**
+     * Returns the compressor this context belongs to.
+     *
+     * @return compressor
+     */
+    public Compressor getCompressor()
+    {
+        return compressor;
+    }
+
+    /**
+     * Compresses the given data, as {@link Compressor#compress(byte[])} does.
+     *
+     * @param bytes data to compress as byte array
+     * @return compressed data as byte array
+     * @throws IOException if there's an error compressing the data
+     */
+    public byte[] compress(byte[] bytes) throws IOException
+    {
+        ByteBuffer buffer = compressPooled(bytes);
+
+        try
+        {
+            return Arrays.copyOf(buffer.array(), buffer.limit());
+        }
+        finally
+        {
+            BufferPool.release(buffer.array());
+        }
+    }
+
+    /**
+     * Compresses the given data into an array taken from {@link BufferPool}, and returns a buffer
+     * over it, with position zero and limit at the end of the compressed data. This saves copying
+     * the output out in exact size, when the caller only needs to look at it, or write it on.
+     *
+     * <p>The caller owns the array until handing it back with {@code
+     * BufferPool.release(buffer.array())}, and must not use the buffer after that.</p>
+     *
+     * @param bytes data to compress as byte array
+     * @return buffer over a pooled array holding the compressed data
+     * @throws IOException if there's an error compressing the data
+     */
+    public ByteBuffer compressPooled(byte[] bytes) throws IOException
+    {
+        byte[] buffer = BufferPool.acquire(compressor.maxCompressedSize(bytes.length));
+
+        try
+        {
+            int n = compress(bytes, 0, bytes.length, buffer, 0);
+
+            return ByteBuffer.wrap(buffer, 0, n);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            BufferPool.release(buffer);
+            throw e;
+        }
+    }
+
+    /**
+     * Compresses the given range of the source array into the destination array, as {@link
+     * Compressor#compress(byte[], int, int, byte[], int)} does.
+     *
+     * @param src array holding data to compress
+     * @param srcOffset index of the first byte to compress
+     * @param length number of bytes to compress
+     * @param dst array to write compressed data into
+     * @param dstOffset index at which to start writing
+     * @return number of bytes written
+     * @throws java.nio.BufferOverflowException if the destination array runs out of space
+     * @throws IOException if there's an error compressing the data
+     */
+    public int compress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset)
+            throws IOException
+    {
+        ByteBuffer out = ByteBuffer.wrap(dst, dstOffset, dst.length - dstOffset);
+        compress(ByteBuffer.wrap(src, srcOffset, length), out);
+
+        return out.position() - dstOffset;
+    }
+
+    /**
+     * Compresses the remaining bytes of the source buffer into the destination buffer, as {@link
+     * Compressor#compress(ByteBuffer, ByteBuffer)} does.
+     *
+     * @param src data to compress
+     * @param dst buffer to write compressed data into
+     * @throws java.nio.BufferOverflowException if the destination buffer runs out of space
+     * @throws IOException if there's an error compressing the data
+     */
+    public void compress(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        try (BinaryIO io = new BinaryIO(src, dst))
+        {
+            encode(src, io);
+        }
+
+        src.position(src.limit());
+    }
+
+    /**
+     * Resets the working memory, and compresses the input held by the given I/O wrapper into its
+     * output buffer. The source buffer is the same input, in case the data needs to be looked at
+     * before reading it through the wrapper; its position must not be moved.
+     *
+     * <p>The default implementation reads the whole input, hands it to the compressor, and writes
+     * the result.</p>
+     *
+     * @param src buffer holding the data to compress
+     * @param io I/O wrapper reading from the source buffer, and writing to the destination buffer
+     * @throws IOException if there's an error compressing the data
+     */
+    protected void encode(ByteBuffer src, BinaryIO io) throws IOException
+    {
+        io.writeBytes(compressor.compress(io.readBytes((int) (io.remaining() >> 3))));
+    }
+}
@@ -0,0 +1,496 @@
+package wackpackr.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import wackpackr.io.BinaryIO;
+
+/**
+ * Compressor that runs a sequence of other compressors as a pipeline, with each stage working on a
+ * thread of its own, so that for example a two-stage pipeline keeps two cores busy.
+ *
+ * <p>Unlike {@link CompressorChain}, which hands the whole output of each compressor over to the
+ * next, the pipeline cuts the input into blocks of fixed size. Each block flows through the stages
+ * independently, so that while the second stage compresses one block, the first stage is already
+ * compressing the next. The stages are connected by bounded queues of just a few blocks, so memory
+ * use stays constant however large the input, when compressing from one stream to another.
+ * Decompression works the same way, with the stages in reverse order.</p>
+ *
+ * <p>The price is that each block is compressed on its own, so the compressors cannot take
+ * advantage of anything learned from earlier blocks, and every block carries a header of its own.
+ * With blocks of the default size, this costs next to nothing in ratio.</p>
+ *
+ * <p>The stages run as tasks in an executor, which can be given at construction. By default, all
+ * pipelines share one pool of daemon threads, that grows as needed and lets idle threads go, so
+ * threads are reused from one call to the next.</p>
+ *
+ * <p>The pipeline format starts with a 32-bit identifier, and then has for each block its size
+ * after all stages as a varint (see {@link BinaryIO#writeVarInt(int)}), followed by the block
+ * itself. A zero size marks the end.</p>
+ *
+ * @author Juho Juurinen
+ */
+public class CompressionPipeline implements Compressor
+{
+    /**
+     * Default size of uncompressed blocks in bytes.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 18;
+
+    private static final long PIPELINE_TAG = 0x0A0A2018;
+    private static final int QUEUE_CAPACITY = 2;
+    private static final byte[] END = new byte[0];
+    private static final Executor SHARED_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "pipeline");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Executor executor;
+    private final Compressor[] stages;
+    private final int blockSize;
+
+    /**
+     * Constructs a new pipeline of the given compressors, in the order they are to compress in,
+     * with blocks of the default size.
+     *
+     * @param stages compressors to run as pipeline stages
+     * @throws IllegalArgumentException if there are no stages, or any of them is null
+     */
+    public CompressionPipeline(Compressor... stages)
+    {
+        this(DEFAULT_BLOCK_SIZE, stages);
+    }
+
+    /**
+     * Constructs a new pipeline of the given compressors, in the order they are to compress in,
+     * with blocks of the given size.
+     *
+     * @param blockSize size of uncompressed blocks in bytes
+     * @param stages compressors to run as pipeline stages
+     * @throws IllegalArgumentException if block size is not positive, or there are no stages, or
+     *         any of them is null
+     */
+    public CompressionPipeline(int blockSize, Compressor... stages)
+    {
+        this(SHARED_EXECUTOR, blockSize, stages);
+    }
+
+    /**
+     * Constructs a new pipeline of the given compressors, in the order they are to compress in,
+     * with blocks of the given size, that runs its stages in the given executor.
+     *
+     * <p>The stages wait on each other, so the executor must be able to run one task per stage,
+     * plus one for reading the input, all at the same time. A fixed pool with fewer threads than
+     * that, shared by concurrent calls, would leave the pipeline stuck.</p>
+     *
+     * @param executor executor to run the stages in
+     * @param blockSize size of uncompressed blocks in bytes
+     * @param stages compressors to run as pipeline stages
+     * @throws NullPointerException if executor is null
+     * @throws IllegalArgumentException if block size is not positive, or there are no stages, or
+     *         any of them is null
+     */
+    public CompressionPipeline(Executor executor, int blockSize, Compressor... stages)
+    {
+        if (executor == null)
+            throw new NullPointerException();
+
+        if (blockSize < 1)
+            throw new IllegalArgumentException("Invalid block size: " + blockSize);
+
+        if (stages == null || stages.length < 1)
+            throw new IllegalArgumentException("No stages in pipeline");
+
+        for (Compressor c : stages)
+            if (c == null)
+                throw new IllegalArgumentException("Cannot run a null compressor in pipeline");
+
+        this.executor = executor;
+        this.blockSize = blockSize;
+        this.stages = stages.clone();
+    }
+
+    /**
+     * Compresses everything read from the given input stream, and writes the result to the given
+     * output stream. Neither stream is closed.
+     *
+     * @param in stream of data to compress
+     * @param out stream to write compressed data into
+     * @throws IOException if there's an error reading or writing the streams, or in any stage
+     */
+    public void compress(InputStream in, OutputStream out) throws IOException
+    {
+        out.write(new BinaryIO().write32Bits(PIPELINE_TAG).getBytesOut());
+        run(in, out, true);
+    }
+
+    /**
+     * Decompresses everything read from the given input stream, and writes the result to the given
+     * output stream. Neither stream is closed.
+     *
+     * @param in stream of data to decompress
+     * @param out stream to write decompressed data into
+     * @throws IllegalArgumentException if input does not have the correct identifier, or any block
+     *         is larger than a block of this pipeline can be compressed into
+     * @throws EOFException if input ends before the end marker
+     * @throws IOException if there's an error reading or writing the streams, or in any stage
+     */
+    public void decompress(InputStream in, OutputStream out) throws IOException
+    {
+        byte[] tag = new byte[4];
+        readFully(in, tag);
+
+        if (new BinaryIO(tag).read32Bits() != PIPELINE_TAG)
+            throw new IllegalArgumentException("Not a pipeline compressed stream");
+
+        run(in, out, false);
+    }
+
+    /**
+     * Compresses the given data, as {@link #compress(InputStream, OutputStream)} does.
+     *
+     * @param bytes data to compress as byte array
+     * @return compressed data as byte array
+     * @throws IOException if there's an error in any stage
+     */
+    @Override
+    public byte[] compress(byte[] bytes) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        compress(new ByteArrayInputStream(bytes), out);
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Decompresses the given data, as {@link #decompress(InputStream, OutputStream)} does.
+     *
+     * @param bytes data to decompress as byte array
+     * @return decompressed data as byte array
+     * @throws IllegalArgumentException if data does not have the correct identifier
+     * @throws IOException if there's an error in any stage
+     */
+    @Override
+    public byte[] decompress(byte[] bytes) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        decompress(new ByteArrayInputStream(bytes), out);
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the worst-case size of pipeline compressed data: the worst case of all stages for
+     * each block, plus the size of each block, the identifier and the end marker.
+     *
+     * @param length length of uncompressed data in bytes
+     * @return worst-case length of compressed data in bytes
+     * @throws IllegalArgumentException if length is negative, or the bound does not fit in an int
+     */
+    @Override
+    public int maxCompressedSize(int length)
+    {
+        if (length < 0)
+            throw new IllegalArgumentException("Invalid input length: " + length);
+
+        long size = 4 + 1
+                + (long) (length / blockSize) * (maxBlockSize(blockSize) + 5)
+                + ((length % blockSize > 0) ? maxBlockSize(length % blockSize) + 5 : 0);
+
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid input length: " + length);
+
+        return (int) size;
+    }
+
+    /**
+     * Returns the compressors in the pipeline, in the order they compress in.
+     *
+     * @return pipeline stages
+     */
+    public Compressor[] getStages()
+    {
+        return stages.clone();
+    }
+
+    @Override
+    public String getName()
+    {
+        return CompressorChain.joinNames(" | ", stages);
+    }
+
+
+    /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
+
+
+    private interface Step
+    {
+        byte[] apply(byte[] bytes) throws IOException;
+    }
+
+    private void run(InputStream in, OutputStream out, boolean compress) throws IOException
+    {
+        int n = stages.length;
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Tasks tasks = new Tasks(executor);
+
+        BlockingQueue<byte[]> first = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        BlockingQueue<byte[]> queue = first;
+
+        try
+        {
+            for (int i = 0; i < n; i++)
+            {
+                Step step = step(compress ? stages[i] : stages[n - 1 - i], compress);
+                BlockingQueue<byte[]> from = queue, to = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+                tasks.execute(() -> transfer(from, to, step, failure));
+                queue = to;
+            }
+
+            tasks.execute(() -> read(in, first, compress, failure));
+
+            for (byte[] bs = take(queue); bs != END; bs = take(queue))
+                write(out, bs, compress);
+
+            if (failure.get() != null)
+                rethrow(failure.get());
+
+            if (compress)
+                out.write(0);
+        }
+        finally
+        {
+            tasks.cancel();
+        }
+    }
+
+    private Step step(Compressor c, boolean compress)
+    {
+        if (compress)
+        {
+            CompressionContext context = c.newCompressionContext();
+            return context::compress;
+        }
+
+        DecompressionContext context = c.newDecompressionContext();
+        return context::decompress;
+    }
+
+    private void read(InputStream in, BlockingQueue<byte[]> to, boolean compress,
+            AtomicReference<Throwable> failure)
+    {
+        try
+        {
+            for (byte[] bs = readBlock(in, compress); bs != null; bs = readBlock(in, compress))
+                to.put(bs);
+        }
+        catch (Throwable t)
+        {
+            fail(failure, t);
+        }
+
+        putEnd(to);
+    }
+
+    private void transfer(BlockingQueue<byte[]> from, BlockingQueue<byte[]> to, Step step,
+            AtomicReference<Throwable> failure)
+    {
+        try
+        {
+            for (byte[] bs = from.take(); bs != END; bs = from.take())
+                to.put(step.apply(bs));
+        }
+        catch (Throwable t)
+        {
+            fail(failure, t);
+        }
+
+        putEnd(to);
+    }
+
+    private byte[] readBlock(InputStream in, boolean compress) throws IOException
+    {
+        if (!compress)
+        {
+            int size = readVarInt(in);
+            if (size == 0)
+                return null;
+
+            if (size < 0 || size > maxBlockSize(blockSize))
+                throw new IllegalArgumentException("Invalid block size in pipeline stream");
+
+            byte[] bs = new byte[size];
+            readFully(in, bs);
+
+            return bs;
+        }
+
+        byte[] bs = new byte[blockSize];
+        int length = 0, k;
+
+        while (length < bs.length && (k = in.read(bs, length, bs.length - length)) >= 0)
+            length += k;
+
+        if (length == 0)
+            return null;
+
+        return (length == bs.length)
+                ? bs
+                : Arrays.copyOf(bs, length);
+    }
+
+    private void write(OutputStream out, byte[] bs, boolean compress) throws IOException
+    {
+        if (compress)
+            out.write(new BinaryIO().writeVarInt(bs.length).getBytesOut());
+
+        out.write(bs);
+    }
+
+    private long maxBlockSize(int length)
+    {
+        for (Compressor c : stages)
+            length = c.maxCompressedSize(length);
+
+        return length;
+    }
+
+    private static class Tasks
+    {
+        private final Executor executor;
+        private final Set<Thread> running = new HashSet<>();
+        private boolean cancelled = false;
+
+        Tasks(Executor executor)
+        {
+            this.executor = executor;
+        }
+
+        void execute(Runnable task)
+        {
+            executor.execute(() -> {
+                Thread t = Thread.currentThread();
+
+                synchronized (running)
+                {
+                    if (cancelled)
+                        return;
+
+                    running.add(t);
+                }
+
+                try
+                {
+                    task.run();
+                }
+                finally
+                {
+                    synchronized (running)
+                    {
+                        running.remove(t);
+                    }
+
+                    Thread.interrupted();
+                }
+            });
+        }
+
+        void cancel()
+        {
+            synchronized (running)
+            {
+                cancelled = true;
+                running.forEach(Thread::interrupt);
+            }
+        }
+    }
+
+    private static byte[] take(BlockingQueue<byte[]> queue) throws IOException
+    {
+        try
+        {
+            return queue.take();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for pipeline");
+        }
+    }
+
+    private static void fail(AtomicReference<Throwable> failure, Throwable t)
+    {
+        if (t instanceof InterruptedException)
+            Thread.currentThread().interrupt();
+
+        failure.compareAndSet(null, t);
+    }
+
+    private static void putEnd(BlockingQueue<byte[]> queue)
+    {
+        try
+        {
+            queue.put(END);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void rethrow(Throwable t) throws IOException
+    {
+        if (t instanceof IOException)
+            throw (IOException) t;
+        if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        if (t instanceof Error)
+            throw (Error) t;
+
+        throw new IOException("Pipeline stage failed", t);
+    }
+
+    private static int readVarInt(InputStream in) throws IOException
+    {
+        int value = 0;
+
+        for (int shift = 0; shift < 35; shift += 7)
+        {
+            int b = in.read();
+            if (b < 0)
+                throw new EOFException("Pipeline stream ended without end marker");
+
+            value |= (b & 0x7F) << shift;
+            if (b < 0x80)
+                return value;
+        }
+
+        throw new IllegalArgumentException("Invalid block size in pipeline stream");
+    }
+
+    private static void readFully(InputStream in, byte[] bs) throws IOException
+    {
+        for (int length = 0; length < bs.length; )
+        {
+            int k = in.read(bs, length, bs.length - length);
+            if (k < 0)
+                throw new EOFException("Pipeline stream ended unexpectedly");
+
+            length += k;
+        }
+    }
+}
@@ -1,6 +1,11 @@
 package wackpackr.core;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 public interface Compressor
 {
@@ -9,4 +14,215 @@ public interface Compressor
     byte[] compress(byte[] bytes) throws IOException;
 
     byte[] decompress(byte[] bytes) throws IOException;
+
+    /**
+     * Returns the largest possible size of compressed data, for an input of the given length.
+     * Destination buffers of this size never overflow, whatever the input.
+     *
+     * @param length length of uncompressed data in bytes
+     * @return worst-case length of compressed data in bytes
+     * @throws IllegalArgumentException if length is negative, or the bound does not fit in an int
+     */
+    int maxCompressedSize(int length);
+
+    /**
+     * Compresses the given range of the source array into the destination array, starting at the
+     * given offset, and returns the number of bytes written. The output is identical to what
+     * {@link #compress(byte[])} gives, but nothing is allocated for it: reserving {@link
+     * #maxCompressedSize(int)} bytes of space in the destination is enough.
+     *
+     * @param src array holding data to compress
+     * @param srcOffset index of the first byte to compress
+     * @param length number of bytes to compress
+     * @param dst array to write compressed data into
+     * @param dstOffset index at which to start writing
+     * @return number of bytes written
+     * @throws java.nio.BufferOverflowException if the destination array runs out of space
+     * @throws IOException if there's an error compressing the data
+     */
+    default int compress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset)
+            throws IOException
+    {
+        ByteBuffer out = ByteBuffer.wrap(dst, dstOffset, dst.length - dstOffset);
+        compress(ByteBuffer.wrap(src, srcOffset, length), out);
+
+        return out.position() - dstOffset;
+    }
+
+    /**
+     * Decompresses the given range of the source array into the destination array, starting at the
+     * given offset, and returns the number of bytes written. Works like {@link #compress(byte[],
+     * int, int, byte[], int)}, only in the other direction.
+     *
+     * @param src array holding data to decompress
+     * @param srcOffset index of the first byte to decompress
+     * @param length number of bytes to decompress
+     * @param dst array to write decompressed data into
+     * @param dstOffset index at which to start writing
+     * @return number of bytes written
+     * @throws java.nio.BufferOverflowException if the destination array runs out of space
+     * @throws IOException if there's an error decompressing the data
+     */
+    default int decompress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset)
+            throws IOException
+    {
+        ByteBuffer out = ByteBuffer.wrap(dst, dstOffset, dst.length - dstOffset);
+        decompress(ByteBuffer.wrap(src, srcOffset, length), out);
+
+        return out.position() - dstOffset;
+    }
+
+    /**
+     * Returns a new, reusable context for compressing with this compressor (see {@link
+     * CompressionContext}). The default implementation holds no working memory of its own.
+     *
+     * @return new compression context
+     */
+    default CompressionContext newCompressionContext()
+    {
+        return new CompressionContext(this);
+    }
+
+    /**
+     * Returns a new, reusable context for decompressing with this compressor (see {@link
+     * DecompressionContext}). The default implementation holds no working memory of its own.
+     *
+     * @return new decompression context
+     */
+    default DecompressionContext newDecompressionContext()
+    {
+        return new DecompressionContext(this);
+    }
+
+    /**
+     * Compresses the remaining bytes of the source buffer into the destination buffer. The source
+     * buffer is consumed entirely (its position is moved to its limit), and the destination buffer
+     * position is moved past the compressed data. Either buffer may be heap or direct.
+     *
+     * <p>The default implementation goes through {@link #compress(byte[])}, copying at both ends.
+     * Implementations that can read and write the buffers directly should override it.</p>
+     *
+     * @param src data to compress
+     * @param dst buffer to write compressed data into
+     * @throws java.nio.BufferOverflowException if the destination buffer runs out of space
+     * @throws IOException if there's an error compressing the data
+     */
+    default void compress(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        byte[] bs = new byte[src.remaining()];
+        src.get(bs);
+
+        dst.put(compress(bs));
+    }
+
+    /**
+     * Decompresses the remaining bytes of the source buffer into the destination buffer. Works
+     * like {@link #compress(ByteBuffer, ByteBuffer)}, only in the other direction.
+     *
+     * @param src data to decompress
+     * @param dst buffer to write decompressed data into
+     * @throws java.nio.BufferOverflowException if the destination buffer runs out of space
+     * @throws IOException if there's an error decompressing the data
+     */
+    default void decompress(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        byte[] bs = new byte[src.remaining()];
+        src.get(bs);
+
+        dst.put(decompress(bs));
+    }
+
+    /**
+     * Compresses given file in the common fork-join pool, without blocking the calling thread.
+     * Works like {@link #compressAsync(byte[], Executor)}.
+     *
+     * @param bytes file to compress as byte array
+     * @return future that completes with the compressed file
+     * @throws NullPointerException if bytes is null
+     */
+    default CompletableFuture<byte[]> compressAsync(byte[] bytes)
+    {
+        return compressAsync(bytes, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Compresses given file in the given executor, without blocking the calling thread. The output
+     * is identical to that of {@link #compress(byte[])}, and any exception it throws completes the
+     * future exceptionally instead.
+     *
+     * @param bytes file to compress as byte array
+     * @param executor executor to compress in
+     * @return future that completes with the compressed file
+     * @throws NullPointerException if bytes or executor is null
+     * @throws java.util.concurrent.RejectedExecutionException if the executor does not accept the
+     *         task
+     */
+    default CompletableFuture<byte[]> compressAsync(byte[] bytes, Executor executor)
+    {
+        return AsyncCompression.submit(this::compress, bytes, executor);
+    }
+
+    /**
+     * Decompresses given file in the common fork-join pool, without blocking the calling thread.
+     * Works like {@link #decompressAsync(byte[], Executor)}.
+     *
+     * @param bytes file to decompress as byte array
+     * @return future that completes with the decompressed file
+     * @throws NullPointerException if bytes is null
+     */
+    default CompletableFuture<byte[]> decompressAsync(byte[] bytes)
+    {
+        return decompressAsync(bytes, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Decompresses given file in the given executor, without blocking the calling thread. Works
+     * like {@link #compressAsync(byte[], Executor)}, only in the other direction.
+     *
+     * @param bytes file to decompress as byte array
+     * @param executor executor to decompress in
+     * @return future that completes with the decompressed file
+     * @throws NullPointerException if bytes or executor is null
+     * @throws java.util.concurrent.RejectedExecutionException if the executor does not accept the
+     *         task
+     */
+    default CompletableFuture<byte[]> decompressAsync(byte[] bytes, Executor executor)
+    {
+        return AsyncCompression.submit(this::decompress, bytes, executor);
+    }
+
+    /**
+     * Compresses each of the given files in the given executor, as tasks of their own, and
+     * completes once all of them are done. If any one of them fails, the whole batch completes
+     * exceptionally.
+     *
+     * @param files files to compress as byte arrays
+     * @param executor executor to compress in
+     * @return future that completes with the compressed files, in the order given
+     * @throws NullPointerException if files, any of them, or executor is null
+     * @throws java.util.concurrent.RejectedExecutionException if the executor does not accept the
+     *         tasks
+     */
+    default CompletableFuture<List<byte[]>> compressAllAsync(List<byte[]> files, Executor executor)
+    {
+        return AsyncCompression.submitAll(this::compress, files, executor);
+    }
+
+    /**
+     * Decompresses each of the given files in the given executor. Works like {@link
+     * #compressAllAsync(List, Executor)}, only in the other direction.
+     *
+     * @param files files to decompress as byte arrays
+     * @param executor executor to decompress in
+     * @return future that completes with the decompressed files, in the order given
+     * @throws NullPointerException if files, any of them, or executor is null
+     * @throws java.util.concurrent.RejectedExecutionException if the executor does not accept the
+     *         tasks
+     */
+    default CompletableFuture<List<byte[]>> decompressAllAsync(
+            List<byte[]> files,
+            Executor executor)
+    {
+        return AsyncCompression.submitAll(this::decompress, files, executor);
+    }
 }
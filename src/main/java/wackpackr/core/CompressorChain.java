@@ -0,0 +1,115 @@
+package wackpackr.core;
+
+import java.io.IOException;
+
+/**
+ * Compressor that runs a fixed sequence of other compressors one after another, each compressing
+ * the output of the previous one; and decompresses by running them in reverse order. Lets a
+ * pipeline of compressors be handled, selected and compared just like a single one.
+ *
+ * @author Juho Juurinen
+ */
+public class CompressorChain implements Compressor
+{
+    private final Compressor[] compressors;
+
+    /**
+     * Constructs a new chain of the given compressors, in the order they are to compress in.
+     *
+     * @param compressors compressors to chain
+     * @throws IllegalArgumentException if there are no compressors, or any of them is null
+     */
+    public CompressorChain(Compressor... compressors)
+    {
+        if (compressors == null || compressors.length < 1)
+            throw new IllegalArgumentException("Nothing to chain");
+
+        for (Compressor c : compressors)
+            if (c == null)
+                throw new IllegalArgumentException("Cannot chain a null compressor");
+
+        this.compressors = compressors.clone();
+    }
+
+    /**
+     * Compresses the given data with each compressor in turn.
+     *
+     * @param bytes data to compress as byte array
+     * @return compressed data as byte array
+     * @throws IOException if any of the compressors fails
+     */
+    @Override
+    public byte[] compress(byte[] bytes) throws IOException
+    {
+        for (Compressor c : compressors)
+            bytes = c.compress(bytes);
+
+        return bytes;
+    }
+
+    /**
+     * Decompresses the given data with each compressor in turn, starting from the last one.
+     *
+     * @param bytes data to decompress as byte array
+     * @return decompressed data as byte array
+     * @throws IOException if any of the compressors fails
+     */
+    @Override
+    public byte[] decompress(byte[] bytes) throws IOException
+    {
+        for (int i = compressors.length - 1; i >= 0; i--)
+            bytes = compressors[i].decompress(bytes);
+
+        return bytes;
+    }
+
+    /**
+     * Returns the worst-case size of the chain's output, that is, the bound of the last compressor
+     * applied to the bound of the one before, and so on.
+     *
+     * @param length length of uncompressed data in bytes
+     * @return worst-case length of compressed data in bytes
+     * @throws IllegalArgumentException if length is negative, or the bound does not fit in an int
+     */
+    @Override
+    public int maxCompressedSize(int length)
+    {
+        for (Compressor c : compressors)
+            length = c.maxCompressedSize(length);
+
+        return length;
+    }
+
+    /**
+     * Returns the compressors in the chain, in the order they compress in.
+     *
+     * @return chained compressors
+     */
+    public Compressor[] getCompressors()
+    {
+        return compressors.clone();
+    }
+
+    @Override
+    public String getName()
+    {
+        return joinNames(" > ", compressors);
+    }
+
+    /**
+     * Returns the names of the given compressors, in order, separated by the given string.
+     *
+     * @param separator string to put between the names
+     * @param compressors compressors to name
+     * @return joined names
+     */
+    static String joinNames(String separator, Compressor... compressors)
+    {
+        StringBuilder sb = new StringBuilder(compressors[0].getName());
+
+        for (int i = 1; i < compressors.length; i++)
+            sb.append(separator).append(compressors[i].getName());
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,114 @@
+package wackpackr.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import wackpackr.io.BinaryIO;
+
+/**
+ * Reusable holder of all the working memory needed in decompressing with a certain {@link
+ * Compressor}. Obtained from {@link Compressor#newDecompressionContext()}, and works just like
+ * {@link CompressionContext}, only in the other direction.
+ *
+ * @author Juho Juurinen
+ */
+public class DecompressionContext
+{
+    private final Compressor compressor;
+
+    /**
+     * Constructs a new context for the given compressor.
+     *
+     * @param compressor compressor whose working memory this context holds
+     * @throws NullPointerException if compressor is null
+     */
+    public DecompressionContext(Compressor compressor)
+    {
+        if (compressor == null)
+            throw new NullPointerException();
+
+        this.compressor = compressor;
+    }
+
+    /**
+     * Returns the compressor this context belongs to.
+     *
+     * @return compressor
+     */
+    public Compressor getCompressor()
+    {
+        return compressor;
+    }
+
+    /**
+     * Decompresses the given data, as {@link Compressor#decompress(byte[])} does.
+     *
+     * @param bytes data to decompress as byte array
+     * @return decompressed data as byte array
+     * @throws IOException if there's an error decompressing the data
+     */
+    public byte[] decompress(byte[] bytes) throws IOException
+    {
+        try (BinaryIO io = new BinaryIO(bytes))
+        {
+            decode(io);
+
+            return io.getBytesOut();
+        }
+    }
+
+    /**
+     * Decompresses the given range of the source array into the destination array, as {@link
+     * Compressor#decompress(byte[], int, int, byte[], int)} does.
+     *
+     * @param src array holding data to decompress
+     * @param srcOffset index of the first byte to decompress
+     * @param length number of bytes to decompress
+     * @param dst array to write decompressed data into
+     * @param dstOffset index at which to start writing
+     * @return number of bytes written
+     * @throws java.nio.BufferOverflowException if the destination array runs out of space
+     * @throws IOException if there's an error decompressing the data
+     */
+    public int decompress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset)
+            throws IOException
+    {
+        ByteBuffer out = ByteBuffer.wrap(dst, dstOffset, dst.length - dstOffset);
+        decompress(ByteBuffer.wrap(src, srcOffset, length), out);
+
+        return out.position() - dstOffset;
+    }
+
+    /**
+     * Decompresses the remaining bytes of the source buffer into the destination buffer, as {@link
+     * Compressor#decompress(ByteBuffer, ByteBuffer)} does.
+     *
+     * @param src data to decompress
+     * @param dst buffer to write decompressed data into
+     * @throws java.nio.BufferOverflowException if the destination buffer runs out of space
+     * @throws IOException if there's an error decompressing the data
+     */
+    public void decompress(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        try (BinaryIO io = new BinaryIO(src, dst))
+        {
+            decode(io);
+        }
+
+        src.position(src.limit());
+    }
+
+    /**
+     * Resets the working memory, and decompresses the input held by the given I/O wrapper into its
+     * output buffer.
+     *
+     * <p>The default implementation reads the whole input, hands it to the compressor, and writes
+     * the result.</p>
+     *
+     * @param io I/O wrapper reading from the source buffer, and writing to the destination buffer
+     * @throws IOException if there's an error decompressing the data
+     */
+    protected void decode(BinaryIO io) throws IOException
+    {
+        io.writeBytes(compressor.decompress(io.readBytes((int) (io.remaining() >> 3))));
+    }
+}
@@ -0,0 +1,341 @@
+package wackpackr.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import wackpackr.io.BinaryIO;
+
+/**
+ * Reversible pre-filter for image and numeric data, meant to be put in front of the actual
+ * compressors (see {@link CompressorChain}). Does not compress anything by itself: the output is
+ * exactly as long as the input, plus a few bytes of header.
+ *
+ * <p>In raw pixel data and sampled signals, each byte tends to be close to its neighbours, which
+ * none of the compressors take advantage of, since they only look for exact repetition. The filter
+ * replaces each byte with its difference from a prediction based on its neighbours (see {@link
+ * DeltaPredictor}). The differences cluster around zero, which both the entropy coders and the
+ * dictionary coders handle much better than the original bytes.</p>
+ *
+ * <p>The stride is the distance to the "left" neighbour: 1 for plain bytes, 3 for 24-bit RGB
+ * pixels, 2 for 16-bit samples, and so on. The predictors other than {@link DeltaPredictor#LEFT}
+ * also need the row length, that is, the distance to the neighbour "up". Rows are counted from the
+ * start of the input, and bytes with no neighbour in some direction have zero there.</p>
+ *
+ * <p>Without a given stride, the filter picks one for each input by trying all strides up to
+ * {@value #MAX_STRIDE} on a sample, and keeping the one whose differences have the lowest entropy
+ * (see {@link EntropyEstimator}); or no filtering at all, if none of them helps.</p>
+ *
+ * @author Juho Juurinen
+ */
+public class DeltaFilter implements Compressor
+{
+    /**
+     * Largest stride tried in detecting the stride.
+     */
+    public static final int MAX_STRIDE = 8;
+
+    private static final long DELTA_TAG = 0x0DE12018;
+    private static final long MAX_OVERHEAD = 4 + 1 + 5 + 5;
+    private static final int SAMPLE_SIZE = 16 * 1024;
+    private static final int SAMPLE_COUNT = 4;
+    private final DeltaPredictor predictor;
+    private final int stride, rowLength;
+
+    /**
+     * Constructs a new filter that detects the stride of each input, and predicts each byte from
+     * the byte one stride back.
+     */
+    public DeltaFilter()
+    {
+        this.predictor = DeltaPredictor.LEFT;
+        this.stride = this.rowLength = 0;
+    }
+
+    /**
+     * Constructs a new filter that predicts each byte from the byte the given stride back.
+     *
+     * @param stride distance to the byte predicted from
+     * @throws IllegalArgumentException if stride is not positive
+     */
+    public DeltaFilter(int stride)
+    {
+        this(DeltaPredictor.LEFT, stride, 0);
+    }
+
+    /**
+     * Constructs a new filter that predicts each byte with the given predictor, from bytes the
+     * given stride and row length back.
+     *
+     * @param predictor predictor to use
+     * @param stride distance to the "left" neighbour
+     * @param rowLength distance to the "up" neighbour; ignored by {@link DeltaPredictor#LEFT}
+     * @throws IllegalArgumentException if stride is not positive, or the predictor uses rows and
+     *         row length is less than stride
+     */
+    public DeltaFilter(DeltaPredictor predictor, int stride, int rowLength)
+    {
+        if (predictor == null)
+            throw new IllegalArgumentException("No predictor given");
+
+        if (stride < 1)
+            throw new IllegalArgumentException("Invalid stride: " + stride);
+
+        if (predictor.usesRows() && rowLength < stride)
+            throw new IllegalArgumentException("Invalid row length: " + rowLength);
+
+        this.predictor = predictor;
+        this.stride = stride;
+        this.rowLength = predictor.usesRows() ? rowLength : 0;
+    }
+
+    /**
+     * Returns the stride with which byte delta coding best flattens the given data, judging by
+     * evenly spaced samples, or 0 if none of the strides up to {@value #MAX_STRIDE} lowers its
+     * entropy. The position of the buffer is not moved.
+     *
+     * @param bytes data to filter
+     * @return best stride, or 0 for no filtering
+     */
+    public static int detectStride(ByteBuffer bytes)
+    {
+        int length = bytes.remaining();
+        if (length == 0)
+            return 0;
+
+        int sampleSize = Math.min(length, SAMPLE_SIZE);
+        long step = (length > sampleSize * SAMPLE_COUNT)
+                ? (length - sampleSize) / (SAMPLE_COUNT - 1)
+                : sampleSize;
+
+        long[][] freqs = new long[MAX_STRIDE + 1][256];
+
+        for (long start = bytes.position(); start + sampleSize <= bytes.limit(); start += step)
+            for (int i = (int) start; i < start + sampleSize; i++)
+            {
+                int b = bytes.get(i);
+                freqs[0][b & 0xFF]++;
+
+                for (int s = 1; s <= MAX_STRIDE && i - s >= start; s++)
+                    freqs[s][(b - bytes.get(i - s)) & 0xFF]++;
+            }
+
+        int best = 0;
+        double lowest = EntropyEstimator.bitsPerByte(freqs[0]);
+
+        for (int s = 1; s <= MAX_STRIDE; s++)
+        {
+            double entropy = EntropyEstimator.bitsPerByte(freqs[s]);
+
+            if (entropy < lowest)
+            {
+                best = s;
+                lowest = entropy;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Filters given file.
+     *
+     * <p>Writes a 32-bit identifier, indicating the used filter, to the beginning of the output,
+     * followed by the predictor, the stride and the row length, and then the differences between
+     * each byte and its prediction. Stride 0 means the data is not filtered.</p>
+     *
+     * @param bytes file to filter as byte array
+     * @return filtered file as byte array
+     * @throws IOException if there's an error writing to the output stream
+     */
+    @Override
+    public byte[] compress(byte[] bytes) throws IOException
+    {
+        return newCompressionContext().compress(bytes);
+    }
+
+    /**
+     * Filters the remaining bytes of the given source buffer into the given destination buffer, in
+     * the exact same format as {@link #compress(byte[])}.
+     *
+     * @param src data to filter
+     * @param dst buffer to write filtered data into
+     * @throws java.nio.BufferOverflowException if the destination buffer runs out of space
+     * @throws IOException if there's an error writing to the output stream
+     */
+    @Override
+    public void compress(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        newCompressionContext().compress(src, dst);
+    }
+
+    /**
+     * Undoes the filtering of given file. The predictor, stride and row length are read from the
+     * file, so any filter can undo the filtering of any other.
+     *
+     * @param bytes filtered file as byte array
+     * @return original file as byte array
+     * @throws IllegalArgumentException if file does not have the correct identifier in its header,
+     *         or the filter parameters are invalid
+     * @throws IOException if there's an error writing to or reading from the I/O streams
+     */
+    @Override
+    public byte[] decompress(byte[] bytes) throws IOException
+    {
+        return newDecompressionContext().decompress(bytes);
+    }
+
+    /**
+     * Undoes the filtering of the remaining bytes of the given source buffer into the given
+     * destination buffer. Otherwise works as {@link #decompress(byte[])}.
+     *
+     * @param src filtered data
+     * @param dst buffer to write original data into
+     * @throws java.nio.BufferOverflowException if the destination buffer runs out of space
+     * @throws IllegalArgumentException if data does not have the correct identifier in its header
+     * @throws IOException if there's an error writing to or reading from the I/O streams
+     */
+    @Override
+    public void decompress(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        newDecompressionContext().decompress(src, dst);
+    }
+
+    /**
+     * Returns the size of filtered data, which is always the length of the input plus the header.
+     *
+     * @param length length of unfiltered data in bytes
+     * @return worst-case length of filtered data in bytes
+     * @throws IllegalArgumentException if length is negative, or the bound does not fit in an int
+     */
+    @Override
+    public int maxCompressedSize(int length)
+    {
+        long size = (long) length + MAX_OVERHEAD;
+
+        if (length < 0 || size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid input length: " + length);
+
+        return (int) size;
+    }
+
+    /**
+     * Returns a new compression context. Filtering needs no working memory, but the context writes
+     * straight into the destination buffer.
+     *
+     * @return new compression context
+     */
+    @Override
+    public CompressionContext newCompressionContext()
+    {
+        return new Encoder();
+    }
+
+    /**
+     * Returns a new decompression context. Filtering needs no working memory, but the context
+     * writes straight into the destination buffer.
+     *
+     * @return new decompression context
+     */
+    @Override
+    public DecompressionContext newDecompressionContext()
+    {
+        return new Decoder();
+    }
+
+    @Override
+    public String getName()
+    {
+        if (stride == 0)
+            return predictor.getName();
+
+        return predictor.getName() + " (stride " + stride
+                + (predictor.usesRows() ? ", row " + rowLength + ")" : ")");
+    }
+
+
+    /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
+
+
+    private class Encoder extends CompressionContext
+    {
+        Encoder()
+        {
+            super(DeltaFilter.this);
+        }
+
+        @Override
+        protected void encode(ByteBuffer src, BinaryIO io) throws IOException
+        {
+            int s = (stride > 0) ? stride : detectStride(src);
+
+            io
+                    .write32Bits(DELTA_TAG)
+                    .writeByte((byte) predictor.ordinal())
+                    .writeVarInt(s)
+                    .writeVarInt(rowLength);
+
+            int offset = src.position();
+            byte[] chunk = new byte[Math.min(src.remaining(), 8192)];
+
+            for (int i = 0; i < src.remaining(); i += chunk.length)
+            {
+                int length = Math.min(chunk.length, src.remaining() - i);
+
+                for (int k = 0; k < length; k++)
+                    chunk[k] = (byte) (src.get(offset + i + k)
+                            - predict(src, offset, i + k, predictor, s, rowLength));
+
+                io.writeBytes(chunk, 0, length);
+            }
+        }
+    }
+
+    private class Decoder extends DecompressionContext
+    {
+        Decoder()
+        {
+            super(DeltaFilter.this);
+        }
+
+        @Override
+        protected void decode(BinaryIO io) throws IOException
+        {
+            if (io.read32Bits() != DELTA_TAG)
+                throw new IllegalArgumentException("Not a delta filtered file");
+
+            int p = io.readByte();
+            int s = io.readVarInt();
+            int r = io.readVarInt();
+
+            if (p < 0 || p >= DeltaPredictor.values().length || s < 0 || r < 0
+                    || (s > 0 && DeltaPredictor.values()[p].usesRows() && r < s))
+                throw new IllegalArgumentException("Invalid filter parameters");
+
+            ByteBuffer bytes = ByteBuffer.wrap(io.readBytes((int) (io.remaining() >> 3)));
+
+            for (int i = 0; i < bytes.limit(); i++)
+                bytes.put(i, (byte) (bytes.get(i)
+                        + predict(bytes, 0, i, DeltaPredictor.values()[p], s, r)));
+
+            io.writeBytes(bytes.array());
+        }
+    }
+
+    private static int predict(ByteBuffer bytes, int offset, int i, DeltaPredictor predictor,
+            int stride, int rowLength)
+    {
+        if (stride == 0)
+            return 0;
+
+        int left = (i >= stride) ? bytes.get(offset + i - stride) & 0xFF : 0;
+
+        if (!predictor.usesRows())
+            return left;
+
+        int up = (i >= rowLength) ? bytes.get(offset + i - rowLength) & 0xFF : 0;
+        int upLeft = (i >= rowLength + stride)
+                ? bytes.get(offset + i - rowLength - stride) & 0xFF
+                : 0;
+
+        return predictor.predict(left, up, upLeft);
+    }
+}
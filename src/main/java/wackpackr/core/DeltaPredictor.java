@@ -0,0 +1,105 @@
+package wackpackr.core;
+
+/**
+ * Predictors understood by {@link DeltaFilter}, after those of the PNG image format. Each byte is
+ * predicted from its neighbours: the byte one stride back ("left", the same channel of the previous
+ * pixel), the byte one row back ("up") and the byte one row and one stride back ("up-left"), and
+ * the filter stores only the difference between the byte and its prediction.
+ *
+ * @author Juho Juurinen
+ */
+public enum DeltaPredictor
+{
+    /**
+     * Predicts the byte one stride back. With stride 1 this is plain byte delta coding, with stride
+     * 3 per-channel delta coding of 24-bit RGB pixels, and so on.
+     */
+    LEFT("Delta")
+    {
+        @Override
+        int predict(int left, int up, int upLeft)
+        {
+            return left;
+        }
+    },
+
+    /**
+     * Predicts the byte one row back.
+     */
+    UP("Up")
+    {
+        @Override
+        int predict(int left, int up, int upLeft)
+        {
+            return up;
+        }
+    },
+
+    /**
+     * Predicts the average of the bytes one stride back and one row back, rounded down.
+     */
+    AVERAGE("Average")
+    {
+        @Override
+        int predict(int left, int up, int upLeft)
+        {
+            return (left + up) >>> 1;
+        }
+    },
+
+    /**
+     * Predicts whichever of the three neighbours is closest to {@code left + up - upLeft}, that is,
+     * to a linear gradient through them.
+     */
+    PAETH("Paeth")
+    {
+        @Override
+        int predict(int left, int up, int upLeft)
+        {
+            int p = left + up - upLeft;
+            int pa = Math.abs(p - left), pb = Math.abs(p - up), pc = Math.abs(p - upLeft);
+
+            if (pa <= pb && pa <= pc)
+                return left;
+
+            return (pb <= pc) ? up : upLeft;
+        }
+    };
+
+    private final String name;
+
+    DeltaPredictor(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * Returns a human-readable name of the predictor.
+     *
+     * @return name of the predictor
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns the prediction for a byte with the given neighbours, each as an unsigned value.
+     *
+     * @param left byte one stride back
+     * @param up byte one row back
+     * @param upLeft byte one row and one stride back
+     * @return predicted byte as an unsigned value
+     */
+    abstract int predict(int left, int up, int upLeft);
+
+    /**
+     * Returns {@code true} if the predictor looks at the row above, and thus needs a row length.
+     *
+     * @return true if the predictor uses rows
+     */
+    boolean usesRows()
+    {
+        return this != LEFT;
+    }
+}
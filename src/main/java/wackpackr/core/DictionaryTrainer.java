@@ -0,0 +1,197 @@
+package wackpackr.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds {@link PresetDictionary} instances out of a corpus of sample messages.
+ *
+ * <p>The content part is put together from short segments of the samples, chosen greedily: each
+ * segment is scored by how many of the samples share the {@value #GRAM_LENGTH}-byte sequences it
+ * contains, the best one is taken, its sequences are marked as covered (so that repeating them
+ * scores nothing), and so on until the content is full or nothing worth taking is left. This way
+ * the content ends up holding what is common to many messages, such as field names and recurring
+ * values in JSON, and not what just happens to repeat within one of them. The segments taken
+ * first are put last, nearest to the data.</p>
+ *
+ * <p>The byte frequencies are simply counted over all of the samples, plus one for each byte value
+ * so that none is left without a code.</p>
+ *
+ * <p>The samples should be representative of the messages later compressed with the dictionary.
+ * As a rule of thumb, a hundred or more of them are needed for a useful dictionary.</p>
+ *
+ * @author Juho Juurinen
+ */
+public class DictionaryTrainer
+{
+    /**
+     * Length of the byte sequences that segments are scored by.
+     */
+    public static final int GRAM_LENGTH = 6;
+
+    /**
+     * Length of the segments that the content is put together from.
+     */
+    public static final int SEGMENT_LENGTH = 32;
+
+    private DictionaryTrainer() {}
+
+    /**
+     * Trains a dictionary of the largest possible size out of the given samples.
+     *
+     * @param id identifier to give the dictionary
+     * @param samples sample messages
+     * @return trained dictionary
+     * @throws IllegalArgumentException if id is negative, or there are no samples
+     */
+    public static PresetDictionary train(int id, List<byte[]> samples)
+    {
+        return train(id, PresetDictionary.MAX_CONTENT_SIZE, samples);
+    }
+
+    /**
+     * Trains a dictionary with content of at most the given size out of the given samples.
+     *
+     * @param id identifier to give the dictionary
+     * @param size maximum length of the content part
+     * @param samples sample messages
+     * @return trained dictionary
+     * @throws IllegalArgumentException if id is negative, size is out of range, or there are no
+     *         samples
+     */
+    public static PresetDictionary train(int id, int size, List<byte[]> samples)
+    {
+        if (size < 0 || size > PresetDictionary.MAX_CONTENT_SIZE)
+            throw new IllegalArgumentException("Invalid dictionary size: " + size);
+
+        if (samples.isEmpty())
+            throw new IllegalArgumentException("No samples to train with");
+
+        return new PresetDictionary(id, buildContent(size, samples), countFrequencies(samples));
+    }
+
+
+    /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
+
+
+    private static byte[] buildContent(int size, List<byte[]> samples)
+    {
+        int[][] grams = new int[samples.size()][];
+        int[] weights = countGrams(samples, grams);
+
+        List<byte[]> segments = new ArrayList<>();
+        int length = 0;
+
+        while (length < size)
+        {
+            int bestScore = 0, bestSample = -1, bestStart = 0;
+
+            for (int s = 0; s < grams.length; s++)
+            {
+                int[] gs = grams[s];
+                int window = SEGMENT_LENGTH - GRAM_LENGTH + 1;
+                int score = 0;
+
+                for (int i = 0; i < gs.length; i++)
+                {
+                    score += weights[gs[i]];
+                    if (i >= window)
+                        score -= weights[gs[i - window]];
+
+                    if (score > bestScore)
+                    {
+                        bestScore = score;
+                        bestSample = s;
+                        bestStart = Math.max(i - window + 1, 0);
+                    }
+                }
+            }
+
+            if (bestSample < 0)
+                break;
+
+            byte[] sample = samples.get(bestSample);
+            int end = Math.min(bestStart + SEGMENT_LENGTH, sample.length);
+            end = Math.min(end, bestStart + size - length);
+
+            byte[] segment = new byte[end - bestStart];
+            System.arraycopy(sample, bestStart, segment, 0, segment.length);
+            segments.add(segment);
+            length += segment.length;
+
+            for (int i = bestStart; i <= end - GRAM_LENGTH; i++)
+                weights[grams[bestSample][i]] = 0;
+        }
+
+        byte[] content = new byte[length];
+        for (byte[] segment : segments)
+        {
+            length -= segment.length;
+            System.arraycopy(segment, 0, content, length, segment.length);
+        }
+
+        return content;
+    }
+
+    private static int[] countGrams(List<byte[]> samples, int[][] grams)
+    {
+        Map<Long, Integer> ids = new HashMap<>();
+        List<Integer> counts = new ArrayList<>();
+
+        for (int s = 0; s < grams.length; s++)
+        {
+            byte[] sample = samples.get(s);
+            Set<Integer> seen = new HashSet<>();
+            grams[s] = new int[Math.max(sample.length - GRAM_LENGTH + 1, 0)];
+
+            for (int i = 0; i < grams[s].length; i++)
+            {
+                long key = 0;
+                for (int j = 0; j < GRAM_LENGTH; j++)
+                    key = key << 8 | (sample[i + j] & 0xFF);
+
+                Integer id = ids.get(key);
+                if (id == null)
+                {
+                    id = counts.size();
+                    ids.put(key, id);
+                    counts.add(0);
+                }
+
+                grams[s][i] = id;
+                if (seen.add(id))
+                    counts.set(id, counts.get(id) + 1);
+            }
+        }
+
+        int[] weights = new int[counts.size()];
+        for (int id = 0; id < weights.length; id++)
+            weights[id] = (counts.get(id) > 1)
+                    ? counts.get(id)
+                    : 0;
+
+        return weights;
+    }
+
+    private static long[] countFrequencies(List<byte[]> samples)
+    {
+        long[] freqs = new long[256];
+
+        for (byte[] sample : samples)
+        {
+            long[] fs = HuffTreeParser.countFrequencies(sample);
+
+            for (int i = 0; i < freqs.length; i++)
+                freqs[i] += fs[i];
+        }
+
+        for (int i = 0; i < freqs.length; i++)
+            freqs[i] = Math.min(freqs[i] + 1, Integer.MAX_VALUE);
+
+        return freqs;
+    }
+}
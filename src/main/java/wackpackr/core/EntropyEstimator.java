@@ -0,0 +1,118 @@
+package wackpackr.core;
+
+import java.nio.ByteBuffer;
+import wackpackr.io.BinaryIO;
+
+/**
+ * Helper class that tells, quickly and before any real work is done, whether data looks like it is
+ * not worth compressing at all: typically data that is compressed already, such as JPEG images or
+ * zip archives, or encrypted data.
+ *
+ * <p>The estimate is the order-0 entropy of the data, that is, the number of bits per byte needed
+ * when each byte is coded independently, as calculated from the byte frequencies (with the Miller-
+ * Madow correction for the bias of small samples). This is exactly what Huffman coding can achieve
+ * at best. Coders that look past single bytes can do better where there are repeated sequences,
+ * even of bytes that are random on their own, which the histogram cannot see; so the dictionary
+ * coders do not trust this estimate alone, but confirm it by compressing a sample (see {@link
+ * FormatHeader#encodeOrStore(BinaryIO, ByteBuffer, long, boolean, FormatHeader.Encoding)}).</p>
+ *
+ * <p>For large inputs, only a sample of evenly spaced chunks is counted, so that the estimate
+ * takes a fixed amount of time whatever the size of the input.</p>
+ *
+ * @author Juho Juurinen
+ */
+public class EntropyEstimator
+{
+    /**
+     * Entropy in bits per byte, at or above which data is considered incompressible.
+     */
+    public static final double MAX_ENTROPY = 7.9;
+
+    /**
+     * Smallest input length for which an estimate is attempted at all. Smaller inputs are never
+     * considered incompressible, since there is little to gain from storing them as-is.
+     */
+    public static final int MIN_LENGTH = 1024;
+
+    private static final int CHUNK_SIZE = 4096;
+    private static final int CHUNK_COUNT = 16;
+
+    private EntropyEstimator() {}
+
+    /**
+     * Returns the estimated order-0 entropy of data with the given byte frequencies.
+     *
+     * @param freqs number of appearances of each byte value, as counted by {@link
+     *        HuffTreeParser#countFrequencies(byte[])}
+     * @return estimated entropy in bits per byte, or 0 if there is no data
+     */
+    public static double bitsPerByte(long[] freqs)
+    {
+        long total = 0;
+        int symbols = 0;
+
+        for (long f : freqs)
+            if (f > 0)
+            {
+                total += f;
+                symbols++;
+            }
+
+        if (total == 0)
+            return 0;
+
+        double entropy = 0;
+        for (long f : freqs)
+            if (f > 0)
+                entropy -= f * Math.log((double) f / total);
+
+        return Math.min((entropy + (symbols - 1) / 2.0) / (total * Math.log(2)), 8);
+    }
+
+    /**
+     * Returns {@code true} if data with the given byte frequencies should be stored as-is rather
+     * than compressed.
+     *
+     * @param freqs number of appearances of each byte value
+     * @return true if data looks incompressible
+     */
+    public static boolean isIncompressible(long[] freqs)
+    {
+        long total = 0;
+        for (long f : freqs)
+            total += f;
+
+        return total >= MIN_LENGTH && bitsPerByte(freqs) >= MAX_ENTROPY;
+    }
+
+    /**
+     * Returns {@code true} if the remaining bytes of the given buffer should be stored as-is rather
+     * than compressed. Large buffers are sampled. The position of the buffer is not moved.
+     *
+     * @param bytes data to check
+     * @return true if data looks incompressible
+     */
+    public static boolean isIncompressible(ByteBuffer bytes)
+    {
+        int length = bytes.remaining();
+
+        if (length < MIN_LENGTH)
+            return false;
+
+        if (length <= CHUNK_SIZE * CHUNK_COUNT)
+            return isIncompressible(HuffTreeParser.countFrequencies(bytes));
+
+        long[] freqs = new long[256];
+        long step = (length - CHUNK_SIZE) / (CHUNK_COUNT - 1);
+
+        for (int c = 0; c < CHUNK_COUNT; c++)
+        {
+            int start = bytes.position() + (int) (c * step);
+
+            for (int i = start; i < start + CHUNK_SIZE; i++)
+                freqs[bytes.get(i) + 128]++;
+        }
+
+        return isIncompressible(freqs);
+    }
+}
@@ -0,0 +1,509 @@
+package wackpackr.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import wackpackr.io.BinaryIO;
+
+/**
+ * Compression and decompression with table-based asymmetric numeral systems (tANS), in the manner
+ * of Finite State Entropy. Fills the same role as {@link HuffCompressor}: each byte is coded by its
+ * order-0 probability.
+ *
+ * <p>The byte frequencies (see {@link HuffTreeParser#countFrequencies(ByteBuffer)}) are scaled to
+ * a power-of-two total, and each byte gets as many slots in a table of that size as its scaled
+ * frequency. The coder state is an index into the table, and each byte moves it to another slot,
+ * reading or writing a few bits on the way. Since the number of bits varies from one state to the
+ * next, bytes are effectively coded in fractions of bits, close to what an arithmetic coder
+ * achieves, while decoding is a table lookup and a bit read per byte, much like a table-driven
+ * Huffman decoder.</p>
+ *
+ * <p>The bytes are encoded from last to first, so that the decoder can go from first to last,
+ * reading the bits backwards from the end. The scaled frequencies are written before the coded
+ * data as varints, with runs of zeros collapsed.</p>
+ *
+ * <p>No byte is ever given the whole table, even when it is the only one in the data, because
+ * then every step would take zero bits, and nothing would tell a real run of a million bytes from
+ * a forged count in the header. Instead, at least one bit is read every so many steps, at most as
+ * many as there are slots in the table, and the decoder rejects a count of bytes that the coded
+ * bits cannot account for.</p>
+ *
+ * @author Juho Juurinen
+ */
+public class FSECompressor implements Compressor
+{
+    private static final long FSE_TAG = 0x0F5E2018;
+    private static final int MIN_TABLE_LOG = 5;
+    private static final int MAX_TABLE_LOG = 12;
+    private static final int MAX_TABLE_SIZE = 1 << MAX_TABLE_LOG;
+    private static final long MAX_OVERHEAD = 4;
+    private final boolean storesSize;
+
+    /**
+     * Constructs a new compressor that does not store the uncompressed size.
+     */
+    public FSECompressor()
+    {
+        this(false);
+    }
+
+    /**
+     * Constructs a new compressor that stores the uncompressed size in the header of compressed
+     * files, if so requested (see {@link FormatHeader}). Files with or without the size can be
+     * decompressed either way.
+     *
+     * @param storesSize whether to store the uncompressed size
+     */
+    public FSECompressor(boolean storesSize)
+    {
+        this.storesSize = storesSize;
+    }
+
+    /**
+     * Compresses given file using tANS coding.
+     *
+     * <p>Writes a 32-bit identifier, indicating the used compression technique, to the beginning
+     * of the compressed binary (followed by the uncompressed size, if so chosen at construction).
+     * Then follow the number of bytes coded, the size of the table and the scaled frequencies, and
+     * finally the coded data, which runs to the end of the file.</p>
+     *
+     * <p>If a sample of the data looks practically incompressible (see {@link EntropyEstimator}),
+     * or the coded data turns out no smaller than the original, the data is stored as-is after the
+     * identifier instead.</p>
+     *
+     * @param bytes file to compress as byte array
+     * @return compressed file as byte array
+     * @throws IOException if there's an error writing to the output stream
+     */
+    @Override
+    public byte[] compress(byte[] bytes) throws IOException
+    {
+        return newCompressionContext().compress(bytes);
+    }
+
+    /**
+     * Compresses the remaining bytes of the given source buffer into the given destination buffer,
+     * in the exact same format as {@link #compress(byte[])}.
+     *
+     * @param src data to compress
+     * @param dst buffer to write compressed data into
+     * @throws java.nio.BufferOverflowException if the destination buffer runs out of space
+     * @throws IOException if there's an error writing to the output stream
+     */
+    @Override
+    public void compress(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        newCompressionContext().compress(src, dst);
+    }
+
+    /**
+     * Decompresses given file using tANS decoding.
+     *
+     * @param bytes file to decompress as byte array
+     * @return decompressed file as byte array
+     * @throws IllegalArgumentException if file does not have the correct identifier in its header,
+     *         or the frequencies or the coded data are corrupt
+     * @throws IOException if there's an error writing to or reading from the I/O streams
+     */
+    @Override
+    public byte[] decompress(byte[] bytes) throws IOException
+    {
+        return newDecompressionContext().decompress(bytes);
+    }
+
+    /**
+     * Decompresses the remaining bytes of the given source buffer into the given destination
+     * buffer. Otherwise works as {@link #decompress(byte[])}.
+     *
+     * @param src data to decompress
+     * @param dst buffer to write decompressed data into
+     * @throws java.nio.BufferOverflowException if the destination buffer runs out of space
+     * @throws IllegalArgumentException if data does not have the correct identifier in its header
+     * @throws IOException if there's an error writing to or reading from the I/O streams
+     */
+    @Override
+    public void decompress(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        newDecompressionContext().decompress(src, dst);
+    }
+
+    /**
+     * Returns the worst-case size of tANS coded data: the data stored as-is, plus the header.
+     *
+     * @param length length of uncompressed data in bytes
+     * @return worst-case length of compressed data in bytes
+     * @throws IllegalArgumentException if length is negative, or the bound does not fit in an int
+     */
+    @Override
+    public int maxCompressedSize(int length)
+    {
+        long size = (long) length + MAX_OVERHEAD
+                + (storesSize ? FormatHeader.MAX_SIZE_BYTES : 0);
+
+        if (length < 0 || size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid input length: " + length);
+
+        return (int) size;
+    }
+
+    /**
+     * Returns a new compression context, that holds on to the coding tables and resets them for
+     * each input.
+     *
+     * @return new compression context
+     */
+    @Override
+    public CompressionContext newCompressionContext()
+    {
+        return new Encoder();
+    }
+
+    /**
+     * Returns a new decompression context, that holds on to the decoding table and resets it for
+     * each input.
+     *
+     * @return new decompression context
+     */
+    @Override
+    public DecompressionContext newDecompressionContext()
+    {
+        return new Decoder();
+    }
+
+    @Override
+    public String getName()
+    {
+        return "FSE";
+    }
+
+
+    /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
+
+
+    private class Encoder extends CompressionContext
+    {
+        private final int[] counts = new int[256];
+        private final int[] starts = new int[256];
+        private final int[] deltas = new int[256];
+        private final byte[] spread = new byte[MAX_TABLE_SIZE];
+        private final short[] states = new short[MAX_TABLE_SIZE];
+
+        Encoder()
+        {
+            super(FSECompressor.this);
+        }
+
+        @Override
+        protected void encode(ByteBuffer src, BinaryIO io) throws IOException
+        {
+            int n = src.remaining();
+
+            if (n > 0 && !EntropyEstimator.isIncompressible(src))
+            {
+                long[] freqs = HuffTreeParser.countFrequencies(src);
+                int log = normalize(freqs, n, counts);
+                BinaryIO table = new BinaryIO();
+
+                table.writeVarInt(n).writeVarInt(log);
+                writeCounts(counts, table);
+
+                byte[] coded = encode(src, log, n - table.getByteCountOut() - 1);
+
+                if (coded != null)
+                {
+                    FormatHeader.write(io, FSE_TAG, storesSize, null);
+                    io
+                            .writeBytes(table.getBytesOut())
+                            .writeBytes(coded);
+                    return;
+                }
+            }
+
+            FormatHeader.store(io, FSE_TAG, storesSize);
+        }
+
+        private byte[] encode(ByteBuffer src, int log, int capacity)
+        {
+            int size = 1 << log;
+            spread(counts, log, spread);
+
+            for (int s = 0, start = 0; s < 256; s++)
+            {
+                starts[s] = start;
+                start += counts[s];
+
+                int c = counts[s];
+                int maxBits = (c == 1) ? log : log - highBit(c - 1);
+                deltas[s] = (maxBits << 16) - (c << maxBits);
+            }
+
+            int[] next = new int[256];
+            for (int u = 0; u < size; u++)
+            {
+                int s = spread[u] & 0xFF;
+                states[starts[s] + next[s]++] = (short) (size + u);
+            }
+
+            BitWriter out = new BitWriter(capacity);
+            int x = size;
+
+            for (int i = src.limit() - 1; i >= src.position(); i--)
+            {
+                int s = src.get(i) & 0xFF;
+                int bits = (x + deltas[s]) >>> 16;
+
+                if (!out.write(x, bits))
+                    return null;
+
+                x = states[starts[s] + (x >>> bits) - counts[s]];
+            }
+
+            return out.finish(x - size, log);
+        }
+    }
+
+    private class Decoder extends DecompressionContext
+    {
+        private final int[] counts = new int[256];
+        private final byte[] spread = new byte[MAX_TABLE_SIZE];
+        private final byte[] bits = new byte[MAX_TABLE_SIZE];
+        private final int[] bases = new int[MAX_TABLE_SIZE];
+
+        Decoder()
+        {
+            super(FSECompressor.this);
+        }
+
+        @Override
+        protected void decode(BinaryIO io) throws IOException
+        {
+            FormatHeader header = FormatHeader.read(io, FSE_TAG, "Not a FSE compressed file", null);
+
+            if (header.isStored())
+            {
+                header.copyStored(io);
+                return;
+            }
+
+            int n = io.readVarInt();
+            int log = io.readVarInt();
+
+            if (log < MIN_TABLE_LOG || log > MAX_TABLE_LOG || n < 0)
+                throw new IllegalArgumentException("Corrupt FSE table");
+
+            if (header.getSize() >= 0 && n != header.getSize())
+                throw new IllegalArgumentException("Decompressed size does not match the header");
+
+            readCounts(counts, log, io);
+            spread(counts, log, spread);
+
+            int size = 1 << log;
+            int[] next = counts.clone();
+
+            for (int u = 0; u < size; u++)
+            {
+                int x = next[spread[u] & 0xFF]++;
+                bits[u] = (byte) (log - highBit(x));
+                bases[u] = (x << bits[u]) - size;
+            }
+
+            BitReader in = new BitReader(io.readBytes((int) (io.remaining() >> 3)));
+
+            if (n > (in.remaining() + 1L) * (size + 1))
+                throw new IllegalArgumentException("Corrupt FSE data");
+
+            int u = in.read(log);
+
+            for (int i = 0; i < n; i++)
+            {
+                io.writeByte(spread[u]);
+                u = bases[u] + in.read(bits[u]);
+            }
+
+            header.verify(io);
+        }
+    }
+
+    private static int normalize(long[] freqs, int n, int[] counts)
+    {
+        int symbols = 0;
+        for (long f : freqs)
+            if (f > 0)
+                symbols++;
+
+        int log = Math.max(highBit(n - 1) + 1, highBit(symbols - 1) + 2);
+        log = Math.max(MIN_TABLE_LOG, Math.min(MAX_TABLE_LOG, log));
+
+        int size = 1 << log, sum = 0, largest = 0;
+
+        for (int s = 0; s < 256; s++)
+        {
+            long f = freqs[(byte) s + 128];
+
+            counts[s] = (f == 0) ? 0 : (int) Math.max(1, (f * size + n / 2) / n);
+            sum += counts[s];
+
+            if (counts[s] > counts[largest])
+                largest = s;
+        }
+
+        counts[largest] += size - sum;
+
+        while (counts[largest] < 1)
+        {
+            int donor = 0;
+            for (int s = 0; s < 256; s++)
+                if (s != largest && counts[s] > counts[donor])
+                    donor = s;
+
+            counts[donor]--;
+            counts[largest]++;
+        }
+
+        if (counts[largest] == size)
+        {
+            counts[largest]--;
+            counts[(largest + 1) & 0xFF]++;
+        }
+
+        return log;
+    }
+
+    private static void spread(int[] counts, int log, byte[] spread)
+    {
+        int size = 1 << log, mask = size - 1;
+        int step = (size >>> 1) + (size >>> 3) + 3;
+
+        for (int s = 0, u = 0; s < 256; s++)
+            for (int k = 0; k < counts[s]; k++)
+            {
+                spread[u] = (byte) s;
+                u = (u + step) & mask;
+            }
+    }
+
+    private static void writeCounts(int[] counts, BinaryIO io) throws IOException
+    {
+        for (int s = 0; s < 256; s++)
+        {
+            io.writeVarInt(counts[s]);
+
+            if (counts[s] == 0)
+            {
+                int run = 0;
+                while (s + 1 < 256 && counts[s + 1] == 0)
+                {
+                    run++;
+                    s++;
+                }
+
+                io.writeVarInt(run);
+            }
+        }
+    }
+
+    private static void readCounts(int[] counts, int log, BinaryIO io) throws IOException
+    {
+        int sum = 0;
+
+        for (int s = 0; s < 256; s++)
+        {
+            counts[s] = io.readVarInt();
+            sum += counts[s];
+
+            if (counts[s] == 0)
+            {
+                int run = io.readVarInt();
+                if (run > 255 - s)
+                    throw new IllegalArgumentException("Corrupt FSE table");
+
+                for (; run > 0; run--)
+                    counts[++s] = 0;
+            }
+
+            if (sum > 1 << log)
+                throw new IllegalArgumentException("Corrupt FSE table");
+        }
+
+        if (sum != 1 << log)
+            throw new IllegalArgumentException("Corrupt FSE table");
+    }
+
+    private static int highBit(int i)
+    {
+        return 31 - Integer.numberOfLeadingZeros(i);
+    }
+
+    private static class BitWriter
+    {
+        private final byte[] out;
+        private int size;
+        private long buffer;
+        private int count;
+
+        BitWriter(int capacity)
+        {
+            this.out = new byte[Math.max(capacity, 0)];
+        }
+
+        boolean write(int value, int bits)
+        {
+            buffer |= (long) (value & ((1 << bits) - 1)) << count;
+            count += bits;
+
+            for (; count >= 8; count -= 8)
+            {
+                if (size == out.length)
+                    return false;
+
+                out[size++] = (byte) buffer;
+                buffer >>>= 8;
+            }
+
+            return true;
+        }
+
+        byte[] finish(int state, int log)
+        {
+            if (!write(state, log) || !write(1, 1) || !write(0, 7))
+                return null;
+
+            byte[] bs = new byte[size];
+            System.arraycopy(out, 0, bs, 0, size);
+
+            return bs;
+        }
+    }
+
+    private static class BitReader
+    {
+        private final byte[] in;
+        private int position;
+
+        BitReader(byte[] bytes)
+        {
+            if (bytes.length == 0 || bytes[bytes.length - 1] == 0)
+                throw new IllegalArgumentException("Corrupt FSE data");
+
+            this.in = new byte[bytes.length + 2];
+            System.arraycopy(bytes, 0, in, 0, bytes.length);
+            this.position = 8 * (bytes.length - 1) + highBit(bytes[bytes.length - 1] & 0xFF);
+        }
+
+        int remaining()
+        {
+            return position;
+        }
+
+        int read(int bits)
+        {
+            position -= bits;
+            if (position < 0)
+                throw new IllegalArgumentException("Corrupt FSE data");
+
+            int i = position >>> 3;
+            int window = (in[i] & 0xFF) | (in[i + 1] & 0xFF) << 8 | (in[i + 2] & 0xFF) << 16;
+
+            return (window >>> (position & 7)) & ((1 << bits) - 1);
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package wackpackr.core;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import wackpackr.io.BinaryIO;
+import wackpackr.io.BufferPool;
+
+/**
+ * Writes and reads the part of compressed file headers that is common to all native formats: the
+ * 32-bit identifier, the optional uncompressed size, and the optional preset dictionary id.
+ *
+ * <p>None of the native formats originally recorded the size of the uncompressed data, since each
+ * of them ends with a pseudo-EoF marker of its own. The size can now be stored as well, so that the
+ * decompressor knows to allocate exactly the right amount of space for the output at once. Whether
+ * the size is stored is told by the highest bit of the identifier, which is never set in the
+ * original identifiers, so files written without the size are bit-for-bit the same as before. The
+ * size is not trusted blindly, though: at most {@value #MAX_RESERVED_EXPANSION} times the size of
+ * the compressed input is reserved up front, and output beyond that grows as it is decoded.</p>
+ *
+ * <p>Likewise, the second highest bit tells whether the data was compressed with a {@link
+ * PresetDictionary}. If so, the id of the dictionary is stored, so that decompressing with the
+ * wrong dictionary (or none) fails up front instead of producing garbage.</p>
+ *
+ * <p>Both the size and the dictionary id are written right after the identifier, in that order,
+ * as varints (see {@link BinaryIO#writeVarInt(int)}), each adding one to five bytes to the header.
+ * </p>
+ *
+ * <p>Finally, the third highest bit tells that the data is not compressed at all, but stored as-is
+ * right after the header (see {@link #store(BinaryIO, long, boolean)}). The compressors fall back
+ * to this when the data looks incompressible (see {@link EntropyEstimator}), which saves both the
+ * time spent in vain and the expansion that would result. Coders that find repetition the byte
+ * histogram cannot see, such as the dictionary coders, rather compress first and store only if
+ * the output turns out larger than the input (see {@link #encodeOrStore(BinaryIO, ByteBuffer,
+ * long, boolean, Encoding)}).</p>
+ *
+ * @author Juho Juurinen
+ */
+public class FormatHeader
+{
+    /**
+     * Bit set in the identifier when the uncompressed size follows it.
+     */
+    public static final long SIZE_FLAG = 0x80000000L;
+
+    /**
+     * Bit set in the identifier when a preset dictionary id follows it.
+     */
+    public static final long DICTIONARY_FLAG = 0x40000000L;
+
+    /**
+     * Bit set in the identifier when the data following the header is stored as-is.
+     */
+    public static final long STORED_FLAG = 0x20000000L;
+
+    /**
+     * Maximum number of bytes the uncompressed size adds to the header.
+     */
+    public static final int MAX_SIZE_BYTES = 5;
+
+    /**
+     * Maximum number of bytes the dictionary id adds to the header.
+     */
+    public static final int MAX_DICTIONARY_BYTES = 5;
+
+    /**
+     * Largest number of output bytes reserved up front per byte of compressed input.
+     */
+    public static final int MAX_RESERVED_EXPANSION = 16;
+
+    /**
+     * Length of the sample encoded on trial, before encoding input that looks incompressible.
+     */
+    public static final int TRIAL_LENGTH = 1 << 16;
+
+    private static final int COPY_CHUNK_SIZE = 8192;
+
+    private final int size;
+    private final boolean usesDictionary;
+    private final boolean stored;
+
+    private FormatHeader(int size, boolean usesDictionary, boolean stored)
+    {
+        this.size = size;
+        this.usesDictionary = usesDictionary;
+        this.stored = stored;
+    }
+
+    /**
+     * Writes the given identifier to the output buffer, followed by the uncompressed size if so
+     * requested, and the id of the given dictionary if there is one. The uncompressed size is taken
+     * to be the number of whole bytes still left to read in the input buffer.
+     *
+     * @param io I/O wrapper holding the input to be compressed and the output buffer
+     * @param tag 32-bit identifier of the compression format
+     * @param storesSize whether to store the uncompressed size
+     * @param dictionary preset dictionary the data is compressed with, or null
+     * @throws IOException if there's an error writing to the output buffer
+     */
+    public static void write(BinaryIO io, long tag, boolean storesSize, PresetDictionary dictionary)
+            throws IOException
+    {
+        if (storesSize)
+            tag |= SIZE_FLAG;
+        if (dictionary != null)
+            tag |= DICTIONARY_FLAG;
+
+        io.write32Bits(tag);
+
+        if (storesSize)
+            io.writeVarInt((int) (io.remaining() >> 3));
+        if (dictionary != null)
+            io.writeVarInt(dictionary.getId());
+    }
+
+    /**
+     * Writes the given identifier to the output buffer with the stored flag set, followed by the
+     * uncompressed size if so requested, and then copies the rest of the input buffer as-is. No
+     * dictionary id is written, since none is needed to read the data back.
+     *
+     * @param io I/O wrapper holding the input to be stored and the output buffer
+     * @param tag 32-bit identifier of the compression format
+     * @param storesSize whether to store the uncompressed size
+     * @throws IOException if there's an error writing to the output buffer
+     */
+    public static void store(BinaryIO io, long tag, boolean storesSize) throws IOException
+    {
+        write(io, tag | STORED_FLAG, storesSize, null);
+        copy(io);
+    }
+
+    /**
+     * Compresses the input held by the given I/O wrapper with the given encoding, and writes the
+     * result to the output buffer, unless it is larger than the input; in that case the input is
+     * stored as-is, as in {@link #store(BinaryIO, long, boolean)}. Inputs shorter than {@link
+     * EntropyEstimator#MIN_LENGTH} are always compressed.
+     *
+     * <p>The encoding writes straight into the output buffer, limited to as many bytes as the input
+     * has (see {@link BinaryIO#limitOut(int)}), so that it is given up as soon as it runs past
+     * that: the I/O wrapper is then rewound, and the input stored instead. Only when the byte
+     * histogram already looks incompressible (see {@link EntropyEstimator}), and the input is
+     * larger than {@value #TRIAL_LENGTH} bytes, is a sample of that size from the middle of the
+     * input encoded first, into a small scratch array; if that does not shrink either, the input
+     * is stored without encoding the rest at all.</p>
+     *
+     * @param io I/O wrapper holding the input to be compressed and the output buffer
+     * @param src buffer holding the same input; its position is not moved
+     * @param tag 32-bit identifier of the compression format, for storing
+     * @param storesSize whether to store the uncompressed size, when storing
+     * @param encoding encoding that writes the whole compressed format, header included
+     * @throws IOException if there's an error reading or writing the buffers
+     */
+    public static void encodeOrStore(BinaryIO io, ByteBuffer src, long tag, boolean storesSize,
+            Encoding encoding) throws IOException
+    {
+        int length = src.remaining();
+
+        if (length < EntropyEstimator.MIN_LENGTH)
+        {
+            encoding.encode(io);
+            return;
+        }
+
+        if (length > TRIAL_LENGTH && EntropyEstimator.isIncompressible(src)
+                && !shrinksSample(src, encoding))
+        {
+            store(io, tag, storesSize);
+            return;
+        }
+
+        io.mark().limitOut(length);
+
+        try
+        {
+            encoding.encode(io);
+            io.limitOut(-1);
+        }
+        catch (BufferOverflowException e)
+        {
+            io.limitOut(-1).reset();
+            store(io, tag, storesSize);
+        }
+    }
+
+    /**
+     * Reads the identifier from the input buffer, and checks that it matches the given one, with
+     * or without the flags. If the uncompressed size follows, reads it and reserves that much room
+     * in the output buffer, though no more than {@value #MAX_RESERVED_EXPANSION} times the input
+     * left to read. If a dictionary id follows, checks that it is the id of the given dictionary.
+     *
+     * @param io I/O wrapper holding the compressed input and the output buffer
+     * @param tag 32-bit identifier of the compression format
+     * @param error message of the exception thrown if the identifier does not match
+     * @param dictionary preset dictionary available for decompression, or null
+     * @return the header read
+     * @throws IllegalArgumentException if the identifier does not match the given one, or the size
+     *         is negative, or the data was compressed with some other dictionary than the given one
+     * @throws java.nio.BufferOverflowException if a fixed-size output buffer has too little room
+     * @throws IOException if there's an error reading the input buffer
+     */
+    public static FormatHeader read(BinaryIO io, long tag, String error,
+            PresetDictionary dictionary) throws IOException
+    {
+        long header = io.read32Bits();
+
+        if ((header & ~(SIZE_FLAG | DICTIONARY_FLAG | STORED_FLAG)) != tag)
+            throw new IllegalArgumentException(error);
+
+        int size = -1;
+        if ((header & SIZE_FLAG) != 0)
+        {
+            size = io.readVarInt();
+
+            if (size < 0)
+                throw new IllegalArgumentException("Invalid size in header: " + size);
+
+            io.reserveOut((int) Math.min(size, (io.remaining() >> 3) * MAX_RESERVED_EXPANSION));
+        }
+
+        boolean stored = (header & STORED_FLAG) != 0;
+        if ((header & DICTIONARY_FLAG) == 0)
+            return new FormatHeader(size, false, stored);
+
+        int id = io.readVarInt();
+        if (dictionary == null || dictionary.getId() != id)
+            throw new IllegalArgumentException("Compressed with an unknown dictionary: " + id);
+
+        return new FormatHeader(size, true, stored);
+    }
+
+    /**
+     * Returns the uncompressed size read from the header.
+     *
+     * @return uncompressed size, or -1 if not stored
+     */
+    public int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Returns {@code true} if the data was compressed with the preset dictionary.
+     *
+     * @return true if the data needs the preset dictionary for decompression
+     */
+    public boolean usesDictionary()
+    {
+        return usesDictionary;
+    }
+
+    /**
+     * Returns {@code true} if the data following the header is stored as-is.
+     *
+     * @return true if the data is not compressed
+     */
+    public boolean isStored()
+    {
+        return stored;
+    }
+
+    /**
+     * Copies the stored data following the header, that is, the rest of the input buffer, as-is to
+     * the output buffer, and checks its size as in {@link #verify(BinaryIO)}.
+     *
+     * @param io I/O wrapper holding the input and the output buffer
+     * @throws IllegalArgumentException if the size does not match the header
+     * @throws IOException if there's an error reading or writing the buffers
+     */
+    public void copyStored(BinaryIO io) throws IOException
+    {
+        copy(io);
+        verify(io);
+    }
+
+    /**
+     * Checks that the number of bytes written to the output buffer matches the uncompressed size
+     * read from the header, if any.
+     *
+     * @param io I/O wrapper holding the output buffer
+     * @throws IllegalArgumentException if the sizes do not match
+     */
+    public void verify(BinaryIO io)
+    {
+        if (size >= 0 && io.getByteCountOut() != size)
+            throw new IllegalArgumentException("Decompressed size does not match the header");
+    }
+
+
+    /**
+     * Compression of the whole input held by an I/O wrapper into its output buffer, in some
+     * format, header included.
+     */
+    public interface Encoding
+    {
+        void encode(BinaryIO io) throws IOException;
+    }
+
+
+    /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
+
+
+    private static boolean shrinksSample(ByteBuffer src, Encoding encoding) throws IOException
+    {
+        ByteBuffer sample = src.duplicate();
+        sample.position(src.position() + (src.remaining() - TRIAL_LENGTH) / 2);
+        sample.limit(sample.position() + TRIAL_LENGTH);
+
+        byte[] scratch = BufferPool.acquire(TRIAL_LENGTH);
+
+        try (BinaryIO trial = new BinaryIO(sample, ByteBuffer.wrap(scratch, 0, TRIAL_LENGTH)))
+        {
+            encoding.encode(trial);
+            return true;
+        }
+        catch (BufferOverflowException e)
+        {
+            return false;
+        }
+        finally
+        {
+            BufferPool.release(scratch);
+        }
+    }
+
+    private static void copy(BinaryIO io) throws IOException
+    {
+        long n = io.remaining() >> 3;
+        byte[] chunk = new byte[(int) Math.min(n, COPY_CHUNK_SIZE)];
+
+        while (n > 0)
+        {
+            int length = (int) Math.min(n, chunk.length);
+
+            io.readBytes(chunk, 0, length);
+            io.writeBytes(chunk, 0, length);
+            n -= length;
+        }
+    }
+}
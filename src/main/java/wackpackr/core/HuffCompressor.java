@@ -2,6 +2,7 @@ package wackpackr.core;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import wackpackr.io.BinaryIO;
 import wackpackr.util.HuffNode;
 
@@ -14,8 +15,78 @@ public class HuffCompressor implements Compressor
 {
     private static final long HUFFMAN_TAG = 0x07031986;
     private static final int EOF_INDEX = 256;
-    private static boolean EOF_REACHED;
-    private static final String[] CODES = new String[EOF_INDEX + 1];
+    private static final long MAX_OVERHEAD = 4 + 322 + 32 + 3 + 2;
+    private final boolean storesSize;
+    private final PresetDictionary dictionary;
+    private final HuffNode presetTree;
+    private final String[] presetCodes;
+    private final int maxPresetCodeLength;
+
+    /**
+     * Constructs a new compressor that does not store the uncompressed size.
+     */
+    public HuffCompressor()
+    {
+        this(false);
+    }
+
+    /**
+     * Constructs a new compressor that stores the uncompressed size in the header of compressed
+     * files, if so requested (see {@link FormatHeader}). Files with or without the size can be
+     * decompressed either way.
+     *
+     * @param storesSize whether to store the uncompressed size
+     */
+    public HuffCompressor(boolean storesSize)
+    {
+        this(storesSize, null);
+    }
+
+    /**
+     * Constructs a new compressor that uses a fixed Huffman tree, built from the byte frequencies
+     * of the given dictionary (see {@link PresetDictionary}), and does not store the uncompressed
+     * size.
+     *
+     * @param dictionary preset dictionary to compress and decompress with
+     */
+    public HuffCompressor(PresetDictionary dictionary)
+    {
+        this(false, dictionary);
+    }
+
+    /**
+     * Constructs a new compressor that uses a fixed Huffman tree built from the byte frequencies of
+     * the given dictionary, if any, and stores the uncompressed size if so requested. The tree and
+     * its code table are built once, here, and the tree is left out of compressed files. Files
+     * compressed with the dictionary can only be decompressed with the same dictionary, while
+     * files compressed without one can be decompressed either way.
+     *
+     * @param storesSize whether to store the uncompressed size
+     * @param dictionary preset dictionary to compress and decompress with, or null for none
+     */
+    public HuffCompressor(boolean storesSize, PresetDictionary dictionary)
+    {
+        this.storesSize = storesSize;
+        this.dictionary = dictionary;
+
+        if (dictionary == null)
+        {
+            this.presetTree = null;
+            this.presetCodes = null;
+            this.maxPresetCodeLength = 0;
+            return;
+        }
+
+        this.presetTree = HuffTreeParser.buildTree(dictionary.freqs());
+        this.presetCodes = new String[EOF_INDEX + 1];
+        formCodeTable(presetTree, "", presetCodes);
+
+        int max = 0;
+        for (String code : presetCodes)
+            max = Math.max(max, code.length());
+
+        this.maxPresetCodeLength = max;
+    }
 
     /**
      * Compresses the given file using vanilla Huffman encoding.
@@ -23,12 +94,17 @@ public class HuffCompressor implements Compressor
      * <p>Information needed for decompression is stored to the beginning of the compressed binary.
      * This header consists, in order, of:</p><ol><li>a 32-bit identifier indicating the used
      * compression technique</li><li>Huffman tree that maps prefix codes to byte values</li><li>
-     * prefix code associated with the pseudo-EoF marker</li></ol>
+     * prefix code associated with the pseudo-EoF marker</li></ol> If so chosen at construction, the
+     * uncompressed size follows the identifier. If a dictionary was given at construction, its id
+     * follows instead of the tree and the pseudo-EoF code, both of which come from the dictionary.
      *
      * <p>The header is followed by the actual data in encoded form. The compressed binary ends with
      * the pseudo-EoF marker and, finally, a few 0s for padding to ensure that the EoF bit sequence
      * is not partially cut off.</p>
      *
+     * <p>If the byte frequencies show that the data is practically incompressible (see {@link
+     * EntropyEstimator}), the data is stored as-is after the identifier instead.</p>
+     *
      * @param bytes file to compress as byte array
      * @return compressed file as byte array
      * @throws IOException if there's an error writing to the output stream
@@ -36,24 +112,24 @@ public class HuffCompressor implements Compressor
     @Override
     public byte[] compress(byte[] bytes) throws IOException
     {
-        try (BinaryIO io = new BinaryIO())
-        {
-            io.write32Bits(HUFFMAN_TAG);
-
-            HuffNode root = HuffTreeParser.buildTree(bytes);
-            HuffTreeParser.encodeTree(root, io);
-
-            formCodeTable(root, "");
-            encode(CODES[EOF_INDEX], io);
-
-            for (byte b : bytes)
-                encode(CODES[b + 128], io);
-
-            encode(CODES[EOF_INDEX], io);
-            io.writeByte((byte) 0);
+        return newCompressionContext().compress(bytes);
+    }
 
-            return io.getBytesOut();
-        }
+    /**
+     * Compresses the remaining bytes of the given source buffer into the given destination buffer,
+     * in the exact same format as {@link #compress(byte[])}. The data is read straight from the
+     * source buffer (twice, since byte frequencies need to be counted first), and written straight
+     * into the destination buffer.
+     *
+     * @param src data to compress
+     * @param dst buffer to write compressed data into
+     * @throws java.nio.BufferOverflowException if the destination buffer runs out of space
+     * @throws IOException if there's an error writing to the output stream
+     */
+    @Override
+    public void compress(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        newCompressionContext().compress(src, dst);
     }
 
     /**
@@ -72,26 +148,85 @@ public class HuffCompressor implements Compressor
      *
      * @param bytes file to decompress as byte array
      * @return decompressed file as byte array
-     * @throws IllegalArgumentException if file does not have the correct identifier in its header
+     * @throws IllegalArgumentException if file does not have the correct identifier in its header,
+     *         or was compressed with a dictionary other than the one given at construction
      * @throws EOFException if expected pseudo-EoF marker is not present in the input stream
      * @throws IOException if there's an error writing to or reading from the I/O streams
      */
     @Override
     public byte[] decompress(byte[] bytes) throws IOException
     {
-        try (BinaryIO io = new BinaryIO(bytes))
-        {
-            if (io.read32Bits() != HUFFMAN_TAG)
-                throw new IllegalArgumentException("Not a Huffman compressed file");
+        return newDecompressionContext().decompress(bytes);
+    }
+
+    /**
+     * Decompresses the remaining bytes of the given source buffer into the given destination
+     * buffer, reading and writing the buffers directly. Otherwise works as {@link
+     * #decompress(byte[])}.
+     *
+     * @param src data to decompress
+     * @param dst buffer to write decompressed data into
+     * @throws java.nio.BufferOverflowException if the destination buffer runs out of space
+     * @throws IllegalArgumentException if data does not have the correct identifier in its header
+     * @throws EOFException if expected pseudo-EoF marker is not present in the input stream
+     * @throws IOException if there's an error writing to or reading from the I/O streams
+     */
+    @Override
+    public void decompress(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        newDecompressionContext().decompress(src, dst);
+    }
+
+    /**
+     * Returns the worst-case size of Huffman compressed data. Since Huffman codes are optimal, the
+     * data (plus one pseudo-EoF marker) never takes more than a fixed-length 9-bit code for all 257
+     * symbols would; on top of that comes the header, with a tree of at most 257 leaves and a
+     * pseudo-EoF code of at most 256 bits.
+     *
+     * <p>With a dictionary, the codes are fixed beforehand, and not optimal for the input, so the
+     * bound is taken from the longest of them instead.</p>
+     *
+     * @param length length of uncompressed data in bytes
+     * @return worst-case length of compressed data in bytes
+     * @throws IllegalArgumentException if length is negative, or the bound does not fit in an int
+     */
+    @Override
+    public int maxCompressedSize(int length)
+    {
+        long size = (dictionary == null)
+                ? (long) length + length / 8 + MAX_OVERHEAD
+                : ((long) length + 1) * maxPresetCodeLength / 8 + 4 + 2
+                        + FormatHeader.MAX_DICTIONARY_BYTES;
+        size += (storesSize ? FormatHeader.MAX_SIZE_BYTES : 0);
 
-            HuffNode root = HuffTreeParser.decodeTree(io);
-            EOF_REACHED = false;
+        if (length < 0 || size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid input length: " + length);
 
-            while (!EOF_REACHED)
-                decode(root, io);
+        return (int) size;
+    }
 
-            return io.getBytesOut();
-        }
+    /**
+     * Returns a new compression context, that holds on to the table of prefix codes. Beyond that,
+     * Huffman coding has little working memory to reuse, since the tree depends on the input.
+     *
+     * @return new compression context
+     */
+    @Override
+    public CompressionContext newCompressionContext()
+    {
+        return new Encoder();
+    }
+
+    /**
+     * Returns a new decompression context. There is no working memory to reuse, but the context
+     * decodes straight from and into the given buffers nonetheless.
+     *
+     * @return new decompression context
+     */
+    @Override
+    public DecompressionContext newDecompressionContext()
+    {
+        return new Decoder();
     }
 
     @Override
@@ -104,7 +239,97 @@ public class HuffCompressor implements Compressor
     /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
 
 
-    private void decode(HuffNode node, BinaryIO io) throws IOException
+    private class Encoder extends CompressionContext
+    {
+        private final String[] codes = new String[EOF_INDEX + 1];
+
+        Encoder()
+        {
+            super(HuffCompressor.this);
+        }
+
+        @Override
+        protected void encode(ByteBuffer src, BinaryIO io) throws IOException
+        {
+            long[] freqs = HuffTreeParser.countFrequencies(src);
+
+            if (EntropyEstimator.isIncompressible(freqs))
+                FormatHeader.store(io, HUFFMAN_TAG, storesSize);
+            else if (dictionary != null)
+                HuffCompressor.this.compress(io);
+            else
+                HuffCompressor.this.compress(freqs, codes, io);
+        }
+    }
+
+    private class Decoder extends DecompressionContext
+    {
+        Decoder()
+        {
+            super(HuffCompressor.this);
+        }
+
+        @Override
+        protected void decode(BinaryIO io) throws IOException
+        {
+            HuffCompressor.this.decompress(io);
+        }
+    }
+
+    private void compress(long[] freqs, String[] codes, BinaryIO io) throws IOException
+    {
+        FormatHeader.write(io, HUFFMAN_TAG, storesSize, null);
+
+        HuffNode root = HuffTreeParser.buildTree(freqs);
+        HuffTreeParser.encodeTree(root, io);
+
+        formCodeTable(root, "", codes);
+        encode(codes[EOF_INDEX], io);
+        encode(codes, io);
+    }
+
+    private void compress(BinaryIO io) throws IOException
+    {
+        FormatHeader.write(io, HUFFMAN_TAG, storesSize, dictionary);
+        encode(presetCodes, io);
+    }
+
+    private void decompress(BinaryIO io) throws IOException
+    {
+        FormatHeader header = FormatHeader.read(
+                io,
+                HUFFMAN_TAG,
+                "Not a Huffman compressed file",
+                dictionary
+        );
+
+        if (header.isStored())
+        {
+            header.copyStored(io);
+            return;
+        }
+
+        HuffNode root = header.usesDictionary()
+                ? presetTree
+                : HuffTreeParser.decodeTree(io);
+        boolean eofReached = false;
+
+        while (!eofReached)
+            eofReached = decode(root, io);
+
+        header.verify(io);
+    }
+
+    private void encode(String[] codes, BinaryIO io) throws IOException
+    {
+        for (int b = io.readByteOrEOF(); b != BinaryIO.EOF; b = io.readByteOrEOF())
+            encode(codes[(byte) b + 128], io);
+
+        encode(codes[EOF_INDEX], io);
+        io.writeByte((byte) 0);
+    }
+
+    private boolean decode(HuffNode node, BinaryIO io) throws IOException
     {
         while (!node.isLeaf())
             node = io.readBit()
@@ -112,27 +337,28 @@ public class HuffCompressor implements Compressor
                     : node.getLeft();
 
         if (node.isEoF())
-            EOF_REACHED = true;
-        else
-            io.writeByte(node.getValue());
+            return true;
+
+        io.writeByte(node.getValue());
+        return false;
     }
 
     private void encode(String code, BinaryIO io) throws IOException
     {
-        for (char c : code.toCharArray())
-            io.writeBit(c == '1');
+        for (int i = 0; i < code.length(); i++)
+            io.writeBit(code.charAt(i) == '1');
     }
 
-    private void formCodeTable(HuffNode node, String code)
+    private void formCodeTable(HuffNode node, String code, String[] codes)
     {
         if (node.isEoF())
-            CODES[EOF_INDEX] = code;
+            codes[EOF_INDEX] = code;
         else if (node.isLeaf())
-            CODES[node.getValue() + 128] = code;
+            codes[node.getValue() + 128] = code;
         else
         {
-            formCodeTable(node.getLeft(),  code + "0");
-            formCodeTable(node.getRight(), code + "1");
+            formCodeTable(node.getLeft(),  code + "0", codes);
+            formCodeTable(node.getRight(), code + "1", codes);
         }
     }
 }
@@ -1,6 +1,7 @@
 package wackpackr.core;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import wackpackr.io.BinaryIO;
 import wackpackr.util.HuffNode;
 import wackpackr.util.MinHeap;
@@ -21,9 +22,20 @@ public class HuffTreeParser
      * @return pointer to root node of resultant Huffman tree
      */
     public static HuffNode buildTree(byte[] bytes)
+    {
+        return buildTree(countFrequencies(bytes));
+    }
+
+    /**
+     * Creates an optimal Huffman tree from the given byte frequencies, as counted by {@link
+     * #countFrequencies(byte[])}. A pseudo-EoF marker is included in the tree by default.
+     *
+     * @param freqs number of appearances of each byte value, indexed by byte value + 128
+     * @return pointer to root node of resultant Huffman tree
+     */
+    public static HuffNode buildTree(long[] freqs)
     {
         MinHeap<HuffNode> heap = new MinHeap<>();
-        long[] freqs = countFrequencies(bytes);
 
         for (int b = Byte.MIN_VALUE; b <= Byte.MAX_VALUE; b++)
             if (freqs[b + 128] > 0)
@@ -84,10 +96,14 @@ public class HuffTreeParser
     }
 
 
-    /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
-
-
-    private static long[] countFrequencies(byte[] bytes)
+    /**
+     * Counts the number of appearances of each byte value in the given byte array. The counts are
+     * indexed by byte value + 128, so that the lowest (signed) value comes first.
+     *
+     * @param bytes raw data as byte array
+     * @return number of appearances of each byte value
+     */
+    public static long[] countFrequencies(byte[] bytes)
     {
         long[] freqs = new long[256];
 
@@ -97,6 +113,27 @@ public class HuffTreeParser
         return freqs;
     }
 
+    /**
+     * Counts the number of appearances of each byte value in the remaining bytes of the given
+     * buffer, as in {@link #countFrequencies(byte[])}. The position of the buffer is not moved.
+     *
+     * @param bytes raw data as byte buffer
+     * @return number of appearances of each byte value
+     */
+    public static long[] countFrequencies(ByteBuffer bytes)
+    {
+        long[] freqs = new long[256];
+
+        for (int i = bytes.position(); i < bytes.limit(); i++)
+            freqs[bytes.get(i) + 128]++;
+
+        return freqs;
+    }
+
+
+    /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
+
+
     private static HuffNode decode(BinaryIO io) throws IOException
     {
         return io.readBit()
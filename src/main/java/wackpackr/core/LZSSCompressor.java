@@ -2,6 +2,7 @@ package wackpackr.core;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import wackpackr.io.BinaryIO;
 
 /**
@@ -15,16 +16,68 @@ public class LZSSCompressor implements Compressor
     private static final int THRESHOLD_LENGTH = 3;
     private static final int BUFFER_SIZE = 15 + THRESHOLD_LENGTH;
     private static final int PREFIX_SIZE = 4095;
-    private static boolean EOF_REACHED;
-    private static LZSSWindowOperator WINDOW;
+    private static final long MAX_OVERHEAD = 4 + 4 + 4;
+    private final boolean storesSize;
+    private final PresetDictionary dictionary;
+
+    /**
+     * Constructs a new compressor that does not store the uncompressed size.
+     */
+    public LZSSCompressor()
+    {
+        this(false);
+    }
+
+    /**
+     * Constructs a new compressor that stores the uncompressed size in the header of compressed
+     * files, if so requested (see {@link FormatHeader}). Files with or without the size can be
+     * decompressed either way.
+     *
+     * @param storesSize whether to store the uncompressed size
+     */
+    public LZSSCompressor(boolean storesSize)
+    {
+        this(storesSize, null);
+    }
+
+    /**
+     * Constructs a new compressor that primes the sliding window with the content of the given
+     * dictionary (see {@link PresetDictionary}), and does not store the uncompressed size.
+     *
+     * @param dictionary preset dictionary to compress and decompress with
+     */
+    public LZSSCompressor(PresetDictionary dictionary)
+    {
+        this(false, dictionary);
+    }
+
+    /**
+     * Constructs a new compressor that primes the sliding window with the content of the given
+     * dictionary, if any, and stores the uncompressed size if so requested. Files compressed with
+     * the dictionary can only be decompressed with the same dictionary, while files compressed
+     * without one can be decompressed either way.
+     *
+     * @param storesSize whether to store the uncompressed size
+     * @param dictionary preset dictionary to compress and decompress with, or null for none
+     */
+    public LZSSCompressor(boolean storesSize, PresetDictionary dictionary)
+    {
+        this.storesSize = storesSize;
+        this.dictionary = dictionary;
+    }
 
     /**
      * Compresses given file using LZSS encoding.
      *
      * <p>Writes a 32-bit identifier, indicating the used compression technique, to the beginning
-     * of the compressed binary, followed by the actual data in encoded form. Ends with a
-     * nonsensical "zero-offset" pointer as a pseudo-EoF marker, plus a few 0s to ensure that the
-     * EoF bit sequence is not partially cut off.</p>
+     * of the compressed binary (followed by the uncompressed size and the dictionary id, if so
+     * chosen at construction), and then the actual data in encoded form. Ends with a nonsensical
+     * "zero-offset" pointer as a pseudo-EoF marker, plus a few 0s to ensure that the EoF bit
+     * sequence is not partially cut off.</p>
+     *
+     * <p>If the encoded data turns out larger than the data itself, the data is stored as-is after
+     * the identifier instead (see {@link FormatHeader#encodeOrStore(BinaryIO, ByteBuffer, long,
+     * boolean, FormatHeader.Encoding)}).</p>
      *
      * @param bytes file to compress as byte array
      * @return compressed file as byte array
@@ -33,22 +86,23 @@ public class LZSSCompressor implements Compressor
     @Override
     public byte[] compress(byte[] bytes) throws IOException
     {
-        try (BinaryIO io = new BinaryIO(bytes))
-        {
-            io.write32Bits(LZSS_TAG);
-
-            byte[] initialBuffer = io.readBytes(BUFFER_SIZE);
-            WINDOW = new LZSSWindowOperator(BUFFER_SIZE, PREFIX_SIZE, initialBuffer);
-
-            while (WINDOW.peek() != null)
-                encode(io);
-
-            io      // EoF marker
-                    .writeBit(true)
-                    .writeBytes(new byte[]{ 0, 0, 0 });
+        return newCompressionContext().compress(bytes);
+    }
 
-            return io.getBytesOut();
-        }
+    /**
+     * Compresses the remaining bytes of the given source buffer into the given destination buffer,
+     * in the exact same format as {@link #compress(byte[])}, reading and writing the buffers
+     * directly.
+     *
+     * @param src data to compress
+     * @param dst buffer to write compressed data into
+     * @throws java.nio.BufferOverflowException if the destination buffer runs out of space
+     * @throws IOException if there's an error writing to the output stream
+     */
+    @Override
+    public void compress(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        newCompressionContext().compress(src, dst);
     }
 
     /**
@@ -63,26 +117,79 @@ public class LZSSCompressor implements Compressor
      *
      * @param bytes file to decompress as byte array
      * @return decompressed file as byte array
-     * @throws IllegalArgumentException if file does not have the correct identifier in its header
+     * @throws IllegalArgumentException if file does not have the correct identifier in its header,
+     *         or was compressed with a dictionary other than the one given at construction
      * @throws EOFException if no pseudo-EoF marker is present in the input stream
      * @throws IOException if there's an error writing to or reading from the I/O streams
      */
     @Override
     public byte[] decompress(byte[] bytes) throws IOException
     {
-        try (BinaryIO io = new BinaryIO(bytes))
-        {
-            if (io.read32Bits() != LZSS_TAG)
-                throw new IllegalArgumentException("Not a LZSS compressed file");
+        return newDecompressionContext().decompress(bytes);
+    }
 
-            WINDOW = new LZSSWindowOperator(BUFFER_SIZE, PREFIX_SIZE);
-            EOF_REACHED = false;
+    /**
+     * Decompresses the remaining bytes of the given source buffer into the given destination
+     * buffer, reading and writing the buffers directly. Otherwise works as {@link
+     * #decompress(byte[])}.
+     *
+     * @param src data to decompress
+     * @param dst buffer to write decompressed data into
+     * @throws java.nio.BufferOverflowException if the destination buffer runs out of space
+     * @throws IllegalArgumentException if data does not have the correct identifier in its header
+     * @throws EOFException if no pseudo-EoF marker is present in the input stream
+     * @throws IOException if there's an error writing to or reading from the I/O streams
+     */
+    @Override
+    public void decompress(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        newDecompressionContext().decompress(src, dst);
+    }
 
-            while (!EOF_REACHED)
-                decode(io);
+    /**
+     * Returns the worst-case size of LZSS compressed data: every byte written as a 9-bit literal
+     * block, plus the header and the pseudo-EoF marker. A dictionary does not change this, since
+     * a pointer block is only ever written in place of longer runs of literal blocks.
+     *
+     * @param length length of uncompressed data in bytes
+     * @return worst-case length of compressed data in bytes
+     * @throws IllegalArgumentException if length is negative, or the bound does not fit in an int
+     */
+    @Override
+    public int maxCompressedSize(int length)
+    {
+        long size = (long) length + length / 8 + MAX_OVERHEAD
+                + (storesSize ? FormatHeader.MAX_SIZE_BYTES : 0)
+                + (dictionary != null ? FormatHeader.MAX_DICTIONARY_BYTES : 0);
 
-            return io.getBytesOut();
-        }
+        if (length < 0 || size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid input length: " + length);
+
+        return (int) size;
+    }
+
+    /**
+     * Returns a new compression context, that holds on to the sliding window and the hash table
+     * used in longest match search, and resets them for each input.
+     *
+     * @return new compression context
+     */
+    @Override
+    public CompressionContext newCompressionContext()
+    {
+        return new Encoder();
+    }
+
+    /**
+     * Returns a new decompression context, that holds on to the sliding window and resets it for
+     * each input.
+     *
+     * @return new decompression context
+     */
+    @Override
+    public DecompressionContext newDecompressionContext()
+    {
+        return new Decoder();
     }
 
     @Override
@@ -95,7 +202,83 @@ public class LZSSCompressor implements Compressor
     /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
 
 
-    private void decode(BinaryIO io) throws IOException
+    private class Encoder extends CompressionContext
+    {
+        private final LZSSWindowOperator window = new LZSSWindowOperator(BUFFER_SIZE, PREFIX_SIZE);
+
+        Encoder()
+        {
+            super(LZSSCompressor.this);
+        }
+
+        @Override
+        protected void encode(ByteBuffer src, BinaryIO io) throws IOException
+        {
+            FormatHeader.encodeOrStore(io, src, LZSS_TAG, storesSize,
+                    trial -> LZSSCompressor.this.compress(trial, window));
+        }
+    }
+
+    private class Decoder extends DecompressionContext
+    {
+        private final LZSSWindowOperator window = new LZSSWindowOperator(BUFFER_SIZE, PREFIX_SIZE);
+
+        Decoder()
+        {
+            super(LZSSCompressor.this);
+        }
+
+        @Override
+        protected void decode(BinaryIO io) throws IOException
+        {
+            LZSSCompressor.this.decompress(io, window);
+        }
+    }
+
+    private void compress(BinaryIO io, LZSSWindowOperator window) throws IOException
+    {
+        FormatHeader.write(io, LZSS_TAG, storesSize, dictionary);
+
+        byte[] initialBuffer = io.readBytes((int) Math.min(BUFFER_SIZE, io.remaining() / 8));
+        window.reset(initialBuffer, dictionary);
+
+        while (window.peek() != BinaryIO.EOF)
+            encode(io, window);
+
+        io      // EoF marker
+                .writeBit(true)
+                .writeBytes(new byte[]{ 0, 0, 0 });
+    }
+
+    private void decompress(BinaryIO io, LZSSWindowOperator window) throws IOException
+    {
+        FormatHeader header = FormatHeader.read(
+                io,
+                LZSS_TAG,
+                "Not a LZSS compressed file",
+                dictionary
+        );
+
+        if (header.isStored())
+        {
+            header.copyStored(io);
+            return;
+        }
+
+        if (header.usesDictionary())
+            window.reset(dictionary);
+        else
+            window.reset();
+
+        boolean eofReached = false;
+
+        while (!eofReached)
+            eofReached = decode(io, window);
+
+        header.verify(io);
+    }
+
+    private boolean decode(BinaryIO io, LZSSWindowOperator window) throws IOException
     {
         if (io.readBit())
         {   // pointer block
@@ -104,29 +287,31 @@ public class LZSSCompressor implements Compressor
             int length = (pointer[1] & 0xF) + THRESHOLD_LENGTH;
 
             if (offset == 0)
-                EOF_REACHED = true;
-            else
-                for (int i = 0; i < length; i++)
-                    io.writeByte(WINDOW.copyBackReference(offset - 1));
+                return true;
+
+            for (int i = 0; i < length; i++)
+                io.writeByte(window.copyBackReference(offset - 1));
         }
         else
         {   // literal block
             byte b = io.readByte();
-            WINDOW.insertAndMove(b);
+            window.insertAndMove(b);
             io.writeByte(b);
         }
+
+        return false;
     }
 
-    private void encode(BinaryIO io) throws IOException
+    private void encode(BinaryIO io, LZSSWindowOperator window) throws IOException
     {
-        int[] longestMatch = WINDOW.findLongestMatch();
+        int[] longestMatch = window.findLongestMatch();
         int length = longestMatch[0], offset = longestMatch[1];
 
         if (length < THRESHOLD_LENGTH)
         {
             io      // literal block
                     .writeBit(false)
-                    .writeByte(WINDOW.peek());
+                    .writeByte((byte) window.peek());
             length = 1;
         }
         else
@@ -136,6 +321,6 @@ public class LZSSCompressor implements Compressor
                     .writeByte((byte) (offset << 4 | (length - THRESHOLD_LENGTH)));
 
         for (int i = 0; i < length; i++)
-            WINDOW.slideForward(io.readByteOrNull());
+            window.slideForward(io.readByteOrEOF());
     }
 }
@@ -0,0 +1,341 @@
+package wackpackr.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import wackpackr.io.BinaryIO;
+
+/**
+ * Compression and decompression with the same LZSS parsing as {@link LZSSCompressor}, but with the
+ * tokens range coded (see {@link RangeEncoder}) instead of written out bit by bit.
+ *
+ * <p>Plain LZSS spends a whole bit on the flag that tells a literal from a pointer, eight bits on
+ * each literal, and sixteen on each pointer, however predictable they are. Here each part of a
+ * token is coded with adaptive binary models, as in LZMA, so that it costs about as many bits as
+ * it carries information:</p>
+ *
+ * <ul>
+ * <li>the flag, in the context of whether the previous token was a literal or a pointer, since
+ * pointers tend to come in runs on repetitive data and literals on the rest;</li>
+ * <li>each literal, as a path through a binary tree of 255 decisions, in the context of the top
+ * three bits of the byte before it, which tells letters from digits from punctuation and such;</li>
+ * <li>the 12-bit offset and the 4-bit length of each pointer, as paths through binary trees of
+ * their own, so that near offsets and common lengths get cheap.</li>
+ * </ul>
+ *
+ * <p>The end of the data is marked with a pointer of offset zero, as in plain LZSS. If the coded
+ * data turns out no smaller than the original, the data is stored as-is after the identifier
+ * instead (see {@link FormatHeader#encodeOrStore(BinaryIO, ByteBuffer, long, boolean,
+ * FormatHeader.Encoding)}).</p>
+ *
+ * @author Juho Juurinen
+ */
+public class LZSSRangeCompressor implements Compressor
+{
+    private static final long LZSS_RANGE_TAG = 0x07072018;
+    private static final int THRESHOLD_LENGTH = 3;
+    private static final int LENGTH_BITS = 4;
+    private static final int OFFSET_BITS = 12;
+    private static final int BUFFER_SIZE = (1 << LENGTH_BITS) - 1 + THRESHOLD_LENGTH;
+    private static final int PREFIX_SIZE = (1 << OFFSET_BITS) - 1;
+    private static final int LITERAL_CONTEXT_BITS = 3;
+    private static final long MAX_OVERHEAD = 4;
+    private final boolean storesSize;
+
+    /**
+     * Constructs a new compressor that does not store the uncompressed size.
+     */
+    public LZSSRangeCompressor()
+    {
+        this(false);
+    }
+
+    /**
+     * Constructs a new compressor that stores the uncompressed size in the header of compressed
+     * files, if so requested (see {@link FormatHeader}). Files with or without the size can be
+     * decompressed either way.
+     *
+     * @param storesSize whether to store the uncompressed size
+     */
+    public LZSSRangeCompressor(boolean storesSize)
+    {
+        this.storesSize = storesSize;
+    }
+
+    /**
+     * Compresses given file using LZSS encoding with range coded tokens.
+     *
+     * <p>Writes a 32-bit identifier, indicating the used compression technique, to the beginning
+     * of the compressed binary (followed by the uncompressed size, if so chosen at construction),
+     * and then the range coded tokens, which run to the end of the file.</p>
+     *
+     * @param bytes file to compress as byte array
+     * @return compressed file as byte array
+     * @throws IOException if there's an error writing to the output stream
+     */
+    @Override
+    public byte[] compress(byte[] bytes) throws IOException
+    {
+        return newCompressionContext().compress(bytes);
+    }
+
+    /**
+     * Compresses the remaining bytes of the given source buffer into the given destination buffer,
+     * in the exact same format as {@link #compress(byte[])}.
+     *
+     * @param src data to compress
+     * @param dst buffer to write compressed data into
+     * @throws java.nio.BufferOverflowException if the destination buffer runs out of space
+     * @throws IOException if there's an error writing to the output stream
+     */
+    @Override
+    public void compress(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        newCompressionContext().compress(src, dst);
+    }
+
+    /**
+     * Decompresses given file using LZSS decoding with range coded tokens.
+     *
+     * @param bytes file to decompress as byte array
+     * @return decompressed file as byte array
+     * @throws IllegalArgumentException if file does not have the correct identifier in its header,
+     *         or a pointer reaches past the start of the decoded data
+     * @throws java.io.EOFException if the file ends before the pseudo-EoF marker
+     * @throws IOException if there's an error writing to or reading from the I/O streams
+     */
+    @Override
+    public byte[] decompress(byte[] bytes) throws IOException
+    {
+        return newDecompressionContext().decompress(bytes);
+    }
+
+    /**
+     * Decompresses the remaining bytes of the given source buffer into the given destination
+     * buffer. Otherwise works as {@link #decompress(byte[])}.
+     *
+     * @param src data to decompress
+     * @param dst buffer to write decompressed data into
+     * @throws java.nio.BufferOverflowException if the destination buffer runs out of space
+     * @throws IllegalArgumentException if data does not have the correct identifier in its header
+     * @throws IOException if there's an error writing to or reading from the I/O streams
+     */
+    @Override
+    public void decompress(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        newDecompressionContext().decompress(src, dst);
+    }
+
+    /**
+     * Returns the worst-case size of compressed data: the data stored as-is, plus the header.
+     *
+     * @param length length of uncompressed data in bytes
+     * @return worst-case length of compressed data in bytes
+     * @throws IllegalArgumentException if length is negative, or the bound does not fit in an int
+     */
+    @Override
+    public int maxCompressedSize(int length)
+    {
+        long size = (long) length + MAX_OVERHEAD
+                + (storesSize ? FormatHeader.MAX_SIZE_BYTES : 0);
+
+        if (length < 0 || size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid input length: " + length);
+
+        return (int) size;
+    }
+
+    /**
+     * Returns a new compression context, that holds on to the sliding window, the output array of
+     * the range encoder, and the models, and resets them for each input.
+     *
+     * @return new compression context
+     */
+    @Override
+    public CompressionContext newCompressionContext()
+    {
+        return new Encoder();
+    }
+
+    /**
+     * Returns a new decompression context, that holds on to the sliding window and the models, and
+     * resets them for each input.
+     *
+     * @return new decompression context
+     */
+    @Override
+    public DecompressionContext newDecompressionContext()
+    {
+        return new Decoder();
+    }
+
+    @Override
+    public String getName()
+    {
+        return "LZSS-Range";
+    }
+
+
+    /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
+
+
+    private class Encoder extends CompressionContext
+    {
+        private final LZSSWindowOperator window = new LZSSWindowOperator(BUFFER_SIZE, PREFIX_SIZE);
+        private final RangeEncoder rc = new RangeEncoder(1 << 16);
+        private final Model model = new Model();
+
+        Encoder()
+        {
+            super(LZSSRangeCompressor.this);
+        }
+
+        @Override
+        protected void encode(ByteBuffer src, BinaryIO io) throws IOException
+        {
+            FormatHeader.encodeOrStore(io, src, LZSS_RANGE_TAG, storesSize, this::encodeTokens);
+        }
+
+        private void encodeTokens(BinaryIO io) throws IOException
+        {
+            long length = io.mark().remaining() >> 3;
+            FormatHeader.write(io, LZSS_RANGE_TAG, storesSize, null);
+
+            rc.reset();
+            model.reset();
+            window.reset(io.readBytes((int) Math.min(BUFFER_SIZE, length)));
+
+            int previous = 0, state = 0;
+
+            while (window.peek() != BinaryIO.EOF)
+            {
+                int[] match = window.findLongestMatch();
+                int n = match[0];
+
+                if (n < THRESHOLD_LENGTH)
+                {
+                    rc.encodeBit(model.flags, state, 0);
+                    rc.encodeBitTree(model.literals(previous), 8, window.peek());
+                    n = 1;
+                    state = 0;
+                }
+                else
+                {
+                    rc.encodeBit(model.flags, state, 1);
+                    rc.encodeBitTree(model.offsets, OFFSET_BITS, match[1]);
+                    rc.encodeBitTree(model.lengths, LENGTH_BITS, n - THRESHOLD_LENGTH);
+                    state = 1;
+                }
+
+                for (int i = 0; i < n; i++)
+                {
+                    previous = window.peek();
+                    window.slideForward(io.readByteOrEOF());
+                }
+            }
+
+            rc.encodeBit(model.flags, state, 1);    // EoF marker
+            rc.encodeBitTree(model.offsets, OFFSET_BITS, 0);
+            rc.finish();
+
+            if (rc.size() < length)
+                rc.writeTo(io);
+            else
+                FormatHeader.store(io.reset(), LZSS_RANGE_TAG, storesSize);
+        }
+    }
+
+    private class Decoder extends DecompressionContext
+    {
+        private final LZSSWindowOperator window = new LZSSWindowOperator(BUFFER_SIZE, PREFIX_SIZE);
+        private final Model model = new Model();
+
+        Decoder()
+        {
+            super(LZSSRangeCompressor.this);
+        }
+
+        @Override
+        protected void decode(BinaryIO io) throws IOException
+        {
+            FormatHeader header = FormatHeader.read(
+                    io,
+                    LZSS_RANGE_TAG,
+                    "Not a LZSS-Range compressed file",
+                    null
+            );
+
+            if (header.isStored())
+            {
+                header.copyStored(io);
+                return;
+            }
+
+            RangeDecoder rc = new RangeDecoder(io);
+            model.reset();
+            window.reset();
+
+            int previous = 0, state = 0;
+
+            while (true)
+            {
+                if (rc.decodeBit(model.flags, state) == 0)
+                {
+                    byte b = (byte) rc.decodeBitTree(model.literals(previous), 8);
+
+                    window.insertAndMove(b);
+                    io.writeByte(b);
+                    previous = b & 0xFF;
+                    state = 0;
+                    continue;
+                }
+
+                int offset = rc.decodeBitTree(model.offsets, OFFSET_BITS);
+                if (offset == 0)
+                    break;
+
+                int n = rc.decodeBitTree(model.lengths, LENGTH_BITS) + THRESHOLD_LENGTH;
+
+                for (int i = 0; i < n; i++)
+                {
+                    byte b = window.copyBackReference(offset - 1);
+
+                    io.writeByte(b);
+                    previous = b & 0xFF;
+                }
+
+                state = 1;
+            }
+
+            header.verify(io);
+        }
+    }
+
+    private static class Model
+    {
+        private final short[] flags = RangeEncoder.newModel(2);
+        private final short[][] literals = new short[1 << LITERAL_CONTEXT_BITS][];
+        private final short[] offsets = RangeEncoder.newModel(1 << OFFSET_BITS);
+        private final short[] lengths = RangeEncoder.newModel(1 << LENGTH_BITS);
+
+        Model()
+        {
+            for (int i = 0; i < literals.length; i++)
+                literals[i] = RangeEncoder.newModel(1 << 8);
+        }
+
+        short[] literals(int previous)
+        {
+            return literals[previous >>> (8 - LITERAL_CONTEXT_BITS)];
+        }
+
+        void reset()
+        {
+            RangeEncoder.resetModel(flags);
+            RangeEncoder.resetModel(offsets);
+            RangeEncoder.resetModel(lengths);
+
+            for (short[] probs : literals)
+                RangeEncoder.resetModel(probs);
+        }
+    }
+}
@@ -1,7 +1,8 @@
 package wackpackr.core;
 
+import java.util.Arrays;
+import wackpackr.io.BinaryIO;
 import wackpackr.util.ErraticHashTable;
-import wackpackr.util.SlidingWindow;
 
 /**
  * Helper class that handles the "sliding window" dictionary needed in LZSS compression and
@@ -16,20 +17,36 @@ import wackpackr.util.SlidingWindow;
  * prefix window, so that searching can be limited only to positions where at least the first three
  * bytes match (which incidentally is also the threshold length for encoding a pointer).</p>
  *
+ * <p>An operator can be reset and reused for the next input, which saves allocating the window and
+ * hash table anew each time. This matters when compressing lots of small inputs one after another.
+ * </p>
+ *
+ * <p>The window can also be reset with the content of a {@link PresetDictionary} already in the
+ * prefix, as if it had just been encoded or decoded. The dictionary content is not memorised in
+ * the hash table, but searched through its own, precomputed index instead; so priming the window
+ * costs no more than copying the content into it.</p>
+ *
+ * <p>The window itself is a circular array of primitive ints, in the manner of {@link
+ * wackpackr.util.SlidingWindow}: bytes are held as unsigned values, and positions past the end of
+ * the input hold {@link BinaryIO#EOF}, so nothing is boxed on the way in or out.</p>
+ *
  * @author Juho Juurinen
  */
 public class LZSSWindowOperator
 {
     private final int bufferSize, prefixSize;
     private ErraticHashTable<Integer> positions;
-    private final SlidingWindow<Byte> window;
+    private final int[] window;
+    private int cursor, head;
+    private PresetDictionary preset;
+    private int presetStart, presetLength;
 
     /**
      * Constructs a new sliding window operator with a lighter configuration for decoding purposes.
      * More specifically, the hash table (which is only needed for pattern matching) is not
      * initialised.
      *
-     * <p>A dummy byte is inserted at head of the window, just so that the read pointer can move
+     * <p>A dummy value is inserted at head of the window, just so that the read pointer can move
      * one step ahead of the decoded stream.</p>
      *
      * @param bufferSize maximum number of bytes held in lookahead buffer at once
@@ -39,9 +56,10 @@ public class LZSSWindowOperator
     {
         this.bufferSize = bufferSize;
         this.prefixSize = prefixSize;
-        this.window = new SlidingWindow<>(bufferSize + prefixSize);
+        this.window = new int[bufferSize + prefixSize];
 
-        window.insert(null);
+        Arrays.fill(window, BinaryIO.EOF);
+        reset();
     }
 
     /**
@@ -53,6 +71,10 @@ public class LZSSWindowOperator
      * preferably is in the 0.65~0.75 range. Since there will be a maximum of ~4100 elements in the
      * table at any one time, one good choice that meets the above conditions is 6151.
      *
+     * <p>If the initial buffer is shorter than the lookahead buffer (that is, the whole input is
+     * that short), the rest of the buffer is filled with {@link BinaryIO#EOF}, just like when the
+     * end of the input is reached later on.</p>
+     *
      * @param bufferSize maximum number of bytes held in lookahead buffer at once
      * @param prefixSize maximum number of bytes held in prefix at once
      * @param initialBuffer lookahead buffer at beginning of encoding
@@ -61,11 +83,88 @@ public class LZSSWindowOperator
     {
         this.bufferSize = bufferSize;
         this.prefixSize = prefixSize;
-        this.window = new SlidingWindow<>(bufferSize + prefixSize);
+        this.window = new int[bufferSize + prefixSize];
         this.positions = new ErraticHashTable<>(6151);
 
+        Arrays.fill(window, BinaryIO.EOF);
+        reset(initialBuffer);
+    }
+
+    /**
+     * Resets the operator for decoding a new input, to the same state as right after construction
+     * with {@link #LZSSWindowOperator(int, int)}.
+     */
+    public final void reset()
+    {
+        clear();
+        insert(BinaryIO.EOF);
+    }
+
+    /**
+     * Resets the operator for decoding a new input, with the content of the given dictionary in the
+     * prefix, as if it had just been decoded. If the content is longer than the prefix, only its
+     * tail end is used.
+     *
+     * @param dictionary preset dictionary to prime the window with
+     */
+    public void reset(PresetDictionary dictionary)
+    {
+        reset();
+
+        byte[] content = dictionary.content();
+        for (int i = Math.max(content.length - prefixSize, 0); i < content.length; i++)
+            insertAndMove(content[i]);
+    }
+
+    /**
+     * Resets the operator for encoding a new input, to the same state as right after construction
+     * with {@link #LZSSWindowOperator(int, int, byte[])}. The hash table is emptied, or initialised
+     * if the operator was originally constructed for decoding.
+     *
+     * @param initialBuffer lookahead buffer at beginning of encoding
+     */
+    public final void reset(byte[] initialBuffer)
+    {
+        reset(initialBuffer, null);
+    }
+
+    /**
+     * Resets the operator for encoding a new input, with the content of the given dictionary in the
+     * prefix, as if it had just been encoded. Matches are then searched for in the dictionary
+     * content too, as long as it stays in the prefix window. If the content is longer than the
+     * prefix, only its tail end is used.
+     *
+     * @param initialBuffer lookahead buffer at beginning of encoding
+     * @param dictionary preset dictionary to prime the window with, or null for none
+     */
+    public final void reset(byte[] initialBuffer, PresetDictionary dictionary)
+    {
+        if (positions == null)
+            positions = new ErraticHashTable<>(6151);
+        else
+            positions.clear();
+
+        clear();
+        preset = dictionary;
+        presetStart = presetLength = 0;
+
+        if (dictionary != null)
+        {
+            byte[] content = dictionary.content();
+            presetStart = Math.max(content.length - prefixSize, 0);
+            presetLength = content.length - presetStart;
+
+            for (int i = presetStart; i < content.length; i++)
+                insert(content[i] & 0xFF);
+        }
+
         for (byte b : initialBuffer)
-            window.insert(b);
+            insert(b & 0xFF);
+
+        for (int i = initialBuffer.length; i < bufferSize; i++)
+            insert(BinaryIO.EOF);
+
+        cursor += presetLength;
     }
 
     /**
@@ -75,42 +174,40 @@ public class LZSSWindowOperator
      *
      * <p>In case of ties, the match with least distance from buffer is returned. Also, if a
      * complete match is found, the search terminates since there is no point in looking any
-     * further.</p>
+     * further. Matches in the dictionary content, if any, are the most distant ones, so they are
+     * searched last.</p>
      *
      * @return length and offset of longest match, as integer array
      */
     public int[] findLongestMatch()
     {
-        int maxLength = 0, maxOffset = 0;
+        int[] match = new int[]{ 0, 0 };
+
+        if (read(3) == BinaryIO.EOF)
+            return match;
+
+        byte b0 = (byte) read(0), b1 = (byte) read(1), b2 = (byte) read(2);
+
+        for (Object p : positions.get(b0, b1, b2).toArrayReverse())
+            if (tryMatch(cursor - (int) p, match))
+                return match;
 
-        if (window.read(3) != null)
-            for (Object p : positions.get(
-                    window.read(0),
-                    window.read(1),
-                    window.read(2)).toArrayReverse())
+        if (preset != null)
+            for (int p = preset.lastMatch(b0, b1, b2); p >= presetStart; p = preset.previousMatch(p))
             {
-                int length = 0, offset = window.cursor() - (int) p;
-
-                for (; length < bufferSize; length++)
-                    if (window.read(length) == null
-                            || !window.read(length - offset).equals(window.read(length)))
-                        break;
-
-                if (maxLength < length)
-                {
-                    maxLength = length;
-                    maxOffset = offset;
-                }
-                if (maxLength == bufferSize)
+                int offset = cursor - (p - presetStart);
+
+                if (offset > prefixSize || tryMatch(offset, match))
                     break;
             }
 
-        return new int[]{ maxLength, maxOffset };
+        return match;
     }
 
     /**
      * Moves the window forward one step, inserting the given byte to the head of the buffer and
-     * dumping the byte at the other end, if the prefix is full.
+     * dumping the byte at the other end, if the prefix is full. The byte is given as returned by
+     * {@link BinaryIO#readByteOrEOF()}, so {@link BinaryIO#EOF} marks the end of the input.
      *
      * <p>This method also handles the recording of positions of new three-byte sequences as they
      * first enter the prefix window, as well as their deletion when they eventually drop out from
@@ -120,40 +217,42 @@ public class LZSSWindowOperator
      * sure the correct value is deleted, when virtually any byte sequence may associate to it?
      * However, this is not an issue, because the byte sequences are encountered in the exact same
      * order at both ends of the prefix window; and, in particular, the hash table used for holding
-     * the values stores them in sequential order in case of hash collisions.</p>
+     * the values stores them in sequential order in case of hash collisions. Dictionary content was
+     * never memorised in the first place, so nothing is deleted when it drops out.</p>
      *
-     * @param b byte to insert at head of window
+     * @param b unsigned byte value, or {@link BinaryIO#EOF}, to insert at head of window
      */
-    public void slideForward(Byte b)
+    public void slideForward(int b)
     {
-        Byte out = window.insert(b);
+        int out = insert(b);
 
-        if (out != null)
+        if (out != BinaryIO.EOF && cursor - prefixSize >= presetLength)
             positions.get(
-                    out,
-                    window.read(-prefixSize + 1),
-                    window.read(-prefixSize + 2)
+                    (byte) out,
+                    (byte) read(-prefixSize + 1),
+                    (byte) read(-prefixSize + 2)
             ).removeFirst();
 
-        if (window.read(2) != null)
+        if (read(2) != BinaryIO.EOF)
             positions.put(
-                    window.cursor(),
-                    window.read(0),
-                    window.read(1),
-                    window.read(2)
+                    cursor,
+                    (byte) read(0),
+                    (byte) read(1),
+                    (byte) read(2)
             );
 
-        window.move();
+        cursor++;
     }
 
     /**
      * Reads, but does not remove, the byte value coming out next from the lookahead buffer.
      *
-     * @return next byte to come out from the lookahead buffer
+     * @return next unsigned byte value to come out from the lookahead buffer, or {@link
+     *         BinaryIO#EOF} if the input has run out
      */
-    public Byte peek()
+    public int peek()
     {
-        return window.read();
+        return read(0);
     }
 
     /**
@@ -161,10 +260,10 @@ public class LZSSWindowOperator
      *
      * @param b byte to insert at head of the window
      */
-    public void insertAndMove(Byte b)
+    public void insertAndMove(byte b)
     {
-        window.insert(b);
-        window.move();
+        insert(b & 0xFF);
+        cursor++;
     }
 
     /**
@@ -173,12 +272,59 @@ public class LZSSWindowOperator
      *
      * @param offset number of positions to jump over from current cursor position
      * @return byte value read and copied at given offset
+     * @throws IllegalArgumentException if the offset reaches past the start of the decoded data
      */
-    public Byte copyBackReference(int offset)
+    public byte copyBackReference(int offset)
     {
-        Byte b = window.read(-offset);
+        if (offset >= cursor)
+            throw new IllegalArgumentException("Invalid back reference");
+
+        byte b = (byte) read(-offset);
         insertAndMove(b);
 
         return b;
     }
+
+
+    /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
+
+
+    private boolean tryMatch(int offset, int[] match)
+    {
+        int length = 0;
+
+        for (; length < bufferSize; length++)
+            if (read(length) == BinaryIO.EOF || read(length - offset) != read(length))
+                break;
+
+        if (match[0] < length)
+        {
+            match[0] = length;
+            match[1] = offset;
+        }
+
+        return (match[0] == bufferSize);
+    }
+
+    private int insert(int b)
+    {
+        int i = ++head % window.length;
+        int out = window[i];
+        window[i] = b;
+
+        return out;
+    }
+
+    private int read(int offset)
+    {
+        return window[(cursor + offset) % window.length];
+    }
+
+    private void clear()
+    {
+        Arrays.fill(window, 0, Math.min(head + 1, window.length), BinaryIO.EOF);
+
+        cursor = 0;
+        head = -1;
+    }
 }
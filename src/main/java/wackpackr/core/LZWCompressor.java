@@ -2,29 +2,111 @@ package wackpackr.core;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import wackpackr.io.BinaryIO;
 import wackpackr.util.ByteString;
 
 /**
  * Compression and decompression with a simplistic implementation of the LZW algorithm.
  *
- * <p>Unlike in the other compressor classes, here it made no sense to decouple the encoding and
- * decoding operations to helper methods. Hence the fairly bloated main methods.</p>
+ * <p>Unlike in the other compressor classes, here it made no sense to split the encoding and
+ * decoding operations further into helper methods. Hence the fairly bloated private methods that
+ * the public ones delegate to.</p>
+ *
+ * <p>Beside the native format, a few legacy LZW variants can be selected at construction (see
+ * {@link LZWMode}). These are handled by {@link LZWInteropCodec}.</p>
  *
  * @author Juho Juurinen
  */
 public class LZWCompressor implements Compressor
 {
     private static final long LZW_TAG = 0x04092009;
+    private static final long MAX_OVERHEAD = 4 + 2 + 4 + 1;
+    private final LZWMode mode;
+    private final boolean storesSize;
+    private final PresetDictionary dictionary;
+
+    /**
+     * Constructs a new compressor that uses the native LZW format.
+     */
+    public LZWCompressor()
+    {
+        this(LZWMode.NATIVE);
+    }
+
+    /**
+     * Constructs a new compressor that uses the given LZW format.
+     *
+     * @param mode LZW format to compress into and decompress from
+     */
+    public LZWCompressor(LZWMode mode)
+    {
+        this(mode, false, null);
+    }
+
+    /**
+     * Constructs a new compressor that uses the native LZW format, and stores the uncompressed size
+     * in the header of compressed files if so requested (see {@link FormatHeader}). Files with or
+     * without the size can be decompressed either way.
+     *
+     * @param storesSize whether to store the uncompressed size
+     */
+    public LZWCompressor(boolean storesSize)
+    {
+        this(LZWMode.NATIVE, storesSize, null);
+    }
+
+    /**
+     * Constructs a new compressor that uses the native LZW format, seeds the dictionary with the
+     * phrases in the content of the given dictionary (see {@link PresetDictionary}), and does not
+     * store the uncompressed size.
+     *
+     * @param dictionary preset dictionary to compress and decompress with
+     */
+    public LZWCompressor(PresetDictionary dictionary)
+    {
+        this(false, dictionary);
+    }
+
+    /**
+     * Constructs a new compressor that uses the native LZW format, seeds the dictionary with the
+     * phrases in the content of the given dictionary, if any, and stores the uncompressed size if
+     * so requested. Files compressed with the dictionary can only be decompressed with the same
+     * dictionary, while files compressed without one can be decompressed either way.
+     *
+     * @param storesSize whether to store the uncompressed size
+     * @param dictionary preset dictionary to compress and decompress with, or null for none
+     */
+    public LZWCompressor(boolean storesSize, PresetDictionary dictionary)
+    {
+        this(LZWMode.NATIVE, storesSize, dictionary);
+    }
+
+    private LZWCompressor(LZWMode mode, boolean storesSize, PresetDictionary dictionary)
+    {
+        if (mode == null)
+            throw new NullPointerException();
+
+        this.mode = mode;
+        this.storesSize = storesSize;
+        this.dictionary = dictionary;
+    }
 
     /**
      * Compresses given file using dynamic (variable bit size) LZW encoding.
      *
      * <p>Writes a 32-bit identifier, indicating the used compression technique, to the beginning
-     * of the compressed binary, followed by the actual data in encoded form. Ends with a pseudo-
-     * EoF marker (zero index), and a few 0s to ensure that the EoF bit sequence is not partially
+     * of the compressed binary (followed by the uncompressed size and the dictionary id, if so
+     * chosen at construction), and then the actual data in encoded form. Ends with a pseudo-EoF
+     * marker (zero index), and a few 0s to ensure that the EoF bit sequence is not partially
      * cut off.</p>
      *
+     * <p>If the encoded data turns out larger than the data itself, the data is stored as-is after
+     * the identifier instead (see {@link FormatHeader#encodeOrStore(BinaryIO, ByteBuffer, long,
+     * boolean, FormatHeader.Encoding)}).</p>
+     *
+     * <p>If a legacy format was chosen at construction, the output follows that format instead.</p>
+     *
      * @param bytes file to compress as byte array
      * @return compressed file as byte array
      * @throws IOException if there's an error writing to the output stream
@@ -32,34 +114,32 @@ public class LZWCompressor implements Compressor
     @Override
     public byte[] compress(byte[] bytes) throws IOException
     {
-        try (BinaryIO io = new BinaryIO())
-        {
-            io.write32Bits(LZW_TAG);
+        if (mode != LZWMode.NATIVE)
+            return new LZWInteropCodec(mode).encode(bytes);
 
-            LZWDictionary dict = new LZWDictionary();
-            int bitsize = 9, index = -1, newIndex;
-
-            for (byte b : bytes)
-            {
-                newIndex = dict.get(index, b);
-
-                if (newIndex > 0)
-                    index = newIndex;
-                else
-                {
-                    io.writeBits(index, bitsize);
-                    bitsize = dict.put(index, b);
-                    index = dict.get(-1, b);
-                }
-                if (dict.isFull())
-                    dict.reset();
-            }
-            io
-                    .writeBits(index, bitsize)
-                    .write32Bits(0);  // EoF marker
+        return newCompressionContext().compress(bytes);
+    }
 
-            return io.getBytesOut();
+    /**
+     * Compresses the remaining bytes of the given source buffer into the given destination buffer,
+     * in the exact same format as {@link #compress(byte[])}. In the native format, the buffers are
+     * read and written directly; the legacy formats go through intermediate arrays.
+     *
+     * @param src data to compress
+     * @param dst buffer to write compressed data into
+     * @throws java.nio.BufferOverflowException if the destination buffer runs out of space
+     * @throws IOException if there's an error writing to the output stream
+     */
+    @Override
+    public void compress(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        if (mode != LZWMode.NATIVE)
+        {
+            Compressor.super.compress(src, dst);
+            return;
         }
+
+        newCompressionContext().compress(src, dst);
     }
 
     /**
@@ -72,60 +152,259 @@ public class LZWCompressor implements Compressor
      * encountered. Throws {@code EOFException} if no such marker is seen before reaching the end of
      * the input stream.</p>
      *
+     * <p>If a legacy format was chosen at construction, the input is expected in that format
+     * instead; see {@link LZWInteropCodec#decode(byte[])}.</p>
+     *
      * @param bytes file to decompress as byte array
      * @return decompressed file as byte array
-     * @throws IllegalArgumentException if file does not have the correct identifier in its header
+     * @throws IllegalArgumentException if file does not have the correct identifier in its header,
+     *         or was compressed with a dictionary other than the one given at construction
      * @throws EOFException if no pseudo-EoF marker is present in the input stream
      * @throws IOException if there's an error writing to or reading from the I/O streams
      */
     @Override
     public byte[] decompress(byte[] bytes) throws IOException
     {
-        try (BinaryIO io = new BinaryIO(bytes))
+        if (mode != LZWMode.NATIVE)
+            return new LZWInteropCodec(mode).decode(bytes);
+
+        return newDecompressionContext().decompress(bytes);
+    }
+
+    /**
+     * Decompresses the remaining bytes of the given source buffer into the given destination
+     * buffer. In the native format, the buffers are read and written directly. Otherwise works as
+     * {@link #decompress(byte[])}.
+     *
+     * @param src data to decompress
+     * @param dst buffer to write decompressed data into
+     * @throws java.nio.BufferOverflowException if the destination buffer runs out of space
+     * @throws IllegalArgumentException if data does not have the correct identifier in its header
+     * @throws EOFException if no pseudo-EoF marker is present in the input stream
+     * @throws IOException if there's an error writing to or reading from the I/O streams
+     */
+    @Override
+    public void decompress(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        if (mode != LZWMode.NATIVE)
+        {
+            Compressor.super.decompress(src, dst);
+            return;
+        }
+
+        newDecompressionContext().decompress(src, dst);
+    }
+
+    /**
+     * Returns the worst-case size of LZW compressed data. Every code stands for at least one byte,
+     * and no code is wider than 16 bits, so the data part is at most twice the input; on top of that
+     * comes the header and the pseudo-EoF marker. The legacy variants have their own, similar
+     * bounds.
+     *
+     * @param length length of uncompressed data in bytes
+     * @return worst-case length of compressed data in bytes
+     * @throws IllegalArgumentException if length is negative, or the bound does not fit in an int
+     */
+    @Override
+    public int maxCompressedSize(int length)
+    {
+        long size = (mode == LZWMode.NATIVE)
+                ? 2L * length + MAX_OVERHEAD
+                        + (storesSize ? FormatHeader.MAX_SIZE_BYTES : 0)
+                        + (dictionary != null ? FormatHeader.MAX_DICTIONARY_BYTES : 0)
+                : LZWInteropCodec.maxEncodedSize(length);
+
+        if (length < 0 || size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid input length: " + length);
+
+        return (int) size;
+    }
+
+    /**
+     * Returns a new compression context, that holds on to the dictionary and resets it for each
+     * input. Legacy formats get a context with no working memory of its own.
+     *
+     * @return new compression context
+     */
+    @Override
+    public CompressionContext newCompressionContext()
+    {
+        return (mode == LZWMode.NATIVE)
+                ? new Encoder()
+                : Compressor.super.newCompressionContext();
+    }
+
+    /**
+     * Returns a new decompression context, that holds on to the dictionary and resets it for each
+     * input. Legacy formats get a context with no working memory of its own.
+     *
+     * @return new decompression context
+     */
+    @Override
+    public DecompressionContext newDecompressionContext()
+    {
+        return (mode == LZWMode.NATIVE)
+                ? new Decoder()
+                : Compressor.super.newDecompressionContext();
+    }
+
+    @Override
+    public String getName()
+    {
+        return mode.getName();
+    }
+
+
+    /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
+
+
+    private class Encoder extends CompressionContext
+    {
+        private final LZWDictionary dict = new LZWDictionary();
+
+        Encoder()
+        {
+            super(LZWCompressor.this);
+
+            if (dictionary != null)
+                dict.seed(dictionary.content());
+        }
+
+        @Override
+        protected void encode(ByteBuffer src, BinaryIO io) throws IOException
         {
-            if (io.read32Bits() != LZW_TAG)
-                throw new IllegalArgumentException("Not a LZW compressed file");
+            FormatHeader.encodeOrStore(io, src, LZW_TAG, storesSize,
+                    trial -> LZWCompressor.this.compress(trial, dict));
+        }
+    }
 
-            LZWDictionary dict = new LZWDictionary();
-            ByteString x, y;
+    private class Decoder extends DecompressionContext
+    {
+        private final LZWDictionary dict = new LZWDictionary();
+        private LZWDictionary seededDict;
+        private byte[] buffer = new byte[64];
 
-            int bitsize = 9;
-            int index = io.readBits(bitsize);
-            int newIndex = io.readBits(bitsize);
-            io.writeBytes(dict.get(index).getBytes());
+        Decoder()
+        {
+            super(LZWCompressor.this);
+        }
+
+        @Override
+        protected void decode(BinaryIO io) throws IOException
+        {
+            FormatHeader header = FormatHeader.read(
+                    io,
+                    LZW_TAG,
+                    "Not a LZW compressed file",
+                    dictionary
+            );
 
-            while (newIndex != 0)
+            if (header.isStored())
             {
-                x = dict.get(index).copy();
-                y = dict.get(newIndex);
-
-                if (y != null)
-                {
-                    bitsize = dict.put(x.append(y.byteAt(0)));
-                    io.writeBytes(y.getBytes());
-                }
-                else
-                {
-                    bitsize = dict.put(x.append(x.byteAt(0)));
-                    io.writeBytes(x.getBytes());
-                }
-                if (dict.isFull())
-                {
-                    dict.reset();
-                    bitsize = 9;
-                }
+                header.copyStored(io);
+                return;
+            }
 
+            if (header.usesDictionary() && seededDict == null)
+            {
+                seededDict = new LZWDictionary();
+                seededDict.seed(dictionary.content());
+            }
+
+            buffer = LZWCompressor.this.decompress(
+                    io,
+                    header.usesDictionary() ? seededDict : dict,
+                    buffer
+            );
+            header.verify(io);
+        }
+    }
+
+    private void compress(BinaryIO io, LZWDictionary dict) throws IOException
+    {
+        FormatHeader.write(io, LZW_TAG, storesSize, dictionary);
+        dict.reset();
+        int bitsize = dict.bitsize(), index = -1, newIndex;
+
+        for (int i = io.readByteOrEOF(); i != BinaryIO.EOF; i = io.readByteOrEOF())
+        {
+            byte b = (byte) i;
+            newIndex = dict.get(index, b);
+
+            if (newIndex > 0)
                 index = newIndex;
-                newIndex = io.readBits(bitsize);
+            else
+            {
+                io.writeBits(index, bitsize);
+                bitsize = dict.put(index, b);
+                index = dict.get(-1, b);
+            }
+            if (dict.isFull())
+                dict.reset();
+        }
+        io
+                .writeBits(index, bitsize)
+                .write32Bits(0);  // EoF marker
+    }
+
+    private byte[] decompress(BinaryIO io, LZWDictionary dict, byte[] buffer) throws IOException
+    {
+        dict.reset();
+
+        ByteString x, y;
+
+        int bitsize = dict.bitsize();
+        int index = io.readBits(bitsize);
+        int newIndex = io.readBits(decodingBitsize(dict));
+        buffer = write(dict.get(index), buffer, io);
+
+        while (newIndex != 0)
+        {
+            x = dict.get(index).copy();
+            y = dict.get(newIndex);
+
+            if (y != null)
+            {
+                bitsize = dict.put(x.append(y.byteAt(0)));
+                buffer = write(y, buffer, io);
+            }
+            else
+            {
+                bitsize = dict.put(x.append(x.byteAt(0)));
+                buffer = write(x, buffer, io);
+            }
+            if (dict.isFull())
+            {
+                dict.reset();
+                bitsize = decodingBitsize(dict);
             }
 
-            return io.getBytesOut();
+            index = newIndex;
+            newIndex = io.readBits(bitsize);
         }
+
+        return buffer;
     }
 
-    @Override
-    public String getName()
+    private static int decodingBitsize(LZWDictionary dict)
     {
-        return "LZW";
+        int bitsize = dict.bitsize();
+
+        return (dict.size() < 1 << bitsize)
+                ? bitsize
+                : bitsize + 1;
+    }
+
+    private static byte[] write(ByteString bs, byte[] buffer, BinaryIO io) throws IOException
+    {
+        int n = bs.size();
+
+        if (buffer.length < n)
+            buffer = new byte[Math.max(n, buffer.length << 1)];
+
+        bs.getBytes(0, n, buffer, 0);
+        io.writeBytes(buffer, 0, n);
+
+        return buffer;
     }
 }
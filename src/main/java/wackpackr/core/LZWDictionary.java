@@ -1,5 +1,6 @@
 package wackpackr.core;
 
+import java.util.Arrays;
 import wackpackr.util.ByteString;
 import wackpackr.util.LZWNode;
 
@@ -33,6 +34,10 @@ import wackpackr.util.LZWNode;
  * whether encoding or decoding, monitoring dictionary size and resetting it is delegated to the
  * encoder/decoder.</p>
  *
+ * <p>A dictionary can also be seeded with the phrases found in some typical content (see {@link
+ * PresetDictionary}), in which case resetting restores the seeded state instead of the initial
+ * one. The encoder and decoder must of course be seeded with the same content.</p>
+ *
  * @author Juho Juurinen
  */
 public class LZWDictionary
@@ -45,6 +50,8 @@ public class LZWDictionary
     private int index;
     private ByteString[] dict;
     private LZWNode[] trie;
+    private int[] prefixes;
+    private int seedIndex = 257, seedBitsize = 9;
 
     /**
      * Constructs and initialises a new dictionary for LZW encoding or decoding.
@@ -65,6 +72,26 @@ public class LZWDictionary
         return (index == MAX_DICTIONARY_SIZE);
     }
 
+    /**
+     * Returns the number of indexes taken in the dictionary, which is also the next free index.
+     *
+     * @return number of indexes taken
+     */
+    public int size()
+    {
+        return index;
+    }
+
+    /**
+     * Returns the current bit size, as last returned by either of the {@code put} methods.
+     *
+     * @return current bit size
+     */
+    public int bitsize()
+    {
+        return bitsize;
+    }
+
     /**
      * Returns the byte sequence associated with the given index.
      *
@@ -131,6 +158,9 @@ public class LZWDictionary
     {
         LZWNode node = new LZWNode(index, value);
 
+        if (prefixes != null)
+            prefixes[index] = prefix;
+
         trie[prefix].insert(node);
         trie[index++] = node;
 
@@ -143,24 +173,87 @@ public class LZWDictionary
         return bitsize;
     }
 
+    /**
+     * Seeds the dictionary with the given content, by parsing it as the encoder would and putting
+     * all the phrases so found into the dictionary, both for encoding and decoding purposes. From
+     * then on, {@link #reset()} returns the dictionary to this seeded state. Any earlier seed is
+     * discarded.
+     *
+     * @param content typical content to take phrases from
+     */
+    public void seed(byte[] content)
+    {
+        prefixes = null;
+        seedIndex = 257;
+        seedBitsize = 9;
+        reset();
+
+        prefixes = new int[MAX_DICTIONARY_SIZE];
+        int prefix = -1;
+
+        for (int i = 0; i < content.length && !isFull(); i++)
+        {
+            byte b = content[i];
+            int next = get(prefix, b);
+
+            if (next > 0)
+                prefix = next;
+            else
+            {
+                dict[index] = dict[prefix].copy().append(b);
+                put(prefix, b);
+                prefix = get(-1, b);
+            }
+        }
+
+        seedIndex = index;
+        seedBitsize = bitsize;
+    }
+
     /**
      * Flushes the dictionary to its initial state, with the zero index reserved for the pseudo-EoF
-     * marker, and all possible one-byte sequences in the next 256 indexes, in ascending order.
+     * marker, and all possible one-byte sequences in the next 256 indexes, in ascending order; or to
+     * the seeded state, if {@link #seed(byte[])} has been called.
+     *
+     * <p>The arrays and the one-byte entries are created only once. Later resets clear just the
+     * entries added since the previous reset, so that a dictionary can be cheaply reused for many
+     * inputs, or many rounds within one input.</p>
      */
     public final void reset()
     {
-        dict = new ByteString[MAX_DICTIONARY_SIZE];
-        trie = new LZWNode[MAX_DICTIONARY_SIZE];
+        if (dict == null)
+        {
+            dict = new ByteString[MAX_DICTIONARY_SIZE];
+            trie = new LZWNode[MAX_DICTIONARY_SIZE];
+
+            for (index = 1; index < 257; index++)
+            {
+                byte b = (byte) (index - 129);
 
-        for (index = 1; index < 257; index++)
+                dict[index] = new ByteString(b);
+                trie[index] = new LZWNode(index, b);
+            }
+        }
+        else if (prefixes == null)
+        {
+            Arrays.fill(dict, 257, index, null);
+            Arrays.fill(trie, 257, index, null);
+
+            for (int i = 1; i < 257; i++)
+                trie[i].removeChildren();
+        }
+        else
         {
-            byte b = (byte) (index - 129);
+            for (int i = index - 1; i >= seedIndex; i--)
+                if (trie[i] != null)
+                    trie[prefixes[i]].removeChild(trie[i]);
 
-            dict[index] = new ByteString(b);
-            trie[index] = new LZWNode(index, b);
+            Arrays.fill(dict, seedIndex, index, null);
+            Arrays.fill(trie, seedIndex, index, null);
         }
 
-        bitsize = 9;
+        index = seedIndex;
+        bitsize = seedBitsize;
         dictMax = 1 << bitsize;
     }
 }
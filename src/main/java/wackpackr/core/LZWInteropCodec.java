@@ -0,0 +1,442 @@
+package wackpackr.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import wackpackr.io.BinaryIO;
+import wackpackr.io.LSBBinaryIO;
+import wackpackr.util.LZWNode;
+
+/**
+ * Helper class that handles encoding and decoding of the legacy LZW variants listed in {@link
+ * LZWMode}, on behalf of {@link LZWCompressor}.
+ *
+ * <p>All variants share the same core: a dictionary whose first entries are the single "root"
+ * symbols, possibly followed by reserved CLEAR and EOI codes, with new entries appended from there
+ * on. The code width starts one bit above the root symbol size and grows as the dictionary grows,
+ * until a maximum width is reached. What differs is captured in a handful of parameters, which are
+ * set up per call according to the given mode.</p>
+ *
+ * <p>As in {@link LZWDictionary}, the encoder uses a prefix tree of {@link LZWNode}s, so that each
+ * entry is a "prefix index—last byte" pair. The decoder uses plain primitive arrays instead, and
+ * unwinds each code backwards into a stack, which is then written out in one go.</p>
+ *
+ * <p>When the dictionary is full, the encoder always emits a CLEAR code and starts over. The
+ * decoder also accepts streams that keep using a full dictionary without clearing it.</p>
+ *
+ * @author Juho Juurinen
+ */
+public class LZWInteropCodec
+{
+    private static final int COMPRESS_MAGIC = 0x1F9D;
+    private static final int COMPRESS_BLOCK_MODE = 0x80;
+    private static final int COMPRESS_MAX_BITS = 16;
+    private static final int GIF_MAX_BITS = 12;
+    private static final int GIF_SUB_BLOCK_SIZE = 255;
+
+    private final LZWMode mode;
+    private int roots, clearCode, eoiCode, firstFree, initBits, maxBits, earlyChange;
+    private boolean padsGroups;
+    private long bitsOut;
+
+    private LSBBinaryIO lsb;
+    private BinaryIO msb;
+
+    /**
+     * Constructs a new codec for the given LZW variant.
+     *
+     * @param mode LZW variant to encode or decode
+     * @throws IllegalArgumentException if the given mode is not a legacy variant
+     */
+    public LZWInteropCodec(LZWMode mode)
+    {
+        if (mode == null || mode == LZWMode.NATIVE)
+            throw new IllegalArgumentException("Not a legacy LZW variant: " + mode);
+
+        this.mode = mode;
+    }
+
+    /**
+     * Encodes the given data with the LZW variant of this codec, including whatever header or
+     * framing the variant calls for.
+     *
+     * <p>In GIF mode, the input bytes are treated as color indexes, and the minimum code size is
+     * chosen so that the highest index fits.</p>
+     *
+     * @param bytes data to encode as byte array
+     * @return encoded data as byte array
+     * @throws IOException if there's an error writing to the output stream
+     */
+    public byte[] encode(byte[] bytes) throws IOException
+    {
+        try (LSBBinaryIO lsbOut = new LSBBinaryIO(); BinaryIO msbOut = new BinaryIO())
+        {
+            lsb = lsbOut;
+            msb = msbOut;
+
+            switch (mode)
+            {
+                case UNIX_COMPRESS:
+                    setUpUnixCompress(COMPRESS_MAX_BITS, true);
+                    lsb
+                            .writeBits(COMPRESS_MAGIC >> 8, 8)
+                            .writeBits(COMPRESS_MAGIC & 0xFF, 8)
+                            .writeBits(COMPRESS_BLOCK_MODE | maxBits, 8);
+                    break;
+                case GIF:
+                    setUpGIF(minimumCodeSize(bytes));
+                    break;
+                default:
+                    setUpTIFF();
+            }
+
+            encodeCodes(bytes);
+
+            return (mode == LZWMode.GIF)
+                    ? toSubBlocks(roots, lsb.getBytesOut())
+                    : (mode == LZWMode.TIFF)
+                            ? msb.getBytesOut()
+                            : lsb.getBytesOut();
+        }
+    }
+
+    /**
+     * Returns an upper bound for the size of data encoded with any of the legacy variants. Codes are
+     * at most 16 bits wide and stand for at least one byte each; the rest of the bound covers the
+     * CLEAR codes, the padding of .Z code groups, and the GIF sub-block framing.
+     *
+     * @param length length of data to encode in bytes
+     * @return worst-case length of encoded data in bytes
+     */
+    public static long maxEncodedSize(int length)
+    {
+        return 2L * length + length / 64 + 256;
+    }
+
+    /**
+     * Decodes the given data with the LZW variant of this codec.
+     *
+     * <p>Decoding stops at the EOI code, or at the end of the input if the variant has no such code
+     * (or if the code is missing from a GIF stream). A TIFF stream without EOI results in {@code
+     * EOFException}.</p>
+     *
+     * @param bytes data to decode as byte array
+     * @return decoded data as byte array
+     * @throws IllegalArgumentException if the header is invalid, or if the data contains a code
+     *         that cannot possibly be in the dictionary
+     * @throws EOFException if a TIFF stream ends before its EOI code
+     * @throws IOException if there's an error writing to or reading from the I/O streams
+     */
+    public byte[] decode(byte[] bytes) throws IOException
+    {
+        switch (mode)
+        {
+            case UNIX_COMPRESS:
+                if (bytes.length < 3 || ((bytes[0] & 0xFF) << 8 | bytes[1] & 0xFF) != COMPRESS_MAGIC)
+                    throw new IllegalArgumentException("Not a compress (.Z) file");
+
+                int bits = bytes[2] & 0x1F;
+                if (bits < 9 || bits > COMPRESS_MAX_BITS)
+                    throw new IllegalArgumentException("Unsupported maximum code size: " + bits);
+
+                setUpUnixCompress(bits, (bytes[2] & COMPRESS_BLOCK_MODE) != 0);
+                lsb = new LSBBinaryIO(bytes);
+                lsb.skipBits(24);
+                break;
+            case GIF:
+                if (bytes.length < 1 || bytes[0] < 2 || bytes[0] > 8)
+                    throw new IllegalArgumentException("Not GIF image data");
+
+                setUpGIF(bytes[0]);
+                lsb = new LSBBinaryIO(fromSubBlocks(bytes));
+                break;
+            default:
+                setUpTIFF();
+                lsb = null;
+        }
+
+        try (BinaryIO io = (lsb == null) ? new BinaryIO(bytes) : new BinaryIO())
+        {
+            msb = io;
+            decodeCodes(io);
+
+            return io.getBytesOut();
+        }
+    }
+
+
+    /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
+
+
+    private void setUpUnixCompress(int bits, boolean blockMode)
+    {
+        roots = 256;
+        clearCode = blockMode ? 256 : -1;
+        eoiCode = -1;
+        firstFree = blockMode ? 257 : 256;
+        initBits = 9;
+        maxBits = bits;
+        earlyChange = 0;
+        padsGroups = true;
+    }
+
+    private void setUpGIF(int minCodeSize)
+    {
+        roots = 1 << minCodeSize;
+        clearCode = roots;
+        eoiCode = roots + 1;
+        firstFree = roots + 2;
+        initBits = minCodeSize + 1;
+        maxBits = GIF_MAX_BITS;
+        earlyChange = 0;
+        padsGroups = false;
+    }
+
+    private void setUpTIFF()
+    {
+        roots = 256;
+        clearCode = 256;
+        eoiCode = 257;
+        firstFree = 258;
+        initBits = 9;
+        maxBits = GIF_MAX_BITS;
+        earlyChange = 1;
+        padsGroups = false;
+    }
+
+    private void encodeCodes(byte[] bytes) throws IOException
+    {
+        LZWNode[] trie = new LZWNode[1 << maxBits];
+        int limit = (1 << maxBits) - 2 * earlyChange;
+        int width = initBits, free = firstFree, prefix = -1;
+        long count = 0;
+
+        bitsOut = 0;
+        resetTrie(trie);
+        if (mode != LZWMode.UNIX_COMPRESS)
+            writeCode(clearCode, width);
+
+        for (byte b : bytes)
+        {
+            if (prefix < 0)
+            {
+                prefix = b & 0xFF;
+                continue;
+            }
+
+            LZWNode node = trie[prefix].get(b);
+            if (node != null)
+            {
+                prefix = node.index();
+                continue;
+            }
+
+            while (free + earlyChange > (1 << width) && width < maxBits)
+            {
+                count = pad(count, width);
+                width++;
+            }
+            writeCode(prefix, width);
+            count++;
+
+            if (free < limit)
+            {
+                trie[free] = new LZWNode(free, b);
+                trie[prefix].insert(trie[free]);
+                free++;
+            }
+            else if (clearCode >= 0)
+            {
+                writeCode(clearCode, width);
+                pad(count + 1, width);
+
+                resetTrie(trie);
+                width = initBits;
+                free = firstFree;
+                count = 0;
+            }
+
+            prefix = b & 0xFF;
+        }
+
+        if (prefix >= 0)
+        {
+            while (free + earlyChange > (1 << width) && width < maxBits)
+                width++;
+            writeCode(prefix, width);
+        }
+        if (eoiCode >= 0)
+        {
+            if (prefix >= 0 && free < limit && ++free + earlyChange > (1 << width) && width < maxBits)
+                width++;
+            writeCode(eoiCode, width);
+        }
+        if (mode == LZWMode.TIFF && bitsOut % 8 != 0)
+            msb.writeBits(0, 8 - (int) (bitsOut % 8));
+    }
+
+    private void decodeCodes(BinaryIO io) throws IOException
+    {
+        int size = 1 << maxBits;
+        int[] prefixes = new int[size];
+        byte[] suffixes = new byte[size];
+        byte[] stack = new byte[size];
+
+        for (int i = 0; i < roots; i++)
+            suffixes[i] = (byte) i;
+
+        int width = initBits, free = firstFree, previous = -1;
+        long count = 0;
+        byte first = 0;
+
+        while (lsb == null || lsb.remaining() >= width)
+        {
+            int code = readCode(width);
+            count++;
+
+            if (code == clearCode)
+            {
+                skip(count, width);
+                width = initBits;
+                free = firstFree;
+                previous = -1;
+                count = 0;
+                continue;
+            }
+            if (code == eoiCode)
+                break;
+
+            if (previous < 0)
+            {
+                if (code >= roots)
+                    throw new IllegalArgumentException("Corrupt LZW stream");
+
+                first = (byte) code;
+                io.writeByte(first);
+                previous = code;
+                continue;
+            }
+
+            int c = code, sp = size;
+            if (code >= free)
+            {
+                if (code > free || free == size)
+                    throw new IllegalArgumentException("Corrupt LZW stream");
+
+                stack[--sp] = first;
+                c = previous;
+            }
+            while (c >= roots)
+            {
+                stack[--sp] = suffixes[c];
+                c = prefixes[c];
+            }
+            first = (byte) c;
+            stack[--sp] = first;
+
+            io.writeBytes(stack, sp, size - sp);
+
+            if (free < size)
+            {
+                prefixes[free] = previous;
+                suffixes[free] = first;
+                free++;
+            }
+            previous = code;
+
+            if (free + earlyChange >= (1 << width) && width < maxBits)
+            {
+                skip(count, width);
+                width++;
+                count = 0;
+            }
+        }
+    }
+
+    private void resetTrie(LZWNode[] trie)
+    {
+        for (int i = 0; i < roots; i++)
+            trie[i] = new LZWNode(i, (byte) i);
+    }
+
+    private int readCode(int width) throws IOException
+    {
+        return (lsb == null)
+                ? msb.readBits(width)
+                : lsb.readBits(width);
+    }
+
+    private void writeCode(int code, int width) throws IOException
+    {
+        bitsOut += width;
+
+        if (mode == LZWMode.TIFF)
+            msb.writeBits(code, width);
+        else
+            lsb.writeBits(code, width);
+    }
+
+    private long pad(long count, int width)
+    {
+        if (padsGroups)
+            for (; count % 8 != 0; count++)
+                lsb.writeBits(0, width);
+
+        return 0;
+    }
+
+    private void skip(long count, int width)
+    {
+        if (padsGroups && count % 8 != 0)
+            lsb.skipBits((8 - count % 8) * width);
+    }
+
+    private static int minimumCodeSize(byte[] bytes)
+    {
+        int max = 0;
+
+        for (byte b : bytes)
+            max |= b & 0xFF;
+
+        return Math.max(2, 32 - Integer.numberOfLeadingZeros(max));
+    }
+
+    private static byte[] toSubBlocks(int roots, byte[] data)
+    {
+        int blocks = (data.length + GIF_SUB_BLOCK_SIZE - 1) / GIF_SUB_BLOCK_SIZE;
+        byte[] bs = new byte[data.length + blocks + 2];
+        int pos = 0;
+
+        bs[pos++] = (byte) Integer.numberOfTrailingZeros(roots);
+        for (int i = 0; i < data.length; i += GIF_SUB_BLOCK_SIZE)
+        {
+            int n = Math.min(GIF_SUB_BLOCK_SIZE, data.length - i);
+
+            bs[pos++] = (byte) n;
+            System.arraycopy(data, i, bs, pos, n);
+            pos += n;
+        }
+        bs[pos] = 0;
+
+        return bs;
+    }
+
+    private static byte[] fromSubBlocks(byte[] bytes)
+    {
+        byte[] data = new byte[bytes.length];
+        int pos = 1, size = 0;
+
+        while (pos < bytes.length && bytes[pos] != 0)
+        {
+            int n = Math.min(bytes[pos] & 0xFF, bytes.length - pos - 1);
+
+            System.arraycopy(bytes, pos + 1, data, size, n);
+            size += n;
+            pos += n + 1;
+        }
+
+        byte[] bs = new byte[size];
+        System.arraycopy(data, 0, bs, 0, size);
+
+        return bs;
+    }
+}
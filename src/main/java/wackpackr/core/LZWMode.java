@@ -0,0 +1,57 @@
+package wackpackr.core;
+
+/**
+ * Bit stream layouts understood by {@link LZWCompressor}. Beside the application's own format, a
+ * few widespread legacy variants of LZW are supported, so that files produced by other tools can be
+ * decoded in-process (and, for testing purposes, also produced).
+ *
+ * <p>The variants differ from each other in bit packing order, in whether there are reserved
+ * "clear" and "end of information" codes, and in when exactly the code width is increased: in the
+ * so-called "early change" variant, the width grows one code earlier than strictly necessary.</p>
+ *
+ * @author Juho Juurinen
+ */
+public enum LZWMode
+{
+    /**
+     * The format native to this application: 32-bit tag, most significant bit first packing, codes
+     * of 9 to 16 bits, and zero index as pseudo-EoF marker.
+     */
+    NATIVE("LZW"),
+
+    /**
+     * Unix {@code compress} (.Z): three-byte header, least significant bit first packing, codes of 9
+     * to 16 bits, code 256 reserved for CLEAR, and no end marker. Codes are written in groups of
+     * eight, so the stream is padded to the end of a group whenever the code width changes.
+     */
+    UNIX_COMPRESS("LZW (.Z)"),
+
+    /**
+     * GIF image data: minimum code size byte followed by data sub-blocks, least significant bit
+     * first packing, codes of up to 12 bits, with CLEAR and EOI codes right after the literals.
+     */
+    GIF("LZW (GIF)"),
+
+    /**
+     * TIFF (and PDF) LZW: no header, most significant bit first packing, codes of 9 to 12 bits,
+     * CLEAR as 256 and EOI as 257, and "early change" of code width.
+     */
+    TIFF("LZW (TIFF)");
+
+    private final String name;
+
+    LZWMode(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * Returns a human-readable name of the format, as reported by {@link LZWCompressor#getName()}.
+     *
+     * @return name of the format
+     */
+    public String getName()
+    {
+        return name;
+    }
+}
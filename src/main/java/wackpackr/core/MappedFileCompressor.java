@@ -0,0 +1,344 @@
+package wackpackr.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Compresses and decompresses files through memory mapping, using any of the {@link Compressor}s.
+ *
+ * <p>Both the source and the target file are mapped into memory with {@link FileChannel#map}, and
+ * handed over to the compressor as direct {@code ByteBuffer}s. Thus the file contents are read
+ * straight from the page cache and written straight back into it, without ever being copied onto
+ * the Java heap.</p>
+ *
+ * <p>When compressing, the target file is mapped with the worst-case size of the output (see {@link
+ * Compressor#maxCompressedSize(int)}), so the work is never started over. When decompressing, the
+ * size of the output is not known beforehand, so the target file is mapped with an estimated size
+ * first, which is doubled (and the work started over) if it turns out too small. Either way, the
+ * file is finally truncated to the exact size of the output. Mapping more than is needed costs next
+ * to nothing, as the unused part of the file is never touched. Each mapping is released before
+ * truncating, where the JVM allows it, since some platforms refuse to truncate a file that is still
+ * mapped.</p>
+ *
+ * <p>A mapped buffer is indexed with an int, and the compressed formats are single blocks read and
+ * written in one go, so a file that fits in one mapping, output included, is compressed in one
+ * piece, exactly as {@link Compressor#compress(byte[])} would. A larger file is cut into windows
+ * that do fit, each compressed on its own. The target file then starts with a 32-bit identifier,
+ * followed for each window by the size of the compressed window as a 32-bit integer, and the
+ * compressed window itself. Decompression tells the two apart by the identifier.</p>
+ *
+ * @author Juho Juurinen
+ */
+public class MappedFileCompressor
+{
+    private static final int MAX_MAPPED_SIZE = Integer.MAX_VALUE;
+    private static final long WINDOWED_TAG = 0x0F1E2018;
+    private static final int MIN_TARGET_SIZE = 1024;
+    private static final int DECOMPRESSION_RATIO_GUESS = 4;
+    private static final Unmapper UNMAPPER = unmapper();
+
+    private final Compressor compressor;
+    private final int windowSize;
+
+    /**
+     * Constructs a new instance that uses the given compressor.
+     *
+     * @param compressor compressor to compress and decompress with
+     * @throws NullPointerException if compressor is null
+     */
+    public MappedFileCompressor(Compressor compressor)
+    {
+        this(compressor, MAX_MAPPED_SIZE);
+    }
+
+    /**
+     * Constructs a new instance that uses the given compressor, and cuts files into windows of at
+     * most the given size. Meant for testing windowed files without actually writing gigabytes.
+     *
+     * @param compressor compressor to compress and decompress with
+     * @param maxWindowSize largest size of a window in bytes
+     * @throws NullPointerException if compressor is null
+     */
+    MappedFileCompressor(Compressor compressor, int maxWindowSize)
+    {
+        if (compressor == null)
+            throw new NullPointerException();
+
+        this.compressor = compressor;
+        this.windowSize = largestWindow(compressor, maxWindowSize);
+    }
+
+    /**
+     * Compresses the source file into the target file, which is created or overwritten. For files
+     * that fit in one mapping, the output is identical to what {@link Compressor#compress(byte[])}
+     * gives for the same file.
+     *
+     * @param source file to compress
+     * @param target file to write compressed data into
+     * @return size of the compressed file in bytes
+     * @throws IOException if there's an error reading, writing or compressing the files
+     */
+    public long compress(Path source, Path target) throws IOException
+    {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel out = openTarget(target))
+        {
+            long size = in.size();
+            long position = 0;
+
+            if (size <= windowSize)
+                position = compressWindow(in, 0, (int) size, out, 0);
+            else
+            {
+                out.write(ByteBuffer.allocate(4).putInt(0, (int) WINDOWED_TAG), 0);
+                position = 4;
+
+                for (long offset = 0; offset < size; offset += windowSize)
+                {
+                    int length = (int) Math.min(windowSize, size - offset);
+                    int n = compressWindow(in, offset, length, out, position + 4);
+
+                    out.write(ByteBuffer.allocate(4).putInt(0, n), position);
+                    position += 4 + n;
+                }
+            }
+
+            out.truncate(position);
+            return position;
+        }
+    }
+
+    /**
+     * Decompresses the source file into the target file, which is created or overwritten. For
+     * files compressed in one piece, the output is identical to what {@link
+     * Compressor#decompress(byte[])} gives for the same file.
+     *
+     * @param source file to decompress
+     * @param target file to write decompressed data into
+     * @return size of the decompressed file in bytes
+     * @throws IllegalArgumentException if the output of any one piece would be larger than can be
+     *         mapped at once, or the windows of a windowed file are corrupt
+     * @throws IOException if there's an error reading, writing or decompressing the files
+     */
+    public long decompress(Path source, Path target) throws IOException
+    {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel out = openTarget(target))
+        {
+            long size = in.size();
+            long position = 0;
+
+            if (!isWindowed(in))
+            {
+                if (size > MAX_MAPPED_SIZE)
+                    throw new IllegalArgumentException(
+                            "File too large to map in one piece: " + size);
+
+                position = decompressWindow(in, 0, (int) size, out, 0);
+            }
+            else
+                for (long offset = 4; offset < size; )
+                {
+                    int n = readInt(in, offset);
+
+                    if (n < 0 || n > size - offset - 4)
+                        throw new IllegalArgumentException("Corrupt window in file");
+
+                    position += decompressWindow(in, offset + 4, n, out, position);
+                    offset += 4 + n;
+                }
+
+            out.truncate(position);
+            return position;
+        }
+    }
+
+    /**
+     * Returns the compressor this instance uses.
+     *
+     * @return compressor
+     */
+    public Compressor getCompressor()
+    {
+        return compressor;
+    }
+
+
+    /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
+
+
+    private int compressWindow(FileChannel in, long offset, int length, FileChannel out,
+            long position) throws IOException
+    {
+        MappedByteBuffer src = in.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        MappedByteBuffer dst = null;
+
+        try
+        {
+            dst = out.map(FileChannel.MapMode.READ_WRITE, position,
+                    compressor.maxCompressedSize(length));
+            compressor.compress(src, dst);
+
+            return dst.position();
+        }
+        finally
+        {
+            unmap(src);
+            unmap(dst);
+        }
+    }
+
+    private long decompressWindow(FileChannel in, long offset, int length, FileChannel out,
+            long position) throws IOException
+    {
+        MappedByteBuffer src = in.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        long capacity = Math.min(
+                Math.max((long) length * DECOMPRESSION_RATIO_GUESS, MIN_TARGET_SIZE),
+                MAX_MAPPED_SIZE
+        );
+
+        try
+        {
+            while (true)
+            {
+                MappedByteBuffer dst = out.map(FileChannel.MapMode.READ_WRITE, position, capacity);
+
+                try
+                {
+                    src.rewind();
+                    compressor.decompress(src, dst);
+
+                    return dst.position();
+                }
+                catch (BufferOverflowException e)
+                {
+                    if (capacity == MAX_MAPPED_SIZE)
+                        throw new IllegalArgumentException("Output too large to map in one piece");
+
+                    capacity = Math.min(2 * capacity, MAX_MAPPED_SIZE);
+                }
+                finally
+                {
+                    unmap(dst);
+                }
+            }
+        }
+        finally
+        {
+            unmap(src);
+        }
+    }
+
+    private static FileChannel openTarget(Path target) throws IOException
+    {
+        return FileChannel.open(target,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    private static boolean isWindowed(FileChannel in) throws IOException
+    {
+        return in.size() >= 4 && readInt(in, 0) == (int) WINDOWED_TAG;
+    }
+
+    private static int readInt(FileChannel in, long position) throws IOException
+    {
+        ByteBuffer bb = ByteBuffer.allocate(4);
+
+        while (bb.hasRemaining())
+            if (in.read(bb, position + bb.position()) < 0)
+                throw new EOFException("File ended in the middle of a window");
+
+        return bb.getInt(0);
+    }
+
+    private static int largestWindow(Compressor compressor, int max)
+    {
+        int low = 1, high = max;
+
+        while (low < high)
+        {
+            int mid = (int) (((long) low + high + 1) / 2);
+
+            if (fits(compressor, mid))
+                low = mid;
+            else
+                high = mid - 1;
+        }
+
+        return low;
+    }
+
+    private static boolean fits(Compressor compressor, int length)
+    {
+        try
+        {
+            compressor.maxCompressedSize(length);
+            return true;
+        }
+        catch (IllegalArgumentException e)
+        {
+            return false;
+        }
+    }
+
+    private interface Unmapper
+    {
+        void unmap(ByteBuffer buffer) throws Exception;
+    }
+
+    private static void unmap(MappedByteBuffer buffer)
+    {
+        if (buffer == null || UNMAPPER == null)
+            return;
+
+        try
+        {
+            UNMAPPER.unmap(buffer);
+        }
+        catch (Exception e)
+        {
+            // left for the garbage collector
+        }
+    }
+
+    private static Unmapper unmapper()
+    {
+        try
+        {   // Java 9 and later
+            Class<?> c = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = c.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = c.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+
+            return buffer -> invokeCleaner.invoke(unsafe, buffer);
+        }
+        catch (Exception | LinkageError e)
+        {
+            // no Unsafe.invokeCleaner, so fall back to the Java 8 cleaner below
+        }
+
+        try
+        {   // Java 8
+            Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+
+            return buffer -> clean.invoke(cleaner.invoke(buffer));
+        }
+        catch (Exception | LinkageError e)
+        {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package wackpackr.core;
+
+import java.io.IOException;
+import java.util.Arrays;
+import wackpackr.io.BinaryIO;
+
+/**
+ * Shared dictionary that primes the compressors with knowledge of typical data, before any of the
+ * actual input is seen. Meant for lots of small, similar messages (say, JSON documents of a few
+ * hundred bytes), that on their own are too short for any of the algorithms to learn much from.
+ *
+ * <p>A dictionary consists of two parts: a sample of content typical to the messages, and the
+ * frequencies of byte values in them. The content is used by LZSS as if it had been compressed
+ * right before the message, so that back references can point into it from the very first byte;
+ * and by LZW to fill its dictionary with the phrases in it. The frequencies are used by Huffman to
+ * build a fixed prefix code table, which then need not be stored with each message at all.</p>
+ *
+ * <p>Dictionaries are normally built from a sample corpus with {@link DictionaryTrainer}, stored
+ * with {@link #toBytes()}, and shared between the compressing and decompressing ends by some means
+ * outside of this library. Each dictionary has an id, that compressors write into the header (see
+ * {@link FormatHeader}), so the decompressing end can tell if it has the right one.</p>
+ *
+ * <p>Instances are immutable, and can be shared freely between compressors and threads.</p>
+ *
+ * @author Juho Juurinen
+ */
+public class PresetDictionary
+{
+    /**
+     * Maximum length of the content part, which equals the size of the LZSS prefix window.
+     */
+    public static final int MAX_CONTENT_SIZE = 4095;
+
+    private static final long DICTIONARY_TAG = 0x0D1C2018;
+    private static final int HASH_BITS = 12;
+
+    private final int id;
+    private final byte[] content;
+    private final long[] freqs;
+    private final int[] heads;
+    private final int[] chain;
+
+    /**
+     * Constructs a new dictionary out of the given parts.
+     *
+     * <p>Every byte value must have a positive frequency, so that the fixed Huffman code covers all
+     * possible messages, also those with bytes never seen in the samples.</p>
+     *
+     * @param id identifier of the dictionary, written into compressed headers
+     * @param content typical content of messages, at most {@value #MAX_CONTENT_SIZE} bytes
+     * @param freqs frequency of each byte value, indexed by byte value + 128
+     * @throws IllegalArgumentException if id is negative, content is too long, or there are not 256
+     *         positive frequencies that fit in an int
+     */
+    public PresetDictionary(int id, byte[] content, long[] freqs)
+    {
+        if (id < 0)
+            throw new IllegalArgumentException("Negative dictionary id: " + id);
+
+        if (content.length > MAX_CONTENT_SIZE)
+            throw new IllegalArgumentException("Dictionary content too long: " + content.length);
+
+        if (freqs.length != 256)
+            throw new IllegalArgumentException("Expected 256 frequencies, got " + freqs.length);
+
+        for (long f : freqs)
+            if (f <= 0 || f > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Invalid byte frequency: " + f);
+
+        this.id = id;
+        this.content = content.clone();
+        this.freqs = freqs.clone();
+        this.heads = new int[1 << HASH_BITS];
+        this.chain = new int[content.length];
+
+        Arrays.fill(heads, -1);
+        for (int i = 0; i + 2 < content.length; i++)
+        {
+            int h = hash(content[i], content[i + 1], content[i + 2]);
+            chain[i] = heads[h];
+            heads[h] = i;
+        }
+    }
+
+    /**
+     * Reads a dictionary from its stored form, as written by {@link #toBytes()}.
+     *
+     * @param bytes stored dictionary as byte array
+     * @return the dictionary
+     * @throws IllegalArgumentException if bytes do not hold a valid dictionary
+     * @throws IOException if the stored dictionary is cut short
+     */
+    public static PresetDictionary fromBytes(byte[] bytes) throws IOException
+    {
+        BinaryIO io = new BinaryIO(bytes);
+
+        if (io.read32Bits() != DICTIONARY_TAG)
+            throw new IllegalArgumentException("Not a preset dictionary");
+
+        int id = io.readVarInt();
+        int length = io.readVarInt();
+        if (length > MAX_CONTENT_SIZE)
+            throw new IllegalArgumentException("Dictionary content too long: " + length);
+
+        byte[] content = io.readBytes(length);
+        long[] freqs = new long[256];
+        for (int i = 0; i < freqs.length; i++)
+            freqs[i] = io.readVarInt();
+
+        return new PresetDictionary(id, content, freqs);
+    }
+
+    /**
+     * Returns the dictionary in stored form, to be read back with {@link #fromBytes(byte[])}.
+     *
+     * @return dictionary as byte array
+     * @throws IOException if there's an error writing to the output buffer
+     */
+    public byte[] toBytes() throws IOException
+    {
+        BinaryIO io = new BinaryIO();
+        io
+                .write32Bits(DICTIONARY_TAG)
+                .writeVarInt(id)
+                .writeVarInt(content.length)
+                .writeBytes(content);
+
+        for (long f : freqs)
+            io.writeVarInt((int) f);
+
+        return io.getBytesOut();
+    }
+
+    /**
+     * Returns the identifier of the dictionary.
+     *
+     * @return dictionary id
+     */
+    public int getId()
+    {
+        return id;
+    }
+
+    /**
+     * Returns a copy of the content part of the dictionary.
+     *
+     * @return typical content of messages
+     */
+    public byte[] getContent()
+    {
+        return content.clone();
+    }
+
+    /**
+     * Returns a copy of the byte frequencies of the dictionary.
+     *
+     * @return frequency of each byte value, indexed by byte value + 128
+     */
+    public long[] getFrequencies()
+    {
+        return freqs.clone();
+    }
+
+    byte[] content()
+    {
+        return content;
+    }
+
+    long[] freqs()
+    {
+        return freqs;
+    }
+
+    /**
+     * Returns the last position in the content where the given three bytes (possibly) begin, or -1
+     * if there is none. Positions with the same hash are chained, so this is only a candidate, and
+     * the rest of the candidates are found with {@link #previousMatch(int)}, in descending order.
+     */
+    int lastMatch(byte b0, byte b1, byte b2)
+    {
+        return heads[hash(b0, b1, b2)];
+    }
+
+    int previousMatch(int position)
+    {
+        return chain[position];
+    }
+
+
+    /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
+
+
+    private static int hash(byte b0, byte b1, byte b2)
+    {
+        int key = (b0 & 0xFF) << 16 | (b1 & 0xFF) << 8 | (b2 & 0xFF);
+
+        return (key * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+}
@@ -0,0 +1,261 @@
+package wackpackr.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import wackpackr.io.BinaryIO;
+
+/**
+ * Compression and decompression with run-length encoding, meant mostly as a fast pre-filter in
+ * front of the other compressors (see {@link CompressorChain}).
+ *
+ * <p>Images and sparse binary data often contain long runs of one and the same byte. LZSS can only
+ * cover such a run 18 bytes at a time, and Huffman coding spends at least one bit on every byte, so
+ * collapsing the runs first both shrinks the output and leaves much less input for the slower
+ * compressors to process.</p>
+ *
+ * <p>Any run of at least four identical bytes is written as four copies of the byte, followed by
+ * the number of further copies as a varint (see {@link BinaryIO#writeVarInt(int)}). Everything
+ * else is written as-is. Thus data without runs passes through practically unchanged, and at worst
+ * (runs of exactly four bytes) grows by a quarter.</p>
+ *
+ * @author Juho Juurinen
+ */
+public class RLECompressor implements Compressor
+{
+    private static final long RLE_TAG = 0x0E0C2018;
+    private static final int MIN_RUN = 4;
+    private static final long MAX_OVERHEAD = 4;
+    private final boolean storesSize;
+
+    /**
+     * Constructs a new compressor that does not store the uncompressed size.
+     */
+    public RLECompressor()
+    {
+        this(false);
+    }
+
+    /**
+     * Constructs a new compressor that stores the uncompressed size in the header of compressed
+     * files, if so requested (see {@link FormatHeader}). Files with or without the size can be
+     * decompressed either way.
+     *
+     * @param storesSize whether to store the uncompressed size
+     */
+    public RLECompressor(boolean storesSize)
+    {
+        this.storesSize = storesSize;
+    }
+
+    /**
+     * Compresses given file using run-length encoding.
+     *
+     * <p>Writes a 32-bit identifier, indicating the used compression technique, to the beginning
+     * of the compressed binary (followed by the uncompressed size, if so chosen at construction),
+     * and then the actual data in encoded form. There is no EoF marker: the encoded data simply
+     * ends where the file does.</p>
+     *
+     * @param bytes file to compress as byte array
+     * @return compressed file as byte array
+     * @throws IOException if there's an error writing to the output stream
+     */
+    @Override
+    public byte[] compress(byte[] bytes) throws IOException
+    {
+        return newCompressionContext().compress(bytes);
+    }
+
+    /**
+     * Compresses the remaining bytes of the given source buffer into the given destination buffer,
+     * in the exact same format as {@link #compress(byte[])}. The runs are scanned for directly in
+     * the source buffer, without allocating anything.
+     *
+     * @param src data to compress
+     * @param dst buffer to write compressed data into
+     * @throws java.nio.BufferOverflowException if the destination buffer runs out of space
+     * @throws IOException if there's an error writing to the output stream
+     */
+    @Override
+    public void compress(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        newCompressionContext().compress(src, dst);
+    }
+
+    /**
+     * Decompresses given file using run-length decoding.
+     *
+     * @param bytes file to decompress as byte array
+     * @return decompressed file as byte array
+     * @throws IllegalArgumentException if file does not have the correct identifier in its header,
+     *         or its size does not match the header
+     * @throws java.io.EOFException if the file ends in the middle of a run
+     * @throws IOException if there's an error writing to or reading from the I/O streams
+     */
+    @Override
+    public byte[] decompress(byte[] bytes) throws IOException
+    {
+        return newDecompressionContext().decompress(bytes);
+    }
+
+    /**
+     * Decompresses the remaining bytes of the given source buffer into the given destination
+     * buffer. Otherwise works as {@link #decompress(byte[])}.
+     *
+     * @param src data to decompress
+     * @param dst buffer to write decompressed data into
+     * @throws java.nio.BufferOverflowException if the destination buffer runs out of space
+     * @throws IllegalArgumentException if data does not have the correct identifier in its header
+     * @throws IOException if there's an error writing to or reading from the I/O streams
+     */
+    @Override
+    public void decompress(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        newDecompressionContext().decompress(src, dst);
+    }
+
+    /**
+     * Returns the worst-case size of run-length encoded data: every run exactly four bytes long,
+     * each written as five bytes, plus the header.
+     *
+     * @param length length of uncompressed data in bytes
+     * @return worst-case length of compressed data in bytes
+     * @throws IllegalArgumentException if length is negative, or the bound does not fit in an int
+     */
+    @Override
+    public int maxCompressedSize(int length)
+    {
+        long size = (long) length + length / MIN_RUN + MAX_OVERHEAD
+                + (storesSize ? FormatHeader.MAX_SIZE_BYTES : 0);
+
+        if (length < 0 || size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid input length: " + length);
+
+        return (int) size;
+    }
+
+    /**
+     * Returns a new compression context. Run-length encoding needs no working memory, but the
+     * context writes straight into the destination buffer.
+     *
+     * @return new compression context
+     */
+    @Override
+    public CompressionContext newCompressionContext()
+    {
+        return new Encoder();
+    }
+
+    /**
+     * Returns a new decompression context. Run-length decoding needs no working memory, but the
+     * context writes straight into the destination buffer.
+     *
+     * @return new decompression context
+     */
+    @Override
+    public DecompressionContext newDecompressionContext()
+    {
+        return new Decoder();
+    }
+
+    @Override
+    public String getName()
+    {
+        return "RLE";
+    }
+
+
+    /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
+
+
+    private class Encoder extends CompressionContext
+    {
+        Encoder()
+        {
+            super(RLECompressor.this);
+        }
+
+        @Override
+        protected void encode(ByteBuffer src, BinaryIO io) throws IOException
+        {
+            RLECompressor.this.compress(src, io);
+        }
+    }
+
+    private class Decoder extends DecompressionContext
+    {
+        Decoder()
+        {
+            super(RLECompressor.this);
+        }
+
+        @Override
+        protected void decode(BinaryIO io) throws IOException
+        {
+            RLECompressor.this.decompress(io);
+        }
+    }
+
+    private void compress(ByteBuffer src, BinaryIO io) throws IOException
+    {
+        FormatHeader.write(io, RLE_TAG, storesSize, null);
+
+        int end = src.limit();
+        int literals = src.position();
+
+        for (int i = literals; i < end; )
+        {
+            byte b = src.get(i);
+            int run = 1;
+
+            while (i + run < end && src.get(i + run) == b)
+                run++;
+
+            if (run >= MIN_RUN)
+            {
+                writeLiterals(src, literals, i + MIN_RUN, io);
+                io.writeVarInt(run - MIN_RUN);
+                literals = i + run;
+            }
+
+            i += run;
+        }
+
+        writeLiterals(src, literals, end, io);
+    }
+
+    private void decompress(BinaryIO io) throws IOException
+    {
+        FormatHeader header = FormatHeader.read(io, RLE_TAG, "Not a RLE compressed file", null);
+        int previous = BinaryIO.EOF, count = 0;
+
+        for (int b = io.readByteOrEOF(); b != BinaryIO.EOF; b = io.readByteOrEOF())
+        {
+            io.writeByte((byte) b);
+            count = (b == previous) ? count + 1 : 1;
+            previous = b;
+
+            if (count == MIN_RUN)
+            {
+                int n = io.readVarInt();
+
+                if (header.getSize() >= 0 && n > header.getSize() - io.getByteCountOut())
+                    throw new IllegalArgumentException("Decompressed size does not match the header");
+
+                io.writeRepeatedByte((byte) b, n);
+
+                previous = BinaryIO.EOF;
+            }
+        }
+
+        header.verify(io);
+    }
+
+    private void writeLiterals(ByteBuffer src, int from, int to, BinaryIO io) throws IOException
+    {
+        if (src.hasArray())
+            io.writeBytes(src.array(), src.arrayOffset() + from, to - from);
+        else
+            for (int i = from; i < to; i++)
+                io.writeByte(src.get(i));
+    }
+}
@@ -0,0 +1,254 @@
+package wackpackr.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import wackpackr.io.BinaryIO;
+
+/**
+ * Compression and decompression with adaptive range coding (see {@link RangeEncoder}), filling the
+ * same role as {@link HuffCompressor}: each byte is coded by its order-0 probability, without
+ * regard to repeated sequences.
+ *
+ * <p>Unlike Huffman coding, range coding is not limited to whole bits per byte, and the model
+ * adapts to the data as it goes, so no tree needs to be stored either. This pays off especially on
+ * skewed distributions, such as the output of the other compressors in a chain.</p>
+ *
+ * <p>Each byte is coded as a path through a binary tree of 255 adaptive decisions, preceded by an
+ * adaptive end-of-data flag, which costs next to nothing until it is finally set.</p>
+ *
+ * <p>The same coder also codes the tokens of LZSS parsing, in {@link LZSSRangeCompressor}.</p>
+ *
+ * @author Juho Juurinen
+ */
+public class RangeCompressor implements Compressor
+{
+    private static final long RANGE_TAG = 0x0A0C2018;
+    private static final long MAX_OVERHEAD = 4;
+    private final boolean storesSize;
+
+    /**
+     * Constructs a new compressor that does not store the uncompressed size.
+     */
+    public RangeCompressor()
+    {
+        this(false);
+    }
+
+    /**
+     * Constructs a new compressor that stores the uncompressed size in the header of compressed
+     * files, if so requested (see {@link FormatHeader}). Files with or without the size can be
+     * decompressed either way.
+     *
+     * @param storesSize whether to store the uncompressed size
+     */
+    public RangeCompressor(boolean storesSize)
+    {
+        this.storesSize = storesSize;
+    }
+
+    /**
+     * Compresses given file using adaptive range coding.
+     *
+     * <p>Writes a 32-bit identifier, indicating the used compression technique, to the beginning
+     * of the compressed binary (followed by the uncompressed size, if so chosen at construction),
+     * and then the range coded data, which runs to the end of the file.</p>
+     *
+     * <p>If a sample of the data looks practically incompressible (see {@link EntropyEstimator}),
+     * or the range coded data turns out no smaller than the original, the data is stored as-is
+     * after the identifier instead.</p>
+     *
+     * @param bytes file to compress as byte array
+     * @return compressed file as byte array
+     * @throws IOException if there's an error writing to the output stream
+     */
+    @Override
+    public byte[] compress(byte[] bytes) throws IOException
+    {
+        return newCompressionContext().compress(bytes);
+    }
+
+    /**
+     * Compresses the remaining bytes of the given source buffer into the given destination buffer,
+     * in the exact same format as {@link #compress(byte[])}.
+     *
+     * @param src data to compress
+     * @param dst buffer to write compressed data into
+     * @throws java.nio.BufferOverflowException if the destination buffer runs out of space
+     * @throws IOException if there's an error writing to the output stream
+     */
+    @Override
+    public void compress(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        newCompressionContext().compress(src, dst);
+    }
+
+    /**
+     * Decompresses given file using adaptive range coding.
+     *
+     * @param bytes file to decompress as byte array
+     * @return decompressed file as byte array
+     * @throws IllegalArgumentException if file does not have the correct identifier in its header
+     * @throws java.io.EOFException if the file ends before the end-of-data flag
+     * @throws IOException if there's an error writing to or reading from the I/O streams
+     */
+    @Override
+    public byte[] decompress(byte[] bytes) throws IOException
+    {
+        return newDecompressionContext().decompress(bytes);
+    }
+
+    /**
+     * Decompresses the remaining bytes of the given source buffer into the given destination
+     * buffer. Otherwise works as {@link #decompress(byte[])}.
+     *
+     * @param src data to decompress
+     * @param dst buffer to write decompressed data into
+     * @throws java.nio.BufferOverflowException if the destination buffer runs out of space
+     * @throws IllegalArgumentException if data does not have the correct identifier in its header
+     * @throws IOException if there's an error writing to or reading from the I/O streams
+     */
+    @Override
+    public void decompress(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        newDecompressionContext().decompress(src, dst);
+    }
+
+    /**
+     * Returns the worst-case size of range coded data: the data stored as-is, plus the header.
+     *
+     * @param length length of uncompressed data in bytes
+     * @return worst-case length of compressed data in bytes
+     * @throws IllegalArgumentException if length is negative, or the bound does not fit in an int
+     */
+    @Override
+    public int maxCompressedSize(int length)
+    {
+        long size = (long) length + MAX_OVERHEAD
+                + (storesSize ? FormatHeader.MAX_SIZE_BYTES : 0);
+
+        if (length < 0 || size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid input length: " + length);
+
+        return (int) size;
+    }
+
+    /**
+     * Returns a new compression context, that holds on to the output array of the range encoder,
+     * and to the models, and resets them for each input.
+     *
+     * @return new compression context
+     */
+    @Override
+    public CompressionContext newCompressionContext()
+    {
+        return new Encoder();
+    }
+
+    /**
+     * Returns a new decompression context, that holds on to the models and resets them for each
+     * input.
+     *
+     * @return new decompression context
+     */
+    @Override
+    public DecompressionContext newDecompressionContext()
+    {
+        return new Decoder();
+    }
+
+    @Override
+    public String getName()
+    {
+        return "Range";
+    }
+
+
+    /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
+
+
+    private class Encoder extends CompressionContext
+    {
+        private final RangeEncoder rc = new RangeEncoder(1 << 16);
+        private final Model model = new Model();
+
+        Encoder()
+        {
+            super(RangeCompressor.this);
+        }
+
+        @Override
+        protected void encode(ByteBuffer src, BinaryIO io) throws IOException
+        {
+            if (!EntropyEstimator.isIncompressible(src))
+            {
+                rc.reset();
+                model.reset();
+
+                for (int i = src.position(); i < src.limit(); i++)
+                {
+                    rc.encodeBit(model.end, 0, 0);
+                    rc.encodeBitTree(model.literals, 8, src.get(i) & 0xFF);
+                }
+
+                rc.encodeBit(model.end, 0, 1);
+                rc.finish();
+
+                if (rc.size() < src.remaining())
+                {
+                    FormatHeader.write(io, RANGE_TAG, storesSize, null);
+                    rc.writeTo(io);
+                    return;
+                }
+            }
+
+            FormatHeader.store(io, RANGE_TAG, storesSize);
+        }
+    }
+
+    private class Decoder extends DecompressionContext
+    {
+        private final Model model = new Model();
+
+        Decoder()
+        {
+            super(RangeCompressor.this);
+        }
+
+        @Override
+        protected void decode(BinaryIO io) throws IOException
+        {
+            FormatHeader header = FormatHeader.read(
+                    io,
+                    RANGE_TAG,
+                    "Not a range coded file",
+                    null
+            );
+
+            if (header.isStored())
+            {
+                header.copyStored(io);
+                return;
+            }
+
+            RangeDecoder rc = new RangeDecoder(io);
+            model.reset();
+
+            while (rc.decodeBit(model.end, 0) == 0)
+                io.writeByte((byte) rc.decodeBitTree(model.literals, 8));
+
+            header.verify(io);
+        }
+    }
+
+    private static class Model
+    {
+        private final short[] end = RangeEncoder.newModel(1);
+        private final short[] literals = RangeEncoder.newModel(1 << 8);
+
+        void reset()
+        {
+            RangeEncoder.resetModel(end);
+            RangeEncoder.resetModel(literals);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package wackpackr.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import wackpackr.io.BinaryIO;
+
+/**
+ * Decoder for the output of {@link RangeEncoder}. Each method undoes the encoder method of the same
+ * name, and must be called with the same models and parameters, in the same order.
+ *
+ * <p>Input is read from the given I/O wrapper in chunks, into a buffer of the decoder's own, so no
+ * per-bit I/O is involved. The decoder may thus read ahead of what it has decoded, so the range
+ * coded data should run to the end of the input. The decoder reads exactly as many bytes as the
+ * encoder wrote, so running out of input means the data is cut short.</p>
+ *
+ * @author Juho Juurinen
+ */
+public class RangeDecoder
+{
+    private static final int CHUNK_SIZE = 4096;
+
+    private final BinaryIO io;
+    private final byte[] buffer = new byte[CHUNK_SIZE];
+    private int position, limit;
+    private int range;
+    private int code;
+
+    /**
+     * Constructs a new decoder that reads range coded data from the given I/O wrapper, starting
+     * from its current position.
+     *
+     * @param io I/O wrapper holding the input buffer
+     * @throws EOFException if there are less than five bytes of input
+     * @throws IOException if there's an error reading the input buffer
+     */
+    public RangeDecoder(BinaryIO io) throws IOException
+    {
+        this.io = io;
+        this.range = -1;
+
+        for (int i = 0; i < 5; i++)
+            code = (code << 8) | read();
+    }
+
+    /**
+     * Decodes a bit with the probability at the given index of the given model, and updates the
+     * probability.
+     *
+     * @param probs binary model
+     * @param i index of the probability in the model
+     * @return decoded bit, 0 or 1
+     * @throws EOFException if the input ends in the middle of the range coded data
+     * @throws IOException if there's an error reading the input buffer
+     */
+    public int decodeBit(short[] probs, int i) throws IOException
+    {
+        int p = probs[i];
+        int bound = (range >>> RangeEncoder.PROBABILITY_BITS) * p;
+        int bit;
+
+        if (Integer.compareUnsigned(code, bound) < 0)
+        {
+            range = bound;
+            probs[i] = (short) (p + ((RangeEncoder.ONE - p) >>> RangeEncoder.MOVE_BITS));
+            bit = 0;
+        }
+        else
+        {
+            code -= bound;
+            range -= bound;
+            probs[i] = (short) (p - (p >>> RangeEncoder.MOVE_BITS));
+            bit = 1;
+        }
+
+        normalize();
+        return bit;
+    }
+
+    /**
+     * Decodes a bit with the given probability, as encoded by {@link RangeEncoder#encodeBit(int,
+     * int)}.
+     *
+     * @param probability probability that the bit is 0, in 1/65536ths, between 1 and 65535
+     * @return decoded bit, 0 or 1
+     * @throws IOException if there's an error reading the input buffer
+     */
+    public int decodeBit(int probability) throws IOException
+    {
+        int bound = (range >>> 16) * probability;
+        int bit;
+
+        if (Integer.compareUnsigned(code, bound) < 0)
+        {
+            range = bound;
+            bit = 0;
+        }
+        else
+        {
+            code -= bound;
+            range -= bound;
+            bit = 1;
+        }
+
+        normalize();
+        return bit;
+    }
+
+    /**
+     * Decodes a symbol of the given number of bits, as encoded by {@link
+     * RangeEncoder#encodeBitTree(short[], int, int)}.
+     *
+     * @param probs binary model
+     * @param bits number of bits in the symbol
+     * @return decoded symbol
+     * @throws IOException if there's an error reading the input buffer
+     */
+    public int decodeBitTree(short[] probs, int bits) throws IOException
+    {
+        int m = 1;
+
+        for (int k = 0; k < bits; k++)
+            m = (m << 1) | decodeBit(probs, m);
+
+        return m - (1 << bits);
+    }
+
+    /**
+     * Decodes the given number of bits, as encoded by {@link RangeEncoder#encodeDirectBits(int,
+     * int)}.
+     *
+     * @param bits number of bits to decode, at most 32
+     * @return decoded value
+     * @throws IOException if there's an error reading the input buffer
+     */
+    public int decodeDirectBits(int bits) throws IOException
+    {
+        int value = 0;
+
+        while (bits-- > 0)
+        {
+            range >>>= 1;
+            int t = (code - range) >>> 31;
+            code -= range & (t - 1);
+            value = (value << 1) | (1 - t);
+
+            normalize();
+        }
+
+        return value;
+    }
+
+    /**
+     * Returns the cumulative frequency that the next symbol falls on, given the total frequency
+     * it was encoded with. The caller then finds the symbol whose share covers that frequency,
+     * and calls {@link #decode(int, int, int)} with its share.
+     *
+     * @param total total frequency of all symbols, at most 65536
+     * @return a cumulative frequency between 0 and total - 1
+     */
+    public int peekFrequency(int total)
+    {
+        int r = Integer.divideUnsigned(range, total);
+
+        return Math.min(Integer.divideUnsigned(code, r), total - 1);
+    }
+
+    /**
+     * Consumes the symbol that takes the given share of the given total frequency, as encoded by
+     * {@link RangeEncoder#encode(int, int, int)}.
+     *
+     * @param start cumulative frequency of all symbols before this one
+     * @param frequency frequency of this symbol
+     * @param total total frequency of all symbols
+     * @throws IOException if there's an error reading the input buffer
+     */
+    public void decode(int start, int frequency, int total) throws IOException
+    {
+        int r = Integer.divideUnsigned(range, total);
+        code -= r * start;
+        range = r * frequency;
+
+        normalize();
+    }
+
+
+    /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
+
+
+    private void normalize() throws IOException
+    {
+        while (Integer.compareUnsigned(range, RangeEncoder.TOP) < 0)
+        {
+            range <<= 8;
+            code = (code << 8) | read();
+        }
+    }
+
+    private int read() throws IOException
+    {
+        if (position == limit)
+        {
+            limit = (int) Math.min(CHUNK_SIZE, io.remaining() >> 3);
+            position = 0;
+
+            if (limit == 0)
+                throw new EOFException("Range coded data ended unexpectedly");
+
+            io.readBytes(buffer, 0, limit);
+        }
+
+        return buffer[position++] & 0xFF;
+    }
+}
@@ -0,0 +1,294 @@
+package wackpackr.core;
+
+import java.io.IOException;
+import java.util.Arrays;
+import wackpackr.io.BinaryIO;
+
+/**
+ * Range coder that encodes symbols in fractions of bits, according to their probabilities. Unlike
+ * a Huffman code, which spends at least one whole bit on every symbol, the range coder spends
+ * close to the ideal {@code -log2(p)} bits on a symbol of probability {@code p}: a flag that is set
+ * 99% of the time costs about 0.015 bits rather than 1.
+ *
+ * <p>The main primitive is the adaptive binary model, as in LZMA: each binary decision has a
+ * probability of its own, kept in a {@code short} array (see {@link #newModel(int)}) that is
+ * updated after each bit, so that the model learns the statistics of the data as it goes, and the
+ * decoder can follow it without anything being stored. Symbols of more than one bit are coded as a
+ * path through a binary tree of such decisions (see {@link #encodeBitTree(short[], int, int)}).
+ * Models of other kinds may also hand over a probability of their own for each bit (see {@link
+ * #encodeBit(int, int)}). Bits that are practically random can be coded directly, without a model,
+ * and symbols with known frequencies by their cumulative frequency (see {@link #encode(int, int,
+ * int)}).</p>
+ *
+ * <p>The coder works on whole bytes, with a 32-bit range and a 33-bit low end, resolving carries
+ * into the bytes already produced. The output is collected into a byte array, and copied over in
+ * bulk (see {@link #writeTo(BinaryIO)}), so no per-bit I/O is involved. {@link RangeDecoder} reads
+ * it back.</p>
+ *
+ * @author Juho Juurinen
+ */
+public class RangeEncoder
+{
+    /**
+     * Number of bits of precision in the probabilities of binary models.
+     */
+    public static final int PROBABILITY_BITS = 11;
+
+    /**
+     * Adaptation rate of binary models: each update moves the probability 1/32 of the way towards
+     * the bit seen.
+     */
+    public static final int MOVE_BITS = 5;
+
+    static final int ONE = 1 << PROBABILITY_BITS;
+    static final int TOP = 1 << 24;
+    static final int MAX_TOTAL = 1 << 16;
+
+    private byte[] out;
+    private int size;
+    private long low;
+    private int range;
+    private int cache;
+    private long cacheSize;
+
+    /**
+     * Constructs a new encoder with the given initial capacity for output.
+     *
+     * @param capacity initial capacity of the output array in bytes
+     */
+    public RangeEncoder(int capacity)
+    {
+        out = new byte[Math.max(capacity, 16)];
+        reset();
+    }
+
+    /**
+     * Returns a new binary model of the given number of probabilities, each initially 1/2.
+     *
+     * @param size number of binary decisions in the model
+     * @return new model
+     */
+    public static short[] newModel(int size)
+    {
+        short[] probs = new short[size];
+        resetModel(probs);
+
+        return probs;
+    }
+
+    /**
+     * Resets all probabilities of the given binary model to 1/2.
+     *
+     * @param probs binary model
+     */
+    public static void resetModel(short[] probs)
+    {
+        Arrays.fill(probs, (short) (ONE / 2));
+    }
+
+    /**
+     * Resets the encoder to its initial state, discarding any output.
+     */
+    public void reset()
+    {
+        size = 0;
+        low = 0;
+        range = -1;
+        cache = 0;
+        cacheSize = 1;
+    }
+
+    /**
+     * Encodes a bit with the probability at the given index of the given model, and updates the
+     * probability.
+     *
+     * @param probs binary model
+     * @param i index of the probability in the model
+     * @param bit bit to encode, 0 or 1
+     */
+    public void encodeBit(short[] probs, int i, int bit)
+    {
+        int p = probs[i];
+        int bound = (range >>> PROBABILITY_BITS) * p;
+
+        if (bit == 0)
+        {
+            range = bound;
+            probs[i] = (short) (p + ((ONE - p) >>> MOVE_BITS));
+        }
+        else
+        {
+            low += bound & 0xFFFFFFFFL;
+            range -= bound;
+            probs[i] = (short) (p - (p >>> MOVE_BITS));
+        }
+
+        normalize();
+    }
+
+    /**
+     * Encodes a bit with the given probability, for models that keep their probabilities
+     * elsewhere, such as mixtures of several models. Nothing is updated.
+     *
+     * @param probability probability that the bit is 0, in 1/65536ths, between 1 and 65535
+     * @param bit bit to encode, 0 or 1
+     */
+    public void encodeBit(int probability, int bit)
+    {
+        int bound = (range >>> 16) * probability;
+
+        if (bit == 0)
+            range = bound;
+        else
+        {
+            low += bound & 0xFFFFFFFFL;
+            range -= bound;
+        }
+
+        normalize();
+    }
+
+    /**
+     * Encodes the given symbol of the given number of bits, highest bit first, as a path through a
+     * binary tree of decisions, so that each bit has the bits above it as its context. The model
+     * must have room for {@code 1 << bits} probabilities.
+     *
+     * @param probs binary model
+     * @param bits number of bits in the symbol
+     * @param symbol symbol to encode
+     */
+    public void encodeBitTree(short[] probs, int bits, int symbol)
+    {
+        int m = 1;
+
+        for (int k = bits - 1; k >= 0; k--)
+        {
+            int bit = (symbol >>> k) & 1;
+
+            encodeBit(probs, m, bit);
+            m = (m << 1) | bit;
+        }
+    }
+
+    /**
+     * Encodes the given number of lowest bits of the given value, highest bit first, each with a
+     * fixed probability of 1/2.
+     *
+     * @param value value to encode
+     * @param bits number of bits to encode, at most 32
+     */
+    public void encodeDirectBits(int value, int bits)
+    {
+        while (bits > 0)
+        {
+            range >>>= 1;
+            low += range & (0 - ((value >>> --bits) & 1)) & 0xFFFFFFFFL;
+
+            normalize();
+        }
+    }
+
+    /**
+     * Encodes a symbol that takes the given share of the given total frequency.
+     *
+     * @param start cumulative frequency of all symbols before this one
+     * @param frequency frequency of this symbol, positive
+     * @param total total frequency of all symbols, at most 65536
+     * @throws IllegalArgumentException if the frequencies are out of range
+     */
+    public void encode(int start, int frequency, int total)
+    {
+        if (frequency < 1 || start < 0 || start + frequency > total || total > MAX_TOTAL)
+            throw new IllegalArgumentException("Invalid frequencies");
+
+        int r = Integer.divideUnsigned(range, total);
+        low += (long) r * start;
+        range = r * frequency;
+
+        normalize();
+    }
+
+    /**
+     * Writes out whatever is still held in the low end of the range. Must be called once after the
+     * last symbol, before the output is used.
+     */
+    public void finish()
+    {
+        for (int i = 0; i < 5; i++)
+            shiftLow();
+    }
+
+    /**
+     * Returns the number of bytes of output produced so far.
+     *
+     * @return size of output in bytes
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Copies the output produced so far to the given I/O wrapper's output buffer.
+     *
+     * @param io I/O wrapper holding the output buffer
+     * @throws IOException if there's an error writing to the output buffer
+     */
+    public void writeTo(BinaryIO io) throws IOException
+    {
+        io.writeBytes(out, 0, size);
+    }
+
+    /**
+     * Returns a copy of the output produced so far.
+     *
+     * @return output as byte array
+     */
+    public byte[] toByteArray()
+    {
+        return Arrays.copyOf(out, size);
+    }
+
+
+    /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
+
+
+    private void normalize()
+    {
+        while (Integer.compareUnsigned(range, TOP) < 0)
+        {
+            range <<= 8;
+            shiftLow();
+        }
+    }
+
+    private void shiftLow()
+    {
+        int carry = (int) (low >>> 32);
+
+        if (carry != 0 || low < 0xFF000000L)
+        {
+            int b = cache;
+
+            do
+            {
+                write(b + carry);
+                b = 0xFF;
+            }
+            while (--cacheSize != 0);
+
+            cache = (int) (low >>> 24) & 0xFF;
+        }
+
+        cacheSize++;
+        low = (low & 0xFFFFFFL) << 8;
+    }
+
+    private void write(int b)
+    {
+        if (size == out.length)
+            out = Arrays.copyOf(out, out.length * 2);
+
+        out[size++] = (byte) b;
+    }
+}
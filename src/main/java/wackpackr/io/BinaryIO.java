@@ -1,283 +1,918 @@
 package wackpackr.io;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
- * Combined wrapper for I/O streams, that allows reading and writing an arbitrary number of bits at
- * once, irrespective of the byte boundaries of the underlying streams.
+ * Combined bit-level reader and writer, that allows reading and writing an arbitrary number of bits
+ * at once, irrespective of the byte boundaries of the underlying buffers.
  *
- * <p>Possible to use with or without an input stream.</p>
+ * <p>Possible to use with or without an input buffer.</p>
+ *
+ * <p>Both directions work on raw byte arrays with an index, through a 64-bit accumulator: reading
+ * refills the accumulator with as many whole bytes as fit at once, and writing collects bits into
+ * the accumulator and flushes only whole bytes out of it. Thus up to 57 bits can be read or written
+ * in one call, and the per-bit and per-byte methods are merely special cases of that.</p>
+ *
+ * <p>Instead of byte arrays, {@link ByteBuffer}s (heap or direct) can be used at either end, so
+ * that data handed over by NIO channels and the like need not be copied onto the heap first. A heap
+ * buffer is read straight through its backing array, and a direct buffer with absolute reads, a
+ * whole word at a time where possible. Likewise, a heap buffer (or a plain array, see {@link
+ * #BinaryIO(byte[], byte[], int)}) is written straight into, so that output can go into memory
+ * owned by the caller, instead of an internal array that grows and is finally copied once more.</p>
  *
  * @author Juho Juurinen
  */
 public class BinaryIO implements AutoCloseable
 {
-    private ByteArrayInputStream in = null;
-    private int bufferIn = -1, offsetIn = 0;
+    /**
+     * Maximum number of bits that can be read or written in one call.
+     */
+    public static final int MAX_BITS = 57;
+
+    /**
+     * Sentinel value returned by the "or EOF" read methods, once the input buffer has ended.
+     */
+    public static final int EOF = -1;
+
+    private byte[] in = null;
+    private ByteBuffer inBuffer = null;
+    private int positionIn = 0, limitIn = 0;
+    private long bufferIn = 0L;
+    private int countIn = 0;
 
-    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
-    private int bufferOut = 0, offsetOut = 0;
+    private byte[] out = new byte[32];
+    private ByteBuffer outBuffer = null, outHeapBuffer = null;
+    private int startOut = 0, positionOut = 0, limitOut = 32;
+    private boolean growsOut = true;
+    private long bufferOut = 0L;
+    private int countOut = 0;
+    private int capOut = Integer.MAX_VALUE;
+
+    private int markIn = -1, markCountIn = 0, markOut = 0, markCountOut = 0;
+    private long markBufferIn = 0L, markBufferOut = 0L;
 
     /**
-     * Constructs a new BinaryIO instance for writing purposes only, without an input stream.
+     * Constructs a new BinaryIO instance for writing purposes only, without an input buffer.
      */
     public BinaryIO() {}
 
     /**
      * Constructs a new BinaryIO instance for both reading and writing purposes, with the given byte
-     * array as the input stream.
+     * array as the input buffer. The array is not copied, so it should not be modified while being
+     * read.
      *
      * @param bytes input buffer
      */
     public BinaryIO(byte[] bytes)
     {
-        this.in = new ByteArrayInputStream(bytes);
+        this.in = bytes;
+        this.limitIn = bytes.length;
+    }
+
+    /**
+     * Constructs a new BinaryIO instance for both reading and writing purposes, with the remaining
+     * bytes of the given buffer as the input buffer. The buffer is not copied, and its position is
+     * not moved: reading is done through a separate view of it.
+     *
+     * @param bytes input buffer
+     */
+    public BinaryIO(ByteBuffer bytes)
+    {
+        this(bytes, null);
     }
 
     /**
-     * Reads and returns the next bit in the input stream.
+     * Constructs a new BinaryIO instance that reads from the given byte array, and writes into the
+     * given output array starting at the given offset. The output array is not resized, so trying
+     * to write past its end results in {@link BufferOverflowException}.
      *
-     * @return the next bit in the input stream as boolean
-     * @throws NullPointerException if no input stream has been set
-     * @throws IOException if there's an error reading the input stream
-     * @throws EOFException if the input stream has been read through to the end
+     * @param in input buffer, or null
+     * @param out output array
+     * @param offset index at which to start writing
+     * @throws IndexOutOfBoundsException if offset is not within the output array
      */
-    public boolean readBit() throws IOException
+    public BinaryIO(byte[] in, byte[] out, int offset)
     {
-        if (offsetIn == 0)
+        if (in != null)
         {
-            bufferIn = in.read();
-            offsetIn = 8;
+            this.in = in;
+            this.limitIn = in.length;
         }
-        if (bufferIn == -1)
-            throw new EOFException();
+        if (offset < 0 || offset > out.length)
+            throw new IndexOutOfBoundsException("Offset: " + offset);
 
-        offsetIn--;
-        return (((bufferIn >> offsetIn) & 1) == 1);
+        this.out = out;
+        this.startOut = this.positionOut = offset;
+        this.limitOut = out.length;
+        this.growsOut = false;
     }
 
     /**
-     * Reads and returns the next byte in the input stream, irrespective of where the read pointer
-     * is within current byte buffer.
+     * Constructs a new BinaryIO instance that reads from the remaining bytes of the given input
+     * buffer, and writes into the given output buffer. The input buffer is handled as in {@link
+     * #BinaryIO(ByteBuffer)}. The output buffer is written through its backing array if it has
+     * one, or else with relative puts; either way, its position moves forward as whole bytes are
+     * written. Either buffer may be {@code null}.
+     *
+     * <p>The output buffer is not resized, so trying to write past its limit results in {@link
+     * BufferOverflowException}. Also, bits are written to the buffer only once they make up a whole
+     * byte, and even then possibly only on the next {@link #flush()}.</p>
      *
-     * @return the next byte in the input stream
-     * @throws NullPointerException if no input stream has been set
-     * @throws IOException if there's an error reading the input stream
-     * @throws EOFException if the input stream has been read through to the end
+     * @param in input buffer, or null
+     * @param out output buffer, or null to write into an internal, growing array
      */
-    public byte readByte() throws IOException
+    public BinaryIO(ByteBuffer in, ByteBuffer out)
     {
-        int prev = bufferIn;
-        bufferIn = in.read();
+        if (in != null && in.hasArray())
+        {
+            this.in = in.array();
+            this.positionIn = in.arrayOffset() + in.position();
+            this.limitIn = in.arrayOffset() + in.limit();
+        }
+        else if (in != null)
+        {
+            this.inBuffer = in.duplicate();
+            this.positionIn = in.position();
+            this.limitIn = in.limit();
+        }
 
-        if (bufferIn == -1)
-            throw new EOFException();
+        if (out != null && out.hasArray())
+        {
+            this.outHeapBuffer = out;
+            this.out = out.array();
+            this.startOut = this.positionOut = out.arrayOffset() + out.position();
+            this.limitOut = out.arrayOffset() + out.limit();
+            this.growsOut = false;
+        }
+        else if (out != null)
+        {
+            this.outBuffer = out;
+            this.out = null;
+        }
+    }
 
-        int b = (offsetIn == 0)
-                ? bufferIn
-                : (prev << (8 - offsetIn)) | (bufferIn >> offsetIn);
+    /**
+     * Reads and returns the next bit in the input buffer.
+     *
+     * @return the next bit in the input buffer as boolean
+     * @throws NullPointerException if no input buffer has been set
+     * @throws EOFException if the input buffer has been read through to the end
+     */
+    public boolean readBit() throws IOException
+    {
+        return (readLongBits(1) == 1);
+    }
 
-        return (byte) b;
+    /**
+     * Reads and returns the next byte in the input buffer, irrespective of where the read pointer
+     * is within the current byte.
+     *
+     * @return the next byte in the input buffer
+     * @throws NullPointerException if no input buffer has been set
+     * @throws EOFException if the input buffer has been read through to the end
+     */
+    public byte readByte() throws IOException
+    {
+        return (byte) readLongBits(8);
+    }
+
+    /**
+     * Reads and returns the next byte in the input buffer as an unsigned value (0–255), or {@link
+     * #EOF} if there is no whole byte left. Unlike {@link #readByte()}, reaching the end of the
+     * input buffer is not treated as an exceptional condition, which makes this method suitable for
+     * use in hot loops.
+     *
+     * @return the next byte in the input buffer as unsigned value, or EOF if the buffer has ended
+     * @throws NullPointerException if no input buffer has been set
+     */
+    public int readByteOrEOF()
+    {
+        return (int) readBitsOrEOF(8);
     }
 
     /**
-     * Reads and returns the next byte in the input stream, or {@code null} if the input stream has
+     * Reads and returns the next byte in the input buffer, or {@code null} if the input buffer has
      * already been read through to the end.
      *
-     * @return the next byte in input stream, or null if the input stream has reached the end
-     * @throws NullPointerException if no input stream has been set
-     * @throws IOException if there's an error reading the input stream
+     * @return the next byte in input buffer, or null if the input buffer has reached the end
+     * @throws NullPointerException if no input buffer has been set
      */
-    public Byte readByteOrNull() throws IOException
+    public Byte readByteOrNull()
     {
-        try
-        {
-            return readByte();
-        }
-        catch (EOFException e) {}
+        int b = readByteOrEOF();
 
-        return null;
+        return (b == EOF)
+                ? null
+                : (byte) b;
     }
 
     /**
-     * Reads and returns the requested number of bits next in the input stream, cast as an integer.
+     * Reads and returns the requested number of bits next in the input buffer, cast as an integer.
      *
-     * @param bits number of bits to read
+     * @param bits number of bits to read, at most 32
      * @return requested bits as an integer
-     * @throws NullPointerException if no input stream has been set
-     * @throws IOException if there's an error reading the input stream
-     * @throws EOFException if the input stream is read through to the end during operation
+     * @throws NullPointerException if no input buffer has been set
+     * @throws EOFException if the input buffer is read through to the end during operation
      */
     public int readBits(int bits) throws IOException
     {
-        int i = 0;
+        return (int) readLongBits(bits);
+    }
+
+    /**
+     * Reads and returns the requested number of bits next in the input buffer, cast as a long
+     * value.
+     *
+     * @param bits number of bits to read, at most {@link #MAX_BITS}
+     * @return requested bits as a long value
+     * @throws NullPointerException if no input buffer has been set
+     * @throws EOFException if the input buffer is read through to the end during operation
+     */
+    public long readLongBits(int bits) throws IOException
+    {
+        if (countIn < bits)
+        {
+            refill();
+
+            if (countIn < bits)
+                throw new EOFException();
+        }
+
+        countIn -= bits;
+        return (bufferIn >>> countIn) & ((1L << bits) - 1);
+    }
+
+    /**
+     * Reads and returns the requested number of bits next in the input buffer, cast as a long
+     * value; or {@link #EOF}, without moving the read pointer, if there are less bits than that
+     * left.
+     *
+     * @param bits number of bits to read, at most {@link #MAX_BITS}
+     * @return requested bits as a long value, or EOF if the input buffer has ended
+     * @throws NullPointerException if no input buffer has been set
+     */
+    public long readBitsOrEOF(int bits)
+    {
+        if (countIn < bits)
+        {
+            refill();
 
-        for (; bits % 8 != 0; bits--)
-            i = (i << 1) | (readBit() ? 1 : 0);
+            if (countIn < bits)
+                return EOF;
+        }
 
-        for (; bits > 0; bits -= 8)
-            i = (i << 8) | (readByte() & 0xFF);
+        countIn -= bits;
+        return (bufferIn >>> countIn) & ((1L << bits) - 1);
+    }
 
-        return i;
+    /**
+     * Returns the number of bits left unread in the input buffer.
+     *
+     * @return number of unread bits
+     * @throws NullPointerException if no input buffer has been set
+     */
+    public long remaining()
+    {
+        if (in == null && inBuffer == null)
+            throw new NullPointerException();
+
+        return 8L * (limitIn - positionIn) + countIn;
     }
 
     /**
-     * Reads and returns the requested number of bytes next in the input stream.
+     * Returns {@code true} if there is at least one unread bit left in the input buffer.
+     *
+     * @return true if the input buffer has not been read through to the end
+     * @throws NullPointerException if no input buffer has been set
+     */
+    public boolean hasMore()
+    {
+        return (remaining() > 0);
+    }
+
+    /**
+     * Returns the requested number of bits next in the input buffer, cast as a long value, without
+     * moving the read pointer. Meant for table-driven decoders, which look ahead a fixed number of
+     * bits, and then consume only as many as the symbol found actually took up (see {@link
+     * #skipBits(int)}).
+     *
+     * @param bits number of bits to peek at, at most {@link #MAX_BITS}
+     * @return requested bits as a long value
+     * @throws NullPointerException if no input buffer has been set
+     * @throws EOFException if there are less than the requested number of bits left
+     */
+    public long peekBits(int bits) throws IOException
+    {
+        if (countIn < bits)
+        {
+            refill();
+
+            if (countIn < bits)
+                throw new EOFException();
+        }
+
+        return (bufferIn >>> (countIn - bits)) & ((1L << bits) - 1);
+    }
+
+    /**
+     * Works as {@link #peekBits(int)}, except that near the end of the input buffer the missing
+     * bits are padded with 0s, instead of throwing {@code EOFException}. A decoder that peeks at
+     * the last symbol in a stream should be fine with this, as long as it does not consume more
+     * bits than there actually are.
+     *
+     * @param bits number of bits to peek at, at most {@link #MAX_BITS}
+     * @return requested bits as a long value, padded with 0s if necessary
+     * @throws NullPointerException if no input buffer has been set
+     */
+    public long peekBitsPadded(int bits)
+    {
+        if (countIn < bits)
+        {
+            refill();
+
+            if (countIn < bits)
+                return (bufferIn << (bits - countIn)) & ((1L << bits) - 1);
+        }
+
+        return (bufferIn >>> (countIn - bits)) & ((1L << bits) - 1);
+    }
+
+    /**
+     * Moves the read pointer forward by the given number of bits, discarding them. Either all of
+     * the bits are skipped, or none at all.
+     *
+     * @param bits number of bits to skip
+     * @throws NullPointerException if no input buffer has been set
+     * @throws EOFException if there are less than the given number of bits left
+     */
+    public void skipBits(int bits) throws IOException
+    {
+        if (countIn >= bits)
+        {
+            countIn -= bits;
+            return;
+        }
+
+        if (remaining() < bits)
+            throw new EOFException();
+
+        bits -= countIn;
+        positionIn += bits >> 3;
+        bufferIn = countIn = 0;
+
+        readLongBits(bits & 7);
+    }
+
+    /**
+     * Reads and returns the requested number of bytes next in the input buffer. The count is
+     * checked against the bytes left before the array is allocated, so that a length read from
+     * corrupt input cannot force a huge allocation.
      *
      * @param count number of bytes to read
      * @return requested number of bytes as array
-     * @throws NullPointerException if no input stream has been set
-     * @throws IOException if there's an error reading the input stream
-     * @throws EOFException if the input stream is read through to the end during operation
+     * @throws NullPointerException if no input buffer has been set
+     * @throws EOFException if the count is negative, or there are less than that many bytes left
      */
     public byte[] readBytes(int count) throws IOException
     {
-        byte[] bs = new byte[count];
+        if (count < 0 || remaining() < 8L * count)
+            throw new EOFException();
 
-        for (int i = 0; i < count; i++)
-            bs[i] = readByte();
+        byte[] bs = new byte[count];
+        readBytes(bs, 0, count);
 
         return bs;
     }
 
     /**
-     * Reads and returns the next 32-bit chunk in the input stream, cast as a long value.
+     * Reads the requested number of bytes next in the input buffer into the given array, starting
+     * at the given offset. Either all of the bytes are read, or none at all.
      *
-     * @return the next 32 bits in the input stream as long
-     * @throws NullPointerException if no input stream has been set
-     * @throws IOException if there's an error reading the input stream
-     * @throws EOFException if there is less than 32 bits left in the input stream
+     * <p>If the read pointer is at a byte boundary, the bytes are copied over in bulk; otherwise
+     * each byte is assembled from two adjacent input bytes with a shift.</p>
+     *
+     * @param bs array to read bytes into
+     * @param offset index of the first byte to fill in the array
+     * @param length number of bytes to read
+     * @throws NullPointerException if no input buffer has been set
+     * @throws EOFException if there are less than the requested number of bytes left
      */
-    public long read32Bits() throws IOException
+    public void readBytes(byte[] bs, int offset, int length) throws IOException
+    {
+        if (remaining() < 8L * length)
+            throw new EOFException();
+
+        int i = offset, end = offset + length;
+
+        for (; i < end && countIn >= 8; i++)
+            bs[i] = (byte) readLongBits(8);
+
+        int n = end - i;
+
+        if (countIn == 0 && in != null)
+            System.arraycopy(in, positionIn, bs, i, n);
+        else if (countIn == 0 && n > 0)
+        {
+            inBuffer.position(positionIn);
+            inBuffer.get(bs, i, n);
+        }
+        else
+        {
+            int r = countIn;
+            int pending = (int) bufferIn & ((1 << r) - 1);
+
+            for (int k = positionIn; i < end; i++, k++)
+            {
+                int b = byteIn(k) & 0xFF;
+
+                bs[i] = (byte) ((pending << (8 - r)) | (b >>> r));
+                pending = b & ((1 << r) - 1);
+            }
+
+            if (n > 0)
+                bufferIn = pending;
+        }
+
+        positionIn += n;
+    }
+
+    /**
+     * Reads and returns the next varint in the input buffer, as written by {@link
+     * #writeVarInt(int)}.
+     *
+     * @return the next varint in the input buffer
+     * @throws NullPointerException if no input buffer has been set
+     * @throws IllegalArgumentException if the varint is longer than five bytes, or does not fit a
+     *         non-negative int
+     * @throws EOFException if the input buffer ends in the middle of the varint
+     */
+    public int readVarInt() throws IOException
     {
-        long l = 0L;
+        long value = 0L;
+
+        for (int shift = 0; shift < 35; shift += 7)
+        {
+            byte b = readByte();
+            value |= (long) (b & 0x7F) << shift;
 
-        for (int k = 0; k < 4; k++)
-            l = (l << 8) | (readByte() & 0xFF);
+            if (b >= 0)
+            {
+                if (value > Integer.MAX_VALUE)
+                    break;
 
-        return l;
+                return (int) value;
+            }
+        }
+
+        throw new IllegalArgumentException("Malformed varint");
     }
 
     /**
-     * Writes one bit to the end of the output stream.
+     * Reads and returns the next 32-bit chunk in the input buffer, cast as a long value.
+     *
+     * @return the next 32 bits in the input buffer as long
+     * @throws NullPointerException if no input buffer has been set
+     * @throws EOFException if there is less than 32 bits left in the input buffer
+     */
+    public long read32Bits() throws IOException
+    {
+        return readLongBits(32);
+    }
+
+    /**
+     * Writes one bit to the end of the output buffer.
      *
      * @param b bit to write as boolean
      * @return a reference to this object
-     * @throws IOException if there's an error writing to the output stream
+     * @throws IOException if there's an error writing to the output buffer
      */
     public BinaryIO writeBit(boolean b) throws IOException
     {
-        bufferOut = (bufferOut << 1) | (b ? 1 : 0);
-        offsetOut++;
+        return writeLongBits(b ? 1 : 0, 1);
+    }
+
+    /**
+     * Writes one byte to the end of the output buffer, irrespective of where the write pointer is
+     * within the current byte.
+     *
+     * @param b byte to write
+     * @return a reference to this object
+     * @throws IOException if there's an error writing to the output buffer
+     */
+    public BinaryIO writeByte(byte b) throws IOException
+    {
+        return writeLongBits(b, 8);
+    }
+
+    /**
+     * Writes the given value to the end of the output buffer using the specified number of bits.
+     * Note that this method does not check whether the value fits into the given bit size — any
+     * bits above the given size are silently dropped.
+     *
+     * @param i value to write
+     * @param bits number of bits to allocate for the value, at most 32
+     * @return a reference to this object
+     * @throws IOException if there's an error writing to the output buffer
+     */
+    public BinaryIO writeBits(int i, int bits) throws IOException
+    {
+        return writeLongBits(i, bits);
+    }
+
+    /**
+     * Writes the given value to the end of the output buffer using the specified number of bits.
+     * Only the lowest bits of the value are written, so the same caveat as in {@link
+     * #writeBits(int, int)} applies.
+     *
+     * @param l value to write
+     * @param bits number of bits to allocate for the value, at most {@link #MAX_BITS}
+     * @return a reference to this object
+     * @throws IOException if there's an error writing to the output buffer
+     */
+    public BinaryIO writeLongBits(long l, int bits) throws IOException
+    {
+        if (countOut + bits > 64)
+            flush();
 
-        if (offsetOut == 8)
+        bufferOut = (bufferOut << bits) | (l & ((1L << bits) - 1));
+        countOut += bits;
+
+        return this;
+    }
+
+    /**
+     * Writes an arbitrary number of bytes to the end of the output buffer.
+     *
+     * @param bs bytes to write
+     * @return a reference to this object
+     * @throws IOException if there's an error writing to the output buffer
+     */
+    public BinaryIO writeBytes(byte[] bs) throws IOException
+    {
+        return writeBytes(bs, 0, bs.length);
+    }
+
+    /**
+     * Writes the given range of bytes from the given array to the end of the output buffer.
+     *
+     * <p>If the write pointer is at a byte boundary, the bytes are copied over in bulk; otherwise
+     * each output byte is assembled from two adjacent input bytes with a shift.</p>
+     *
+     * @param bs array holding the bytes to write
+     * @param offset index of the first byte to write
+     * @param length number of bytes to write
+     * @return a reference to this object
+     * @throws IOException if there's an error writing to the output buffer
+     */
+    public BinaryIO writeBytes(byte[] bs, int offset, int length) throws IOException
+    {
+        flush();
+        ensureCapacity(length);
+
+        if (countOut == 0 && outBuffer != null)
+        {
+            outBuffer.put(bs, offset, length);
+            positionOut += length;
+        }
+        else if (countOut == 0)
+        {
+            System.arraycopy(bs, offset, out, positionOut, length);
+            positionOut += length;
+            syncHeapBuffer();
+        }
+        else
         {
-            out.write(bufferOut);
-            bufferOut = offsetOut = 0;
+            int r = countOut;
+            int pending = (int) bufferOut & ((1 << r) - 1);
+
+            for (int i = offset; i < offset + length; i++)
+            {
+                int b = bs[i] & 0xFF;
+
+                byteOut((byte) ((pending << (8 - r)) | (b >>> r)));
+                pending = b & ((1 << r) - 1);
+            }
+
+            bufferOut = pending;
+            syncHeapBuffer();
         }
 
         return this;
     }
 
     /**
-     * Writes one byte to the end of the output stream, irrespective of where the write pointer is
-     * within the current byte buffer.
+     * Writes the given byte the given number of times to the end of the output buffer, as one bulk
+     * fill instead of one write per byte.
      *
      * @param b byte to write
+     * @param count number of times to write it
      * @return a reference to this object
-     * @throws IOException if there's an error writing to the output stream
+     * @throws IllegalArgumentException if count is negative
+     * @throws IOException if there's an error writing to the output buffer
      */
-    public BinaryIO writeByte(byte b) throws IOException
+    public BinaryIO writeRepeatedByte(byte b, int count) throws IOException
     {
-        if (offsetOut == 0)
-            out.write(b);
-        else
+        if (count < 0)
+            throw new IllegalArgumentException("Negative count: " + count);
+
+        flush();
+        ensureCapacity(count);
+
+        int r = countOut, v = b & 0xFF;
+
+        if (r > 0 && count > 0)
         {
-            out.write(
-                    (bufferOut << (8 - offsetOut)) |
-                    ((b >> offsetOut) & (0xFF >> offsetOut))
-            );
-            bufferOut = b & ((1 << offsetOut) - 1);
+            int pending = (int) bufferOut & ((1 << r) - 1);
+
+            byteOut((byte) ((pending << (8 - r)) | (v >>> r)));
+            bufferOut = v & ((1 << r) - 1);
+            v = (v << (8 - r) | v >>> r) & 0xFF;
+            count--;
         }
 
+        if (outBuffer != null)
+            for (int i = 0; i < count; i++)
+                outBuffer.put((byte) v);
+        else
+            Arrays.fill(out, positionOut, positionOut + count, (byte) v);
+
+        positionOut += count;
+        syncHeapBuffer();
+
         return this;
     }
 
     /**
-     * Writes the given value to the end of the output stream using the specified number of bits.
-     * Note that this method does not check whether the value fits into the given bit size — trying
-     * to write values with less bits than possible in practice corrupts the output stream.
+     * Writes the given non-negative value to the end of the output buffer as a varint: seven bits
+     * per byte, lowest bits first, with the top bit of each byte telling whether more bytes follow.
+     * Thus values below 128 take one byte, and the largest int values five.
      *
      * @param i value to write
-     * @param bits number of bits to allocate for the value
      * @return a reference to this object
-     * @throws IOException if there's an error writing to the output stream
+     * @throws IllegalArgumentException if value is negative
+     * @throws IOException if there's an error writing to the output buffer
      */
-    public BinaryIO writeBits(int i, int bits) throws IOException
+    public BinaryIO writeVarInt(int i) throws IOException
     {
-        while (bits % 8 != 0)
+        if (i < 0)
+            throw new IllegalArgumentException("Negative varint: " + i);
+
+        while (i >= 0x80)
         {
-            bits--;
-            writeBit(1 == ((i >> bits) & 1));
+            writeByte((byte) (i & 0x7F | 0x80));
+            i >>>= 7;
         }
-        while (bits > 0)
+
+        return writeByte((byte) i);
+    }
+
+    /**
+     * Writes a 32-bit chunk to the end of the output buffer.
+     *
+     * @param l 32 bits of data to write as long
+     * @return a reference to this object
+     * @throws IOException if there's an error writing to the output buffer
+     */
+    public BinaryIO write32Bits(long l) throws IOException
+    {
+        return writeLongBits(l, 32);
+    }
+
+    /**
+     * Writes all bits collected so far that make up whole bytes to the output buffer. Any bits
+     * left over stay pending until more bits are written.
+     *
+     * @return a reference to this object
+     * @throws BufferOverflowException if a fixed-size output buffer is full
+     */
+    public BinaryIO flush()
+    {
+        int n = countOut >> 3;
+        ensureCapacity(n);
+
+        for (int k = 1; k <= n; k++)
+            byteOut((byte) (bufferOut >>> (countOut - (k << 3))));
+
+        countOut &= 7;
+        syncHeapBuffer();
+
+        return this;
+    }
+
+    /**
+     * Makes sure that the given number of bytes more can be written into the output buffer. The
+     * internal array, if used, is resized once to exactly that much more than has been written so
+     * far, so when the final output size is known in advance, {@link #getBytesOut()} can return
+     * the array as is, without growing or copying it on the way. A fixed-size output buffer is
+     * not resized, but only checked for room.
+     *
+     * @param n number of bytes to make room for
+     * @return a reference to this object
+     * @throws BufferOverflowException if a fixed-size output buffer does not have enough room
+     */
+    public BinaryIO reserveOut(int n)
+    {
+        flush();
+
+        if (outBuffer != null && outBuffer.remaining() < n)
+            throw new BufferOverflowException();
+
+        if (outBuffer == null && growsOut && positionOut + n != out.length)
         {
-            bits -= 8;
-            writeByte((byte) ((i >> bits) & 0xFF));
+            out = Arrays.copyOf(out, positionOut + n);
+            limitOut = out.length;
         }
+        else
+            ensureCapacity(n);
 
         return this;
     }
 
     /**
-     * Writes an arbitrary number of bytes to the end of the output stream.
+     * Limits the number of bytes that can still be written to the output buffer, counting from
+     * the bytes written so far, to the given number. Writing past the limit results in {@link
+     * BufferOverflowException}, as with a full fixed-size output buffer, so that a writer can give
+     * up as soon as its output grows too large. Bits that do not yet make up a whole byte are not
+     * counted.
      *
-     * @param bs bytes to write
+     * @param n number of bytes that can still be written, or a negative number to lift the limit
      * @return a reference to this object
-     * @throws IOException if there's an error writing to the output stream
+     * @throws BufferOverflowException if the pending whole bytes do not fit into the limit
      */
-    public BinaryIO writeBytes(byte[] bs) throws IOException
+    public BinaryIO limitOut(int n)
     {
-        for (byte b : bs)
-            writeByte(b);
+        capOut = Integer.MAX_VALUE;
+        flush();
+
+        if (n >= 0)
+            capOut = (int) Math.min(Integer.MAX_VALUE, (long) positionOut + n);
 
         return this;
     }
 
     /**
-     * Writes a 32-bit chunk to the end of the output stream.
+     * Marks the current positions in both the input and the output buffer, so that {@link
+     * #reset()} can later return to them.
      *
-     * @param l 32 bits of data to write as long
      * @return a reference to this object
-     * @throws IOException if there's an error writing to the output stream
      */
-    public BinaryIO write32Bits(long l) throws IOException
+    public BinaryIO mark()
+    {
+        flush();
+
+        markIn = positionIn;
+        markBufferIn = bufferIn;
+        markCountIn = countIn;
+        markOut = positionOut;
+        markBufferOut = bufferOut;
+        markCountOut = countOut;
+
+        return this;
+    }
+
+    /**
+     * Returns to the positions marked by {@link #mark()}: whatever has been read since is read
+     * again, and whatever has been written since is discarded and overwritten by later writes. The
+     * mark is kept, so it can be returned to again.
+     *
+     * @return a reference to this object
+     * @throws IllegalStateException if no mark has been set
+     */
+    public BinaryIO reset()
     {
-        for (int k = 3; k >= 0; k--)
-            writeByte((byte) (l >> (k * 8)));
+        if (markIn < 0)
+            throw new IllegalStateException("No mark set");
+
+        if (outBuffer != null)
+            outBuffer.position(outBuffer.position() - (positionOut - markOut));
+
+        positionIn = markIn;
+        bufferIn = markBufferIn;
+        countIn = markCountIn;
+        positionOut = markOut;
+        bufferOut = markBufferOut;
+        countOut = markCountOut;
+        syncHeapBuffer();
 
         return this;
     }
 
     /**
-     * Returns current contents of the underlying output stream.
+     * Returns the number of whole bytes written to the output buffer so far, by this instance.
+     * Like {@link #getBytesOut()}, flushes first.
+     *
+     * @return number of bytes written
+     */
+    public int getByteCountOut()
+    {
+        flush();
+
+        return positionOut - startOut;
+    }
+
+    /**
+     * Returns current contents of the output buffer. Bits that do not yet make up a whole byte are
+     * not included.
+     *
+     * <p>If writing into a {@code ByteBuffer} or a given array, the bytes written by this instance
+     * so far are returned as a copy. The internal array is returned without copying if it is
+     * exactly full, which is the case after a correct {@link #reserveOut(int)}.</p>
      *
-     * @return contents of the output stream, as byte array
+     * @return contents of the output buffer, as byte array
      */
     public byte[] getBytesOut()
     {
-        return out.toByteArray();
+        flush();
+
+        if (outBuffer == null && growsOut && positionOut == out.length)
+            return out;
+
+        if (outBuffer == null)
+            return Arrays.copyOfRange(out, startOut, positionOut);
+
+        ByteBuffer view = outBuffer.duplicate();
+        byte[] bs = new byte[positionOut];
+
+        view.position(view.position() - positionOut);
+        view.get(bs);
+
+        return bs;
     }
 
+    /**
+     * Flushes whole bytes to the output buffer, as in {@link #flush()}. Nothing else needs to be
+     * released.
+     *
+     * @throws IOException never, in practice
+     */
     @Override
     public void close() throws IOException
     {
-        if (in != null)
-            in.close();
+        flush();
+    }
+
+
+    /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
+
+
+    private void refill()
+    {
+        if (in == null && inBuffer == null)
+            throw new NullPointerException();
+
+        int n = Math.min((64 - countIn) >> 3, limitIn - positionIn);
+
+        if (in == null && n == 8)
+        {
+            bufferIn = inBuffer.getLong(positionIn);
+            positionIn += 8;
+        }
+        else
+            for (int k = 0; k < n; k++)
+                bufferIn = (bufferIn << 8) | (byteIn(positionIn++) & 0xFF);
+
+        countIn += n << 3;
+    }
+
+    private byte byteIn(int index)
+    {
+        return (in != null)
+                ? in[index]
+                : inBuffer.get(index);
+    }
+
+    private void byteOut(byte b)
+    {
+        if (outBuffer != null)
+            outBuffer.put(b);
+        else
+            out[positionOut] = b;
 
-        out.close();
+        positionOut++;
+    }
+
+    private void ensureCapacity(int n)
+    {
+        if (n > capOut - positionOut)
+            throw new BufferOverflowException();
+
+        if (outBuffer != null || positionOut + n <= limitOut)
+            return;
+
+        if (!growsOut)
+            throw new BufferOverflowException();
+
+        out = Arrays.copyOf(out, Math.max(out.length << 1, positionOut + n));
+        limitOut = out.length;
+    }
+
+    private void syncHeapBuffer()
+    {
+        if (outHeapBuffer != null)
+            outHeapBuffer.position(positionOut - outHeapBuffer.arrayOffset());
     }
 }
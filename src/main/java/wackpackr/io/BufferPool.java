@@ -0,0 +1,159 @@
+package wackpackr.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of reusable byte arrays, meant for the scratch buffers that compressors write their output
+ * into before copying it out in exact size.
+ *
+ * <p>Arrays are handed out in power-of-two sizes, from {@value #MIN_POOLED_SIZE} up to {@value
+ * #MAX_POOLED_SIZE} bytes, so that a released array fits any later request for the same size
+ * class. Each size class holds at most {@value #MAX_POOLED_PER_SIZE} arrays, and the pool as a
+ * whole at most {@value #MAX_POOLED_BYTES} bytes; anything released on top of that, as well as
+ * arrays of other sizes, is simply left for the garbage collector. Requests above the largest
+ * pooled size are not pooled at all, since they are rare enough that allocating them afresh costs
+ * little, and holding on to them costs a lot. {@link #clear()} drops everything pooled.</p>
+ *
+ * <p>Thread-safe: every size class is locked separately, and only for the time it takes to push or
+ * pop a reference. An acquired array is owned by the caller until released, and its contents are
+ * whatever the previous user left there.</p>
+ *
+ * @author Juho Juurinen
+ */
+public class BufferPool
+{
+    /**
+     * Smallest size class of pooled arrays.
+     */
+    public static final int MIN_POOLED_SIZE = 1 << 10;
+
+    /**
+     * Largest size class of pooled arrays.
+     */
+    public static final int MAX_POOLED_SIZE = 1 << 22;
+
+    /**
+     * Number of arrays kept per size class.
+     */
+    public static final int MAX_POOLED_PER_SIZE = 4;
+
+    /**
+     * Largest total size of the arrays kept in the pool, in bytes.
+     */
+    public static final long MAX_POOLED_BYTES = 1L << 24;
+
+    private static final int MIN_SHIFT = 10;
+    private static final SizeClass[] POOL = new SizeClass[23 - MIN_SHIFT];
+    private static final AtomicLong POOLED_BYTES = new AtomicLong();
+
+    static
+    {
+        for (int i = 0; i < POOL.length; i++)
+            POOL[i] = new SizeClass();
+    }
+
+    private BufferPool() {}
+
+    /**
+     * Returns an array of at least the given size, either from the pool or newly allocated.
+     *
+     * @param size minimum length of the array
+     * @return array of at least the given length
+     * @throws IllegalArgumentException if size is negative
+     */
+    public static byte[] acquire(int size)
+    {
+        if (size < 0)
+            throw new IllegalArgumentException("Negative size: " + size);
+
+        if (size > MAX_POOLED_SIZE)
+            return new byte[size];
+
+        int shift = (size > MIN_POOLED_SIZE)
+                ? 32 - Integer.numberOfLeadingZeros(size - 1)
+                : MIN_SHIFT;
+        byte[] bs = POOL[shift - MIN_SHIFT].pop();
+
+        return (bs != null)
+                ? bs
+                : new byte[1 << shift];
+    }
+
+    /**
+     * Hands the given array back to the pool. The caller must not use the array after this. Arrays
+     * not obtained from {@link #acquire(int)} are accepted too, though only pooled if their size
+     * happens to match a size class.
+     *
+     * @param bs array to release, or null
+     */
+    public static void release(byte[] bs)
+    {
+        if (bs == null || bs.length < MIN_POOLED_SIZE || bs.length > MAX_POOLED_SIZE
+                || Integer.bitCount(bs.length) != 1)
+            return;
+
+        POOL[Integer.numberOfTrailingZeros(bs.length) - MIN_SHIFT].push(bs);
+    }
+
+    /**
+     * Drops all arrays held in the pool, leaving them for the garbage collector. Arrays acquired
+     * before this can still be released afterwards.
+     */
+    public static void clear()
+    {
+        for (SizeClass sizeClass : POOL)
+            sizeClass.clear();
+    }
+
+    /**
+     * Returns the total size of the arrays currently held in the pool.
+     *
+     * @return number of bytes pooled
+     */
+    public static long pooledBytes()
+    {
+        return POOLED_BYTES.get();
+    }
+
+
+    /*------PRIVATE HELPER METHODS BELOW, NO COMMENTS OR DESCRIPTION GIVEN------*/
+
+
+    private static class SizeClass
+    {
+        private final byte[][] arrays = new byte[MAX_POOLED_PER_SIZE][];
+        private int size = 0;
+
+        synchronized byte[] pop()
+        {
+            if (size == 0)
+                return null;
+
+            byte[] bs = arrays[--size];
+            arrays[size] = null;
+            POOLED_BYTES.addAndGet(-bs.length);
+
+            return bs;
+        }
+
+        synchronized void push(byte[] bs)
+        {
+            if (size == arrays.length)
+                return;
+
+            if (POOLED_BYTES.addAndGet(bs.length) > MAX_POOLED_BYTES)
+            {
+                POOLED_BYTES.addAndGet(-bs.length);
+                return;
+            }
+
+            arrays[size++] = bs;
+        }
+
+        synchronized void clear()
+        {
+            while (size > 0)
+                pop();
+        }
+    }
+}
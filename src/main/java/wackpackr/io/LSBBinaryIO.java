@@ -0,0 +1,147 @@
+package wackpackr.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Counterpart of {@link BinaryIO} that packs bits least significant bit first, as done in legacy
+ * LZW formats such as Unix {@code compress} (.Z) and GIF. That is, the first bit of a value lands
+ * in the lowest free bit of the current byte, and a value spanning several bytes is stored with its
+ * low-order bits first.
+ *
+ * <p>Possible to use with or without an input stream.</p>
+ *
+ * @author Juho Juurinen
+ */
+public class LSBBinaryIO implements AutoCloseable
+{
+    private byte[] in = null;
+    private long positionIn = 0;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private int bufferOut = 0, offsetOut = 0;
+
+    /**
+     * Constructs a new LSBBinaryIO instance for writing purposes only, without an input stream.
+     */
+    public LSBBinaryIO() {}
+
+    /**
+     * Constructs a new LSBBinaryIO instance for both reading and writing purposes, with the given
+     * byte array as the input stream.
+     *
+     * @param bytes input buffer
+     */
+    public LSBBinaryIO(byte[] bytes)
+    {
+        this.in = bytes;
+    }
+
+    /**
+     * Reads and returns the requested number of bits next in the input stream, cast as an integer.
+     * The first bit read becomes the lowest bit of the returned value.
+     *
+     * @param bits number of bits to read, at most 24
+     * @return requested bits as an integer
+     * @throws NullPointerException if no input stream has been set
+     * @throws EOFException if the input stream is read through to the end during operation
+     */
+    public int readBits(int bits) throws IOException
+    {
+        if (remaining() < bits)
+            throw new EOFException();
+
+        int i = 0;
+        for (int k = 0; k < bits; )
+        {
+            int index = (int) (positionIn >> 3);
+            int offset = (int) (positionIn & 7);
+            int n = Math.min(8 - offset, bits - k);
+
+            i |= ((in[index] & 0xFF) >> offset & ((1 << n) - 1)) << k;
+            k += n;
+            positionIn += n;
+        }
+
+        return i;
+    }
+
+    /**
+     * Moves the read pointer forward by the given number of bits, or to the end of the input
+     * stream if there are less bits than that left.
+     *
+     * @param bits number of bits to skip
+     * @throws NullPointerException if no input stream has been set
+     */
+    public void skipBits(long bits)
+    {
+        positionIn = Math.min(positionIn + bits, 8L * in.length);
+    }
+
+    /**
+     * Returns the number of bits left unread in the input stream.
+     *
+     * @return number of unread bits
+     * @throws NullPointerException if no input stream has been set
+     */
+    public long remaining()
+    {
+        return 8L * in.length - positionIn;
+    }
+
+    /**
+     * Writes the given value to the end of the output stream using the specified number of bits,
+     * lowest bit first. As in {@link BinaryIO#writeBits(int, int)}, it is not checked whether the
+     * value fits into the given bit size.
+     *
+     * @param i value to write
+     * @param bits number of bits to allocate for the value
+     * @return a reference to this object
+     */
+    public LSBBinaryIO writeBits(int i, int bits)
+    {
+        for (int k = 0; k < bits; )
+        {
+            int n = Math.min(8 - offsetOut, bits - k);
+
+            bufferOut |= ((i >>> k) & ((1 << n) - 1)) << offsetOut;
+            k += n;
+            offsetOut += n;
+
+            if (offsetOut == 8)
+            {
+                out.write(bufferOut);
+                bufferOut = offsetOut = 0;
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * Returns current contents of the underlying output stream. A partially filled last byte is
+     * included, padded with 0s in its high-order bits.
+     *
+     * @return contents of the output stream, as byte array
+     */
+    public byte[] getBytesOut()
+    {
+        if (offsetOut == 0)
+            return out.toByteArray();
+
+        byte[] bs = out.toByteArray();
+        byte[] padded = new byte[bs.length + 1];
+
+        System.arraycopy(bs, 0, padded, 0, bs.length);
+        padded[bs.length] = (byte) bufferOut;
+
+        return padded;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        out.close();
+    }
+}
@@ -121,6 +121,25 @@ public final class ByteString
         return copyRange(beginIndex, endIndex);
     }
 
+    /**
+     * Copies the bytes within the given bounds in the ByteString into the given destination array,
+     * starting at the given index. Works like {@link String#getChars(int, int, char[], int)}, and
+     * is meant for callers that want to avoid allocating a new array for each copy.
+     *
+     * @param beginIndex zero-based beginning index, inclusive
+     * @param endIndex zero-based ending index, exclusive
+     * @param dst destination array
+     * @param dstBegin index in the destination array where to put the first byte
+     * @throws IndexOutOfBoundsException if either range is out of bounds
+     */
+    public void getBytes(int beginIndex, int endIndex, byte[] dst, int dstBegin)
+    {
+        if (beginIndex < 0 || endIndex < beginIndex || size < endIndex)
+            throw new IndexOutOfBoundsException();
+
+        System.arraycopy(bytes, beginIndex, dst, dstBegin, endIndex - beginIndex);
+    }
+
     /**
      * Returns an exact clone of the ByteString. The clone is a new, separate instance, so no
      * modification to it is carried over to the original.
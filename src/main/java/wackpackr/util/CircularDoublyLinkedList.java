@@ -121,6 +121,15 @@ public class CircularDoublyLinkedList<E>
             deleteNode(sentinel.prev);
     }
 
+    /**
+     * Removes all elements from the list at once, in constant time.
+     */
+    public void clear()
+    {
+        sentinel.prev = sentinel.next = sentinel;
+        size = 0;
+    }
+
     /**
      * Returns all elements in this list as an array in proper sequence: that is, in the order they
      * were added to the list.
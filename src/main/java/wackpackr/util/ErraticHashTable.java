@@ -11,8 +11,9 @@ package wackpackr.util;
  * <p>While the elements can be of any type, and {@code null} elements are permitted, specifically
  * only byte sequences (of arbitrary length) are accepted as keys.</p>
  *
- * <p>Only two methods are offered: (1) adding an element with a certain key; and (2) retrieving all
- * elements whose keys hash to the same bucket (as described above).</p>
+ * <p>Only three methods are offered: (1) adding an element with a certain key; (2) retrieving all
+ * elements whose keys hash to the same bucket (as described above); and (3) emptying the table.
+ * </p>
  *
  * <p>The backing array is not dynamically resized. Hash table size must be given at instantiation,
  * and remains fixed thereafter. For this reason, this class should not be used unless the maximum
@@ -69,6 +70,17 @@ public class ErraticHashTable<E>
         safeGet(hash(key)).add(e);
     }
 
+    /**
+     * Removes all elements from the table. The buckets themselves are emptied but kept, so that the
+     * table can be reused without allocating anything anew.
+     */
+    public void clear()
+    {
+        for (CircularDoublyLinkedList<E> bucket : buckets)
+            if (bucket != null)
+                bucket.clear();
+    }
+
     /**
      * Calculates the variance-to-mean ratio (VMR) of bucket lengths, which is supposed to quantify
      * how evenly the table has dispersed its elements (ratio within range of 0.9 ~ 1.1 is good).
@@ -108,6 +108,53 @@ public class LZWNode
                 : parent.insert(node);
     }
 
+    /**
+     * Detaches all nodes further down the trie from this node, so that the node is again as it was
+     * when created. Meant for reusing root nodes when a dictionary is reset.
+     */
+    public void removeChildren()
+    {
+        next = null;
+    }
+
+    /**
+     * Detaches the given node from among the nodes that directly follow this one, provided that
+     * nothing further has been inserted under or after it. In other words, undoes the insertion of
+     * the given node, when insertions are undone in reverse order. Meant for restoring a seeded
+     * dictionary when it is reset.
+     *
+     * @param node node to detach
+     * @return true if the node was found and detached
+     */
+    public boolean removeChild(LZWNode node)
+    {
+        if (next == node)
+        {
+            next = null;
+            return true;
+        }
+
+        for (LZWNode root = next; root != null; )
+        {
+            if (root.left == node)
+            {
+                root.left = null;
+                return true;
+            }
+            if (root.right == node)
+            {
+                root.right = null;
+                return true;
+            }
+
+            root = (node.value < root.value)
+                    ? root.left
+                    : root.right;
+        }
+
+        return false;
+    }
+
     /**
      * Returns the dictionary index stored in this node.
      *
@@ -1,5 +1,7 @@
 package wackpackr.util;
 
+import java.util.Arrays;
+
 /**
  * Simple utility that mimics a kind of "sliding window policy" cache, that only retains the latest
  * N inbound elements, where N is the given cache size. More precisely, once the cache is full, it
@@ -8,7 +10,8 @@ package wackpackr.util;
  * <p>In practice, the cache is implemented as a circular array. Whenever the underlying array is
  * full, the head pointer wraps around, so that each new element overwrites the oldest element.</p>
  *
- * <p>Cache size is determined at instantiation, and cannot be changed thereafter.</p>
+ * <p>Cache size is determined at instantiation, and cannot be changed thereafter. The window can be
+ * cleared for reuse, though.</p>
  *
  * <p>Beside the head pointer, there is a separate read pointer ("cursor") that allows arbitrary
  * access to the cache window, similar to most I/O tools (such as {@link java.io.RandomAccessFile}).
@@ -63,6 +66,19 @@ public class SlidingWindow<E>
         return out;
     }
 
+    /**
+     * Empties the window and moves both pointers back to their initial positions, so that the window
+     * is in the same state as right after instantiation. Only the part of the underlying array that
+     * has actually been used is cleared.
+     */
+    public void clear()
+    {
+        Arrays.fill(queue, 0, Math.min(head + 1, size), null);
+
+        cursor = 0;
+        head = -1;
+    }
+
     /**
      * Moves cursor forward to the next position.
      *
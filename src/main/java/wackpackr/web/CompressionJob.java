@@ -0,0 +1,74 @@
+package wackpackr.web;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+public class CompressionJob
+{
+    public enum Status { QUEUED, RUNNING, DONE, FAILED }
+
+    private final String id = UUID.randomUUID().toString();
+    private final boolean auto;
+    private final long createdAt = System.currentTimeMillis();
+    private volatile Status status = Status.QUEUED;
+    private volatile List<CompressionResult> results = Collections.emptyList();
+    private volatile String error;
+
+    public CompressionJob(boolean auto)
+    {
+        this.auto = auto;
+    }
+
+    public String getId()
+    {
+        return id;
+    }
+
+    public boolean isAuto()
+    {
+        return auto;
+    }
+
+    public long getCreatedAt()
+    {
+        return createdAt;
+    }
+
+    public Status getStatus()
+    {
+        return status;
+    }
+
+    public boolean isFinished()
+    {
+        return status == Status.DONE || status == Status.FAILED;
+    }
+
+    public List<CompressionResult> getResults()
+    {
+        return results;
+    }
+
+    public String getError()
+    {
+        return error;
+    }
+
+    void start()
+    {
+        status = Status.RUNNING;
+    }
+
+    void finish(List<CompressionResult> results)
+    {
+        this.results = Collections.unmodifiableList(results);
+        status = Status.DONE;
+    }
+
+    void fail(Exception e)
+    {
+        error = e.getClass().getSimpleName() + ": " + e.getMessage();
+        status = Status.FAILED;
+    }
+}
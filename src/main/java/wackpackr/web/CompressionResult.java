@@ -3,6 +3,7 @@ package wackpackr.web;
 import java.io.IOException;
 import java.util.Arrays;
 import wackpackr.core.Compressor;
+import wackpackr.core.CompressorChain;
 
 public class CompressionResult
 {
@@ -11,13 +12,16 @@ public class CompressionResult
     private Integer initialSize, compressedSize;
     private Long compressionTime, decompressionTime;
     private boolean isIntact;
+    private boolean timedConcurrently;
 
     public CompressionResult(byte[] initial, String filetype, Compressor... compressors)
     {
-        this.compressors = joinNames(compressors);
+        checkParameters(initial, compressors);
+
+        this.compressors = new CompressorChain(compressors).getName();
         this.filetype = filetype;
 
-        run(initial, compressors);
+        run(initial, null, compressors);
     }
 
     public CompressionResult(byte[] initial, Compressor... compressors)
@@ -25,6 +29,31 @@ public class CompressionResult
         this(initial, "n/a", compressors);
     }
 
+    public CompressionResult(byte[] initial, CompressionStage first, Compressor... rest)
+    {
+        this(initial, first, true, rest);
+    }
+
+    public CompressionResult(byte[] initial, CompressionStage only)
+    {
+        this(initial, only, false);
+    }
+
+    private CompressionResult(byte[] initial, CompressionStage first, boolean concurrent,
+            Compressor... rest)
+    {
+        Compressor[] cs = new Compressor[rest.length + 1];
+        cs[0] = first.getCompressor();
+        System.arraycopy(rest, 0, cs, 1, rest.length);
+        checkParameters(initial, cs);
+
+        this.compressors = new CompressorChain(cs).getName();
+        this.filetype = "n/a";
+        this.timedConcurrently = concurrent;
+
+        run(initial, first, cs);
+    }
+
     public String getName()
     {
         return compressors;
@@ -35,19 +64,25 @@ public class CompressionResult
         return filetype;
     }
 
-    public long getCompressionTime()
+    public Long getCompressionTime()
     {
-        return compressionTime / 1_000_000;
+        return (compressionTime == null)
+                ? null
+                : compressionTime / 1_000_000;
     }
 
-    public long getDecompressionTime()
+    public Long getDecompressionTime()
     {
-        return decompressionTime / 1_000_000;
+        return (decompressionTime == null)
+                ? null
+                : decompressionTime / 1_000_000;
     }
 
-    public double getCompressionRate()
+    public Double getCompressionRate()
     {
-        return 100.0 * compressedSize / initialSize;
+        return (compressedSize == null)
+                ? null
+                : 100.0 * compressedSize / initialSize;
     }
 
     public boolean isIntact()
@@ -55,6 +90,16 @@ public class CompressionResult
         return isIntact;
     }
 
+    public boolean isCpuTime()
+    {
+        return StageClock.measuresCpuTime();
+    }
+
+    public boolean isTimedConcurrently()
+    {
+        return timedConcurrently;
+    }
+
     @Override
     public String toString()
     {
@@ -64,14 +109,12 @@ public class CompressionResult
 
 
 
-    private void run(byte[] initial, Compressor... compressors)
+    private void run(byte[] initial, CompressionStage first, Compressor... compressors)
     {
-        checkParameters(initial, compressors);
-
         this.initialSize = initial.length;
         try
         {
-            byte[] compressed = compress(initial, compressors);
+            byte[] compressed = compress(initial, first, compressors);
             byte[] decompressed = decompress(compressed, compressors);
             this.isIntact = Arrays.equals(initial, decompressed);
         }
@@ -81,14 +124,24 @@ public class CompressionResult
         }
     }
 
-    private byte[] compress(byte[] bs, Compressor... cs) throws IOException
+    private byte[] compress(byte[] bs, CompressionStage first, Compressor... cs)
+            throws IOException
     {
-        long start = System.nanoTime();
+        long start = StageClock.now();
+        long shared = 0;
+        int i = 0;
 
-        for (Compressor c : cs)
-            bs = c.compress(bs);
+        if (first != null)
+        {
+            bs = first.getOutput();
+            shared = first.getTime();
+            i = 1;
+        }
+
+        for (; i < cs.length; i++)
+            bs = cs[i].compress(bs);
 
-        this.compressionTime = System.nanoTime() - start;
+        this.compressionTime = StageClock.now() - start + shared;
         this.compressedSize = bs.length;
 
         return bs;
@@ -96,12 +149,12 @@ public class CompressionResult
 
     private byte[] decompress(byte[] bs, Compressor... cs) throws IOException
     {
-        long start = System.nanoTime();
+        long start = StageClock.now();
 
         for (int i = cs.length - 1; i >= 0; i--)
             bs = cs[i].decompress(bs);
 
-        this.decompressionTime = System.nanoTime() - start;
+        this.decompressionTime = StageClock.now() - start;
         return bs;
     }
 
@@ -117,16 +170,4 @@ public class CompressionResult
             if (c == null)
                 throw new IllegalArgumentException("How do you expect a null pointer to do compression?");
     }
-
-    private String joinNames(Compressor... cs)
-    {
-        String s = "";
-        int n = cs.length - 1;
-
-        for (int i = 0; i < n; i++)
-            s = s + cs[i].getName() + " > ";
-
-        s += cs[n].getName();
-        return s;
-    }
 }
@@ -1,9 +1,24 @@
 package wackpackr.web;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import wackpackr.core.CodecSelector;
 import wackpackr.core.Compressor;
+import wackpackr.core.CompressorChain;
 import wackpackr.core.HuffCompressor;
 import wackpackr.core.LZSSCompressor;
 import wackpackr.core.LZWCompressor;
@@ -11,21 +26,92 @@ import wackpackr.core.LZWCompressor;
 @Service
 public class CompressionService
 {
-    private final List<CompressionResult> results = new ArrayList<>();
+    private final ExecutorService benchmarkPool;
 
-    public List<CompressionResult> getResults()
+    @Value("${wackpackr.selection.speed-weight:0.2}")
+    private double speedWeight;
+
+    public CompressionService(@Value("${wackpackr.benchmark.threads:0}") int threads)
     {
-        return results;
+        AtomicInteger count = new AtomicInteger();
+
+        this.benchmarkPool = Executors.newFixedThreadPool(
+                (threads > 0) ? threads : Runtime.getRuntime().availableProcessors(),
+                r -> new Thread(r, "wackpackr-benchmark-" + count.incrementAndGet())
+        );
     }
 
-    public void runTests(byte[] bytes)
+    public List<CompressionResult> runTests(byte[] bytes)
     {
-        results.clear();
+        Map<Compressor, CompletableFuture<CompressionStage>> stages = new IdentityHashMap<>();
+        List<CompletableFuture<CompressionResult>> results = new ArrayList<>();
+
         for (Compressor[] c : getCompressors())
-            results.add(new CompressionResult(bytes, c));
+        {
+            Compressor[] rest = Arrays.copyOfRange(c, 1, c.length);
+            CompletableFuture<CompressionStage> first = stages.computeIfAbsent(
+                    c[0],
+                    k -> CompletableFuture.supplyAsync(
+                            () -> new CompressionStage(bytes, k),
+                            benchmarkPool
+                    )
+            );
+
+            results.add(first.thenApplyAsync(
+                    stage -> new CompressionResult(bytes, stage, rest),
+                    benchmarkPool
+            ));
+        }
+
+        try
+        {
+            return results.stream()
+                    .map(CompletableFuture::join)
+                    .collect(Collectors.toList());
+        }
+        catch (CompletionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+
+            throw e;
+        }
+    }
+
+    public List<CompressionResult> runBest(byte[] bytes) throws IOException
+    {
+        Compressor[][] cs = getCompressors();
+        Compressor[] candidates = new Compressor[cs.length];
+
+        for (int i = 0; i < cs.length; i++)
+            candidates[i] = (cs[i].length == 1)
+                    ? cs[i][0]
+                    : new CompressorChain(cs[i]);
+
+        CodecSelector.Selection best = new CodecSelector(
+                speedWeight,
+                CodecSelector.DEFAULT_SAMPLE_SIZE,
+                CodecSelector.DEFAULT_SAMPLE_COUNT,
+                StageClock::now,
+                candidates
+        ).compress(bytes);
+
+        CompressionStage stage = new CompressionStage(
+                best.getCompressor(),
+                best.getOutput(),
+                best.getTime()
+        );
+
+        return Collections.singletonList(new CompressionResult(bytes, stage));
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        benchmarkPool.shutdownNow();
     }
 
-    private Compressor[][] getCompressors()
+    Compressor[][] getCompressors()
     {
         Compressor huff = new HuffCompressor();
         Compressor lzss = new LZSSCompressor();
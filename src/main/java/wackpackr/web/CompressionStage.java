@@ -0,0 +1,54 @@
+package wackpackr.web;
+
+import java.io.IOException;
+import wackpackr.core.Compressor;
+
+public class CompressionStage
+{
+    private final Compressor compressor;
+    private final long time;
+    private byte[] output;
+    private Exception failure;
+
+    public CompressionStage(byte[] initial, Compressor compressor)
+    {
+        this.compressor = compressor;
+
+        long start = StageClock.now();
+        try
+        {
+            this.output = compressor.compress(initial);
+        }
+        catch (Exception e)
+        {
+            this.failure = e;
+        }
+
+        this.time = StageClock.now() - start;
+    }
+
+    public CompressionStage(Compressor compressor, byte[] output, long time)
+    {
+        this.compressor = compressor;
+        this.output = output;
+        this.time = time;
+    }
+
+    public Compressor getCompressor()
+    {
+        return compressor;
+    }
+
+    public byte[] getOutput() throws IOException
+    {
+        if (output == null)
+            throw new IOException("Compression with " + compressor.getName() + " failed", failure);
+
+        return output;
+    }
+
+    public long getTime()
+    {
+        return time;
+    }
+}
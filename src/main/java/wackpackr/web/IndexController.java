@@ -1,6 +1,10 @@
 package wackpackr.web;
 
+import java.util.Collections;
+import java.util.concurrent.RejectedExecutionException;
+import javax.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -12,23 +16,39 @@ import org.springframework.web.multipart.MultipartFile;
 public class IndexController
 {
     @Autowired
-    private CompressionService compressionService;
+    private JobService jobService;
 
     @RequestMapping(value = "*", method = RequestMethod.GET)
-    public String index(Model model)
+    public String index(Model model, @RequestParam(value = "job", required = false) String id)
     {
-        model.addAttribute("results", compressionService.getResults());
+        CompressionJob job = (id == null) ? null : jobService.getJob(id);
+
+        model.addAttribute("job", job);
+        model.addAttribute("results", (job == null)
+                ? Collections.emptyList()
+                : job.getResults());
 
         return "index";
     }
 
     @RequestMapping(value = "/compress", method = RequestMethod.POST)
-    public String compress(@RequestParam("file") MultipartFile file)
+    public String compress(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "auto", defaultValue = "false") boolean auto,
+            Model model,
+            HttpServletResponse response)
     {
         if (file != null && file.getSize() > 0)
             try
             {
-                compressionService.runTests(file.getBytes());
+                return "redirect:/?job=" + jobService.submit(file.getBytes(), auto).getId();
+            }
+            catch (RejectedExecutionException e)
+            {
+                response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+                model.addAttribute("busy", true);
+
+                return index(model, null);
             }
             catch (Exception e) {}
 
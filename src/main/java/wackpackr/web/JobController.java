@@ -0,0 +1,74 @@
+package wackpackr.web;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+
+@RestController
+@RequestMapping("/api/jobs")
+public class JobController
+{
+    @Autowired
+    private JobService jobService;
+
+    @RequestMapping(method = RequestMethod.POST)
+    public ResponseEntity<CompressionJob> submit(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "auto", defaultValue = "false") boolean auto)
+            throws IOException
+    {
+        if (file == null || file.isEmpty())
+            return ResponseEntity.badRequest().build();
+
+        try
+        {
+            CompressionJob job = jobService.submit(file.getBytes(), auto);
+
+            return ResponseEntity
+                    .accepted()
+                    .location(URI.create("/api/jobs/" + job.getId()))
+                    .body(job);
+        }
+        catch (RejectedExecutionException e)
+        {
+            return ResponseEntity
+                    .status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header("Retry-After", "5")
+                    .build();
+        }
+    }
+
+    @RequestMapping(value = "/{id}", method = RequestMethod.GET)
+    public ResponseEntity<CompressionJob> status(@PathVariable("id") String id)
+    {
+        CompressionJob job = jobService.getJob(id);
+
+        return (job == null)
+                ? ResponseEntity.notFound().build()
+                : ResponseEntity.ok(job);
+    }
+
+    @RequestMapping(value = "/{id}/results", method = RequestMethod.GET)
+    public ResponseEntity<List<CompressionResult>> results(@PathVariable("id") String id)
+    {
+        CompressionJob job = jobService.getJob(id);
+
+        if (job == null)
+            return ResponseEntity.notFound().build();
+
+        if (job.getStatus() != CompressionJob.Status.DONE)
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+
+        return ResponseEntity.ok(job.getResults());
+    }
+}
@@ -0,0 +1,80 @@
+package wackpackr.web;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Service
+public class JobService
+{
+    private final ThreadPoolExecutor workers;
+
+    @Autowired
+    private CompressionService compressionService;
+
+    @Autowired
+    private JobStore jobStore;
+
+    public JobService(
+            @Value("${wackpackr.jobs.workers:2}") int workers,
+            @Value("${wackpackr.jobs.queue-capacity:16}") int queueCapacity)
+    {
+        AtomicInteger count = new AtomicInteger();
+
+        this.workers = new ThreadPoolExecutor(
+                workers,
+                workers,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> new Thread(r, "wackpackr-job-" + count.incrementAndGet())
+        );
+    }
+
+    public CompressionJob submit(byte[] bytes, boolean auto)
+    {
+        CompressionJob job = new CompressionJob(auto);
+
+        workers.execute(() -> run(job, bytes));
+        jobStore.put(job);
+
+        return job;
+    }
+
+    public CompressionJob getJob(String id)
+    {
+        return jobStore.get(id);
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        workers.shutdownNow();
+    }
+
+    private void run(CompressionJob job, byte[] bytes)
+    {
+        job.start();
+
+        try
+        {
+            if (job.isAuto())
+                job.finish(compressionService.runBest(bytes));
+            else
+                job.finish(compressionService.runTests(bytes));
+        }
+        catch (Exception e)
+        {
+            job.fail(e);
+        }
+        finally
+        {
+            jobStore.finished(job);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package wackpackr.web;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+public class JobStore
+{
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> finished = new ConcurrentLinkedQueue<>();
+    private final int maxEntries;
+    private final long ttl;
+    private final LongSupplier clock;
+
+    @Autowired
+    public JobStore(
+            @Value("${wackpackr.results.max-entries:1000}") int maxEntries,
+            @Value("${wackpackr.results.ttl-minutes:30}") long ttlMinutes)
+    {
+        this(maxEntries, ttlMinutes, System::nanoTime);
+    }
+
+    JobStore(int maxEntries, long ttlMinutes, LongSupplier clock)
+    {
+        if (maxEntries < 1 || ttlMinutes < 1)
+            throw new IllegalArgumentException("Invalid job store limits");
+
+        this.maxEntries = maxEntries;
+        this.ttl = TimeUnit.MINUTES.toNanos(ttlMinutes);
+        this.clock = clock;
+    }
+
+    public void put(CompressionJob job)
+    {
+        Entry entry = new Entry(job);
+        entries.put(job.getId(), entry);
+
+        if (job.isFinished())
+            finish(entry);
+
+        evict();
+    }
+
+    public void finished(CompressionJob job)
+    {
+        Entry entry = entries.get(job.getId());
+
+        if (entry != null && entry.job == job)
+            finish(entry);
+
+        evict();
+    }
+
+    public CompressionJob get(String id)
+    {
+        evict();
+
+        Entry entry = entries.get(id);
+
+        if (entry == null)
+            return null;
+
+        if (entry.isExpired(clock.getAsLong()))
+        {
+            entries.remove(id, entry);
+            return null;
+        }
+
+        return entry.job;
+    }
+
+    public void remove(String id)
+    {
+        entries.remove(id);
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+
+    @Scheduled(fixedDelayString = "${wackpackr.results.sweep-millis:60000}")
+    public void evict()
+    {
+        long now = clock.getAsLong();
+
+        for (Entry head = finished.peek(); head != null; head = finished.peek())
+        {
+            if (entries.get(head.job.getId()) != head)
+                finished.remove(head);
+            else if (head.isExpired(now) || entries.size() > maxEntries)
+            {
+                entries.remove(head.job.getId(), head);
+                finished.remove(head);
+            }
+            else
+                break;
+        }
+    }
+
+    private void finish(Entry entry)
+    {
+        if (entry.finish(clock.getAsLong() + ttl))
+            finished.add(entry);
+    }
+
+    private static class Entry
+    {
+        private final CompressionJob job;
+        private volatile long expiresAt;
+        private volatile boolean finished;
+
+        Entry(CompressionJob job)
+        {
+            this.job = job;
+        }
+
+        synchronized boolean finish(long expiresAt)
+        {
+            if (finished)
+                return false;
+
+            this.expiresAt = expiresAt;
+            this.finished = true;
+
+            return true;
+        }
+
+        boolean isExpired(long now)
+        {
+            return finished && now - expiresAt >= 0;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package wackpackr.web;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+final class StageClock
+{
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = enableCpuTime();
+
+    private StageClock() {}
+
+    static long now()
+    {
+        return CPU_TIME
+                ? THREADS.getCurrentThreadCpuTime()
+                : System.nanoTime();
+    }
+
+    static boolean measuresCpuTime()
+    {
+        return CPU_TIME;
+    }
+
+    private static boolean enableCpuTime()
+    {
+        try
+        {
+            if (!THREADS.isCurrentThreadCpuTimeSupported())
+                return false;
+
+            if (!THREADS.isThreadCpuTimeEnabled())
+                THREADS.setThreadCpuTimeEnabled(true);
+
+            return THREADS.isThreadCpuTimeEnabled();
+        }
+        catch (UnsupportedOperationException | SecurityException e)
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package wackpackr.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AsyncCompressionTest
+{
+    private final Compressor lzss = new LZSSCompressor();
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void asyncOutputIsIdenticalToBlockingOutput() throws Exception
+    {
+        byte[] input = Files.readAllBytes(new File("src/test/java/wackpackr/test.txt").toPath());
+        byte[] compressed = lzss.compressAsync(input, executor).get();
+
+        Assert.assertArrayEquals(lzss.compress(input), compressed);
+        Assert.assertArrayEquals(input, lzss.decompressAsync(compressed).get());
+    }
+
+    @Test
+    public void runsInGivenExecutor() throws Exception
+    {
+        Thread caller = Thread.currentThread();
+        List<Thread> threads = new ArrayList<>();
+
+        lzss.compressAsync("Appilan pappilan".getBytes(), r -> {
+            threads.add(Thread.currentThread());
+            r.run();
+        }).get();
+
+        Assert.assertEquals(Arrays.asList(caller), threads);
+    }
+
+    @Test
+    public void batchKeepsOrderOfInputs() throws Exception
+    {
+        List<byte[]> inputs = new ArrayList<>();
+        for (int i = 0; i < 50; i++)
+            inputs.add(("record " + i + ", status " + (i % 3)).getBytes());
+
+        List<byte[]> compressed = lzss.compressAllAsync(inputs, executor).get();
+        List<byte[]> decompressed = lzss.decompressAllAsync(compressed, executor).get();
+
+        for (int i = 0; i < inputs.size(); i++)
+        {
+            Assert.assertArrayEquals(lzss.compress(inputs.get(i)), compressed.get(i));
+            Assert.assertArrayEquals(inputs.get(i), decompressed.get(i));
+        }
+    }
+
+    @Test
+    public void failureCompletesFutureExceptionally() throws Exception
+    {
+        byte[] invalid = new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+
+        try
+        {
+            lzss.decompressAsync(invalid, executor).get();
+            Assert.fail();
+        }
+        catch (ExecutionException e)
+        {
+            Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    public void oneFailureFailsWholeBatch() throws Exception
+    {
+        List<byte[]> inputs = Arrays.asList(
+                lzss.compress("Appilan pappilan".getBytes()),
+                new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 }
+        );
+
+        Assert.assertTrue(lzss.decompressAllAsync(inputs, executor)
+                .handle((result, e) -> result == null && e != null)
+                .get());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void throwsExceptionIfExecutorIsNull() throws IOException
+    {
+        lzss.compressAsync(new byte[1], null);
+    }
+}
@@ -0,0 +1,174 @@
+package wackpackr.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BWTCompressorTest
+{
+    private final Compressor bwt = new BWTCompressor();
+    private final CompressorTester tester = new CompressorTester(bwt);
+
+    @Test
+    public void transformSortsRotations()
+    {
+        byte[] block = "banana".getBytes();
+        byte[] out = new byte[block.length];
+
+        Assert.assertArrayEquals(new int[]{ 6, 5, 3, 1, 0, 4, 2 }, BWTransformer.suffixArray(block));
+        Assert.assertEquals(4, BWTransformer.transform(block, out));
+        Assert.assertArrayEquals("annbaa".getBytes(), out);
+    }
+
+    @Test
+    public void transformCanBeUndone()
+    {
+        byte[][] blocks = new byte[][]{
+                {},
+                { 42 },
+                "Appilan pappilan apupapin papupata pankolla kiehuu ja kuohuu.".getBytes(),
+                new byte[1000],
+                new byte[1000]
+        };
+        ThreadLocalRandom.current().nextBytes(blocks[4]);
+
+        for (byte[] block : blocks)
+        {
+            byte[] transformed = new byte[block.length];
+            byte[] restored = new byte[block.length];
+            int primary = BWTransformer.transform(block, transformed);
+
+            if (block.length > 0)
+                BWTransformer.inverse(transformed, primary, restored);
+
+            Assert.assertArrayEquals(block, restored);
+        }
+    }
+
+    @Test
+    public void beatsDictionaryCodersOnText() throws IOException
+    {
+        byte[] input = Files.readAllBytes(new File("src/test/java/wackpackr/test.txt").toPath());
+        byte[] compressed = bwt.compress(input);
+
+        Assert.assertTrue(compressed.length < new LZWCompressor().compress(input).length * 4 / 5);
+        Assert.assertArrayEquals(input, bwt.decompress(compressed));
+    }
+
+    @Test
+    public void handlesInputsOfManyBlocks() throws IOException
+    {
+        byte[] input = new byte[2 * BWTCompressor.BLOCK_SIZE + 100];
+        for (int i = 0; i < input.length; i++)
+            input[i] = (byte) (i % 251 < 200 ? i % 7 : i);
+
+        Assert.assertArrayEquals(input, bwt.decompress(bwt.compress(input)));
+    }
+
+    @Test
+    public void shortInputsSurviveRoundTrip() throws IOException
+    {
+        String s = "Appilan pappilan";
+
+        for (int i = 0; i <= s.length(); i++)
+        {
+            byte[] bs = s.substring(0, i).getBytes();
+            Assert.assertArrayEquals(bs, bwt.decompress(bwt.compress(bs)));
+        }
+    }
+
+    @Test
+    public void testPerformanceWithText() throws IOException
+    {
+        Assert.assertTrue(tester.performsWithText());
+    }
+
+    @Test
+    public void testPerformanceWithImage() throws IOException
+    {
+        Assert.assertTrue(tester.performsWithImage());
+    }
+
+    @Test
+    public void testPerformanceWithRandomBytes() throws IOException
+    {
+        Assert.assertTrue(tester.performsWithRandom());
+    }
+
+    @Test
+    public void compressesBetweenByteBuffers() throws IOException
+    {
+        tester.assertHandlesByteBuffers();
+    }
+
+    @Test
+    public void compressesIntoGivenArrays() throws IOException
+    {
+        tester.assertHandlesGivenArrays();
+    }
+
+    @Test
+    public void neverExceedsMaxCompressedSize() throws IOException
+    {
+        tester.assertStaysWithinMaxCompressedSize();
+    }
+
+    @Test
+    public void contextsCanBeReused() throws IOException
+    {
+        tester.assertReusesContexts();
+    }
+
+    @Test
+    public void storesUncompressedSizeIfRequested() throws IOException
+    {
+        tester.assertHandlesSizeHeader(new BWTCompressor(true));
+    }
+
+    @Test
+    public void storesIncompressibleDataAsIs() throws IOException
+    {
+        tester.assertStoresIncompressibleData(new BWTCompressor(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfIncorrectTagInHeader() throws IOException
+    {
+        byte[] invalid = new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+        bwt.decompress(invalid);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfBlockIsCorrupt() throws IOException
+    {
+        byte[] input = Files.readAllBytes(new File("src/test/java/wackpackr/test.txt").toPath());
+        byte[] compressed = bwt.compress(Arrays.copyOf(input, 10000));
+        compressed[4]--;
+
+        bwt.decompress(compressed);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfEncodedBlockIsNotSmaller() throws IOException
+    {
+        byte[] invalid = new byte[]{ 0x0B, 0x0D, 0x20, 0x18, 1, -1, -1, -1, -1, 7 };
+        bwt.decompress(invalid);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfBlockRunsPastInput() throws IOException
+    {
+        byte[] invalid = new byte[]{ 0x0B, 0x0D, 0x20, 0x18, 100, 50, 1, 2, 3 };
+        bwt.decompress(invalid);
+    }
+
+    @Test
+    public void compressorKnowsItsName()
+    {
+        Assert.assertEquals("BWT", bwt.getName());
+    }
+}
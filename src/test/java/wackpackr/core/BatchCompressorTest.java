@@ -0,0 +1,127 @@
+package wackpackr.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BatchCompressorTest
+{
+    private final Compressor lzss = new LZSSCompressor();
+    private final List<byte[]> records = new ArrayList<>();
+
+    public BatchCompressorTest()
+    {
+        for (int i = 0; i < 1000; i++)
+            records.add(("{\"id\":" + i + ",\"name\":\"user" + (i * 7919 % 1000)
+                    + "\",\"status\":\"" + (i % 3 == 0 ? "active" : "pending") + "\"}")
+                    .getBytes());
+    }
+
+    @Test
+    public void compressesEachPayloadAsCompressorWould() throws IOException
+    {
+        Batch compressed = new BatchCompressor(lzss).compress(records);
+
+        Assert.assertEquals(records.size(), compressed.size());
+
+        for (int i = 0; i < records.size(); i++)
+            Assert.assertArrayEquals(lzss.compress(records.get(i)), compressed.get(i));
+    }
+
+    @Test
+    public void payloadsSurviveRoundTrip() throws IOException
+    {
+        for (Compressor c : new Compressor[]{ lzss, new HuffCompressor(), new LZWCompressor() })
+        {
+            BatchCompressor batch = new BatchCompressor(c);
+            Batch decompressed = batch.decompress(batch.compress(records));
+
+            for (int i = 0; i < records.size(); i++)
+                Assert.assertArrayEquals(records.get(i), decompressed.get(i));
+        }
+    }
+
+    @Test
+    public void parallelOutputIsIdenticalToSequentialOutput() throws IOException
+    {
+        BatchCompressor sequential = new BatchCompressor(lzss);
+        BatchCompressor parallel = new BatchCompressor(lzss, true);
+        Batch compressed = parallel.compress(records);
+
+        Assert.assertArrayEquals(sequential.compress(records).getData(), compressed.getData());
+        Assert.assertArrayEquals(
+                Batch.of(records).getData(),
+                parallel.decompress(compressed).getData()
+        );
+    }
+
+    @Test
+    public void batchesCanBeCompressedAsSuch() throws IOException
+    {
+        BatchCompressor batch = new BatchCompressor(lzss);
+
+        Assert.assertArrayEquals(
+                batch.compress(records).getData(),
+                batch.compress(Batch.of(records)).getData()
+        );
+    }
+
+    @Test
+    public void decompressionGrowsBufferAsNeeded() throws IOException
+    {
+        byte[] zeros = new byte[1 << 16];
+        BatchCompressor batch = new BatchCompressor(lzss);
+        Batch decompressed = batch.decompress(batch.compress(Arrays.asList(zeros, zeros)));
+
+        Assert.assertEquals(2 * zeros.length, decompressed.getData().length);
+        Assert.assertEquals(zeros.length, decompressed.getOffset(1));
+    }
+
+    @Test
+    public void handlesEmptyBatchesAndPayloads() throws IOException
+    {
+        BatchCompressor batch = new BatchCompressor(lzss, true);
+        List<byte[]> empties = Arrays.asList(new byte[0], new byte[0]);
+
+        Assert.assertEquals(0, batch.decompress(batch.compress(Collections.emptyList())).size());
+        Assert.assertEquals(0, batch.decompress(batch.compress(empties)).getLength(1));
+    }
+
+    @Test
+    public void batchGivesPayloadsByIndex()
+    {
+        Batch batch = new Batch(new byte[]{ 1, 2, 3, 4, 5 }, new int[]{ 1, 3, 3, 5 });
+
+        Assert.assertEquals(3, batch.size());
+        Assert.assertEquals(3, batch.getOffset(1));
+        Assert.assertEquals(0, batch.getLength(1));
+        Assert.assertArrayEquals(new byte[]{ 4, 5 }, batch.get(2));
+        Assert.assertEquals(4, batch.getBuffer(2).get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfOffsetsDecrease()
+    {
+        new Batch(new byte[5], new int[]{ 0, 3, 2 });
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void throwsExceptionIfNoSuchPayload()
+    {
+        Batch.of(records).get(records.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfAnyPayloadIsCorrupt() throws IOException
+    {
+        BatchCompressor batch = new BatchCompressor(lzss, true);
+        Batch compressed = batch.compress(records);
+        compressed.getData()[compressed.getOffset(500)]++;
+
+        batch.decompress(compressed);
+    }
+}
@@ -0,0 +1,185 @@
+package wackpackr.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CMCompressorTest
+{
+    private final Compressor cm = new CMCompressor();
+    private final CompressorTester tester = new CompressorTester(cm);
+
+    @Test
+    public void beatsBlockSortingOnText() throws IOException
+    {
+        byte[] input = Files.readAllBytes(new File("src/test/java/wackpackr/test.txt").toPath());
+        byte[] compressed = cm.compress(input);
+
+        Assert.assertTrue(compressed.length < new BWTCompressor().compress(input).length);
+        Assert.assertArrayEquals(input, cm.decompress(compressed));
+    }
+
+    @Test
+    public void tablesOfAnySizeCanBeDecompressed() throws IOException
+    {
+        byte[] input = Files.readAllBytes(new File("src/test/java/wackpackr/test.txt").toPath());
+        byte[] small = new CMCompressor(1, false).compress(input);
+        byte[] large = new CMCompressor(CMCompressor.MAX_MEMORY, false).compress(input);
+
+        Assert.assertTrue(large.length < small.length);
+        Assert.assertArrayEquals(input, cm.decompress(small));
+        Assert.assertArrayEquals(input, cm.decompress(large));
+    }
+
+    @Test
+    public void handlesInputsOfManyBlocks() throws IOException
+    {
+        byte[] input = new byte[CMCompressor.BLOCK_SIZE + 100];
+        for (int i = 0; i < input.length; i++)
+            input[i] = (byte) (i % 251 < 200 ? i % 7 : i);
+
+        Assert.assertArrayEquals(input, cm.decompress(cm.compress(input)));
+    }
+
+    @Test
+    public void blocksNeedingMoreThanTheLimitAreCodedOneAtATime() throws IOException
+    {
+        byte[] input = new byte[3 * CMCompressor.BLOCK_SIZE];
+        for (int i = 0; i < input.length; i++)
+            input[i] = (byte) (i % 251 < 200 ? i % 7 : i);
+
+        Compressor tight = new CMCompressor(1, false);
+        byte[] compressed = new CMCompressor(CMCompressor.MAX_MEMORY, false).compress(input);
+
+        Assert.assertArrayEquals(input, tight.decompress(compressed));
+        Assert.assertArrayEquals(input, cm.decompress(tight.compress(input)));
+    }
+
+    @Test
+    public void shortInputsSurviveRoundTrip() throws IOException
+    {
+        String s = "Appilan pappilan";
+
+        for (int i = 0; i <= s.length(); i++)
+        {
+            byte[] bs = s.substring(0, i).getBytes();
+            Assert.assertArrayEquals(bs, cm.decompress(cm.compress(bs)));
+        }
+    }
+
+    @Test
+    public void testPerformanceWithText() throws IOException
+    {
+        Assert.assertTrue(tester.performsWithText());
+    }
+
+    @Test
+    public void testPerformanceWithImage() throws IOException
+    {
+        Assert.assertTrue(tester.performsWithImage());
+    }
+
+    @Test
+    public void testPerformanceWithRandomBytes() throws IOException
+    {
+        Assert.assertTrue(tester.performsWithRandom());
+    }
+
+    @Test
+    public void compressesBetweenByteBuffers() throws IOException
+    {
+        tester.assertHandlesByteBuffers();
+    }
+
+    @Test
+    public void compressesIntoGivenArrays() throws IOException
+    {
+        tester.assertHandlesGivenArrays();
+    }
+
+    @Test
+    public void neverExceedsMaxCompressedSize() throws IOException
+    {
+        tester.assertStaysWithinMaxCompressedSize();
+    }
+
+    @Test
+    public void contextsCanBeReused() throws IOException
+    {
+        tester.assertReusesContexts();
+    }
+
+    @Test
+    public void storesUncompressedSizeIfRequested() throws IOException
+    {
+        tester.assertHandlesSizeHeader(new CMCompressor(true));
+    }
+
+    @Test
+    public void storesIncompressibleDataAsIs() throws IOException
+    {
+        tester.assertStoresIncompressibleData(new CMCompressor(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfMemoryLimitIsOutOfRange()
+    {
+        new CMCompressor(0, false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfMemoryLimitIsTooLarge()
+    {
+        new CMCompressor(CMCompressor.MAX_MEMORY + 1, false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfIncorrectTagInHeader() throws IOException
+    {
+        byte[] invalid = new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+        cm.decompress(invalid);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfTableSizeIsCorrupt() throws IOException
+    {
+        byte[] input = Files.readAllBytes(new File("src/test/java/wackpackr/test.txt").toPath());
+        byte[] compressed = cm.compress(Arrays.copyOf(input, 10000));
+        compressed[8] = 100;
+
+        cm.decompress(compressed);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfTableSizeIsTooLargeForBlock() throws IOException
+    {
+        byte[] input = Files.readAllBytes(new File("src/test/java/wackpackr/test.txt").toPath());
+        byte[] compressed = cm.compress(Arrays.copyOf(input, 10000));
+        compressed[8] = 20;
+
+        cm.decompress(compressed);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfEncodedBlockIsNotSmaller() throws IOException
+    {
+        byte[] invalid = new byte[]{ 0x0C, 0x0E, 0x20, 0x18, 1, -1, -1, -1, -1, 7 };
+        cm.decompress(invalid);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfBlockRunsPastInput() throws IOException
+    {
+        byte[] invalid = new byte[]{ 0x0C, 0x0E, 0x20, 0x18, 100, 50, 1, 2, 3 };
+        cm.decompress(invalid);
+    }
+
+    @Test
+    public void compressorKnowsItsName()
+    {
+        Assert.assertEquals("CM", cm.getName());
+    }
+}
@@ -0,0 +1,141 @@
+package wackpackr.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CodecSelectorTest
+{
+    private final Compressor huff = new HuffCompressor();
+    private final Compressor lzss = new LZSSCompressor();
+    private final Compressor slowLzss = new SlowCompressor(new LZSSCompressor());
+
+    @Test
+    public void picksBestRatioWhenSpeedDoesNotMatter() throws IOException
+    {
+        byte[] input = Files.readAllBytes(new File("src/test/java/wackpackr/test.txt").toPath());
+        Compressor best = huff;
+
+        for (Compressor c : new Compressor[]{ lzss, new LZWCompressor() })
+            if (c.compress(input).length < best.compress(input).length)
+                best = c;
+
+        CodecSelector selector = new CodecSelector(0, huff, lzss, new LZWCompressor());
+        Assert.assertEquals(best.getName(), selector.select(input).getName());
+    }
+
+    @Test
+    public void picksFastestWhenOnlySpeedMatters() throws IOException
+    {
+        byte[] input = new byte[100_000];
+        CodecSelector selector = new CodecSelector(1, slowLzss, huff);
+
+        Assert.assertSame(huff, selector.select(input));
+    }
+
+    @Test
+    public void speedWeightTradesRatioForSpeed() throws IOException
+    {
+        byte[] input = new byte[100_000];
+
+        Assert.assertSame(slowLzss, new CodecSelector(0, huff, slowLzss).select(input));
+        Assert.assertSame(huff, new CodecSelector(0.9, huff, slowLzss).select(input));
+    }
+
+    @Test
+    public void wholeSmallInputIsUsedAsSample() throws IOException
+    {
+        byte[] input = new byte[200];
+        for (int i = 0; i < input.length; i++)
+            input[i] = (byte) (i % 16);
+
+        Assert.assertSame(lzss, new CodecSelector(0, 100, 2, huff, lzss).select(input));
+    }
+
+    @Test
+    public void smallInputIsCompressedOnceByEachCandidate() throws IOException
+    {
+        byte[] input = new byte[200];
+        for (int i = 0; i < input.length; i++)
+            input[i] = (byte) (i % 16);
+
+        CountingCompressor countingHuff = new CountingCompressor(huff);
+        CountingCompressor countingLzss = new CountingCompressor(lzss);
+
+        CodecSelector.Selection best = new CodecSelector(0.5, 100, 2, countingHuff, countingLzss)
+                .compress(input);
+
+        Assert.assertEquals(1, countingHuff.count);
+        Assert.assertEquals(1, countingLzss.count);
+        Assert.assertArrayEquals(input, best.getCompressor().decompress(best.getOutput()));
+    }
+
+    @Test
+    public void largeInputIsCompressedWithTheWinner() throws IOException
+    {
+        byte[] input = Files.readAllBytes(new File("src/test/java/wackpackr/test.txt").toPath());
+        CodecSelector.Selection best = new CodecSelector(0, 1024, 2, huff, lzss).compress(input);
+
+        Assert.assertArrayEquals(best.getCompressor().compress(input), best.getOutput());
+    }
+
+    @Test
+    public void onlyCandidateIsPickedWithoutSampling() throws IOException
+    {
+        Assert.assertSame(slowLzss, new CodecSelector(1, slowLzss).select(new byte[1 << 20]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfWeightOutOfRange()
+    {
+        new CodecSelector(1.5, huff);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfNoCandidates()
+    {
+        new CodecSelector(0.5);
+    }
+
+    private static class CountingCompressor extends CompressorChain
+    {
+        private int count;
+
+        CountingCompressor(Compressor c)
+        {
+            super(c);
+        }
+
+        @Override
+        public byte[] compress(byte[] bytes) throws IOException
+        {
+            count++;
+            return super.compress(bytes);
+        }
+    }
+
+    private static class SlowCompressor extends CompressorChain
+    {
+        SlowCompressor(Compressor c)
+        {
+            super(c);
+        }
+
+        @Override
+        public byte[] compress(byte[] bytes) throws IOException
+        {
+            try
+            {
+                Thread.sleep(20);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            return super.compress(bytes);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package wackpackr.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import wackpackr.io.BinaryIO;
+
+public class CompressionPipelineTest
+{
+    private final Compressor huff = new HuffCompressor();
+    private final Compressor lzss = new LZSSCompressor();
+    private final CompressionPipeline pipeline = new CompressionPipeline(1 << 14, lzss, huff);
+    private final CompressorTester tester = new CompressorTester(pipeline);
+
+    @Test
+    public void streamsSurviveRoundTrip() throws IOException
+    {
+        byte[] input = Files.readAllBytes(new File("src/test/java/wackpackr/test.bmp").toPath());
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        pipeline.compress(new ByteArrayInputStream(input), compressed);
+
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        pipeline.decompress(new ByteArrayInputStream(compressed.toByteArray()), decompressed);
+
+        Assert.assertArrayEquals(compressed.toByteArray(), pipeline.compress(input));
+        Assert.assertArrayEquals(input, decompressed.toByteArray());
+    }
+
+    @Test
+    public void eachBlockIsCompressedThroughAllStages() throws IOException
+    {
+        byte[] input = Files.readAllBytes(new File("src/test/java/wackpackr/test.txt").toPath());
+        byte[] block = Arrays.copyOf(input, 1 << 14);
+        byte[] expected = huff.compress(lzss.compress(block));
+        byte[] compressed = pipeline.compress(input);
+
+        Assert.assertArrayEquals(
+                expected,
+                Arrays.copyOfRange(compressed, 4 + 2, 4 + 2 + expected.length)
+        );
+    }
+
+    @Test
+    public void emptyInputSurvivesRoundTrip() throws IOException
+    {
+        Assert.assertArrayEquals(new byte[0], pipeline.decompress(pipeline.compress(new byte[0])));
+    }
+
+    @Test
+    public void stagesRunOnSeparateThreads() throws IOException
+    {
+        Set<Thread> threads = Collections.synchronizedSet(new HashSet<>());
+        Compressor spy = new CompressorChain(huff)
+        {
+            @Override
+            public byte[] compress(byte[] bytes) throws IOException
+            {
+                threads.add(Thread.currentThread());
+                return super.compress(bytes);
+            }
+        };
+
+        new CompressionPipeline(1024, spy, spy).compress(new byte[100_000]);
+
+        Assert.assertEquals(2, threads.size());
+        Assert.assertFalse(threads.contains(Thread.currentThread()));
+    }
+
+    @Test
+    public void stagesRunInGivenExecutor() throws IOException
+    {
+        ExecutorService pool = Executors.newCachedThreadPool();
+        AtomicInteger tasks = new AtomicInteger();
+        CompressionPipeline p = new CompressionPipeline(r -> {
+            tasks.incrementAndGet();
+            pool.execute(r);
+        }, 1024, lzss, huff);
+
+        try
+        {
+            byte[] input = new byte[100_000];
+
+            Assert.assertArrayEquals(input, p.decompress(p.compress(input)));
+            Assert.assertEquals(2 * (2 + 1), tasks.get());
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void failedRunLeavesNoStageBehind() throws Exception
+    {
+        ExecutorService pool = Executors.newCachedThreadPool();
+        CompressionPipeline p = new CompressionPipeline(pool, 1024, huff);
+        byte[] compressed = p.compress(new byte[100_000]);
+        compressed[7] ^= 0x7F;
+
+        for (int i = 0; i < 10; i++)
+            try
+            {
+                p.decompress(compressed);
+                Assert.fail();
+            }
+            catch (IllegalArgumentException e)
+            {
+            }
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void compressesBetweenByteBuffers() throws IOException
+    {
+        tester.assertHandlesByteBuffers();
+    }
+
+    @Test
+    public void neverExceedsMaxCompressedSize() throws IOException
+    {
+        tester.assertStaysWithinMaxCompressedSize();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stageFailureIsPassedToCaller() throws IOException
+    {
+        byte[] compressed = pipeline.compress(new byte[100_000]);
+        compressed[7] ^= 0x7F;
+
+        pipeline.decompress(compressed);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfBlockSizeIsOutOfBounds() throws IOException
+    {
+        byte[] invalid = new BinaryIO()
+                .write32Bits(0x0A0A2018)
+                .writeVarInt(1 << 30)
+                .getBytesOut();
+
+        pipeline.decompress(invalid);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfIncorrectTag() throws IOException
+    {
+        pipeline.decompress(new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 });
+    }
+
+    @Test(expected = java.io.EOFException.class)
+    public void throwsExceptionIfNoEndMarker() throws IOException
+    {
+        byte[] compressed = pipeline.compress(new byte[100_000]);
+
+        pipeline.decompress(Arrays.copyOf(compressed, compressed.length - 1));
+    }
+
+    @Test
+    public void pipelineIsNamedAfterItsStages()
+    {
+        Assert.assertEquals("LZSS | Huffman", pipeline.getName());
+    }
+}
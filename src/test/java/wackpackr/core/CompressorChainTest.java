@@ -0,0 +1,67 @@
+package wackpackr.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompressorChainTest
+{
+    private final Compressor huff = new HuffCompressor();
+    private final Compressor lzss = new LZSSCompressor();
+    private final Compressor chain = new CompressorChain(lzss, huff);
+    private final CompressorTester tester = new CompressorTester(chain);
+
+    @Test
+    public void chainCompressesInOrderAndDecompressesInReverse() throws IOException
+    {
+        byte[] input = Files.readAllBytes(new File("src/test/java/wackpackr/test.txt").toPath());
+        byte[] compressed = chain.compress(input);
+
+        Assert.assertArrayEquals(huff.compress(lzss.compress(input)), compressed);
+        Assert.assertArrayEquals(input, chain.decompress(compressed));
+    }
+
+    @Test
+    public void compressesBetweenByteBuffers() throws IOException
+    {
+        tester.assertHandlesByteBuffers();
+    }
+
+    @Test
+    public void neverExceedsMaxCompressedSize() throws IOException
+    {
+        tester.assertStaysWithinMaxCompressedSize();
+    }
+
+    @Test
+    public void chainIsNamedAfterItsParts()
+    {
+        Assert.assertEquals("LZSS > Huffman", chain.getName());
+        Assert.assertEquals("LZW", new CompressorChain(new LZWCompressor()).getName());
+    }
+
+    @Test
+    public void changingGivenArrayDoesNotChangeChain()
+    {
+        Compressor[] cs = { huff, lzss };
+        CompressorChain c = new CompressorChain(cs);
+
+        cs[0] = lzss;
+        Assert.assertTrue(Arrays.equals(new Compressor[]{ huff, lzss }, c.getCompressors()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfNothingToChain()
+    {
+        new CompressorChain();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfNullInChain()
+    {
+        new CompressorChain(huff, null);
+    }
+}
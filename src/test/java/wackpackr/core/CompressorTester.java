@@ -2,9 +2,16 @@ package wackpackr.core;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
+import org.junit.Assert;
+import wackpackr.io.BinaryIO;
+import wackpackr.io.BufferPool;
 import wackpackr.util.ByteString;
 import wackpackr.web.CompressionResult;
 
@@ -22,6 +29,10 @@ public class CompressorTester
             "Good morning, Paul. What will your first sequence of the day be? Computer, load up Celery Man please. Yes, Paul. Could you kick up the 4D3D3D3? 4D3D3D3 engaged. Add sequence: OYSTER.",
             "Father Pierre, why did you stay on in this colonial Campari-land, where the clink of glasses mingles with the murmur of a million mosquitoes, where waterfalls and whiskey wash away the worries of a world-weary whicker, where gin and tonics jingle in a gyroscopic jubilee of something beginning with J?"
     };
+    private static final String[] USERS = { "aino", "eino", "helmi", "kalle", "lempi", "toivo" };
+    private static final String[] STATUSES = { "active", "pending", "suspended", "closed" };
+    private static final long SIZE_FLAG_BYTE = FormatHeader.SIZE_FLAG >>> 24;
+    private static final long STORED_FLAG_BYTE = FormatHeader.STORED_FLAG >>> 24;
     private final Compressor compressor;
 
     public CompressorTester(Compressor compressor)
@@ -72,6 +83,321 @@ public class CompressorTester
         return passesPerformanceTests(input, "random");
     }
 
+    public void assertHandlesByteBuffers() throws IOException
+    {
+        File f = new File("src/test/java/wackpackr/test.txt");
+        byte[] input = Files.readAllBytes(f.toPath());
+        byte[] compressed = compressor.compress(input);
+
+        for (boolean direct : new boolean[]{ false, true })
+        {
+            String kind = direct ? "Direct buffer: " : "Heap buffer: ";
+            ByteBuffer src = allocate(input.length + 10, direct);
+            ByteBuffer dst = allocate(compressed.length + 10, direct);
+            src.position(10);
+            src.put(input).position(10);
+            dst.position(10);
+
+            compressor.compress(src, dst);
+            Assert.assertFalse(kind + "input left over", src.hasRemaining());
+            Assert.assertArrayEquals(kind + "compressed", compressed, written(dst));
+
+            dst.position(10);
+            src.position(10);
+            compressor.decompress(dst, src);
+            Assert.assertFalse(kind + "compressed input left over", dst.hasRemaining());
+            Assert.assertArrayEquals(kind + "decompressed", input, written(src));
+        }
+    }
+
+    public void assertStaysWithinMaxCompressedSize() throws IOException
+    {
+        byte[] random = new byte[1 << 16];
+        ThreadLocalRandom.current().nextBytes(random);
+
+        byte[][] inputs = {
+                {},
+                { 42 },
+                ss[0].getBytes(),
+                random,
+                Files.readAllBytes(new File("src/test/java/wackpackr/test.bmp").toPath())
+        };
+
+        for (byte[] input : inputs)
+        {
+            byte[] dst = new byte[compressor.maxCompressedSize(input.length)];
+            int n = compressor.compress(input, 0, input.length, dst, 0);
+
+            Assert.assertArrayEquals(
+                    "Input of " + input.length + " bytes compressed into bounded array",
+                    compressor.compress(input),
+                    Arrays.copyOf(dst, n)
+            );
+        }
+    }
+
+    public void assertHandlesGivenArrays() throws IOException
+    {
+        File f = new File("src/test/java/wackpackr/test.txt");
+        byte[] input = Files.readAllBytes(f.toPath());
+        byte[] compressed = compressor.compress(input);
+
+        byte[] src = new byte[input.length + 20];
+        byte[] dst = new byte[compressed.length + 20];
+        System.arraycopy(input, 0, src, 10, input.length);
+
+        int n = compressor.compress(src, 10, input.length, dst, 5);
+        Assert.assertEquals("Compressed length", compressed.length, n);
+        Assert.assertArrayEquals("Compressed", compressed, Arrays.copyOfRange(dst, 5, 5 + n));
+
+        Arrays.fill(src, (byte) 0);
+        n = compressor.decompress(dst, 5, compressed.length, src, 3);
+
+        Assert.assertEquals("Decompressed length", input.length, n);
+        Assert.assertArrayEquals("Decompressed", input, Arrays.copyOfRange(src, 3, 3 + n));
+    }
+
+    public void assertHandlesSizeHeader(Compressor sized) throws IOException
+    {
+        File f = new File("src/test/java/wackpackr/test.txt");
+        byte[] input = Files.readAllBytes(f.toPath());
+        byte[] plain = compressor.compress(input);
+        byte[] withSize = sized.compress(input);
+
+        Assert.assertEquals(
+                "Length with size in header",
+                plain.length + headerLength(input, true) - headerLength(input, false),
+                withSize.length
+        );
+        Assert.assertTrue("Size flag not set", (withSize[0] & SIZE_FLAG_BYTE) != 0);
+
+        Assert.assertArrayEquals("Sized, decompressed as plain", input,
+                compressor.decompress(withSize));
+        Assert.assertArrayEquals("Sized, decompressed as sized", input,
+                sized.decompress(withSize));
+        Assert.assertArrayEquals("Plain, decompressed as sized", input,
+                sized.decompress(plain));
+
+        withSize[4]++;
+        try
+        {
+            compressor.decompress(withSize);
+            Assert.fail("Wrong size in header went unnoticed");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
+
+    public void assertReusesContexts() throws IOException
+    {
+        CompressionContext cc = compressor.newCompressionContext();
+        DecompressionContext dc = compressor.newDecompressionContext();
+
+        byte[][] inputs = {
+                Files.readAllBytes(new File("src/test/java/wackpackr/test.txt").toPath()),
+                ss[0].getBytes(),
+                { 42 },
+                ss[1].getBytes(),
+                Files.readAllBytes(new File("src/test/java/wackpackr/test.bmp").toPath()),
+                ss[0].getBytes()
+        };
+
+        for (int round = 0; round < 2; round++)
+            for (int i = 0; i < inputs.length; i++)
+            {
+                String which = "Round " + round + ", input " + i + ": ";
+                byte[] compressed = cc.compress(inputs[i]);
+                ByteBuffer pooled = cc.compressPooled(inputs[i]);
+
+                try
+                {
+                    Assert.assertArrayEquals(which + "compressed",
+                            compressor.compress(inputs[i]), compressed);
+                    Assert.assertEquals(which + "compressed into pooled buffer",
+                            ByteBuffer.wrap(compressed), pooled);
+                    Assert.assertArrayEquals(which + "decompressed",
+                            inputs[i], dc.decompress(compressed));
+                }
+                finally
+                {
+                    BufferPool.release(pooled.array());
+                }
+            }
+    }
+
+    public void assertStoresIncompressibleData(Compressor sized) throws IOException
+    {
+        byte[] random = new byte[1 << 16];
+        ThreadLocalRandom.current().nextBytes(random);
+
+        for (Compressor c : new Compressor[]{ compressor, sized })
+        {
+            String which = (c == sized) ? "Sized: " : "Plain: ";
+            byte[] compressed = c.compress(random);
+            int headerLength = compressed.length - random.length;
+
+            Assert.assertTrue(which + "stored flag not set",
+                    (compressed[0] & STORED_FLAG_BYTE) != 0);
+            Assert.assertEquals(which + "header length",
+                    headerLength(random, c == sized), headerLength);
+            Assert.assertArrayEquals(which + "stored data", random,
+                    Arrays.copyOfRange(compressed, headerLength, compressed.length));
+            Assert.assertArrayEquals(which + "decompressed", random,
+                    compressor.decompress(compressed));
+            Assert.assertArrayEquals(which + "decompressed by context", random,
+                    c.newDecompressionContext().decompress(compressed));
+        }
+
+        byte[] small = Arrays.copyOf(random, 100);
+
+        Assert.assertTrue("Small input was stored",
+                (compressor.compress(small)[0] & STORED_FLAG_BYTE) == 0);
+    }
+
+    public void assertStoresLargeIncompressibleDataInPlace() throws IOException
+    {
+        byte[] random = new byte[1 << 18];
+        new Random(0).nextBytes(random);
+
+        for (boolean direct : new boolean[]{ false, true })
+        {
+            int bound = compressor.maxCompressedSize(random.length);
+            ByteBuffer dst = direct ? ByteBuffer.allocateDirect(bound) : ByteBuffer.allocate(bound);
+            compressor.compress(ByteBuffer.wrap(random), dst);
+
+            byte[] compressed = new byte[dst.position()];
+            ((ByteBuffer) dst.duplicate().flip()).get(compressed);
+
+            Assert.assertTrue("Stored flag not set", (compressed[0] & STORED_FLAG_BYTE) != 0);
+            Assert.assertArrayEquals(random, compressor.decompress(compressed));
+        }
+    }
+
+    public void assertFindsRepetitionInRandomBytes() throws IOException
+    {
+        byte[] block = new byte[2048];
+        new Random(0).nextBytes(block);
+
+        byte[] input = new byte[16 * block.length];
+        for (int i = 0; i < 16; i++)
+            System.arraycopy(block, 0, input, i * block.length, block.length);
+
+        byte[] compressed = compressor.compress(input);
+
+        Assert.assertTrue("Repeated blocks were stored", (compressed[0] & STORED_FLAG_BYTE) == 0);
+        Assert.assertTrue("Repeated blocks did not shrink: " + compressed.length,
+                compressed.length < input.length);
+        Assert.assertArrayEquals(input, compressor.decompress(compressed));
+    }
+
+    public static List<byte[]> jsonMessages(int count, long seed)
+    {
+        Random random = new Random(seed);
+        List<byte[]> messages = new ArrayList<>();
+
+        for (int i = 0; i < count; i++)
+        {
+            StringBuilder sb = new StringBuilder()
+                    .append("{\"id\":").append(random.nextInt(1000000))
+                    .append(",\"timestamp\":\"2018-0").append(1 + random.nextInt(9))
+                    .append("-1").append(random.nextInt(10)).append("T1")
+                    .append(random.nextInt(10)).append(":").append(10 + random.nextInt(50))
+                    .append(":00Z\",\"user\":{\"name\":\"")
+                    .append(USERS[random.nextInt(USERS.length)])
+                    .append("\",\"email\":\"")
+                    .append(USERS[random.nextInt(USERS.length)]).append("@example.com\"}")
+                    .append(",\"status\":\"").append(STATUSES[random.nextInt(STATUSES.length)])
+                    .append("\",\"items\":[");
+
+            for (int j = random.nextInt(5); j >= 0; j--)
+                sb
+                        .append("{\"sku\":\"SKU-").append(random.nextInt(10000))
+                        .append("\",\"quantity\":").append(1 + random.nextInt(9))
+                        .append(",\"price\":").append(random.nextInt(100)).append(".95}")
+                        .append(j > 0 ? "," : "");
+
+            messages.add(sb.append("]}").toString().getBytes());
+        }
+
+        return messages;
+    }
+
+    public static PresetDictionary trainDictionary(int id)
+    {
+        return DictionaryTrainer.train(id, jsonMessages(200, id));
+    }
+
+    public void assertShrinksSmallMessagesWithDictionary(Compressor withDictionary)
+            throws IOException
+    {
+        CompressionContext cc = withDictionary.newCompressionContext();
+        DecompressionContext dc = withDictionary.newDecompressionContext();
+        long plainSize = 0, dictionarySize = 0;
+
+        for (byte[] message : jsonMessages(100, -1))
+        {
+            byte[] plain = compressor.compress(message);
+            byte[] compressed = withDictionary.compress(message);
+
+            Assert.assertArrayEquals("Compressed by context", compressed, cc.compress(message));
+            Assert.assertArrayEquals("Decompressed", message,
+                    withDictionary.decompress(compressed));
+            Assert.assertArrayEquals("Decompressed by context", message, dc.decompress(compressed));
+            Assert.assertArrayEquals("Plain, decompressed with dictionary", message,
+                    withDictionary.decompress(plain));
+
+            plainSize += plain.length;
+            dictionarySize += compressed.length;
+        }
+
+        Assert.assertTrue(
+                "Dictionary did not help: " + dictionarySize + " vs. " + plainSize + " bytes",
+                dictionarySize < plainSize
+        );
+    }
+
+    public void assertRejectsWrongDictionary(Compressor withDictionary, Compressor withOther)
+            throws IOException
+    {
+        byte[] compressed = withDictionary.compress(jsonMessages(1, -1).get(0));
+
+        for (Compressor c : new Compressor[]{ compressor, withOther })
+            try
+            {
+                c.decompress(compressed);
+                Assert.fail("Decompressed without the right dictionary");
+            }
+            catch (IllegalArgumentException e)
+            {
+            }
+    }
+
+    private ByteBuffer allocate(int capacity, boolean direct)
+    {
+        return direct
+                ? ByteBuffer.allocateDirect(capacity)
+                : ByteBuffer.allocate(capacity);
+    }
+
+    private byte[] written(ByteBuffer buffer)
+    {
+        byte[] bs = new byte[buffer.position() - 10];
+
+        buffer.position(10);
+        buffer.get(bs);
+
+        return bs;
+    }
+
+    private int headerLength(byte[] input, boolean storesSize) throws IOException
+    {
+        BinaryIO io = new BinaryIO(input);
+        FormatHeader.write(io, 0, storesSize, null);
+
+        return io.getByteCountOut();
+    }
+
     private boolean passesPerformanceTests(byte[] input, String type) throws IOException
     {
         ByteString bs = new ByteString(input);
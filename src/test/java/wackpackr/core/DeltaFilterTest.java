@@ -0,0 +1,159 @@
+package wackpackr.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import org.junit.Assert;
+import org.junit.Test;
+import wackpackr.io.BinaryIO;
+
+public class DeltaFilterTest
+{
+    private final Compressor auto = new DeltaFilter();
+    private final CompressorTester tester = new CompressorTester(auto);
+
+    @Test
+    public void filtersWithGivenStride() throws IOException
+    {
+        byte[] input = { 10, 20, 11, 22, 12, 24, 13, 26 };
+        byte[] expected = { 13, -31, 32, 24, 0, 2, 0, 10, 20, 1, 2, 1, 2, 1, 2 };
+
+        Assert.assertArrayEquals(expected, new DeltaFilter(2).compress(input));
+        Assert.assertArrayEquals(input, auto.decompress(expected));
+    }
+
+    @Test
+    public void detectsStrideOfImageAndSamples() throws IOException
+    {
+        byte[] image = Files.readAllBytes(new File("src/test/java/wackpackr/test.bmp").toPath());
+        byte[] samples = new byte[100_000];
+
+        for (int i = 0; i < samples.length; i += 2)
+        {
+            int sample = (int) (10000 * Math.sin(i / 500.0));
+            samples[i] = (byte) sample;
+            samples[i + 1] = (byte) (sample >> 8);
+        }
+
+        Assert.assertEquals(3, DeltaFilter.detectStride(ByteBuffer.wrap(image)));
+        Assert.assertEquals(2, DeltaFilter.detectStride(ByteBuffer.wrap(samples)));
+    }
+
+    @Test
+    public void leavesTextUnfiltered() throws IOException
+    {
+        byte[] text = Files.readAllBytes(new File("src/test/java/wackpackr/test.txt").toPath());
+
+        Assert.assertEquals(0, DeltaFilter.detectStride(ByteBuffer.wrap(text)));
+        Assert.assertEquals(0, DeltaFilter.detectStride(ByteBuffer.wrap(new byte[0])));
+    }
+
+    @Test
+    public void everyPredictorSurvivesRoundTrip() throws IOException
+    {
+        byte[] image = Files.readAllBytes(new File("src/test/java/wackpackr/test.bmp").toPath());
+
+        for (DeltaPredictor p : DeltaPredictor.values())
+        {
+            Compressor filter = new DeltaFilter(p, 3, 1352);
+            Assert.assertArrayEquals(image, filter.decompress(filter.compress(image)));
+        }
+    }
+
+    @Test
+    public void paethPicksNeighbourClosestToGradient()
+    {
+        Assert.assertEquals(10, DeltaPredictor.PAETH.predict(10, 20, 20));
+        Assert.assertEquals(20, DeltaPredictor.PAETH.predict(10, 20, 10));
+        Assert.assertEquals(15, DeltaPredictor.PAETH.predict(20, 10, 15));
+    }
+
+    @Test
+    public void helpsOtherCompressorsWithImage() throws IOException
+    {
+        byte[] image = Files.readAllBytes(new File("src/test/java/wackpackr/test.bmp").toPath());
+        Compressor lzss = new LZSSCompressor();
+        Compressor chain = new CompressorChain(auto, lzss);
+        byte[] compressed = chain.compress(image);
+
+        Assert.assertTrue(compressed.length < lzss.compress(image).length * 3 / 4);
+        Assert.assertArrayEquals(image, chain.decompress(compressed));
+    }
+
+    @Test
+    public void compressesBetweenByteBuffers() throws IOException
+    {
+        tester.assertHandlesByteBuffers();
+    }
+
+    @Test
+    public void compressesIntoGivenArrays() throws IOException
+    {
+        tester.assertHandlesGivenArrays();
+    }
+
+    @Test
+    public void neverExceedsMaxCompressedSize() throws IOException
+    {
+        tester.assertStaysWithinMaxCompressedSize();
+        new CompressorTester(new DeltaFilter(DeltaPredictor.PAETH, 3, 30))
+                .assertStaysWithinMaxCompressedSize();
+    }
+
+    @Test
+    public void contextsCanBeReused() throws IOException
+    {
+        tester.assertReusesContexts();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfIncorrectTagInHeader() throws IOException
+    {
+        byte[] invalid = new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+        auto.decompress(invalid);
+    }
+
+    @Test
+    public void throwsExceptionIfStrideOrRowIsNegative() throws IOException
+    {
+        byte[] negative = { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F };
+        byte[] zero = { 0 };
+
+        for (byte[][] params : new byte[][][]{ { negative, zero }, { zero, negative } })
+        {
+            BinaryIO io = new BinaryIO()
+                    .write32Bits(0x0DE12018)
+                    .writeByte((byte) DeltaPredictor.PAETH.ordinal())
+                    .writeBytes(params[0])
+                    .writeBytes(params[1])
+                    .writeBytes(new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8 });
+
+            try
+            {
+                auto.decompress(io.getBytesOut());
+                Assert.fail("Negative filter parameter went unnoticed");
+            }
+            catch (IllegalArgumentException e)
+            {
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfRowIsShorterThanStride()
+    {
+        new DeltaFilter(DeltaPredictor.UP, 3, 2);
+    }
+
+    @Test
+    public void filterKnowsItsName()
+    {
+        Assert.assertEquals("Delta", auto.getName());
+        Assert.assertEquals("Delta (stride 2)", new DeltaFilter(2).getName());
+        Assert.assertEquals(
+                "Paeth (stride 3, row 1352)",
+                new DeltaFilter(DeltaPredictor.PAETH, 3, 1352).getName()
+        );
+    }
+}
@@ -0,0 +1,65 @@
+package wackpackr.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DictionaryTrainerTest
+{
+    private final List<byte[]> samples = CompressorTester.jsonMessages(200, 7);
+
+    @Test
+    public void contentHoldsWhatSamplesHaveInCommon()
+    {
+        String content = new String(DictionaryTrainer.train(7, samples).getContent());
+
+        for (String s : new String[]{ "\"timestamp\":\"2018-0", "@example.com\"}", "\"quantity\":" })
+            Assert.assertTrue(content.contains(s));
+    }
+
+    @Test
+    public void contentDoesNotExceedGivenSize()
+    {
+        Assert.assertEquals(
+                PresetDictionary.MAX_CONTENT_SIZE,
+                DictionaryTrainer.train(7, samples).getContent().length
+        );
+        Assert.assertEquals(100, DictionaryTrainer.train(7, 100, samples).getContent().length);
+    }
+
+    @Test
+    public void nothingInCommonMakesEmptyContent()
+    {
+        List<byte[]> unique = new ArrayList<>();
+        unique.add("abcdefghijklmnop".getBytes());
+        unique.add("qrstuvwxyz012345".getBytes());
+
+        PresetDictionary dict = DictionaryTrainer.train(3, unique);
+        Assert.assertEquals(0, dict.getContent().length);
+        Assert.assertEquals(3, dict.getId());
+    }
+
+    @Test
+    public void frequenciesCountAllSamplesAndCoverAllBytes()
+    {
+        long[] freqs = DictionaryTrainer.train(7, samples).getFrequencies();
+        long count = 0;
+
+        for (long f : freqs)
+        {
+            Assert.assertTrue(f > 0);
+            count += f - 1;
+        }
+        for (byte[] sample : samples)
+            count -= sample.length;
+
+        Assert.assertEquals(0, count);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfNoSamples()
+    {
+        DictionaryTrainer.train(7, new ArrayList<>());
+    }
+}
@@ -0,0 +1,76 @@
+package wackpackr.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EntropyEstimatorTest
+{
+    @Test
+    public void entropyOfEvenlySpreadBytesIsEight()
+    {
+        long[] freqs = new long[256];
+        Arrays.fill(freqs, 1000);
+
+        Assert.assertEquals(8, EntropyEstimator.bitsPerByte(freqs), 0.001);
+    }
+
+    @Test
+    public void entropyOfOneRepeatedByteIsZero()
+    {
+        long[] freqs = new long[256];
+        freqs[42] = 1000;
+
+        Assert.assertEquals(0, EntropyEstimator.bitsPerByte(freqs), 0.001);
+        Assert.assertEquals(0, EntropyEstimator.bitsPerByte(new long[256]), 0.001);
+    }
+
+    @Test
+    public void randomDataIsIncompressible()
+    {
+        for (int length : new int[]{ 1024, 50_000, 1 << 20 })
+        {
+            byte[] random = new byte[length];
+            ThreadLocalRandom.current().nextBytes(random);
+
+            Assert.assertTrue(EntropyEstimator.isIncompressible(ByteBuffer.wrap(random)));
+        }
+    }
+
+    @Test
+    public void textAndImageAreNotIncompressible() throws IOException
+    {
+        for (String name : new String[]{ "test.txt", "test.bmp" })
+        {
+            byte[] bytes = Files.readAllBytes(new File("src/test/java/wackpackr/" + name).toPath());
+
+            Assert.assertFalse(EntropyEstimator.isIncompressible(ByteBuffer.wrap(bytes)));
+            Assert.assertFalse(EntropyEstimator.isIncompressible(
+                    HuffTreeParser.countFrequencies(bytes)));
+        }
+    }
+
+    @Test
+    public void smallInputsAreNeverIncompressible()
+    {
+        byte[] random = new byte[EntropyEstimator.MIN_LENGTH - 1];
+        ThreadLocalRandom.current().nextBytes(random);
+
+        Assert.assertFalse(EntropyEstimator.isIncompressible(ByteBuffer.wrap(random)));
+    }
+
+    @Test
+    public void sampledBufferPositionIsNotMoved()
+    {
+        ByteBuffer bytes = ByteBuffer.allocate(1 << 20);
+        bytes.position(100);
+
+        EntropyEstimator.isIncompressible(bytes);
+        Assert.assertEquals(100, bytes.position());
+    }
+}
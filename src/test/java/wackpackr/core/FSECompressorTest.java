@@ -0,0 +1,181 @@
+package wackpackr.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import wackpackr.io.BinaryIO;
+
+public class FSECompressorTest
+{
+    private final Compressor fse = new FSECompressor();
+    private final CompressorTester tester = new CompressorTester(fse);
+
+    @Test
+    public void beatsHuffmanOnText() throws IOException
+    {
+        byte[] input = Files.readAllBytes(new File("src/test/java/wackpackr/test.txt").toPath());
+        byte[] compressed = fse.compress(input);
+
+        Assert.assertTrue(compressed.length < new HuffCompressor().compress(input).length);
+        Assert.assertArrayEquals(input, fse.decompress(compressed));
+    }
+
+    @Test
+    public void codesSkewedDataInFractionsOfBits() throws IOException
+    {
+        byte[] input = new byte[100_000];
+        for (int i = 0; i < input.length; i++)
+            input[i] = (byte) ((i % 50 == 0) ? i % 3 : 'x');
+
+        byte[] compressed = fse.compress(input);
+
+        Assert.assertTrue(compressed.length < input.length / 8 / 2);
+        Assert.assertArrayEquals(input, fse.decompress(compressed));
+    }
+
+    @Test
+    public void singleByteValueTakesNextToNoBitsPerByte() throws IOException
+    {
+        byte[] input = new byte[100_000];
+        byte[] compressed = fse.compress(input);
+
+        Assert.assertTrue(compressed.length < 32);
+        Assert.assertArrayEquals(input, fse.decompress(compressed));
+    }
+
+    @Test
+    public void shortInputsSurviveRoundTrip() throws IOException
+    {
+        String s = "Appilan pappilan";
+
+        for (int i = 0; i <= s.length(); i++)
+        {
+            byte[] bs = s.substring(0, i).getBytes();
+            Assert.assertArrayEquals(bs, fse.decompress(fse.compress(bs)));
+        }
+    }
+
+    @Test
+    public void testPerformanceWithText() throws IOException
+    {
+        Assert.assertTrue(tester.performsWithText());
+    }
+
+    @Test
+    public void testPerformanceWithImage() throws IOException
+    {
+        Assert.assertTrue(tester.performsWithImage());
+    }
+
+    @Test
+    public void testPerformanceWithRandomBytes() throws IOException
+    {
+        Assert.assertTrue(tester.performsWithRandom());
+    }
+
+    @Test
+    public void compressesBetweenByteBuffers() throws IOException
+    {
+        tester.assertHandlesByteBuffers();
+    }
+
+    @Test
+    public void compressesIntoGivenArrays() throws IOException
+    {
+        tester.assertHandlesGivenArrays();
+    }
+
+    @Test
+    public void neverExceedsMaxCompressedSize() throws IOException
+    {
+        tester.assertStaysWithinMaxCompressedSize();
+    }
+
+    @Test
+    public void contextsCanBeReused() throws IOException
+    {
+        tester.assertReusesContexts();
+    }
+
+    @Test
+    public void storesUncompressedSizeIfRequested() throws IOException
+    {
+        tester.assertHandlesSizeHeader(new FSECompressor(true));
+    }
+
+    @Test
+    public void storesDataAsIsIfItDoesNotShrink() throws IOException
+    {
+        byte[] random = new byte[1 << 16];
+        new Random(42).nextBytes(random);
+
+        for (byte[] input : new byte[][]{ random, Arrays.copyOf(random, 100) })
+        {
+            byte[] compressed = fse.compress(input);
+
+            Assert.assertEquals(0x20, compressed[0] & 0x20);
+            Assert.assertEquals(4 + input.length, compressed.length);
+            Assert.assertArrayEquals(input, fse.decompress(compressed));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfIncorrectTagInHeader() throws IOException
+    {
+        byte[] invalid = new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+        fse.decompress(invalid);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfDataIsCutShort() throws IOException
+    {
+        byte[] input = Files.readAllBytes(new File("src/test/java/wackpackr/test.txt").toPath());
+        byte[] compressed = fse.compress(input);
+
+        fse.decompress(Arrays.copyOfRange(compressed, 0, compressed.length / 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfFrequenciesDoNotAddUp() throws IOException
+    {
+        byte[] compressed = fse.compress(new byte[1000]);
+        compressed[7]--;
+
+        fse.decompress(compressed);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfCountIsOutOfProportionToData() throws IOException
+    {
+        BinaryIO io = new BinaryIO()
+                .write32Bits(0x0F5E2018)
+                .writeVarInt(Integer.MAX_VALUE)
+                .writeVarInt(5)
+                .writeVarInt(32)
+                .writeVarInt(0)
+                .writeVarInt(254)
+                .writeByte((byte) 0x80);
+
+        fse.decompress(io.getBytesOut());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfCountDoesNotMatchSizeInHeader() throws IOException
+    {
+        Compressor sized = new FSECompressor(true);
+        byte[] compressed = sized.compress(new byte[1000]);
+        compressed[7]++;
+
+        sized.decompress(compressed);
+    }
+
+    @Test
+    public void compressorKnowsItsName()
+    {
+        Assert.assertEquals("FSE", fse.getName());
+    }
+}
@@ -0,0 +1,47 @@
+package wackpackr.core;
+
+import java.io.IOException;
+import org.junit.Assert;
+import org.junit.Test;
+import wackpackr.io.BinaryIO;
+
+public class FormatHeaderTest
+{
+    private static final long TAG = 0x07031986;
+
+    @Test
+    public void sizeInHeaderDoesNotReserveMoreThanInputCanDecodeTo() throws IOException
+    {
+        byte[] bs = new BinaryIO()
+                .write32Bits(TAG | FormatHeader.SIZE_FLAG)
+                .writeVarInt(Integer.MAX_VALUE)
+                .writeBytes(new byte[10])
+                .getBytesOut();
+        BinaryIO io = new BinaryIO(bs);
+
+        Assert.assertEquals(Integer.MAX_VALUE, FormatHeader.read(io, TAG, "", null).getSize());
+        Assert.assertEquals(0, io.getByteCountOut());
+    }
+
+    @Test
+    public void outputGrowsPastReservation() throws IOException
+    {
+        Compressor rle = new RLECompressor(true);
+        byte[] input = new byte[1 << 20];
+        byte[] compressed = rle.compress(input);
+
+        Assert.assertTrue(compressed.length * FormatHeader.MAX_RESERVED_EXPANSION < input.length);
+        Assert.assertArrayEquals(input, rle.decompress(compressed));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfSizeIsNegative() throws IOException
+    {
+        byte[] bs = new BinaryIO()
+                .write32Bits(TAG | FormatHeader.SIZE_FLAG)
+                .writeVarInt(-1)
+                .getBytesOut();
+
+        FormatHeader.read(new BinaryIO(bs), TAG, "", null);
+    }
+}
@@ -50,6 +50,65 @@ public class HuffCompressorTest
         Assert.assertTrue(tester.performsWithRandom());
     }
 
+    @Test
+    public void compressesBetweenByteBuffers() throws IOException
+    {
+        tester.assertHandlesByteBuffers();
+    }
+
+    @Test
+    public void compressesIntoGivenArrays() throws IOException
+    {
+        tester.assertHandlesGivenArrays();
+    }
+
+    @Test
+    public void neverExceedsMaxCompressedSize() throws IOException
+    {
+        tester.assertStaysWithinMaxCompressedSize();
+    }
+
+    @Test
+    public void contextsCanBeReused() throws IOException
+    {
+        tester.assertReusesContexts();
+    }
+
+    @Test
+    public void storesUncompressedSizeIfRequested() throws IOException
+    {
+        tester.assertHandlesSizeHeader(new HuffCompressor(true));
+    }
+
+    @Test
+    public void storesIncompressibleDataAsIs() throws IOException
+    {
+        tester.assertStoresIncompressibleData(new HuffCompressor(true));
+    }
+
+    @Test
+    public void presetDictionaryShrinksSmallMessages() throws IOException
+    {
+        Compressor withDictionary = new HuffCompressor(CompressorTester.trainDictionary(1));
+        tester.assertShrinksSmallMessagesWithDictionary(withDictionary);
+    }
+
+    @Test
+    public void presetDictionaryContextsCanBeReused() throws IOException
+    {
+        Compressor withDictionary = new HuffCompressor(true, CompressorTester.trainDictionary(1));
+        new CompressorTester(withDictionary).assertReusesContexts();
+    }
+
+    @Test
+    public void presetDictionaryMustMatch() throws IOException
+    {
+        tester.assertRejectsWrongDictionary(
+                new HuffCompressor(CompressorTester.trainDictionary(1)),
+                new HuffCompressor(CompressorTester.trainDictionary(2))
+        );
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void throwsExceptionIfIncorrectTagInHeader() throws IOException
     {
@@ -50,6 +50,77 @@ public class LZSSCompressorTest
         Assert.assertTrue(tester.performsWithRandom());
     }
 
+    @Test
+    public void compressesBetweenByteBuffers() throws IOException
+    {
+        tester.assertHandlesByteBuffers();
+    }
+
+    @Test
+    public void compressesIntoGivenArrays() throws IOException
+    {
+        tester.assertHandlesGivenArrays();
+    }
+
+    @Test
+    public void neverExceedsMaxCompressedSize() throws IOException
+    {
+        tester.assertStaysWithinMaxCompressedSize();
+    }
+
+    @Test
+    public void contextsCanBeReused() throws IOException
+    {
+        tester.assertReusesContexts();
+    }
+
+    @Test
+    public void storesUncompressedSizeIfRequested() throws IOException
+    {
+        tester.assertHandlesSizeHeader(new LZSSCompressor(true));
+    }
+
+    @Test
+    public void storesIncompressibleDataAsIs() throws IOException
+    {
+        tester.assertStoresIncompressibleData(new LZSSCompressor(true));
+    }
+
+    @Test
+    public void storesLargeIncompressibleDataWithoutEncodingItAll() throws IOException
+    {
+        tester.assertStoresLargeIncompressibleDataInPlace();
+    }
+
+    @Test
+    public void compressesRepeatedRandomBlocks() throws IOException
+    {
+        tester.assertFindsRepetitionInRandomBytes();
+    }
+
+    @Test
+    public void presetDictionaryShrinksSmallMessages() throws IOException
+    {
+        Compressor withDictionary = new LZSSCompressor(CompressorTester.trainDictionary(1));
+        tester.assertShrinksSmallMessagesWithDictionary(withDictionary);
+    }
+
+    @Test
+    public void presetDictionaryContextsCanBeReused() throws IOException
+    {
+        Compressor withDictionary = new LZSSCompressor(true, CompressorTester.trainDictionary(1));
+        new CompressorTester(withDictionary).assertReusesContexts();
+    }
+
+    @Test
+    public void presetDictionaryMustMatch() throws IOException
+    {
+        tester.assertRejectsWrongDictionary(
+                new LZSSCompressor(CompressorTester.trainDictionary(1)),
+                new LZSSCompressor(CompressorTester.trainDictionary(2))
+        );
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void throwsExceptionIfIncorrectTagInHeader() throws IOException
     {
@@ -64,6 +135,25 @@ public class LZSSCompressorTest
         lzss.decompress(invalid);
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfBackReferenceReachesPastStart() throws IOException
+    {
+        byte[] invalid = new byte[]{ 7, 7, 32, 23, -125, 32, 0 };
+        lzss.decompress(invalid);
+    }
+
+    @Test
+    public void compressesInputsShorterThanLookaheadBuffer() throws IOException
+    {
+        String s = "Appilan pappilan";
+
+        for (int i = 0; i <= s.length(); i++)
+        {
+            byte[] bs = s.substring(0, i).getBytes();
+            Assert.assertArrayEquals(bs, lzss.decompress(lzss.compress(bs)));
+        }
+    }
+
     @Test
     public void compressorKnowsItsName()
     {
@@ -0,0 +1,149 @@
+package wackpackr.core;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LZSSRangeCompressorTest
+{
+    private final Compressor lzssRange = new LZSSRangeCompressor();
+    private final CompressorTester tester = new CompressorTester(lzssRange);
+
+    @Test
+    public void beatsPlainLZSSOnText() throws IOException
+    {
+        byte[] input = Files.readAllBytes(new File("src/test/java/wackpackr/test.txt").toPath());
+        byte[] compressed = lzssRange.compress(input);
+
+        Assert.assertTrue(compressed.length < new LZSSCompressor().compress(input).length * 0.9);
+        Assert.assertArrayEquals(input, lzssRange.decompress(compressed));
+    }
+
+    @Test
+    public void beatsPlainLZSSOnLongRuns() throws IOException
+    {
+        byte[] input = new byte[100_000];
+        for (int i = 0; i < input.length; i++)
+            input[i] = (byte) ((i % 1000 < 900) ? 'a' : i);
+
+        byte[] compressed = lzssRange.compress(input);
+
+        Assert.assertTrue(compressed.length < new LZSSCompressor().compress(input).length / 4);
+        Assert.assertArrayEquals(input, lzssRange.decompress(compressed));
+    }
+
+    @Test
+    public void shortInputsSurviveRoundTrip() throws IOException
+    {
+        String s = "Appilan pappilan apupapin papupata pankolla";
+
+        for (int i = 0; i <= s.length(); i++)
+        {
+            byte[] bs = s.substring(0, i).getBytes();
+            Assert.assertArrayEquals(bs, lzssRange.decompress(lzssRange.compress(bs)));
+        }
+    }
+
+    @Test
+    public void testPerformanceWithText() throws IOException
+    {
+        Assert.assertTrue(tester.performsWithText());
+    }
+
+    @Test
+    public void testPerformanceWithImage() throws IOException
+    {
+        Assert.assertTrue(tester.performsWithImage());
+    }
+
+    @Test
+    public void testPerformanceWithRandomBytes() throws IOException
+    {
+        Assert.assertTrue(tester.performsWithRandom());
+    }
+
+    @Test
+    public void compressesBetweenByteBuffers() throws IOException
+    {
+        tester.assertHandlesByteBuffers();
+    }
+
+    @Test
+    public void compressesIntoGivenArrays() throws IOException
+    {
+        tester.assertHandlesGivenArrays();
+    }
+
+    @Test
+    public void neverExceedsMaxCompressedSize() throws IOException
+    {
+        tester.assertStaysWithinMaxCompressedSize();
+    }
+
+    @Test
+    public void contextsCanBeReused() throws IOException
+    {
+        tester.assertReusesContexts();
+    }
+
+    @Test
+    public void storesUncompressedSizeIfRequested() throws IOException
+    {
+        tester.assertHandlesSizeHeader(new LZSSRangeCompressor(true));
+    }
+
+    @Test
+    public void storesDataAsIsIfItDoesNotShrink() throws IOException
+    {
+        byte[] random = new byte[1 << 16];
+        new Random(42).nextBytes(random);
+
+        for (byte[] input : new byte[][]{ random, Arrays.copyOf(random, 100) })
+        {
+            byte[] compressed = lzssRange.compress(input);
+
+            Assert.assertEquals(0x20, compressed[0] & 0x20);
+            Assert.assertEquals(4 + input.length, compressed.length);
+            Assert.assertArrayEquals(input, lzssRange.decompress(compressed));
+        }
+    }
+
+    @Test
+    public void storesLargeIncompressibleDataWithoutEncodingItAll() throws IOException
+    {
+        tester.assertStoresLargeIncompressibleDataInPlace();
+    }
+
+    @Test
+    public void compressesRepeatedRandomBlocks() throws IOException
+    {
+        tester.assertFindsRepetitionInRandomBytes();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfIncorrectTagInHeader() throws IOException
+    {
+        byte[] invalid = new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+        lzssRange.decompress(invalid);
+    }
+
+    @Test(expected = EOFException.class)
+    public void throwsExceptionIfNoEoFMarker() throws IOException
+    {
+        byte[] input = Files.readAllBytes(new File("src/test/java/wackpackr/test.txt").toPath());
+        byte[] compressed = lzssRange.compress(input);
+
+        lzssRange.decompress(Arrays.copyOf(compressed, compressed.length - 10));
+    }
+
+    @Test
+    public void compressorKnowsItsName()
+    {
+        Assert.assertEquals("LZSS-Range", lzssRange.getName());
+    }
+}
@@ -2,6 +2,7 @@ package wackpackr.core;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.util.Random;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -50,6 +51,103 @@ public class LZWCompressorTest
         Assert.assertTrue(tester.performsWithRandom());
     }
 
+    @Test
+    public void compressesBetweenByteBuffers() throws IOException
+    {
+        tester.assertHandlesByteBuffers();
+    }
+
+    @Test
+    public void compressesIntoGivenArrays() throws IOException
+    {
+        tester.assertHandlesGivenArrays();
+    }
+
+    @Test
+    public void neverExceedsMaxCompressedSize() throws IOException
+    {
+        tester.assertStaysWithinMaxCompressedSize();
+    }
+
+    @Test
+    public void contextsCanBeReused() throws IOException
+    {
+        tester.assertReusesContexts();
+    }
+
+    @Test
+    public void storesUncompressedSizeIfRequested() throws IOException
+    {
+        tester.assertHandlesSizeHeader(new LZWCompressor(true));
+    }
+
+    @Test
+    public void storesIncompressibleDataAsIs() throws IOException
+    {
+        tester.assertStoresIncompressibleData(new LZWCompressor(true));
+    }
+
+    @Test
+    public void storesLargeIncompressibleDataWithoutEncodingItAll() throws IOException
+    {
+        tester.assertStoresLargeIncompressibleDataInPlace();
+    }
+
+    @Test
+    public void compressesRepeatedRandomBlocks() throws IOException
+    {
+        tester.assertFindsRepetitionInRandomBytes();
+    }
+
+    @Test
+    public void presetDictionaryShrinksSmallMessages() throws IOException
+    {
+        Compressor withDictionary = new LZWCompressor(CompressorTester.trainDictionary(1));
+        tester.assertShrinksSmallMessagesWithDictionary(withDictionary);
+    }
+
+    @Test
+    public void presetDictionaryContextsCanBeReused() throws IOException
+    {
+        Compressor withDictionary = new LZWCompressor(true, CompressorTester.trainDictionary(1));
+        new CompressorTester(withDictionary).assertReusesContexts();
+    }
+
+    @Test
+    public void presetDictionaryMustMatch() throws IOException
+    {
+        tester.assertRejectsWrongDictionary(
+                new LZWCompressor(CompressorTester.trainDictionary(1)),
+                new LZWCompressor(CompressorTester.trainDictionary(2))
+        );
+    }
+
+    @Test
+    public void seededDictionaryStaysInSyncAcrossResets() throws IOException
+    {
+        byte[] content = new byte[256];
+        long[] freqs = new long[256];
+
+        for (int i = 0; i < 256; i++)
+        {
+            content[i] = (byte) i;
+            freqs[i] = 1;
+        }
+
+        Compressor seeded = new LZWCompressor(new PresetDictionary(3, content, freqs));
+
+        byte[] input = new byte[600 * 1024];
+        Random random = new Random(0);
+
+        for (int i = 0; i < input.length; i++)
+            input[i] = (byte) ('a' + random.nextInt(16));
+
+        byte[] compressed = seeded.compress(input);
+
+        Assert.assertTrue(compressed.length < input.length);
+        Assert.assertArrayEquals(input, seeded.decompress(compressed));
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void throwsExceptionIfIncorrectTagInHeader() throws IOException
     {
@@ -0,0 +1,259 @@
+package wackpackr.core;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LZWInteropCodecTest
+{
+    private final Compressor compress = new LZWCompressor(LZWMode.UNIX_COMPRESS);
+    private final Compressor gif = new LZWCompressor(LZWMode.GIF);
+    private final Compressor tiff = new LZWCompressor(LZWMode.TIFF);
+
+    /*
+     * Image data of the 10x10 sample GIF used in most GIF format walkthroughs; it starts right after
+     * the image descriptor, and ends just before the trailer byte.
+     */
+    private static final int GIF_IMAGE_DATA_OFFSET = 43;
+
+    /*
+     * Length of the prefix of test.bmp in test.bmp.Z. Its compressed form is more than 65,280
+     * codes long, so the dictionary fills up and is cleared at least once. The file decompresses
+     * with gzip -d; no independent encoder of .Z files was at hand.
+     */
+    private static final int BMP_PREFIX_LENGTH = 200_000;
+
+    /*
+     * Side of the square, 8-bit images in imageio.gif and imageio.tif, both written by the ImageIO
+     * encoders of the JDK (the TIFF one with LZW compression, in two strips). Their pixels are
+     * given by imagePixels(), and fill the 12-bit dictionary several times over.
+     */
+    private static final int IMAGE_SIDE = 128;
+    private final byte[] pixels = {
+            1, 1, 1, 1, 1, 2, 2, 2, 2, 2,
+            1, 1, 1, 1, 1, 2, 2, 2, 2, 2,
+            1, 1, 1, 1, 1, 2, 2, 2, 2, 2,
+            1, 1, 1, 0, 0, 0, 0, 2, 2, 2,
+            1, 1, 1, 0, 0, 0, 0, 2, 2, 2,
+            2, 2, 2, 0, 0, 0, 0, 1, 1, 1,
+            2, 2, 2, 0, 0, 0, 0, 1, 1, 1,
+            2, 2, 2, 2, 2, 1, 1, 1, 1, 1,
+            2, 2, 2, 2, 2, 1, 1, 1, 1, 1,
+            2, 2, 2, 2, 2, 1, 1, 1, 1, 1
+    };
+
+    @Test
+    public void decompressesUnixCompressFile() throws IOException
+    {
+        Assert.assertArrayEquals(
+                readFixture("test.txt"),
+                compress.decompress(readFixture("test.txt.Z"))
+        );
+    }
+
+    @Test
+    public void compressesIntoUnixCompressFile() throws IOException
+    {
+        Assert.assertArrayEquals(
+                readFixture("test.txt.Z"),
+                compress.compress(readFixture("test.txt"))
+        );
+    }
+
+    @Test
+    public void decompressesGIFImageData() throws IOException
+    {
+        Assert.assertArrayEquals(
+                pixels,
+                gif.decompress(gifImageData())
+        );
+    }
+
+    @Test
+    public void compressesIntoGIFImageData() throws IOException
+    {
+        Assert.assertArrayEquals(
+                gifImageData(),
+                gif.compress(pixels)
+        );
+    }
+
+    @Test
+    public void decompressesUnixCompressFileWithClearCodes() throws IOException
+    {
+        byte[] prefix = Arrays.copyOf(readFixture("test.bmp"), BMP_PREFIX_LENGTH);
+
+        Assert.assertArrayEquals(prefix, compress.decompress(readFixture("test.bmp.Z")));
+        Assert.assertArrayEquals(readFixture("test.bmp.Z"), compress.compress(prefix));
+    }
+
+    @Test
+    public void decompressesGIFWrittenByImageIO() throws IOException
+    {
+        Assert.assertArrayEquals(
+                imagePixels(),
+                gif.decompress(gifImageData(readFixture("imageio.gif")))
+        );
+    }
+
+    @Test
+    public void decompressesTIFFStripsWrittenByImageIO() throws IOException
+    {
+        Assert.assertArrayEquals(
+                imagePixels(),
+                tiffStrips(readFixture("imageio.tif"))
+        );
+    }
+
+    @Test
+    public void allModesSurviveRoundTrip() throws IOException
+    {
+        byte[] random = new byte[256 * 1024];
+        ThreadLocalRandom.current().nextBytes(random);
+
+        for (Compressor c : new Compressor[]{ compress, gif, tiff })
+            for (byte[] bs : new byte[][]{ readFixture("test.txt"), readFixture("test.bmp"), random, {}, { 42 } })
+                Assert.assertArrayEquals(
+                        bs,
+                        c.decompress(c.compress(bs))
+                );
+    }
+
+    @Test
+    public void allModesStayWithinMaxCompressedSize() throws IOException
+    {
+        byte[] random = new byte[256 * 1024];
+        ThreadLocalRandom.current().nextBytes(random);
+
+        for (Compressor c : new Compressor[]{ compress, gif, tiff })
+            for (byte[] bs : new byte[][]{ readFixture("test.bmp"), random, {}, { 42 } })
+                Assert.assertTrue(c.compress(bs).length <= c.maxCompressedSize(bs.length));
+    }
+
+    @Test
+    public void gifModeUsesSmallestPossibleCodeSize() throws IOException
+    {
+        Assert.assertEquals(2, gif.compress(new byte[]{ 0, 1, 1, 0 })[0]);
+        Assert.assertEquals(5, gif.compress(new byte[]{ 0, 17, 31, 3 })[0]);
+        Assert.assertEquals(8, gif.compress(new byte[]{ 0, -1 })[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfNotUnixCompressFile() throws IOException
+    {
+        compress.decompress(new byte[]{ 7, 3, 25, -122, 22, -103 });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfCodeIsNotInDictionary() throws IOException
+    {
+        compress.decompress(new byte[]{ 0x1F, -99, -112, 42, 0x58, 2 });
+    }
+
+    @Test(expected = EOFException.class)
+    public void throwsExceptionIfNoEOIInTIFFStream() throws IOException
+    {
+        byte[] bs = tiff.compress("abracadabra".getBytes());
+        tiff.decompress(Arrays.copyOf(bs, bs.length - 2));
+    }
+
+    @Test
+    public void compressorsKnowTheirNames()
+    {
+        Assert.assertEquals("LZW", new LZWCompressor().getName());
+        Assert.assertEquals("LZW (.Z)", compress.getName());
+        Assert.assertEquals("LZW (GIF)", gif.getName());
+        Assert.assertEquals("LZW (TIFF)", tiff.getName());
+    }
+
+    private byte[] gifImageData() throws IOException
+    {
+        byte[] bs = readFixture("sample.gif");
+        return Arrays.copyOfRange(bs, GIF_IMAGE_DATA_OFFSET, bs.length - 1);
+    }
+
+    private static byte[] imagePixels()
+    {
+        byte[] bs = new byte[IMAGE_SIDE * IMAGE_SIDE];
+        for (int y = 0; y < IMAGE_SIDE; y++)
+            for (int x = 0; x < IMAGE_SIDE; x++)
+                bs[y * IMAGE_SIDE + x] = (byte) ((x ^ y) * 7 + ((x * y) >> 3));
+
+        return bs;
+    }
+
+    private static byte[] gifImageData(byte[] bs)
+    {
+        int i = 13;
+        if ((bs[10] & 0x80) != 0)
+            i += 3 << ((bs[10] & 7) + 1);
+
+        while (bs[i] == 0x21)
+            i = skipSubBlocks(bs, i + 2);
+
+        Assert.assertEquals("image descriptor", 0x2C, bs[i]);
+        Assert.assertEquals("no local color table or interlacing", 0, bs[i + 9] & 0xC0);
+
+        int start = i + 10;
+        return Arrays.copyOfRange(bs, start, skipSubBlocks(bs, start + 1));
+    }
+
+    private static int skipSubBlocks(byte[] bs, int i)
+    {
+        while (bs[i] != 0)
+            i += (bs[i] & 0xFF) + 1;
+
+        return i + 1;
+    }
+
+    private byte[] tiffStrips(byte[] bs) throws IOException
+    {
+        ByteBuffer bb = ByteBuffer.wrap(bs)
+                .order((bs[0] == 'M') ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        int ifd = bb.getInt(4);
+        int[] offsets = null, counts = null;
+
+        for (int k = 0; k < bb.getShort(ifd); k++)
+        {
+            int entry = ifd + 2 + 12 * k;
+            int tag = bb.getShort(entry) & 0xFFFF;
+
+            if (tag == 259)
+                Assert.assertEquals("LZW compression", 5, tiffValues(bb, entry)[0]);
+            else if (tag == 273)
+                offsets = tiffValues(bb, entry);
+            else if (tag == 279)
+                counts = tiffValues(bb, entry);
+        }
+
+        ByteBuffer pixels = ByteBuffer.allocate(IMAGE_SIDE * IMAGE_SIDE);
+        for (int k = 0; k < offsets.length; k++)
+            pixels.put(tiff.decompress(Arrays.copyOfRange(bs, offsets[k], offsets[k] + counts[k])));
+
+        return pixels.array();
+    }
+
+    private static int[] tiffValues(ByteBuffer bb, int entry)
+    {
+        boolean isShort = bb.getShort(entry + 2) == 3;
+        int[] values = new int[bb.getInt(entry + 4)];
+        int at = (values.length * (isShort ? 2 : 4) <= 4) ? entry + 8 : bb.getInt(entry + 8);
+
+        for (int k = 0; k < values.length; k++)
+            values[k] = isShort ? bb.getShort(at + 2 * k) & 0xFFFF : bb.getInt(at + 4 * k);
+
+        return values;
+    }
+
+    private byte[] readFixture(String name) throws IOException
+    {
+        return Files.readAllBytes(new File("src/test/java/wackpackr/" + name).toPath());
+    }
+}
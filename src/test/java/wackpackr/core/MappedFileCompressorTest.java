@@ -0,0 +1,135 @@
+package wackpackr.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedFileCompressorTest
+{
+    private final Compressor[] compressors = {
+            new HuffCompressor(),
+            new LZSSCompressor(),
+            new LZWCompressor(),
+            new LZWCompressor(LZWMode.UNIX_COMPRESS)
+    };
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void mappedFilesGiveSameOutputAsByteArrays() throws IOException
+    {
+        for (String name : new String[]{ "test.txt", "test.bmp" })
+        {
+            Path source = new File("src/test/java/wackpackr/" + name).toPath();
+            byte[] bytes = Files.readAllBytes(source);
+
+            for (Compressor c : compressors)
+            {
+                MappedFileCompressor mfc = new MappedFileCompressor(c);
+                Path compressed = folder.newFile().toPath();
+                Path decompressed = folder.newFile().toPath();
+
+                long size = mfc.compress(source, compressed);
+                Assert.assertEquals(Files.size(compressed), size);
+                Assert.assertArrayEquals(c.compress(bytes), Files.readAllBytes(compressed));
+
+                Assert.assertEquals(bytes.length, mfc.decompress(compressed, decompressed));
+                Assert.assertArrayEquals(bytes, Files.readAllBytes(decompressed));
+            }
+        }
+    }
+
+    @Test
+    public void targetFileGrowsIfEstimateIsTooSmall() throws IOException
+    {
+        MappedFileCompressor mfc = new MappedFileCompressor(new HuffCompressor());
+        Path source = folder.newFile().toPath();
+        Path compressed = folder.newFile().toPath();
+        Path decompressed = folder.newFile().toPath();
+
+        byte[] zeros = new byte[1 << 20];
+        Files.write(source, zeros);
+
+        mfc.compress(source, compressed);
+        Assert.assertTrue(Files.size(compressed) * 4 < zeros.length);
+
+        mfc.decompress(compressed, decompressed);
+        Assert.assertArrayEquals(zeros, Files.readAllBytes(decompressed));
+    }
+
+    @Test
+    public void overwritesExistingTargetFile() throws IOException
+    {
+        MappedFileCompressor mfc = new MappedFileCompressor(new LZSSCompressor());
+        Path source = folder.newFile().toPath();
+        Path target = folder.newFile().toPath();
+
+        Files.write(source, "abracadabra".getBytes());
+        Files.write(target, new byte[100_000]);
+
+        mfc.compress(source, target);
+        Assert.assertArrayEquals(
+                new LZSSCompressor().compress("abracadabra".getBytes()),
+                Files.readAllBytes(target)
+        );
+    }
+
+    @Test
+    public void largeFilesAreCompressedInWindows() throws IOException
+    {
+        Path source = new File("src/test/java/wackpackr/test.txt").toPath();
+        byte[] bytes = Files.readAllBytes(source);
+        int window = bytes.length / 3 + 1;
+
+        for (Compressor c : compressors)
+        {
+            MappedFileCompressor mfc = new MappedFileCompressor(c, window);
+            Path compressed = folder.newFile().toPath();
+            Path decompressed = folder.newFile().toPath();
+
+            long size = mfc.compress(source, compressed);
+            Assert.assertEquals(Files.size(compressed), size);
+
+            ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(compressed));
+            Assert.assertEquals(0x0F1E2018, file.getInt());
+
+            for (int offset = 0; offset < bytes.length; offset += window)
+            {
+                byte[] expected = c.compress(Arrays.copyOfRange(
+                        bytes, offset, Math.min(bytes.length, offset + window)));
+                byte[] actual = new byte[file.getInt()];
+                file.get(actual);
+
+                Assert.assertArrayEquals(expected, actual);
+            }
+
+            Assert.assertFalse(file.hasRemaining());
+            Assert.assertEquals(bytes.length, mfc.decompress(compressed, decompressed));
+            Assert.assertArrayEquals(bytes, Files.readAllBytes(decompressed));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfWindowRunsPastEndOfFile() throws IOException
+    {
+        Path source = folder.newFile().toPath();
+        Path target = folder.newFile().toPath();
+
+        Files.write(source, ByteBuffer.allocate(12).putInt(0x0F1E2018).putInt(100).array());
+        new MappedFileCompressor(new LZSSCompressor()).decompress(source, target);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void throwsExceptionIfNoCompressorGiven()
+    {
+        new MappedFileCompressor(null);
+    }
+}
@@ -0,0 +1,65 @@
+package wackpackr.core;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PresetDictionaryTest
+{
+    private final long[] freqs = new long[256];
+
+    public PresetDictionaryTest()
+    {
+        Arrays.fill(freqs, 1);
+    }
+
+    @Test
+    public void dictionarySurvivesStoringAndReading() throws IOException
+    {
+        freqs[100] = 123456789;
+        PresetDictionary dict = new PresetDictionary(300, "{\"name\":\"".getBytes(), freqs);
+        PresetDictionary read = PresetDictionary.fromBytes(dict.toBytes());
+
+        Assert.assertEquals(300, read.getId());
+        Assert.assertArrayEquals(dict.getContent(), read.getContent());
+        Assert.assertArrayEquals(dict.getFrequencies(), read.getFrequencies());
+    }
+
+    @Test
+    public void gettersReturnCopies()
+    {
+        PresetDictionary dict = new PresetDictionary(0, new byte[]{ 1, 2, 3 }, freqs);
+
+        dict.getContent()[0] = 42;
+        dict.getFrequencies()[0] = 42;
+
+        Assert.assertEquals(1, dict.getContent()[0]);
+        Assert.assertEquals(1, dict.getFrequencies()[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void everyByteValueNeedsPositiveFrequency()
+    {
+        freqs[17] = 0;
+        new PresetDictionary(0, new byte[0], freqs);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void contentCannotBeLongerThanPrefixWindow()
+    {
+        new PresetDictionary(0, new byte[PresetDictionary.MAX_CONTENT_SIZE + 1], freqs);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void idCannotBeNegative()
+    {
+        new PresetDictionary(-1, new byte[0], freqs);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfNotStoredDictionary() throws IOException
+    {
+        PresetDictionary.fromBytes(new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 });
+    }
+}
@@ -0,0 +1,142 @@
+package wackpackr.core;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RLECompressorTest
+{
+    private final Compressor rle = new RLECompressor();
+    private final CompressorTester tester = new CompressorTester(rle);
+
+    @Test
+    public void compressionWorks() throws IOException
+    {
+        byte[] input = { 1, 2, 2, 2, 2, 3, 3, 3, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4 };
+        byte[] expected = { 14, 12, 32, 24, 1, 2, 2, 2, 2, 0, 3, 3, 3, 4, 4, 4, 4, 6 };
+
+        Assert.assertArrayEquals(expected, rle.compress(input));
+        Assert.assertArrayEquals(input, rle.decompress(expected));
+    }
+
+    @Test
+    public void longRunsCollapseToAFewBytes() throws IOException
+    {
+        byte[] input = new byte[1 << 20];
+        Arrays.fill(input, 1 << 19, input.length, (byte) -1);
+        byte[] compressed = rle.compress(input);
+
+        Assert.assertEquals(4 + 2 * (4 + 3), compressed.length);
+        Assert.assertArrayEquals(input, rle.decompress(compressed));
+    }
+
+    @Test
+    public void dataWithoutRunsPassesThrough() throws IOException
+    {
+        byte[] input = "Appilan pappilan apupapin papupata pankolla kiehuu ja kuohuu.".getBytes();
+        byte[] compressed = rle.compress(input);
+
+        Assert.assertEquals(4 + input.length, compressed.length);
+        Assert.assertArrayEquals(input, Arrays.copyOfRange(compressed, 4, compressed.length));
+    }
+
+    @Test
+    public void shrinksImageInFrontOfOtherCompressors() throws IOException
+    {
+        byte[] input = Files.readAllBytes(new File("src/test/java/wackpackr/test.bmp").toPath());
+        Compressor lzss = new LZSSCompressor();
+        Compressor chain = new CompressorChain(rle, lzss);
+
+        Assert.assertTrue(rle.compress(input).length < input.length);
+        Assert.assertArrayEquals(input, chain.decompress(chain.compress(input)));
+    }
+
+    @Test
+    public void testPerformanceWithText() throws IOException
+    {
+        Assert.assertTrue(tester.performsWithText());
+    }
+
+    @Test
+    public void testPerformanceWithImage() throws IOException
+    {
+        Assert.assertTrue(tester.performsWithImage());
+    }
+
+    @Test
+    public void testPerformanceWithRandomBytes() throws IOException
+    {
+        Assert.assertTrue(tester.performsWithRandom());
+    }
+
+    @Test
+    public void compressesBetweenByteBuffers() throws IOException
+    {
+        tester.assertHandlesByteBuffers();
+    }
+
+    @Test
+    public void compressesIntoGivenArrays() throws IOException
+    {
+        tester.assertHandlesGivenArrays();
+    }
+
+    @Test
+    public void neverExceedsMaxCompressedSize() throws IOException
+    {
+        tester.assertStaysWithinMaxCompressedSize();
+
+        byte[] worstCase = new byte[1000];
+        for (int i = 0; i < worstCase.length; i++)
+            worstCase[i] = (byte) (i / 4);
+
+        Assert.assertEquals(rle.maxCompressedSize(1000), rle.compress(worstCase).length);
+    }
+
+    @Test
+    public void contextsCanBeReused() throws IOException
+    {
+        tester.assertReusesContexts();
+    }
+
+    @Test
+    public void storesUncompressedSizeIfRequested() throws IOException
+    {
+        tester.assertHandlesSizeHeader(new RLECompressor(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfIncorrectTagInHeader() throws IOException
+    {
+        byte[] invalid = new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+        rle.decompress(invalid);
+    }
+
+    @Test(expected = EOFException.class)
+    public void throwsExceptionIfRunIsCutOff() throws IOException
+    {
+        byte[] invalid = new byte[]{ 14, 12, 32, 24, 5, 5, 5, 5 };
+        rle.decompress(invalid);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfRunExceedsSizeInHeader() throws IOException
+    {
+        Compressor sized = new RLECompressor(true);
+        byte[] compressed = sized.compress(new byte[10]);
+        byte[] invalid = Arrays.copyOf(compressed, compressed.length + 4);
+
+        System.arraycopy(new byte[]{ -1, -1, -1, -1, 7 }, 0, invalid, compressed.length - 1, 5);
+        sized.decompress(invalid);
+    }
+
+    @Test
+    public void compressorKnowsItsName()
+    {
+        Assert.assertEquals("RLE", rle.getName());
+    }
+}
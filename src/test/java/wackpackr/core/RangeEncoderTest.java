@@ -0,0 +1,142 @@
+package wackpackr.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import wackpackr.io.BinaryIO;
+
+public class RangeEncoderTest
+{
+    private final RangeEncoder rc = new RangeEncoder(16);
+
+    @Test
+    public void skewedBitsCostFractionsOfBits() throws IOException
+    {
+        Random random = new Random(42);
+        int[] bits = new int[100_000];
+        for (int i = 0; i < bits.length; i++)
+            bits[i] = (random.nextInt(100) == 0) ? 1 : 0;
+
+        short[] probs = RangeEncoder.newModel(1);
+        for (int bit : bits)
+            rc.encodeBit(probs, 0, bit);
+        rc.finish();
+
+        Assert.assertTrue(rc.size() < bits.length / 8 / 5);
+
+        RangeDecoder rd = decoder();
+        probs = RangeEncoder.newModel(1);
+        for (int bit : bits)
+            Assert.assertEquals(bit, rd.decodeBit(probs, 0));
+    }
+
+    @Test
+    public void mixedSymbolsSurviveRoundTrip() throws IOException
+    {
+        Random random = new Random(7);
+        int[] values = new int[10_000];
+        for (int i = 0; i < values.length; i++)
+            values[i] = random.nextInt() >>> random.nextInt(32);
+
+        short[] tree = RangeEncoder.newModel(1 << 8);
+        for (int i = 0; i < values.length; i++)
+        {
+            rc.encodeBitTree(tree, 8, values[i] & 0xFF);
+            rc.encodeDirectBits(values[i], 32);
+            rc.encode(i % 3, 1, 3);
+        }
+        rc.finish();
+
+        RangeDecoder rd = decoder();
+        tree = RangeEncoder.newModel(1 << 8);
+        for (int i = 0; i < values.length; i++)
+        {
+            Assert.assertEquals(values[i] & 0xFF, rd.decodeBitTree(tree, 8));
+            Assert.assertEquals(values[i], rd.decodeDirectBits(32));
+            Assert.assertEquals(i % 3, rd.peekFrequency(3));
+            rd.decode(i % 3, 1, 3);
+        }
+    }
+
+    @Test
+    public void carriesPropagateIntoEarlierBytes() throws IOException
+    {
+        short[] probs = RangeEncoder.newModel(1);
+        int[] bits = new int[50_000];
+
+        for (int i = 0; i < bits.length; i++)
+        {
+            bits[i] = (i % 1000 < 990) ? 1 : 0;
+            rc.encodeBit(probs, 0, bits[i]);
+        }
+        rc.finish();
+
+        RangeDecoder rd = decoder();
+        probs = RangeEncoder.newModel(1);
+        for (int bit : bits)
+            Assert.assertEquals(bit, rd.decodeBit(probs, 0));
+    }
+
+    @Test
+    public void bitsWithGivenProbabilitiesSurviveRoundTrip() throws IOException
+    {
+        Random random = new Random(3);
+        int[] probabilities = new int[20_000];
+        int[] bits = new int[probabilities.length];
+
+        for (int i = 0; i < bits.length; i++)
+        {
+            probabilities[i] = 1 + random.nextInt(65535);
+            bits[i] = (random.nextInt(65536) < probabilities[i]) ? 0 : 1;
+            rc.encodeBit(probabilities[i], bits[i]);
+        }
+        rc.finish();
+
+        Assert.assertTrue(rc.size() < bits.length / 8 * 3 / 4);
+
+        RangeDecoder rd = decoder();
+        for (int i = 0; i < bits.length; i++)
+            Assert.assertEquals(bits[i], rd.decodeBit(probabilities[i]));
+    }
+
+    @Test(expected = EOFException.class)
+    public void throwsExceptionIfDataIsCutShort() throws IOException
+    {
+        for (int i = 0; i < 1000; i++)
+            rc.encodeDirectBits(i, 16);
+        rc.finish();
+
+        RangeDecoder rd = new RangeDecoder(new BinaryIO(
+                Arrays.copyOf(rc.toByteArray(), rc.size() / 2)
+        ));
+        for (int i = 0; i < 1000; i++)
+            rd.decodeDirectBits(16);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionIfFrequenciesAreInvalid()
+    {
+        rc.encode(2, 2, 3);
+    }
+
+    @Test
+    public void resetDiscardsOutput() throws IOException
+    {
+        rc.encodeDirectBits(12345, 16);
+        rc.finish();
+        rc.reset();
+
+        rc.encodeDirectBits(54321, 16);
+        rc.finish();
+
+        Assert.assertEquals(54321, decoder().decodeDirectBits(16));
+    }
+
+    private RangeDecoder decoder() throws IOException
+    {
+        return new RangeDecoder(new BinaryIO(rc.toByteArray()));
+    }
+}
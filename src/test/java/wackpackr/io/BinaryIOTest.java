@@ -1,6 +1,8 @@
 package wackpackr.io;
 
 import java.io.EOFException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.concurrent.ThreadLocalRandom;
 import org.junit.Assert;
 import org.junit.Before;
@@ -118,6 +120,329 @@ public class BinaryIOTest
             }
     }
 
+    @Test
+    public void readsAndWritesUpTo57BitsAtOnce() throws Exception
+    {
+        long[] values = new long[1024];
+        int[] widths = new int[values.length];
+
+        try (BinaryIO out = new BinaryIO())
+        {
+            for (int i = 0; i < values.length; i++)
+            {
+                widths[i] = ThreadLocalRandom.current().nextInt(1, BinaryIO.MAX_BITS + 1);
+                values[i] = ThreadLocalRandom.current().nextLong(1L << widths[i]);
+                out.writeLongBits(values[i], widths[i]);
+            }
+            out.writeLongBits(0, 7);
+
+            BinaryIO in = new BinaryIO(out.getBytesOut());
+            for (int i = 0; i < values.length; i++)
+                Assert.assertEquals(values[i], in.readLongBits(widths[i]));
+        }
+    }
+
+    @Test
+    public void peekingDoesNotMoveReadPointer() throws Exception
+    {
+        for (int bits = 1; bits <= BinaryIO.MAX_BITS; bits++)
+            try (BinaryIO io = new BinaryIO(bytes))
+            {
+                for (int i = 0; i + bits <= binary.length(); i += bits)
+                {
+                    long expected = Long.parseLong(binary.substring(i, i + bits), 2);
+
+                    Assert.assertEquals(expected, io.peekBits(bits));
+                    Assert.assertEquals(expected, io.peekBitsPadded(bits));
+                    Assert.assertEquals(expected, io.readLongBits(bits));
+                }
+            }
+    }
+
+    @Test
+    public void paddedPeekFillsInZerosAtEndOfInput() throws Exception
+    {
+        BinaryIO io = new BinaryIO(new byte[]{ -1, 5 });
+        io.skipBits(13);
+
+        Assert.assertEquals(0b101_0000, io.peekBitsPadded(7));
+        Assert.assertEquals(0b101, io.readBits(3));
+        Assert.assertEquals(0L, io.peekBitsPadded(20));
+    }
+
+    @Test
+    public void skipsBitsCorrectlyAtAllOffsets() throws Exception
+    {
+        for (int offset = 0; offset <= 8; offset++)
+            for (int skip = 0; skip <= 200; skip += 7)
+                try (BinaryIO io = new BinaryIO(bytes))
+                {
+                    io.readBits(offset);
+                    io.skipBits(skip);
+
+                    Assert.assertEquals(
+                            Long.parseLong(binary.substring(offset + skip, offset + skip + 40), 2),
+                            io.readLongBits(40)
+                    );
+                }
+    }
+
+    @Test
+    public void failedSkipDoesNotMoveReadPointer() throws Exception
+    {
+        BinaryIO io = new BinaryIO(new byte[]{ 42, -1 });
+        io.readBit();
+
+        try
+        {
+            io.skipBits(16);
+            Assert.fail();
+        }
+        catch (EOFException e) {}
+
+        Assert.assertEquals(0b0101010, io.readBits(7));
+    }
+
+    @Test(expected = EOFException.class)
+    public void peekWhenInputStreamHasLessBitsThrowsException() throws Exception
+    {
+        BinaryIO io = new BinaryIO(new byte[]{ -1, 0, 1 });
+        io.readBit();
+        io.peekBits(24);
+    }
+
+    @Test
+    public void readsFromHeapAndDirectByteBuffers() throws Exception
+    {
+        ByteBuffer heap = ByteBuffer.allocate(bytes.length + 20);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 20);
+
+        for (ByteBuffer bb : new ByteBuffer[]{ heap, direct, heap.asReadOnlyBuffer() })
+        {
+            heap.position(20);
+            heap.put(bytes);
+            direct.position(20);
+            direct.put(bytes);
+            bb.position(20).limit(bytes.length + 10);
+
+            for (int bits = 1; bits <= BinaryIO.MAX_BITS; bits += 7)
+            {
+                BinaryIO io = new BinaryIO(bb);
+                String s = binary.substring(0, binary.length() - 80);
+
+                io.readBits(3);
+                Assert.assertEquals(s.length() - 3, io.remaining());
+
+                byte[] chunk = io.readBytes(5);
+                for (int k = 0; k < 5; k++)
+                    Assert.assertEquals(
+                            (byte) Integer.parseInt(s.substring(3 + k * 8, 11 + k * 8), 2),
+                            chunk[k]
+                    );
+
+                for (int i = 43; i + bits <= s.length(); i += bits)
+                    Assert.assertEquals(
+                            Long.parseLong(s.substring(i, i + bits), 2),
+                            io.readLongBits(bits)
+                    );
+
+                Assert.assertEquals(20, bb.position());
+            }
+            bb.clear();
+        }
+    }
+
+    @Test
+    public void writesIntoHeapAndDirectByteBuffers() throws Exception
+    {
+        for (ByteBuffer bb : new ByteBuffer[]{ ByteBuffer.allocate(1100), ByteBuffer.allocateDirect(1100) })
+        {
+            bb.position(50);
+
+            try (BinaryIO io = new BinaryIO(null, bb))
+            {
+                MockBitStream bs = new MockBitStream(binary);
+
+                io.writeBit(bs.nextBit());
+                io.writeBytes(new byte[]{ bs.nextByte(), bs.nextByte() });
+
+                while (bs.length() >= 13)
+                    io.writeBits((int) bs.nextBits(13), 13);
+
+                while (bs.length() > 0)
+                    io.writeBit(bs.nextBit());
+
+                Assert.assertArrayEquals(bytes, io.getBytesOut());
+            }
+
+            Assert.assertEquals(50 + bytes.length, bb.position());
+        }
+    }
+
+    @Test
+    public void writesRepeatedByteAsIfOneByOne() throws Exception
+    {
+        for (int offset = 0; offset < 8; offset++)
+        {
+            try (BinaryIO expected = new BinaryIO(); BinaryIO actual = new BinaryIO())
+            {
+                expected.writeBits(0b1011011, offset);
+                actual.writeBits(0b1011011, offset);
+
+                for (int i = 0; i < 100; i++)
+                    expected.writeByte((byte) 0xA7);
+                actual.writeRepeatedByte((byte) 0xA7, 100).writeRepeatedByte((byte) 1, 0);
+
+                expected.writeBits(0b101, 3);
+                actual.writeBits(0b101, 3);
+
+                Assert.assertArrayEquals(expected.getBytesOut(), actual.getBytesOut());
+            }
+        }
+    }
+
+    @Test
+    public void writesIntoGivenArrayAtOffset() throws Exception
+    {
+        byte[] dst = new byte[bytes.length + 12];
+
+        try (BinaryIO io = new BinaryIO(null, dst, 12))
+        {
+            MockBitStream bs = new MockBitStream(binary);
+
+            while (bs.length() >= 11)
+                io.writeBits((int) bs.nextBits(11), 11);
+
+            while (bs.length() > 0)
+                io.writeBit(bs.nextBit());
+
+            Assert.assertEquals(bytes.length, io.getByteCountOut());
+            Assert.assertArrayEquals(bytes, io.getBytesOut());
+        }
+
+        for (int i = 0; i < bytes.length; i++)
+            Assert.assertEquals(bytes[i], dst[12 + i]);
+    }
+
+    @Test
+    public void varIntsSurviveRoundTrip() throws Exception
+    {
+        int[] values = { 0, 1, 127, 128, 300, 16383, 16384, 1 << 21, 123456789, Integer.MAX_VALUE };
+
+        try (BinaryIO out = new BinaryIO())
+        {
+            out.writeBit(true);
+            for (int i : values)
+                out.writeVarInt(i);
+            out.writeBits(0, 7);
+
+            byte[] bs = out.getBytesOut();
+            Assert.assertEquals(1 + 1 + 1 + 1 + 2 + 2 + 2 + 3 + 4 + 4 + 5, bs.length);
+
+            BinaryIO in = new BinaryIO(bs);
+            Assert.assertTrue(in.readBit());
+            for (int i : values)
+                Assert.assertEquals(i, in.readVarInt());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void readingTooLongVarIntThrowsException() throws Exception
+    {
+        new BinaryIO(new byte[]{ -1, -1, -1, -1, 15 }).readVarInt();
+    }
+
+    @Test
+    public void reservedOutputIsReturnedWithoutCopying() throws Exception
+    {
+        try (BinaryIO io = new BinaryIO())
+        {
+            io
+                    .writeByte((byte) 1)
+                    .reserveOut(999)
+                    .writeBytes(new byte[999]);
+
+            byte[] bs = io.getBytesOut();
+            Assert.assertEquals(1000, bs.length);
+            Assert.assertSame(bs, io.getBytesOut());
+        }
+    }
+
+    @Test(expected = BufferOverflowException.class)
+    public void reservingTooMuchOfGivenArrayThrowsException() throws Exception
+    {
+        new BinaryIO(null, new byte[10], 5).reserveOut(6);
+    }
+
+    @Test(expected = BufferOverflowException.class)
+    public void writingPastEndOfGivenArrayThrowsException() throws Exception
+    {
+        try (BinaryIO io = new BinaryIO(null, new byte[5], 2))
+        {
+            io.writeBytes(new byte[]{ 1, 2, 3, 4 });
+        }
+    }
+
+    @Test(expected = BufferOverflowException.class)
+    public void writingPastEndOfByteBufferThrowsException() throws Exception
+    {
+        try (BinaryIO io = new BinaryIO(null, ByteBuffer.allocateDirect(3)))
+        {
+            io.write32Bits(42);
+        }
+    }
+
+    @Test(expected = BufferOverflowException.class)
+    public void writingPastOutputLimitThrowsException() throws Exception
+    {
+        try (BinaryIO io = new BinaryIO())
+        {
+            io.writeByte((byte) 1).limitOut(3);
+            io.writeBytes(new byte[]{ 2, 3, 4, 5 });
+        }
+    }
+
+    @Test
+    public void liftingOutputLimitAllowsWritingAgain() throws Exception
+    {
+        BinaryIO io = new BinaryIO().limitOut(1);
+        io.limitOut(-1).writeBytes(new byte[]{ 1, 2, 3 });
+
+        Assert.assertArrayEquals(new byte[]{ 1, 2, 3 }, io.getBytesOut());
+    }
+
+    @Test
+    public void resetRereadsInputAndDiscardsOutput() throws Exception
+    {
+        BinaryIO io = new BinaryIO(new byte[]{ 1, 2, 3, 4 });
+        io.writeByte(io.readByte()).mark();
+        io.writeByte(io.readByte()).writeByte(io.readByte());
+        io.reset();
+
+        Assert.assertEquals(2, io.readByte());
+        Assert.assertArrayEquals(new byte[]{ 1 }, io.getBytesOut());
+    }
+
+    @Test
+    public void resetRewindsByteBufferOutput() throws Exception
+    {
+        ByteBuffer out = ByteBuffer.allocateDirect(8);
+
+        try (BinaryIO io = new BinaryIO(null, out))
+        {
+            io.writeBits(5, 3).mark().writeBytes(new byte[]{ 1, 2, 3 }).reset().writeBits(0, 5);
+        }
+
+        Assert.assertEquals(1, out.position());
+        Assert.assertEquals((byte) 0xA0, out.get(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void resetWithoutMarkThrowsException() throws Exception
+    {
+        new BinaryIO().reset();
+    }
+
     @Test(expected = NullPointerException.class)
     public void readBitWithoutInputStreamThrowsException() throws Exception
     {
@@ -141,6 +466,18 @@ public class BinaryIOTest
             io.readBit();
     }
 
+    @Test(expected = EOFException.class)
+    public void readBytesBeyondInputThrowsExceptionWithoutAllocating() throws Exception
+    {
+        new BinaryIO(new byte[]{ 1, 2, 3 }).readBytes(Integer.MAX_VALUE);
+    }
+
+    @Test(expected = EOFException.class)
+    public void readBytesWithNegativeCountThrowsException() throws Exception
+    {
+        new BinaryIO(new byte[]{ 1, 2, 3 }).readBytes(-1);
+    }
+
     @Test(expected = EOFException.class)
     public void readByteWhenInputStreamHasLessThan8BitsThrowsException() throws Exception
     {
@@ -244,6 +581,44 @@ public class BinaryIOTest
             }
     }
 
+    @Test
+    public void writesAndReadsByteRangesAtAllOffsets() throws Exception
+    {
+        for (int offset = 0; offset <= 8; offset++)
+            try (BinaryIO out = new BinaryIO())
+            {
+                out.writeBits(0, offset);
+                out.writeBytes(bytes, 100, 500);
+                out.writeBytes(bytes, 0, 0);
+                out.writeBits(0, 8 - offset);
+
+                BinaryIO in = new BinaryIO(out.getBytesOut());
+                byte[] bs = new byte[510];
+
+                in.readBits(offset);
+                in.readBytes(bs, 10, 500);
+
+                for (int i = 0; i < 500; i++)
+                    Assert.assertEquals(bytes[100 + i], bs[10 + i]);
+            }
+    }
+
+    @Test
+    public void failedReadOfByteRangeDoesNotMoveReadPointer() throws Exception
+    {
+        BinaryIO io = new BinaryIO(bytes);
+        io.readBit();
+
+        try
+        {
+            io.readBytes(new byte[bytes.length], 0, bytes.length);
+            Assert.fail();
+        }
+        catch (EOFException e) {}
+
+        Assert.assertEquals(8L * bytes.length - 1, io.remaining());
+    }
+
     @Test
     public void writes32BitChunksCorrectly() throws Exception
     {
@@ -305,6 +680,34 @@ public class BinaryIOTest
         }
     }
 
+    @Test
+    public void sentinelReadReturnsEOFIfInputStreamHasEnded() throws Exception
+    {
+        try (BinaryIO io = new BinaryIO(bytes))
+        {
+            io.readBit();
+
+            for (int i = 0; i < bytes.length - 1; i++)
+            {
+                Assert.assertTrue(io.hasMore());
+                Assert.assertEquals(8L * (bytes.length - i) - 1, io.remaining());
+                Assert.assertEquals(
+                        Integer.parseInt(binary.substring(i * 8 + 1, i * 8 + 9), 2),
+                        io.readByteOrEOF()
+                );
+            }
+
+            Assert.assertEquals(BinaryIO.EOF, io.readByteOrEOF());
+            Assert.assertEquals(BinaryIO.EOF, io.readBitsOrEOF(8));
+            Assert.assertEquals(
+                    Long.parseLong(binary.substring(binary.length() - 7), 2),
+                    io.readBitsOrEOF(7)
+            );
+            Assert.assertFalse(io.hasMore());
+            Assert.assertEquals(0, io.remaining());
+        }
+    }
+
     private String byteArrayToBinaryString(byte[] bs)
     {
         StringBuilder sb = new StringBuilder();
@@ -0,0 +1,73 @@
+package wackpackr.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BufferPoolTest
+{
+    @Test
+    public void acquiredArraysAreAtLeastRequestedSize()
+    {
+        for (int size : new int[]{ 0, 1, 1023, 1024, 1025, 100_000, BufferPool.MAX_POOLED_SIZE + 1 })
+            Assert.assertTrue(BufferPool.acquire(size).length >= size);
+    }
+
+    @Test
+    public void releasedArrayIsReused()
+    {
+        byte[] bs = BufferPool.acquire(5000);
+        Assert.assertEquals(8192, bs.length);
+
+        BufferPool.release(bs);
+        Assert.assertSame(bs, BufferPool.acquire(6000));
+    }
+
+    @Test
+    public void arraysOfOddSizesAreNotPooled()
+    {
+        byte[] bs = new byte[3000];
+        BufferPool.release(bs);
+
+        for (int i = 0; i <= BufferPool.MAX_POOLED_PER_SIZE; i++)
+            Assert.assertNotSame(bs, BufferPool.acquire(3000));
+    }
+
+    @Test
+    public void arraysAboveLargestSizeClassAreNotPooled()
+    {
+        byte[] bs = BufferPool.acquire(BufferPool.MAX_POOLED_SIZE + 1);
+        BufferPool.release(bs);
+
+        Assert.assertNotSame(bs, BufferPool.acquire(BufferPool.MAX_POOLED_SIZE + 1));
+    }
+
+    @Test
+    public void poolStaysWithinTotalCap()
+    {
+        BufferPool.clear();
+
+        for (int size = BufferPool.MIN_POOLED_SIZE; size <= BufferPool.MAX_POOLED_SIZE; size <<= 1)
+            for (int i = 0; i <= BufferPool.MAX_POOLED_PER_SIZE; i++)
+                BufferPool.release(new byte[size]);
+
+        Assert.assertTrue(BufferPool.pooledBytes() > 0);
+        Assert.assertTrue(BufferPool.pooledBytes() <= BufferPool.MAX_POOLED_BYTES);
+    }
+
+    @Test
+    public void clearDropsPooledArrays()
+    {
+        byte[] bs = BufferPool.acquire(5000);
+        BufferPool.release(bs);
+        BufferPool.clear();
+
+        Assert.assertEquals(0, BufferPool.pooledBytes());
+        Assert.assertNotSame(bs, BufferPool.acquire(5000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void acquiringNegativeSizeThrowsException()
+    {
+        BufferPool.acquire(-1);
+    }
+}
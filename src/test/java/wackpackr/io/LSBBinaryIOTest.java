@@ -0,0 +1,69 @@
+package wackpackr.io;
+
+import java.io.EOFException;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LSBBinaryIOTest
+{
+    @Test
+    public void packsLowestBitsFirst() throws Exception
+    {
+        try (LSBBinaryIO io = new LSBBinaryIO())
+        {
+            io
+                    .writeBits(1, 1)
+                    .writeBits(2, 3)
+                    .writeBits(0x1AB, 9);
+
+            Assert.assertArrayEquals(
+                    new byte[]{ (byte) 0xB5, 0x1A },
+                    io.getBytesOut()
+            );
+        }
+    }
+
+    @Test
+    public void readsBackWhatWasWritten() throws Exception
+    {
+        int[] values = new int[4096];
+        int[] widths = new int[values.length];
+
+        try (LSBBinaryIO out = new LSBBinaryIO())
+        {
+            for (int i = 0; i < values.length; i++)
+            {
+                widths[i] = ThreadLocalRandom.current().nextInt(1, 25);
+                values[i] = ThreadLocalRandom.current().nextInt(1 << widths[i]);
+                out.writeBits(values[i], widths[i]);
+            }
+
+            LSBBinaryIO in = new LSBBinaryIO(out.getBytesOut());
+            for (int i = 0; i < values.length; i++)
+                Assert.assertEquals(values[i], in.readBits(widths[i]));
+
+            Assert.assertTrue(in.remaining() < 8);
+        }
+    }
+
+    @Test
+    public void skipsBitsAndKeepsCountOfRemaining() throws Exception
+    {
+        LSBBinaryIO io = new LSBBinaryIO(new byte[]{ 0, (byte) 0xF0, 3 });
+        io.skipBits(12);
+
+        Assert.assertEquals(12, io.remaining());
+        Assert.assertEquals(0x3F, io.readBits(6));
+
+        io.skipBits(100);
+        Assert.assertEquals(0, io.remaining());
+    }
+
+    @Test(expected = EOFException.class)
+    public void readBitsWhenInputStreamHasEndedThrowsException() throws Exception
+    {
+        LSBBinaryIO io = new LSBBinaryIO(new byte[]{ -1 });
+        io.readBits(9);
+    }
+}
@@ -205,6 +205,21 @@ public class ByteStringTest
             );
     }
 
+    @Test
+    public void copyingIntoGivenArrayGivesCorrectRange()
+    {
+        byte[] dst = new byte[N + 10];
+
+        for (int i = 43, j = N; i < j; i += 43, j -= 61)
+        {
+            bs.getBytes(i, j, dst, 10);
+            Assert.assertArrayEquals(
+                    Arrays.copyOfRange(dst, 10, 10 + j - i),
+                    Arrays.copyOfRange(bytes, i, j)
+            );
+        }
+    }
+
     @Test
     public void substringingOutOfBoundsThrowsException()
     {
@@ -125,6 +125,22 @@ public class CircularDoublyLinkedListTest
         Assert.assertFalse(L.contains(null));
     }
 
+    @Test
+    public void clearEmptiesListButKeepsItUsable()
+    {
+        for (int i : elems)
+            L.add(i);
+
+        L.clear();
+        Assert.assertTrue(L.isEmpty());
+        Assert.assertEquals(0, L.toArray().length);
+
+        L.add(elems[0]);
+        L.add(elems[1]);
+        Assert.assertArrayEquals(new Object[]{ elems[0], elems[1] }, L.toArray());
+        Assert.assertArrayEquals(new Object[]{ elems[1], elems[0] }, L.toArrayReverse());
+    }
+
     @Test
     public void removeDoesNothingIfElementNotPresent()
     {
@@ -84,6 +84,21 @@ public class ErraticHashTableTest
                 }
     }
 
+    @Test
+    public void clearRemovesAllElements()
+    {
+        for (int i = 0; i < 1000; i++)
+            ht.put(i, (byte) i, (byte) (i >> 8));
+
+        ht.clear();
+
+        for (int i = 0; i < 1000; i++)
+            Assert.assertTrue(ht.get((byte) i, (byte) (i >> 8)).isEmpty());
+
+        ht.put(42, (byte) 1);
+        Assert.assertEquals(1, ht.get((byte) 1).size());
+    }
+
     @Test
     public void nullElementsArePermitted()
     {
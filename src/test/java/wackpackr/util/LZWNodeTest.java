@@ -50,6 +50,42 @@ public class LZWNodeTest
         indexHelper();
     }
 
+    @Test
+    public void removeChildrenDetachesWholeSubtrie()
+    {
+        root.insert(new LZWNode(count++, (byte) 1));
+        root.insert(new LZWNode(count++, (byte) 2), (byte) 1);
+
+        root.removeChildren();
+        Assert.assertNull(root.get((byte) 1));
+        Assert.assertNull(root.get((byte) 1, (byte) 2));
+
+        Assert.assertTrue(root.insert(new LZWNode(count++, (byte) 1)));
+        Assert.assertNull(root.get((byte) 1, (byte) 2));
+    }
+
+    @Test
+    public void removeChildUndoesInsertionsInReverseOrder()
+    {
+        LZWNode parent = new LZWNode(0, (byte) 0);
+        byte[] values = { 5, 3, 8, 4, 9 };
+        LZWNode[] nodes = new LZWNode[values.length];
+
+        for (int i = 0; i < values.length; i++)
+            parent.insert(nodes[i] = new LZWNode(i + 1, values[i]));
+
+        for (int i = values.length - 1; i >= 0; i--)
+        {
+            Assert.assertTrue(parent.removeChild(nodes[i]));
+            Assert.assertNull(parent.get(values[i]));
+
+            for (int j = 0; j < i; j++)
+                Assert.assertSame(nodes[j], parent.get(values[j]));
+        }
+
+        Assert.assertFalse(parent.removeChild(nodes[0]));
+    }
+
     private void getHelper(byte... bs)
     {
         int n = bs.length;
@@ -151,6 +151,24 @@ public class SlidingWindowTest
         Assert.assertTrue(exceptions == 4);
     }
 
+    @Test
+    public void clearedWindowIsLikeNew()
+    {
+        for (int i = 0; i < SIZE * 2 + 7; i++)
+            sw.insert(RANDOM.nextInt());
+        sw.move(SIZE + 10);
+
+        sw.clear();
+        Assert.assertEquals(0, sw.cursor());
+        Assert.assertTrue(throwsExpectedExceptionOnRead(0, IndexOutOfBoundsException.class));
+
+        for (int i = 0; i < SIZE; i++)
+            Assert.assertNull(sw.insert(i));
+
+        Assert.assertEquals(0, (int) sw.read());
+        Assert.assertEquals(0, (int) sw.insert(1337));
+    }
+
     private boolean throwsExpectedExceptionOnRead(int offset, Class cls)
     {
         try
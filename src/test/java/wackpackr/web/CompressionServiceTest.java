@@ -0,0 +1,107 @@
+package wackpackr.web;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import wackpackr.core.Compressor;
+import wackpackr.core.HuffCompressor;
+import wackpackr.core.LZSSCompressor;
+import wackpackr.core.LZWCompressor;
+
+public class CompressionServiceTest
+{
+    private final byte[] input = "Appilan pappilan apupapin papupata pankolla kiehuu ja kuohuu"
+            .getBytes();
+    private final Map<String, AtomicInteger> firstStages = new ConcurrentHashMap<>();
+    private final CompressionService service = new CompressionService(4)
+    {
+        @Override
+        Compressor[][] getCompressors()
+        {
+            Compressor huff = new CountingHuff();
+            Compressor lzss = new CountingLZSS();
+            Compressor lzw = new CountingLZW();
+
+            return new Compressor[][]{
+                { huff }, { lzss }, { lzw },
+                { huff, lzss }, { huff, lzw },
+                { lzss, huff }, { lzss, lzw },
+                { lzw, huff }, { lzw, lzss },
+            };
+        }
+    };
+
+    @After
+    public void tearDown()
+    {
+        service.shutdown();
+    }
+
+    @Test
+    public void sharedFirstStagesAreComputedOnce()
+    {
+        List<CompressionResult> results = service.runTests(input);
+
+        Assert.assertEquals(9, results.size());
+        Assert.assertEquals(3, firstStages.size());
+
+        for (Map.Entry<String, AtomicInteger> e : firstStages.entrySet())
+            Assert.assertEquals(e.getKey(), 1, e.getValue().get());
+    }
+
+    @Test
+    public void resultsKeepOrderOfPipelinesAndAreIntact()
+    {
+        List<CompressionResult> results = service.runTests(input);
+
+        Assert.assertEquals("Huffman", results.get(0).getName());
+        Assert.assertEquals("LZW > LZSS", results.get(8).getName());
+
+        for (CompressionResult r : results)
+        {
+            Assert.assertTrue(r.getName(), r.isIntact());
+            Assert.assertTrue(r.isTimedConcurrently());
+        }
+    }
+
+    private void count(Compressor c, byte[] bytes)
+    {
+        if (bytes == input)
+            firstStages.computeIfAbsent(c.getName(), k -> new AtomicInteger()).incrementAndGet();
+    }
+
+    private class CountingHuff extends HuffCompressor
+    {
+        @Override
+        public byte[] compress(byte[] bytes) throws IOException
+        {
+            count(this, bytes);
+            return super.compress(bytes);
+        }
+    }
+
+    private class CountingLZSS extends LZSSCompressor
+    {
+        @Override
+        public byte[] compress(byte[] bytes) throws IOException
+        {
+            count(this, bytes);
+            return super.compress(bytes);
+        }
+    }
+
+    private class CountingLZW extends LZWCompressor
+    {
+        @Override
+        public byte[] compress(byte[] bytes) throws IOException
+        {
+            count(this, bytes);
+            return super.compress(bytes);
+        }
+    }
+}
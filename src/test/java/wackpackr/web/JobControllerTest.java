@@ -0,0 +1,180 @@
+package wackpackr.web;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.jayway.jsonpath.JsonPath;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import wackpackr.core.Compressor;
+import wackpackr.core.HuffCompressor;
+
+public class JobControllerTest
+{
+    private final byte[] input = "Appilan pappilan apupapin papupata pankolla".getBytes();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final JobService jobService = new JobService(1, 1);
+    private volatile Compressor compressor = new HuffCompressor();
+    private final CompressionService compressionService = new CompressionService(1)
+    {
+        @Override
+        public List<CompressionResult> runTests(byte[] bytes)
+        {
+            started.countDown();
+
+            try
+            {
+                release.await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            return Collections.singletonList(new CompressionResult(bytes, compressor));
+        }
+    };
+
+    private MockMvc mvc;
+
+    @Before
+    public void setUp()
+    {
+        JobController controller = new JobController();
+
+        ReflectionTestUtils.setField(jobService, "compressionService", compressionService);
+        ReflectionTestUtils.setField(jobService, "jobStore", new JobStore(10, 1));
+        ReflectionTestUtils.setField(controller, "jobService", jobService);
+
+        mvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @After
+    public void tearDown()
+    {
+        release.countDown();
+        jobService.shutdown();
+        compressionService.shutdown();
+    }
+
+    @Test
+    public void submittedJobCanBePolledAndFetched() throws Exception
+    {
+        MvcResult submitted = submit()
+                .andExpect(status().isAccepted())
+                .andReturn();
+
+        String id = idOf(submitted);
+        Assert.assertEquals("/api/jobs/" + id, submitted.getResponse().getHeader("Location"));
+
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        mvc.perform(get("/api/jobs/" + id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("RUNNING"));
+        mvc.perform(get("/api/jobs/" + id + "/results"))
+                .andExpect(status().isConflict());
+
+        release.countDown();
+        awaitStatus(id, "DONE");
+
+        mvc.perform(get("/api/jobs/" + id + "/results"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].name").value("Huffman"))
+                .andExpect(jsonPath("$[0].intact").value(true));
+    }
+
+    @Test
+    public void failedCompressionIsReportedInResults() throws Exception
+    {
+        compressor = new HuffCompressor()
+        {
+            @Override
+            public byte[] compress(byte[] bytes) throws IOException
+            {
+                throw new IOException("Failed on purpose");
+            }
+        };
+        release.countDown();
+
+        String id = idOf(submit().andExpect(status().isAccepted()).andReturn());
+        awaitStatus(id, "DONE");
+
+        mvc.perform(get("/api/jobs/" + id + "/results"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].intact").value(false))
+                .andExpect(jsonPath("$[0].compressionTime").doesNotExist())
+                .andExpect(jsonPath("$[0].compressionRate").doesNotExist());
+    }
+
+    @Test
+    public void unknownJobIsNotFound() throws Exception
+    {
+        mvc.perform(get("/api/jobs/nope"))
+                .andExpect(status().isNotFound());
+        mvc.perform(get("/api/jobs/nope/results"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void returnsTooManyRequestsWhenQueueIsFull() throws Exception
+    {
+        String running = idOf(submit().andExpect(status().isAccepted()).andReturn());
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        String queued = idOf(submit().andExpect(status().isAccepted()).andReturn());
+
+        submit()
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "5"));
+
+        release.countDown();
+        awaitStatus(running, "DONE");
+        awaitStatus(queued, "DONE");
+    }
+
+    private ResultActions submit() throws Exception
+    {
+        return mvc.perform(multipart("/api/jobs").file(new MockMultipartFile("file", input)));
+    }
+
+    private static String idOf(MvcResult result) throws Exception
+    {
+        return JsonPath.read(result.getResponse().getContentAsString(), "$.id");
+    }
+
+    private void awaitStatus(String id, String expected) throws Exception
+    {
+        String actual = null;
+
+        for (int i = 0; i < 200 && !expected.equals(actual); i++)
+        {
+            if (actual != null)
+                Thread.sleep(50);
+
+            actual = JsonPath.read(mvc.perform(get("/api/jobs/" + id))
+                    .andExpect(status().isOk())
+                    .andReturn()
+                    .getResponse()
+                    .getContentAsString(), "$.status");
+        }
+
+        Assert.assertEquals(expected, actual);
+    }
+}
@@ -0,0 +1,107 @@
+package wackpackr.web;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JobStoreTest
+{
+    private static final long MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    private final AtomicLong clock = new AtomicLong();
+    private final JobStore store = new JobStore(2, 30, clock::get);
+
+    @Test
+    public void finishedJobIsEvictedOnlyAfterItsTtl()
+    {
+        CompressionJob job = putFinishedJob();
+
+        clock.addAndGet(30 * MINUTE - 1);
+        store.evict();
+        Assert.assertSame(job, store.get(job.getId()));
+
+        clock.incrementAndGet();
+        store.evict();
+        Assert.assertEquals(0, store.size());
+        Assert.assertNull(store.get(job.getId()));
+    }
+
+    @Test
+    public void ttlCountsFromFinishNotFromSubmit()
+    {
+        CompressionJob job = new CompressionJob(false);
+        store.put(job);
+
+        clock.addAndGet(60 * MINUTE);
+        job.finish(Collections.emptyList());
+        store.finished(job);
+
+        clock.addAndGet(29 * MINUTE);
+        Assert.assertSame(job, store.get(job.getId()));
+
+        clock.addAndGet(MINUTE);
+        Assert.assertNull(store.get(job.getId()));
+    }
+
+    @Test
+    public void queuedAndRunningJobsAreNeverEvicted()
+    {
+        CompressionJob queued = new CompressionJob(false);
+        CompressionJob running = new CompressionJob(false);
+        running.start();
+
+        store.put(queued);
+        store.put(running);
+        putFinishedJob();
+        putFinishedJob();
+
+        clock.addAndGet(365 * 24 * 60 * MINUTE);
+        store.evict();
+
+        Assert.assertEquals(2, store.size());
+        Assert.assertSame(queued, store.get(queued.getId()));
+        Assert.assertSame(running, store.get(running.getId()));
+    }
+
+    @Test
+    public void oldestFinishedJobsAreEvictedWhenFull()
+    {
+        CompressionJob running = new CompressionJob(false);
+        running.start();
+        store.put(running);
+
+        CompressionJob first = putFinishedJob();
+        CompressionJob second = putFinishedJob();
+
+        Assert.assertEquals(2, store.size());
+        Assert.assertNull(store.get(first.getId()));
+        Assert.assertSame(second, store.get(second.getId()));
+        Assert.assertSame(running, store.get(running.getId()));
+    }
+
+    @Test
+    public void jobFinishedBeforeItIsStoredStillExpires()
+    {
+        CompressionJob job = new CompressionJob(false);
+        job.fail(new IllegalStateException());
+        store.finished(job);
+        store.put(job);
+
+        clock.addAndGet(30 * MINUTE);
+        store.evict();
+
+        Assert.assertEquals(0, store.size());
+    }
+
+    private CompressionJob putFinishedJob()
+    {
+        CompressionJob job = new CompressionJob(false);
+        store.put(job);
+        job.finish(Collections.emptyList());
+        store.finished(job);
+
+        return job;
+    }
+}